@@ -0,0 +1,22 @@
+#!/bin/bash
+
+# AuthorizedKeysCommand for SSH proxy accounts, requires agiprx.authorizedKeysLookup=true
+#
+# sshd_config:
+#   AuthorizedKeysCommand /opt/agiprx/scripts/authorized-keys-lookup.sh %u
+#   AuthorizedKeysCommandUser nobody
+#
+# sshd trusts the returned keys: only a privileged port can't be bound by other local users while agiprx is
+# down, any other port is refused and a failed lookup returns no keys
+
+USERNAME="$1"
+PORT="${AGIPRX_LOOKUP_PORT:-224}"
+
+if ! [[ "$PORT" =~ ^[0-9]+$ ]] || [ "$PORT" -lt 1 ] || [ "$PORT" -ge 1024 ]; then
+	echo "AGIPRX_LOOKUP_PORT needs to be a privileged port below 1024" >&2
+	exit 1
+fi
+
+exec 3<>/dev/tcp/127.0.0.1/$PORT || exit 1
+echo "$USERNAME" >&3
+timeout 5 cat <&3
@@ -0,0 +1,41 @@
+#!/bin/bash
+
+# Measure the SSH session setup latency from the proxy to a container with and
+# without connection multiplexing (agiprx.sshMultiplexing)
+#
+# usage: ssh-mux-benchmark.sh <container user>@<container ipv6> [sessions] [key]
+
+TARGET="$1"
+SESSIONS="${2:-50}"
+KEY="${3:-/opt/agiprx/etc/prx_rsa}"
+
+if [ -z "$TARGET" ]; then
+	echo "usage: $0 <container user>@<container ipv6> [sessions] [key]"
+	exit 1
+fi
+
+# stop on error
+set -e
+
+CONTROL_DIR=$(mktemp -d)
+chmod 700 "$CONTROL_DIR"
+trap 'ssh -oControlPath="$CONTROL_DIR/%C" -O exit "$TARGET" 2>/dev/null; rm -rf "$CONTROL_DIR"' EXIT
+
+SSH_OPTS="-p22 -6 -oLogLevel=QUIET -oStrictHostKeyChecking=no -oBatchMode=yes -i $KEY"
+MUX_OPTS="-oControlMaster=auto -oControlPath=$CONTROL_DIR/%C -oControlPersist=60"
+
+run() {
+	local label="$1"
+	shift
+	local start end
+	start=$(date +%s%N)
+	for ((i = 0; i < SESSIONS; i++)); do
+		ssh $SSH_OPTS "$@" "$TARGET" true
+	done
+	end=$(date +%s%N)
+	echo "$label: $SESSIONS sessions, $(( (end - start) / 1000000 / SESSIONS )) ms per session"
+}
+
+run "without multiplexing"
+# the first session of the multiplexed run opens the master connection
+run "with multiplexing" $MUX_OPTS
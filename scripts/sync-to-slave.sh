@@ -1,11 +1,136 @@
 #!/bin/bash
 
 # Sync haproxy config to slave agiprx server and apply new configuration
+#
+# sync-to-slave.sh SLAVEIP [full|files|data]
+#   sync the slave directly
+# sync-to-slave.sh prepare SNAPSHOTDIR [full|files|data]
+#   take one snapshot for all slaves: file manifest with content hashes and a database dump on 'full' and 'data'
+# sync-to-slave.sh SLAVEIP full|files|data SNAPSHOTDIR
+#   transfer the files that differ from the snapshot manifest and import the snapshot dump on 'full' and 'data'
+# sync-to-slave.sh SLAVEIP restart
+#   restart agiprx on the slave only, e.g. if the reload after 'data' failed
+#
+# MODE 'files' syncs certificates and static HAProxy files only, the database is replicated by the
+# change log (agiprx.replication=true) and the slave regenerates its configuration without restart
+#
+# MODE 'data' syncs like 'files' and imports the database without restart, the master reloads the
+# slave afterwards by its REST API (agiprx.replicationApiUser)
 
-SLAVEIP="$1"
+SSH="ssh -p2222 -o StrictHostKeyChecking=no"
+SYNC_DIRS="etc/letsencrypt etc/haproxy"
 
 # stop on error
 set -e
+set -o pipefail
+
+# manifest lines: sha256 or link target, two spaces, path relative to /
+manifest() {
+	cd / && { find $SYNC_DIRS -type f -print0 | xargs -0 -r sha256sum; find $SYNC_DIRS -type l -printf 'link:%l  %p\n'; } | LC_ALL=C sort
+}
+
+# configuration and maps generated by the slave itself are not synced on 'files' and 'data'
+filter_manifest() {
+	if [ "$MODE" != "full" ]; then
+		grep -v -E '  etc/haproxy/(haproxy\.cfg.*|.*\.map|archive/.*)$' || true
+	else
+		cat
+	fi
+}
+
+if [ "$1" = "prepare" ]; then
+
+	SNAPSHOT="$2"
+	MODE="${3:-full}"
+
+	manifest | gzip > "$SNAPSHOT/manifest.gz"
+
+	if [ "$MODE" != "files" ]; then
+		mysqldump --defaults-file=/etc/mysql/debian.cnf --opt --single-transaction --order-by-primary --flush-logs --events --routines agiprx | gzip > "$SNAPSHOT/agiprx.sql.gz"
+	fi
+
+	exit 0
+fi
+
+SLAVEIP="$1"
+MODE="${2:-full}"
+SNAPSHOT="$3"
+
+if [ "$MODE" = "restart" ]; then
+	$SSH root@$SLAVEIP '/usr/bin/systemctl restart agiprx'
+	exit 0
+fi
+
+if [ -n "$SNAPSHOT" ]; then
+
+	WORK=$(mktemp -d)
+	trap 'rm -rf "$WORK"' EXIT
+
+	zcat "$SNAPSHOT/manifest.gz" | filter_manifest > "$WORK/master"
+	$SSH root@$SLAVEIP "SYNC_DIRS='$SYNC_DIRS'; $(declare -f manifest); manifest" | filter_manifest > "$WORK/slave"
+
+	# new or changed on the master, removed on the master
+	LC_ALL=C comm -23 "$WORK/master" "$WORK/slave" | cut -d' ' -f3- > "$WORK/changed"
+	LC_ALL=C comm -13 <(cut -d' ' -f3- "$WORK/master" | LC_ALL=C sort) <(cut -d' ' -f3- "$WORK/slave" | LC_ALL=C sort) > "$WORK/deleted"
+
+	if [ -s "$WORK/changed" ]; then
+		rsync -azHAX -F -e"$SSH" --timeout=300 --files-from="$WORK/changed" / root@[$SLAVEIP]:/
+	fi
+	if [ -s "$WORK/deleted" ]; then
+		$SSH root@$SLAVEIP 'cd / && xargs -r -d "\n" rm -f' < "$WORK/deleted"
+	fi
+
+	# rsync /opt/agiprx/.ssh/authorized_keys
+	rsync -azHAX -e"$SSH" --timeout=300 /opt/agiprx/.ssh/authorized_keys root@[$SLAVEIP]:/opt/agiprx/.ssh/authorized_keys
+
+	if [ "$MODE" != "full" ]; then
+		# reload HAProxy to pick up changed certificates
+		if [ -s "$WORK/changed" ] || [ -s "$WORK/deleted" ]; then
+			$SSH root@$SLAVEIP '/opt/agiprx/scripts/haproxy-safe-reload.sh'
+		fi
+	fi
+
+	if [ "$MODE" = "files" ]; then
+		exit 0
+	fi
+
+	# import the database dump of the snapshot
+	zcat "$SNAPSHOT/agiprx.sql.gz" | $SSH root@$SLAVEIP mysql --defaults-file=/etc/mysql/debian.cnf agiprx
+
+	if [ "$MODE" = "data" ]; then
+		# the master reloads the slave instead of a restart
+		exit 0
+	fi
+
+	# restart agiprx to re-generate HAProxy config and reload and to re-generate SSH proxy config
+	$SSH root@$SLAVEIP '/usr/bin/systemctl restart agiprx'
+
+	exit 0
+fi
+
+if [ "$MODE" = "files" ] || [ "$MODE" = "data" ]; then
+
+	# rsync /etc/letsencrypt/
+	rsync -azHAX -e'ssh -p2222 -o StrictHostKeyChecking=no' --timeout=300 --inplace --delete --delete-excluded -F /etc/letsencrypt/ root@[$SLAVEIP]:/etc/letsencrypt/
+
+	# rsync /etc/haproxy/ without the configuration and maps that are generated by the slave
+	CHANGES=$(rsync -azHAX -i -e'ssh -p2222 -o StrictHostKeyChecking=no' --timeout=300 --inplace --delete -F --exclude 'haproxy.cfg*' --exclude '*.map' --exclude 'archive/' /etc/haproxy/ root@[$SLAVEIP]:/etc/haproxy/)
+
+	# rsync /opt/agiprx/.ssh/authorized_keys
+	rsync -azHAX -e'ssh -p2222 -o StrictHostKeyChecking=no' --timeout=300 /opt/agiprx/.ssh/authorized_keys root@[$SLAVEIP]:/opt/agiprx/.ssh/authorized_keys
+
+	# reload HAProxy to pick up changed certificates
+	if [ -n "$CHANGES" ]; then
+		ssh -p2222 -o StrictHostKeyChecking=no root@$SLAVEIP '/opt/agiprx/scripts/haproxy-safe-reload.sh'
+	fi
+
+	if [ "$MODE" = "data" ]; then
+		# transfer and import database, the master reloads the slave instead of a restart
+		mysqldump --defaults-file=/etc/mysql/debian.cnf --opt --single-transaction --order-by-primary --flush-logs --events --routines agiprx | ssh -p2222 -o StrictHostKeyChecking=no root@$SLAVEIP mysql --defaults-file=/etc/mysql/debian.cnf agiprx
+	fi
+
+	exit 0
+fi
 
 # rsync /etc/letsencrypt/
 rsync -azHAX -e'ssh -p2222 -o StrictHostKeyChecking=no' --timeout=300 --inplace --delete --delete-excluded -F /etc/letsencrypt/ root@[$SLAVEIP]:/etc/letsencrypt/
@@ -31,19 +31,26 @@ import de.agitos.agiprx.bean.processor.AgiPrxSshAuthProcessor;
 import de.agitos.agiprx.bean.processor.DatabaseBackupProcessor;
 import de.agitos.agiprx.bean.processor.HAProxyLesslBackendProcessor;
 import de.agitos.agiprx.bean.processor.HAProxyProcessor;
+import de.agitos.agiprx.bean.processor.HAProxyRuntimeApiProcessor;
+import de.agitos.agiprx.bean.processor.JobProcessor;
 import de.agitos.agiprx.bean.processor.LesslCertProcessor;
 import de.agitos.agiprx.bean.processor.LxdProcessor;
 import de.agitos.agiprx.bean.processor.ProxySyncProcessor;
+import de.agitos.agiprx.bean.processor.ReplicationProcessor;
 import de.agitos.agiprx.bean.processor.SshProxyProcessor;
 import de.agitos.agiprx.bean.processor.SslCertProcessor;
 import de.agitos.agiprx.dao.ApiUserDao;
 import de.agitos.agiprx.dao.BackendContainerDao;
 import de.agitos.agiprx.dao.BackendDao;
+import de.agitos.agiprx.dao.ChangeLogDao;
 import de.agitos.agiprx.dao.ContainerDao;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.dao.ContainerPermissionDao;
 import de.agitos.agiprx.dao.DomainDao;
 import de.agitos.agiprx.dao.HostDao;
+import de.agitos.agiprx.dao.JobDao;
 import de.agitos.agiprx.dao.ProjectDao;
+import de.agitos.agiprx.dao.ProjectGraphDao;
 import de.agitos.agiprx.dao.UserDao;
 import de.agitos.agiprx.db.DataSourceUtils;
 import de.agitos.agiprx.dns.DomainIpChecker;
@@ -62,6 +69,9 @@ import de.agitos.agiprx.executor.NonInteractiveProjectExecutor;
 import de.agitos.agiprx.executor.ProjectExecutor;
 import de.agitos.agiprx.executor.UserExecutor;
 import de.agitos.agiprx.output.HAProxyBackendFormatter;
+import de.agitos.agiprx.rest.RestWorkerPool;
+import de.agitos.agiprx.ssh.AuthorizedKeysLookupServer;
+import de.agitos.agiprx.ssh.SshGatewayServer;
 import de.agitos.agiprx.util.Assert;
 import de.agitos.agiprx.util.EmailSender;
 import de.agitos.agiprx.util.UserContext;
@@ -128,6 +138,8 @@ public class AgiPrx {
 		diList.add(new BackendContainerDao());
 		diList.add(new BackendDao());
 		diList.add(new CertChecker());
+		diList.add(new ChangeLogDao());
+		diList.add(new ConfigSnapshotDao());
 		diList.add(new ContainerDao());
 		diList.add(new ContainerPermissionDao());
 		diList.add(new DatabaseBackupProcessor());
@@ -137,14 +149,22 @@ public class AgiPrx {
 		diList.add(new HAProxyBackendFormatter());
 		diList.add(new HAProxyLesslBackendProcessor());
 		diList.add(new HAProxyProcessor());
+		diList.add(new HAProxyRuntimeApiProcessor());
 		diList.add(new HostDao());
+		diList.add(new JobDao());
+		diList.add(new JobProcessor());
 		diList.add(new LesslCertProcessor());
 		diList.add(new LxdProcessor());
 		diList.add(new MainMaintenanceBean());
 		diList.add(new ProjectDao());
+		diList.add(new ProjectGraphDao());
+		diList.add(new ReplicationProcessor());
 		diList.add(new RestAPI());
+		diList.add(new RestWorkerPool());
 		diList.add(new SshProxyProcessor());
 		diList.add(new SslCertProcessor());
+		diList.add(new AuthorizedKeysLookupServer());
+		diList.add(new SshGatewayServer());
 		diList.add(new UserDao());
 
 		diList.add(new ApiUserExecutor());
@@ -168,19 +188,27 @@ public class AgiPrx {
 			di.postConstruct();
 		}
 
+		// start optional keys lookup for the sshd AuthorizedKeysCommand before
+		// authorized_keys files of proxy accounts get removed
+		if (AuthorizedKeysLookupServer.getBean().isEnabled()) {
+			AuthorizedKeysLookupServer.getBean().runServer();
+		}
+
 		if (ProxySyncProcessor.getBean().isMasterInstance()) {
 
 			// start to read the domain to cert map
 			HAProxyProcessor.getBean().generateDomainToCertFilesDetached();
 
+			// jobs of the last run were lost with the process
+			JobProcessor.getBean().failInterruptedJobs();
+
 		} else {
 
 			// if slave instance, reload HAProxy and write ssh proxy configuration
 			try {
-				// re-generate slave haproxy configuration and reload HAProxy
-				HAProxyProcessor.getBean().manageConfiguration(false, false);
-				// re-generate all SSH proxy accounts by database configuration
-				SshProxyProcessor.getBean().manageConfiguration(false);
+				// re-generate slave haproxy configuration and all SSH proxy accounts by
+				// database configuration, records the fingerprint for later reloads
+				ReplicationProcessor.getBean().reload();
 			} catch (Exception e) {
 				throw new RuntimeException("Slave instance startup failed", e);
 			}
@@ -189,6 +217,11 @@ public class AgiPrx {
 		// start ssh daemon
 		SshConsoleServer.getBean().runServer();
 
+		// start optional ssh jump gateway for proxy accounts
+		if (SshGatewayServer.getBean().isEnabled()) {
+			SshGatewayServer.getBean().runServer();
+		}
+
 		// start webserver for REST API
 		RestAPI.getBean().runServer();
 
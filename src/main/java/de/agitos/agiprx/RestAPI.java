@@ -29,9 +29,11 @@ import de.agitos.agiprx.rest.ApiUserStore;
 import de.agitos.agiprx.rest.BackendService;
 import de.agitos.agiprx.rest.ContainerService;
 import de.agitos.agiprx.rest.DomainService;
+import de.agitos.agiprx.rest.JobService;
 import de.agitos.agiprx.rest.MaintenanceService;
 import de.agitos.agiprx.rest.PingService;
 import de.agitos.agiprx.rest.ProjectService;
+import de.agitos.agiprx.rest.ReplicationService;
 import de.agitos.agiprx.util.Assert;
 import de.agitos.agiprx.util.EmailSender;
 import io.helidon.media.jsonb.JsonbSupport;
@@ -86,10 +88,12 @@ public class RestAPI implements DependencyInjector {
 			routingBuilder.register("/test", new PingService(isMaster));
 			routingBuilder.register("/admin", new AdminService(isMaster));
 			routingBuilder.register("/domains", new DomainService(isMaster));
+			routingBuilder.register("/jobs", new JobService(isMaster));
 			routingBuilder.register("/projects", new ProjectService(isMaster));
 			routingBuilder.register("/containers", new ContainerService(isMaster));
 			routingBuilder.register("/backends", new BackendService(isMaster));
 			routingBuilder.register("/maintenance", new MaintenanceService(isMaster));
+			routingBuilder.register("/replication", new ReplicationService(isMaster));
 
 			// add OpenAPI support
 			// io.helidon.config.Config apiConfig = io.helidon.config.Config.create();
@@ -20,12 +20,13 @@ import java.io.IOException;
 import java.nio.file.Paths;
 
 import org.apache.sshd.server.SshServer;
-import org.apache.sshd.server.config.keys.DefaultAuthorizedKeysAuthenticator;
 import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
 
 import de.agitos.agiprx.bean.Config;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.ssh.ConfigToolCommandFactory;
 import de.agitos.agiprx.ssh.ConfigToolShellFactory;
+import de.agitos.agiprx.ssh.ConsolePublickeyAuthenticator;
 
 public class SshConsoleServer {
 
@@ -39,9 +40,6 @@ public class SshConsoleServer {
 	// @Value("${agiprx.port:2223}")
 	private int agiPrxPort;
 
-	// @Value("${agiprx.authorizedAccessKeys:/opt/agiprx/.ssh/authorized_keys}")
-	private String authorizedKeysFullpath;
-
 	// @Value("${agiprx.hostKeys:/opt/agiprx/.ssh/hostkey.ser}")
 	private String hostKeys;
 
@@ -59,7 +57,6 @@ public class SshConsoleServer {
 
 		agiPrxUser = config.getString("agiprx.user", "agiprx");
 		agiPrxPort = config.getInteger("agiprx.port", 2223);
-		authorizedKeysFullpath = config.getString("agiprx.authorizedAccessKeys", "/opt/agiprx/.ssh/authorized_keys");
 		hostKeys = config.getString("agiprx.hostKeys", "/opt/agiprx/.ssh/hostkey.ser");
 
 		console = ConsoleWrapper.getBean();
@@ -69,8 +66,7 @@ public class SshConsoleServer {
 
 		SshServer sshd = SshServer.setUpDefaultServer();
 		sshd.setPort(agiPrxPort);
-		sshd.setPublickeyAuthenticator(
-				new DefaultAuthorizedKeysAuthenticator(agiPrxUser, Paths.get(authorizedKeysFullpath), false));
+		sshd.setPublickeyAuthenticator(new ConsolePublickeyAuthenticator(agiPrxUser, ConfigSnapshotDao.getBean()));
 		SimpleGeneratorHostKeyProvider keyPairProvider = new SimpleGeneratorHostKeyProvider(Paths.get(hostKeys));
 		keyPairProvider.setAlgorithm(org.apache.sshd.common.config.keys.KeyUtils.EC_ALGORITHM);
 		sshd.setKeyPairProvider(keyPairProvider);
@@ -16,15 +16,11 @@
  ******************************************************************************/
 package de.agitos.agiprx.bean;
 
-import java.util.EnumSet;
 import java.util.List;
 
 import de.agitos.agiprx.DependencyInjector;
-import de.agitos.agiprx.dao.ContainerDao;
-import de.agitos.agiprx.dao.DomainDao;
-import de.agitos.agiprx.dao.ProjectDao;
-import de.agitos.agiprx.dao.RelationType;
-import de.agitos.agiprx.dao.UserDao;
+import de.agitos.agiprx.dao.ConfigSnapshot;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.executor.AbstractExecutor;
 import de.agitos.agiprx.model.Container;
 import de.agitos.agiprx.model.Domain;
@@ -39,13 +35,7 @@ public class SearchBean extends AbstractExecutor implements DependencyInjector {
 
 	private UserContext userContext;
 
-	private DomainDao domainDao;
-
-	private ProjectDao projectDao;
-
-	private ContainerDao containerDao;
-
-	private UserDao userDao;
+	private ConfigSnapshotDao configSnapshotDao;
 
 	public static SearchBean getBean() {
 		return BEAN;
@@ -56,10 +46,7 @@ public class SearchBean extends AbstractExecutor implements DependencyInjector {
 		super.postConstruct();
 
 		userContext = UserContext.getBean();
-		domainDao = DomainDao.getBean();
-		projectDao = ProjectDao.getBean();
-		containerDao = ContainerDao.getBean();
-		userDao = UserDao.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
 	}
 
 	public SearchBean() {
@@ -96,13 +83,12 @@ public class SearchBean extends AbstractExecutor implements DependencyInjector {
 			filter = out;
 		}
 
-		// transform to SQL wildcard
-		filter = filter.replaceAll("\\*", "%");
+		ConfigSnapshot snapshot = configSnapshotDao.getSnapshot();
 
 		try {
 
 			// search domain by query
-			List<Domain> domains = domainDao.findAllWithFilterDomain(filter);
+			List<Domain> domains = snapshot.findDomainsWithFilter(filter);
 			if (!domains.isEmpty()) {
 				Domain domain = domains.get(0);
 
@@ -143,7 +129,7 @@ public class SearchBean extends AbstractExecutor implements DependencyInjector {
 			// TODO ?
 
 			// if no match search container by IPv6
-			List<Container> containers = containerDao.findAllWithFilterIPv6(filter);
+			List<Container> containers = snapshot.findContainersWithFilterIPv6(filter);
 			if (!containers.isEmpty()) {
 				Container container = containers.get(0);
 
@@ -178,7 +164,7 @@ public class SearchBean extends AbstractExecutor implements DependencyInjector {
 			}
 
 			// if no match search project by query
-			List<Project> projects = projectDao.findAllWithFilterLabel(filter, EnumSet.of(RelationType.ALL));
+			List<Project> projects = snapshot.findProjectsWithFilter(filter, userContext);
 			if (!projects.isEmpty()) {
 
 				Project project = projects.get(0);
@@ -222,7 +208,7 @@ public class SearchBean extends AbstractExecutor implements DependencyInjector {
 
 		// if no match search user by query
 		if (userContext.isAdmin()) {
-			List<User> users = userDao.findAllWithFilter(filter);
+			List<User> users = snapshot.findUsersWithFilter(filter);
 			if (!users.isEmpty()) {
 				User user = users.get(0);
 				addCommandToBuffer(CMD_USERS, null);
@@ -17,10 +17,8 @@
 package de.agitos.agiprx.bean.maintenance;
 
 import java.io.IOException;
-import java.security.cert.CertificateParsingException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
@@ -31,6 +29,7 @@ import de.agitos.agiprx.bean.Config;
 import de.agitos.agiprx.bean.processor.HAProxyProcessor;
 import de.agitos.agiprx.bean.processor.HAProxyProcessor.CertInfo;
 import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.DomainNameTrie;
 
 /**
  * This maintenance job informs about the expiration of certificates within
@@ -71,7 +70,7 @@ public class CertChecker implements DependencyInjector {
 
 	public void run(List<String> warningMessages, Set<String> domainsInErrorState) {
 
-		Set<String> productiveDomainsWithPseudoWildcards = getProductiveDomainsWithPseudoWildcards();
+		DomainNameTrie<String> productiveDomains = getProductiveDomains();
 
 		// reset domain to cert files to re-check available certificates with the
 		// following fetch
@@ -88,8 +87,7 @@ public class CertChecker implements DependencyInjector {
 			if (!certInfo.isValidInDays(certEolNotificationDays)) {
 				StringBuilder buf = new StringBuilder();
 
-				if (productiveDomainsWithPseudoWildcards != null
-						&& !isCertificateInUse(certInfo, productiveDomainsWithPseudoWildcards, domainToCert.getKey())) {
+				if (productiveDomains != null && !isCertificateInUse(certInfo, productiveDomains)) {
 					// skip output of message if certificate is not in use
 					continue;
 				}
@@ -101,14 +99,9 @@ public class CertChecker implements DependencyInjector {
 				}
 
 				buf.append("Certificate ").append(certInfo.getFilename()).append(" ends on ")
-						.append(sdf.format(certInfo.getCert().getNotAfter())).append(".");
+						.append(sdf.format(certInfo.getNotAfter())).append(".");
 
-				try {
-					buf.append(" It covers the domain names ")
-							.append(String.join(", ", certInfo.getCoveredDomainnames()));
-				} catch (CertificateParsingException e) {
-					buf.append(" It covers at least the domain name ").append(domainToCert.getKey());
-				}
+				buf.append(" It covers the domain names ").append(String.join(", ", certInfo.getCoveredDomainnames()));
 
 				warningMessages.add(buf.toString());
 			}
@@ -117,28 +110,22 @@ public class CertChecker implements DependencyInjector {
 	}
 
 	/**
-	 * Creates a set of domains that include pseudo wildcard domains, e.g. for a
-	 * productive domain www.example.org it contains *.example.org. The pseudo
-	 * wildcard domains facilitate a matching against wildcard certificates.
+	 * Creates an index of productive domains that facilitates a matching against
+	 * wildcard certificates.
 	 * 
-	 * @return set of productive domains with pseudo wildcard domains
+	 * @return index of productive domains
 	 */
-	private Set<String> getProductiveDomainsWithPseudoWildcards() {
+	private DomainNameTrie<String> getProductiveDomains() {
 
 		try {
 
-			Set<String> productiveDomainsWithPseudoWildcards = new HashSet<String>();
+			DomainNameTrie<String> productiveDomains = new DomainNameTrie<String>();
 
 			for (String domainname : haProxyProcessor.getProductiveDomains()) {
-
-				productiveDomainsWithPseudoWildcards.add(domainname);
-				int pointPos = domainname.indexOf(".");
-				if (pointPos >= 0) {
-					productiveDomainsWithPseudoWildcards.add("*" + domainname.substring(pointPos));
-				}
+				productiveDomains.put(domainname, domainname);
 			}
 
-			return productiveDomainsWithPseudoWildcards;
+			return productiveDomains;
 
 		} catch (IOException e) {
 			// if productive domains cannot be determined return null as "unknown"
@@ -149,25 +136,19 @@ public class CertChecker implements DependencyInjector {
 
 	/**
 	 * Check if a certificate with its covered domain names is currently in use by a
-	 * productive domain. Wildcart certificates are indirectly supported by a
-	 * matching against a set of domains that include pseudo wildcard domains.
+	 * productive domain. Wildcard certificates match all productive domains with
+	 * one additional label.
 	 * 
 	 * @param certInfo
-	 * @param productiveDomainsWithPseudoWildcards
-	 * @param fallbackToDomain
+	 * @param productiveDomains
 	 * @return
 	 */
-	private boolean isCertificateInUse(CertInfo certInfo, Set<String> productiveDomainsWithPseudoWildcards,
-			String fallbackToDomain) {
+	private boolean isCertificateInUse(CertInfo certInfo, DomainNameTrie<String> productiveDomains) {
 
-		try {
-			for (String coveredDomain : certInfo.getCoveredDomainnames()) {
-				if (productiveDomainsWithPseudoWildcards.contains(coveredDomain)) {
-					return true;
-				}
+		for (String coveredDomain : certInfo.getCoveredDomainnames()) {
+			if (productiveDomains.isCoveredBy(coveredDomain)) {
+				return true;
 			}
-		} catch (CertificateParsingException e) {
-			return productiveDomainsWithPseudoWildcards.contains(fallbackToDomain);
 		}
 
 		return false;
@@ -26,8 +26,10 @@ import java.util.Set;
 import de.agitos.agiprx.DependencyInjector;
 import de.agitos.agiprx.bean.Config;
 import de.agitos.agiprx.bean.processor.HAProxyProcessor;
+import de.agitos.agiprx.bean.processor.JobProcessor;
 import de.agitos.agiprx.bean.processor.LesslCertProcessor;
 import de.agitos.agiprx.bean.processor.ProxySyncProcessor;
+import de.agitos.agiprx.bean.processor.ReplicationProcessor;
 import de.agitos.agiprx.dns.DomainIpChecker;
 import de.agitos.agiprx.model.User;
 import de.agitos.agiprx.util.Assert;
@@ -54,6 +56,10 @@ public class MainMaintenanceBean implements DependencyInjector {
 
 	private ProxySyncProcessor proxySyncProcessor;
 
+	private ReplicationProcessor replicationProcessor;
+
+	private JobProcessor jobProcessor;
+
 	private EmailSender emailSender;
 
 	// @Value("${email.subjectMaintenanceTool:agiprx maintenance status}")
@@ -76,6 +82,8 @@ public class MainMaintenanceBean implements DependencyInjector {
 		lesslCertProcessor = LesslCertProcessor.getBean();
 		haProxyProcessor = HAProxyProcessor.getBean();
 		proxySyncProcessor = ProxySyncProcessor.getBean();
+		replicationProcessor = ReplicationProcessor.getBean();
+		jobProcessor = JobProcessor.getBean();
 		emailSender = EmailSender.getBean();
 	}
 
@@ -110,11 +118,16 @@ public class MainMaintenanceBean implements DependencyInjector {
 
 	public void run() throws Exception {
 
+		// the change log of a slave mirrors the one of its master, both are pruned
+		replicationProcessor.pruneChangeLog();
+
 		if (!proxySyncProcessor.isMasterInstance()) {
 			// slave instances are sync'ed by their master, so quit
 			return;
 		}
 
+		jobProcessor.pruneJobs();
+
 		Set<String> domainsInErrorState = new HashSet<String>();
 		List<String> warningMessages = new ArrayList<String>();
 
@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.Reader;
+import java.util.concurrent.TimeUnit;
 
 import de.agitos.agiprx.exception.AbortionException;
 
@@ -40,6 +41,50 @@ public class AbstractProcessor {
 		return process.waitFor();
 	}
 
+	protected int execWithInput(StringBuilder output, StringBuilder errorOutput, String input,
+			String... commandArray) throws IOException, InterruptedException {
+		Process process = Runtime.getRuntime().exec(String.join(" ", commandArray));
+
+		// drain both streams while writing the input, a full pipe would block the
+		// process and the input would never be consumed
+		Thread outputReader = startStreamReader(process.getInputStream(), output);
+		Thread errorReader = startStreamReader(process.getErrorStream(), errorOutput);
+
+		OutputStream out = process.getOutputStream();
+		out.write(input.getBytes());
+		out.close();
+
+		int exitCode = process.waitFor();
+
+		outputReader.join();
+		errorReader.join();
+
+		return exitCode;
+	}
+
+	/**
+	 * Execute with input and a timeout, the process is killed if it exceeds the
+	 * timeout.
+	 */
+	protected int execWithInput(StringBuilder output, StringBuilder errorOutput, String input, long timeoutSeconds,
+			String... commandArray) throws IOException, InterruptedException, AbortionException {
+
+		Process process = Runtime.getRuntime().exec(String.join(" ", commandArray));
+
+		Thread outputReader = startStreamReader(process.getInputStream(), output);
+		Thread errorReader = startStreamReader(process.getErrorStream(), errorOutput);
+		// a process that stops reading its input must not block the timeout
+		Thread inputWriter = startStreamWriter(process.getOutputStream(), input);
+
+		waitFor(process, timeoutSeconds, commandArray);
+
+		inputWriter.join();
+		outputReader.join();
+		errorReader.join();
+
+		return process.exitValue();
+	}
+
 	protected int exec(StringBuilder output, StringBuilder errorOutput, String... commandArray)
 			throws IOException, InterruptedException {
 		// Process process = Runtime.getRuntime().exec(commandArray);
@@ -54,6 +99,73 @@ public class AbstractProcessor {
 		return exitCode;
 	}
 
+	/**
+	 * Execute with a timeout, the process is killed if it exceeds the timeout.
+	 */
+	protected int exec(StringBuilder output, StringBuilder errorOutput, long timeoutSeconds, String... commandArray)
+			throws IOException, InterruptedException, AbortionException {
+
+		Process process = Runtime.getRuntime().exec(String.join(" ", commandArray));
+		process.getOutputStream().close();
+
+		// drain both streams while waiting, a full pipe would block the process
+		Thread outputReader = startStreamReader(process.getInputStream(), output);
+		Thread errorReader = startStreamReader(process.getErrorStream(), errorOutput);
+
+		waitFor(process, timeoutSeconds, commandArray);
+
+		outputReader.join();
+		errorReader.join();
+
+		return process.exitValue();
+	}
+
+	private void waitFor(Process process, long timeoutSeconds, String... commandArray)
+			throws InterruptedException, AbortionException {
+		try {
+			if (!process.waitFor(timeoutSeconds, TimeUnit.SECONDS)) {
+				destroyProcessTree(process);
+				throw new AbortionException("Execution of '" + String.join(" ", commandArray)
+						+ "' timed out after " + timeoutSeconds + " seconds");
+			}
+		} catch (InterruptedException e) {
+			destroyProcessTree(process);
+			throw e;
+		}
+	}
+
+	private void destroyProcessTree(Process process) {
+		// e.g. ssh and rsync started by a script
+		process.descendants().forEach(ProcessHandle::destroyForcibly);
+		process.destroyForcibly();
+	}
+
+	private Thread startStreamReader(InputStream inputStream, StringBuilder out) {
+		Thread reader = new Thread(() -> {
+			try {
+				appendInputStreamToStringBuilder(inputStream, out);
+			} catch (IOException e) {
+				// stream closed by a killed process
+			}
+		}, "ProcessStreamReader");
+		reader.setDaemon(true);
+		reader.start();
+		return reader;
+	}
+
+	private Thread startStreamWriter(OutputStream outputStream, String input) {
+		Thread writer = new Thread(() -> {
+			try (OutputStream out = outputStream) {
+				out.write(input.getBytes());
+			} catch (IOException e) {
+				// process terminated before reading all input
+			}
+		}, "ProcessStreamWriter");
+		writer.setDaemon(true);
+		writer.start();
+		return writer;
+	}
+
 	private void appendInputStreamToStringBuilder(InputStream inputStream, StringBuilder out) throws IOException {
 		Reader in = new InputStreamReader(inputStream, "UTF-8");
 
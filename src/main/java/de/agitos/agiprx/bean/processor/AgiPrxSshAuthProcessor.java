@@ -18,7 +18,6 @@ package de.agitos.agiprx.bean.processor;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
@@ -33,6 +32,7 @@ import de.agitos.agiprx.exception.AbortionException;
 import de.agitos.agiprx.model.User;
 import de.agitos.agiprx.model.UserRoleType;
 import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.FileSystemOperation;
 
 public class AgiPrxSshAuthProcessor extends AbstractProcessor implements DependencyInjector {
 
@@ -41,6 +41,9 @@ public class AgiPrxSshAuthProcessor extends AbstractProcessor implements Depende
 	// @Value("${agiprx.authorizedAccessKeys:/opt/agiprx/.ssh/authorized_keys}")
 	private String authorizedKeysFullpath;
 
+	// @Value("${agiprx.exportAuthorizedAccessKeys:true}")
+	private boolean exportAuthorizedKeys;
+
 	private ConsoleWrapper console;
 
 	private UserDao userDao;
@@ -52,6 +55,7 @@ public class AgiPrxSshAuthProcessor extends AbstractProcessor implements Depende
 
 		authorizedKeysFullpath = Config.getBean().getString("agiprx.authorizedAccessKeys",
 				"/opt/agiprx/.ssh/authorized_keys");
+		exportAuthorizedKeys = Config.getBean().getBoolean("agiprx.exportAuthorizedAccessKeys", true);
 
 	}
 
@@ -65,7 +69,14 @@ public class AgiPrxSshAuthProcessor extends AbstractProcessor implements Depende
 		return BEAN;
 	}
 
+	/*
+	 * Console logins are authenticated by ConsolePublickeyAuthenticator, the file
+	 * is an export of the allowed keys e.g. for sync-to-slave.sh
+	 */
 	public void manageConfiguration(boolean verbose) throws IOException, InterruptedException, AbortionException {
+		if (!exportAuthorizedKeys) {
+			return;
+		}
 		if (verbose) {
 			console.printlnfStress("Grant access to AgiPrx by SSH");
 		}
@@ -91,7 +102,11 @@ public class AgiPrxSshAuthProcessor extends AbstractProcessor implements Depende
 		}
 
 		Path file = Paths.get(authorizedKeysFullpath);
-		Files.write(file, lines, Charset.forName("latin1"));
+		boolean written = FileSystemOperation.writeIfChanged(file, lines, Charset.forName("latin1"), null);
+
+		if (verbose) {
+			console.printlnf("Admin authorized_keys %s", written ? "written" : "unchanged");
+		}
 	}
 
 	private String generateAuthorizedKeysLine(User allowedUser) {
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the HAProxy cert directory and passes created, modified and deleted
+ * cert files to HAProxyProcessor.applyCertFileChanges. Events are collected
+ * until the directory is quiet for QUIET_PERIOD_MILLIS as files like the ones
+ * of concat-lesslcert-for-haproxy.sh are written in several steps.
+ */
+public class CertDirectoryWatcher implements Runnable {
+
+	private static final Logger LOG = Logger.getLogger(CertDirectoryWatcher.class.getName());
+
+	private static final long QUIET_PERIOD_MILLIS = 500;
+
+	private final Path certPath;
+
+	private final HAProxyProcessor haProxyProcessor;
+
+	public CertDirectoryWatcher(Path certPath, HAProxyProcessor haProxyProcessor) {
+		this.certPath = certPath;
+		this.haProxyProcessor = haProxyProcessor;
+	}
+
+	public void start() {
+		Thread thread = new Thread(this, "CertDirectoryWatcher");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void run() {
+
+		try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+
+			certPath.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+
+			while (true) {
+
+				Set<String> changedFilenames = new HashSet<String>();
+				boolean overflow = false;
+
+				WatchKey key = watchService.take();
+				while (key != null) {
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+							overflow = true;
+						} else {
+							String filename = ((Path) event.context()).getFileName().toString();
+							if (filename.endsWith(".pem")) {
+								changedFilenames.add(filename);
+							}
+						}
+					}
+					if (!key.reset()) {
+						LOG.warning("Cert directory " + certPath + " is not accessible anymore, stopped watching");
+						return;
+					}
+					key = watchService.poll(QUIET_PERIOD_MILLIS, TimeUnit.MILLISECONDS);
+				}
+
+				try {
+					if (overflow) {
+						// events were lost, fall back to a full rescan
+						haProxyProcessor.resetDomainToCertFiles();
+					} else if (!changedFilenames.isEmpty()) {
+						haProxyProcessor.applyCertFileChanges(changedFilenames);
+					}
+				} catch (RuntimeException e) {
+					LOG.log(Level.WARNING, "Could not apply changes of cert files " + changedFilenames, e);
+				}
+			}
+
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Could not watch cert directory " + certPath, e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import de.agitos.agiprx.bean.processor.HAProxyProcessor.CertInfo;
+import de.agitos.agiprx.util.DomainNameTrie;
+
+/**
+ * Domain name to certificate mapping that supports incremental updates of
+ * single cert files. For every domain name the certificate with precedence
+ * (CertInfo.hasPrecedence) is selected among all valid certificates covering
+ * it.
+ * 
+ * Changes are collected by the synchronized put and remove methods and become
+ * visible to readers with publish(), which replaces the domain to cert
+ * snapshot as a whole. A published DomainNameTrie is never modified again.
+ * Readers never block and never see a partially applied change.
+ * 
+ * HINT: BE AWARE that domain names in certificates can be wildcards
+ */
+public class CertIndex {
+
+	// valid certificates by filename
+	private final Map<String, CertInfo> certsByFilename = new HashMap<String, CertInfo>();
+
+	// all certificates covering a domain name
+	private final Map<String, List<CertInfo>> candidatesByDomain = new HashMap<String, List<CertInfo>>();
+
+	// selected certificate by domain name
+	private final Map<String, CertInfo> domainToCert = new HashMap<String, CertInfo>();
+
+	// number of domain names a certificate is selected for
+	private final Map<String, Integer> selectionCount = new HashMap<String, Integer>();
+
+	// published copy of domainToCert for lock-free reads
+	private volatile DomainNameTrie<CertInfo> snapshot = new DomainNameTrie<CertInfo>();
+
+	/**
+	 * Add or replace a certificate and select it for all covered domain names it
+	 * has precedence on.
+	 * 
+	 * @param certInfo     currently valid certificate
+	 * @param lesslDomains Letsencrypt domains from the database
+	 */
+	public synchronized void put(CertInfo certInfo, Set<String> lesslDomains) {
+
+		remove(certInfo.getFilename(), lesslDomains);
+
+		certsByFilename.put(certInfo.getFilename(), certInfo);
+		selectionCount.put(certInfo.getFilename(), 0);
+
+		for (String domainName : certInfo.getCoveredDomainnames()) {
+
+			candidatesByDomain.computeIfAbsent(domainName, k -> new ArrayList<CertInfo>()).add(certInfo);
+
+			CertInfo selected = domainToCert.get(domainName);
+			if (selected == null || certInfo.hasPrecedence(lesslDomains.contains(domainName), selected)) {
+				select(domainName, certInfo);
+			}
+		}
+	}
+
+	/**
+	 * Remove a certificate and select the next certificate with precedence for
+	 * the domain names it was selected for.
+	 */
+	public synchronized void remove(String filename, Set<String> lesslDomains) {
+
+		CertInfo certInfo = certsByFilename.remove(filename);
+		if (certInfo == null) {
+			return;
+		}
+
+		for (String domainName : certInfo.getCoveredDomainnames()) {
+
+			List<CertInfo> candidates = candidatesByDomain.get(domainName);
+			candidates.remove(certInfo);
+
+			if (domainToCert.get(domainName) != certInfo) {
+				continue;
+			}
+
+			domainToCert.remove(domainName);
+
+			CertInfo best = null;
+			for (CertInfo candidate : candidates) {
+				if (best == null || candidate.hasPrecedence(lesslDomains.contains(domainName), best)) {
+					best = candidate;
+				}
+			}
+
+			if (best != null) {
+				select(domainName, best);
+			}
+
+			if (candidates.isEmpty()) {
+				candidatesByDomain.remove(domainName);
+			}
+		}
+
+		selectionCount.remove(filename);
+	}
+
+	private void select(String domainName, CertInfo certInfo) {
+		CertInfo previous = domainToCert.put(domainName, certInfo);
+		if (previous != null) {
+			selectionCount.merge(previous.getFilename(), -1, Integer::sum);
+		}
+		selectionCount.merge(certInfo.getFilename(), 1, Integer::sum);
+	}
+
+	public synchronized CertInfo getByFilename(String filename) {
+		return certsByFilename.get(filename);
+	}
+
+	/**
+	 * Publish all changes made by put and remove since the last call.
+	 */
+	public synchronized void publish() {
+		DomainNameTrie<CertInfo> trie = new DomainNameTrie<CertInfo>();
+		for (Map.Entry<String, CertInfo> entry : domainToCert.entrySet()) {
+			trie.put(entry.getKey(), entry.getValue());
+		}
+		snapshot = trie;
+	}
+
+	/**
+	 * @return immutable domain to cert map as of the last publish()
+	 */
+	public Map<String, CertInfo> getDomainToCertMap() {
+		return snapshot.asMap();
+	}
+
+	/**
+	 * @return domain to cert trie as of the last publish(), must not be modified
+	 */
+	public DomainNameTrie<CertInfo> getDomainToCertTrie() {
+		return snapshot;
+	}
+
+	/**
+	 * @return certificates that cover domain names but are not selected for any of
+	 *         them because other certificates have precedence
+	 */
+	public synchronized List<String> getReplacedCertFilenames() {
+		List<String> result = new ArrayList<String>();
+		for (CertInfo certInfo : certsByFilename.values()) {
+			if (!certInfo.getCoveredDomainnames().isEmpty() && selectionCount.get(certInfo.getFilename()) == 0) {
+				result.add(certInfo.getFilename());
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.CertificateException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.bean.processor.HAProxyProcessor.CertInfo;
+import de.agitos.agiprx.util.Fingerprint;
+
+/**
+ * Persistent index of certificate metadata keyed by file name, size, mtime and
+ * SHA-256, so a rescan of the cert directory only parses new or modified
+ * certificates.
+ * 
+ * Format: one tab separated line per certificate with filename, size, mtime,
+ * SHA-256, notBefore, notAfter, LESSL flag, issuer and comma separated SANs.
+ */
+public class CertMetadataIndex {
+
+	private static final Logger LOG = Logger.getLogger(CertMetadataIndex.class.getName());
+
+	private static final String HEADER = "# agiprx certificate metadata index, DO NOT EDIT";
+
+	private final Path indexFile;
+
+	private final Path certPath;
+
+	private final String lesslIssuerPartialName;
+
+	private Map<String, CertInfo> entries;
+
+	private boolean modified = false;
+
+	public CertMetadataIndex(Path indexFile, Path certPath, String lesslIssuerPartialName) {
+		this.indexFile = indexFile;
+		this.certPath = certPath;
+		this.lesslIssuerPartialName = lesslIssuerPartialName;
+	}
+
+	/**
+	 * Return the metadata of a cert file, the file is only read if its size or
+	 * mtime differ from the index entry and only parsed if its content differs.
+	 */
+	public synchronized CertInfo get(String filename) throws CertificateException, IOException {
+
+		loadIfRequired();
+
+		Path file = certPath.resolve(filename);
+		long size = Files.size(file);
+		long lastModified = Files.getLastModifiedTime(file).toMillis();
+
+		CertInfo indexed = entries.get(filename);
+		if (indexed != null && indexed.getSize() == size && indexed.getLastModified() == lastModified) {
+			return indexed;
+		}
+
+		byte[] content = Files.readAllBytes(file);
+
+		CertInfo certInfo;
+		if (indexed != null && indexed.getSha256().equals(Fingerprint.sha256(content))) {
+			// touched only, keep the parsed metadata
+			certInfo = new CertInfo(filename, content.length, lastModified, indexed.getSha256(),
+					indexed.getNotBefore(), indexed.getNotAfter(), indexed.getIssuerName(), indexed.isLesslCert(),
+					indexed.getCoveredDomainnames());
+		} else {
+			certInfo = new CertInfo(filename, content, lesslIssuerPartialName);
+		}
+
+		entries.put(filename, certInfo);
+		modified = true;
+
+		return certInfo;
+	}
+
+	public synchronized void remove(String filename) {
+		loadIfRequired();
+		if (entries.remove(filename) != null) {
+			modified = true;
+		}
+	}
+
+	/**
+	 * Remove the entries of cert files that do not exist anymore
+	 */
+	public synchronized void retainAll(Collection<String> existingFilenames) {
+		loadIfRequired();
+		if (entries.keySet().retainAll(existingFilenames)) {
+			modified = true;
+		}
+	}
+
+	/**
+	 * Write the index file if it was modified
+	 */
+	public synchronized void store() {
+
+		if (!modified) {
+			return;
+		}
+
+		List<String> lines = new ArrayList<String>();
+		lines.add(HEADER);
+		for (CertInfo certInfo : entries.values()) {
+			lines.add(String.join("\t", certInfo.getFilename(), Long.toString(certInfo.getSize()),
+					Long.toString(certInfo.getLastModified()), certInfo.getSha256(),
+					Long.toString(certInfo.getNotBefore().getTime()), Long.toString(certInfo.getNotAfter().getTime()),
+					certInfo.isLesslCert() ? "1" : "0", certInfo.getIssuerName(),
+					String.join(",", certInfo.getCoveredDomainnames())));
+		}
+
+		try {
+			Path tmpFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+			Files.write(tmpFile, lines);
+			Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			modified = false;
+		} catch (IOException e) {
+			// the index is an optimization only, certs are parsed again on the next start
+			LOG.log(Level.WARNING, "Could not write certificate index " + indexFile, e);
+		}
+	}
+
+	private void loadIfRequired() {
+
+		if (entries != null) {
+			return;
+		}
+
+		entries = new HashMap<String, CertInfo>();
+
+		if (!Files.exists(indexFile)) {
+			return;
+		}
+
+		try {
+			for (String line : Files.readAllLines(indexFile)) {
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\t", -1);
+				if (fields.length != 9) {
+					continue;
+				}
+				try {
+					List<String> sans = fields[8].isEmpty() ? new ArrayList<String>()
+							: Arrays.asList(fields[8].split(","));
+					entries.put(fields[0],
+							new CertInfo(fields[0], Long.parseLong(fields[1]), Long.parseLong(fields[2]), fields[3],
+									new Date(Long.parseLong(fields[4])), new Date(Long.parseLong(fields[5])),
+									fields[7], "1".equals(fields[6]), sans));
+				} catch (NumberFormatException e) {
+					// skip invalid line, the cert will be parsed again
+				}
+			}
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Could not read certificate index " + indexFile, e);
+		}
+	}
+}
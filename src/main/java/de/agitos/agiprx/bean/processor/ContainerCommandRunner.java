@@ -0,0 +1,303 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.channel.ChannelExec;
+import org.apache.sshd.client.channel.ClientChannelEvent;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.common.keyprovider.KeyIdentityProvider;
+
+import de.agitos.agiprx.ssh.SshSessionPool;
+
+/**
+ * Runs shell commands on container accounts over pooled SSH sessions instead of
+ * an ssh process per command. Commands are grouped by host: up to parallelism
+ * hosts are processed at the same time, the commands of a host one after
+ * another on a session per account. A host that can't be connected fails its
+ * remaining commands without further connects.
+ */
+public class ContainerCommandRunner {
+
+	private final KeyIdentityProvider keyIdentityProvider;
+
+	private final int parallelism;
+
+	private final long connectTimeoutMillis;
+
+	private final long commandTimeoutMillis;
+
+	private final Map<String, List<Command>> commandsByHost = new LinkedHashMap<String, List<Command>>();
+
+	public ContainerCommandRunner(KeyIdentityProvider keyIdentityProvider, int parallelism,
+			long connectTimeoutMillis, long commandTimeoutMillis) {
+		this.keyIdentityProvider = keyIdentityProvider;
+		this.parallelism = parallelism;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.commandTimeoutMillis = commandTimeoutMillis;
+	}
+
+	/**
+	 * @param label identifies the command in the report
+	 */
+	public void add(String label, String username, String host, int port, String command) {
+		commandsByHost.computeIfAbsent(host + ":" + port, k -> new ArrayList<Command>())
+				.add(new Command(label, username, host, port, command));
+	}
+
+	public boolean isEmpty() {
+		return commandsByHost.isEmpty();
+	}
+
+	public Report run() throws InterruptedException {
+
+		long start = System.currentTimeMillis();
+
+		List<Result> results = Collections.synchronizedList(new ArrayList<Result>());
+		AtomicInteger unreachableHosts = new AtomicInteger();
+
+		if (commandsByHost.isEmpty()) {
+			return new Report(results, 0, 0, 0);
+		}
+
+		SshClient client = SshClient.setUpDefaultClient();
+		// same as -oStrictHostKeyChecking=no of the former ssh calls
+		client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+		client.setKeyIdentityProvider(keyIdentityProvider);
+		client.start();
+
+		// commands of a host run one after another, one channel per session is enough
+		SshSessionPool sessionPool = new SshSessionPool(client, connectTimeoutMillis, 1, 0);
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, commandsByHost.size()),
+				runnable -> {
+					Thread thread = new Thread(runnable, "ContainerCommand-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+		try {
+			for (List<Command> hostCommands : commandsByHost.values()) {
+				executor.execute(() -> {
+					if (!runHostCommands(sessionPool, hostCommands, results)) {
+						unreachableHosts.incrementAndGet();
+					}
+				});
+			}
+
+			executor.shutdown();
+			// every connect and command is bounded by its timeout
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				continue;
+			}
+
+		} finally {
+			executor.shutdownNow();
+			sessionPool.close();
+			client.stop();
+		}
+
+		return new Report(new ArrayList<Result>(results), commandsByHost.size(), unreachableHosts.get(),
+				System.currentTimeMillis() - start);
+	}
+
+	/**
+	 * @return false if the host was unreachable
+	 */
+	private boolean runHostCommands(SshSessionPool sessionPool, List<Command> hostCommands, List<Result> results) {
+
+		String unreachableMessage = null;
+
+		for (Command command : hostCommands) {
+
+			if (unreachableMessage != null) {
+				results.add(new Result(command, false, unreachableMessage));
+				continue;
+			}
+
+			SshSessionPool.PooledSession pooledSession;
+			try {
+				pooledSession = sessionPool.acquire(command.username, command.host, command.port);
+			} catch (SshSessionPool.UnreachableException e) {
+				unreachableMessage = e.getMessage();
+				results.add(new Result(command, false, unreachableMessage));
+				continue;
+			} catch (IOException | RuntimeException e) {
+				results.add(new Result(command, false, "Login failed: " + e.getMessage()));
+				continue;
+			}
+
+			try {
+				results.add(exec(pooledSession, command));
+			} finally {
+				sessionPool.release(pooledSession);
+			}
+		}
+
+		return unreachableMessage == null;
+	}
+
+	private Result exec(SshSessionPool.PooledSession pooledSession, Command command) {
+
+		ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+		ChannelExec channel = null;
+		try {
+			channel = pooledSession.getSession().createExecChannel(command.command);
+			channel.setOut(new ByteArrayOutputStream());
+			channel.setErr(err);
+			channel.open().verify(commandTimeoutMillis);
+
+			Set<ClientChannelEvent> events = channel.waitFor(EnumSet.of(ClientChannelEvent.CLOSED),
+					commandTimeoutMillis);
+			if (!events.contains(ClientChannelEvent.CLOSED)) {
+				return new Result(command, false, "Timed out after " + commandTimeoutMillis + " ms");
+			}
+
+			Integer exitStatus = channel.getExitStatus();
+			if (exitStatus != null && exitStatus != 0) {
+				return new Result(command, false, "Exit code " + exitStatus + ": "
+						+ new String(err.toByteArray(), StandardCharsets.UTF_8).trim());
+			}
+
+			return new Result(command, true, null);
+
+		} catch (IOException | RuntimeException e) {
+			return new Result(command, false, e.getMessage());
+		} finally {
+			// a command that timed out is not waited for
+			if (channel != null) {
+				channel.close(true);
+			}
+		}
+	}
+
+	private static class Command {
+
+		private final String label;
+		private final String username;
+		private final String host;
+		private final int port;
+		private final String command;
+
+		Command(String label, String username, String host, int port, String command) {
+			this.label = label;
+			this.username = username;
+			this.host = host;
+			this.port = port;
+			this.command = command;
+		}
+	}
+
+	public static class Result {
+
+		private final String label;
+
+		private final String host;
+
+		private final boolean success;
+
+		private final String message;
+
+		Result(Command command, boolean success, String message) {
+			this.label = command.label;
+			this.host = command.host;
+			this.success = success;
+			this.message = message;
+		}
+
+		public String getLabel() {
+			return label;
+		}
+
+		public String getHost() {
+			return host;
+		}
+
+		public boolean isSuccess() {
+			return success;
+		}
+
+		/**
+		 * @return the error message of a failed command
+		 */
+		public String getMessage() {
+			return message;
+		}
+	}
+
+	public static class Report {
+
+		private final List<Result> results;
+
+		private final int hostCount;
+
+		private final int unreachableHostCount;
+
+		private final long durationMillis;
+
+		Report(List<Result> results, int hostCount, int unreachableHostCount, long durationMillis) {
+			this.results = results;
+			this.hostCount = hostCount;
+			this.unreachableHostCount = unreachableHostCount;
+			this.durationMillis = durationMillis;
+		}
+
+		public List<Result> getResults() {
+			return results;
+		}
+
+		public List<Result> getFailed() {
+			List<Result> failed = new ArrayList<Result>();
+			for (Result result : results) {
+				if (!result.success) {
+					failed.add(result);
+				}
+			}
+			return failed;
+		}
+
+		public int getSucceededCount() {
+			return results.size() - getFailed().size();
+		}
+
+		public int getUnreachableHostCount() {
+			return unreachableHostCount;
+		}
+
+		public String getSummary() {
+			return String.format("%d of %d commands succeeded on %d hosts in %d ms, %d hosts unreachable",
+					getSucceededCount(), results.size(), hostCount, durationMillis, unreachableHostCount);
+		}
+	}
+}
@@ -17,8 +17,8 @@
 package de.agitos.agiprx.bean.processor;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FilenameFilter;
@@ -28,9 +28,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.security.cert.CertificateException;
-import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateFactory;
-import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.CertificateParsingException;
 import java.security.cert.X509Certificate;
 import java.text.DateFormat;
@@ -39,20 +37,22 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TimeZone;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
+import de.agitos.agiprx.AgiPrx;
 import de.agitos.agiprx.ConsoleWrapper;
 import de.agitos.agiprx.DependencyInjector;
 import de.agitos.agiprx.bean.Config;
 import de.agitos.agiprx.dao.DomainDao;
-import de.agitos.agiprx.dao.ProjectDao;
-import de.agitos.agiprx.dao.RelationType;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.dns.DomainIpChecker;
 import de.agitos.agiprx.exception.AbortionException;
 import de.agitos.agiprx.model.Backend;
@@ -60,6 +60,8 @@ import de.agitos.agiprx.model.Domain;
 import de.agitos.agiprx.model.Project;
 import de.agitos.agiprx.output.HAProxyBackendFormatter;
 import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.DomainNameTrie;
+import de.agitos.agiprx.util.Fingerprint;
 
 public class HAProxyProcessor extends AbstractProcessor implements DependencyInjector {
 
@@ -81,7 +83,7 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 
 	private final static String CONFIG_FILE = "haproxy.cfg";
 	private final static String CONFIG_TMP_FILE = CONFIG_FILE + ".tmp";
-	private final static String DOMAIN_TO_BCKE_FILE = "domain2backend.map";
+	public final static String DOMAIN_TO_BCKE_FILE = "domain2backend.map";
 	public final static String DOMAIN_TO_CERT_FILE = "domain2cert.map";
 	private final static String DOMAIN_TO_REDIRECT_FILE = "domain2redirect.map";
 	private final static String DOMAIN_TO_PREFIX_FILE = "domain2prefix.map";
@@ -96,7 +98,9 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 
 	private HAProxyLesslBackendProcessor haproxyLesslBackendProcessor;
 
-	private ProjectDao projectDao;
+	private HAProxyRuntimeApiProcessor haProxyRuntimeApiProcessor;
+
+	private ConfigSnapshotDao configSnapshotDao;
 
 	private DomainDao domainDao;
 
@@ -107,6 +111,8 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 	// @Value("${cert.lesslissuerparname}")
 	private final String lesslIssuerPartialName;
 
+	private final CertMetadataIndex certMetadataIndex;
+
 	public HAProxyProcessor() {
 
 		Assert.singleton(this, BEAN);
@@ -115,13 +121,19 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 		haProxyReloadCommand = Config.getBean().getString("haproxy.reloadCommand");
 
 		lesslIssuerPartialName = Config.getBean().getString("cert.lesslissuerparname");
+
+		certMetadataIndex = new CertMetadataIndex(
+				Paths.get(Config.getBean().getString("cert.indexFile",
+						Paths.get(AgiPrx.agiPrxRootDirectory, "etc", "cert-index.tsv").toString())),
+				Paths.get(CERT_PATH), lesslIssuerPartialName);
 	}
 
 	@Override
 	public void postConstruct() {
 		domainIpChecker = DomainIpChecker.getBean();
 		haproxyLesslBackendProcessor = HAProxyLesslBackendProcessor.getBean();
-		projectDao = ProjectDao.getBean();
+		haProxyRuntimeApiProcessor = HAProxyRuntimeApiProcessor.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
 		domainDao = DomainDao.getBean();
 		console = ConsoleWrapper.getBean();
 	}
@@ -133,45 +145,203 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 	public void manageConfiguration(boolean verbose, boolean archive)
 			throws IOException, InterruptedException, AbortionException {
 
+		// fetch all projects
+		List<Project> allProjects = configSnapshotDao.getSnapshot().getProjects();
+
+		// generate haproxy.cfg and maps in memory
+		String configContent = generateConfig(allProjects);
+		Map<String, String> mapContents = generateDomainToBackendAndRedirectMap(allProjects);
+		String certMapContent = generateDomainToCertMapContent(allProjects);
+
+		// skip all artifacts that are identical to the last deployed ones
+		boolean configChanged = isArtifactChanged(CONFIG_FILE, configContent);
+		boolean certMapChanged = isArtifactChanged(DOMAIN_TO_CERT_FILE, certMapContent);
+		Map<String, String> changedMaps = new LinkedHashMap<String, String>();
+		for (Map.Entry<String, String> mapContent : mapContents.entrySet()) {
+			if (isArtifactChanged(mapContent.getKey(), mapContent.getValue())) {
+				changedMaps.put(mapContent.getKey(), mapContent.getValue());
+			}
+		}
+
+		List<String> changedArtifacts = new ArrayList<String>();
+		if (configChanged) {
+			changedArtifacts.add(CONFIG_FILE);
+		}
+		changedArtifacts.addAll(changedMaps.keySet());
+		if (certMapChanged) {
+			changedArtifacts.add(DOMAIN_TO_CERT_FILE);
+		}
+
+		if (changedArtifacts.isEmpty()) {
+			console.printlnfStress("HAProxy configuration is unchanged, skipped reload.");
+			return;
+		}
+
 		String backupPrefix = "pre-" + DATE_FORMAT.format(new Date()) + "-";
 		if (archive) {
 			// save previous cfg/maps to pre-YYYYMMDD-HHMMSS-<filename>
-			copyToArchive(CONFIG_FILE, backupPrefix);
-			copyToArchive(DOMAIN_TO_BCKE_FILE, backupPrefix);
-			copyToArchive(DOMAIN_TO_CERT_FILE, backupPrefix);
-			copyToArchive(DOMAIN_TO_REDIRECT_FILE, backupPrefix);
-			copyToArchive(DOMAIN_TO_PREFIX_FILE, backupPrefix);
+			for (String filename : changedArtifacts) {
+				copyToArchive(filename, backupPrefix);
+			}
 		}
 
-		// fetch all projects
-		List<Project> allProjects = projectDao.findAllAsAdmin(EnumSet.of(RelationType.BACKEND, RelationType.DOMAIN,
-				RelationType.CONTAINERREF, RelationType.CONTAINER));
+		// domain2cert.map is not referenced by haproxy.cfg
+		if (certMapChanged) {
+			writeArtifact(DOMAIN_TO_CERT_FILE, certMapContent);
+		}
+
+		if (configChanged || !changedMaps.isEmpty()) {
+			if (configChanged || !applyMapsAtRuntime(changedMaps)) {
+				reload(configChanged ? configContent : null, changedMaps);
+			}
+		}
+
+		if (verbose && archive) {
+			for (String filename : changedArtifacts) {
+				compareWithArchive(filename, backupPrefix);
+			}
+		}
+
+		console.printlnfStress("Changed HAProxy artifacts: %s", String.join(", ", changedArtifacts));
+	}
+
+	/**
+	 * Map-only changes are applied by the runtime API without a reload.
+	 * 
+	 * @return false if the runtime API is disabled or failed
+	 */
+	private boolean applyMapsAtRuntime(Map<String, String> changedMaps) throws IOException, InterruptedException {
 
-		// generate haproxy.cfg
-		generateAndCheckConfigFile(allProjects);
+		if (!haProxyRuntimeApiProcessor.isEnabled()) {
+			return false;
+		}
+
+		try {
+			HAProxyRuntimeApiProcessor.MapDelta delta = new HAProxyRuntimeApiProcessor.MapDelta();
+			for (Map.Entry<String, String> mapContent : changedMaps.entrySet()) {
+				haProxyRuntimeApiProcessor.addMapDelta(CONFIG_PATH + mapContent.getKey(),
+						HAProxyRuntimeApiProcessor.parseMap(readConfigFile(mapContent.getKey())),
+						HAProxyRuntimeApiProcessor.parseMap(mapContent.getValue()), delta);
+			}
+			haProxyRuntimeApiProcessor.apply(delta);
 
-		// generate maps
-		generateDomainToBackendAndRedirectMap(allProjects);
-		generateDomainToCertMap(allProjects);
+		} catch (AbortionException e) {
+			console.printlnfError("%s, falling back to reload", e.getMessage());
+			return false;
+		}
 
-		// re-validate configuration
-		validateConfig(CONFIG_FILE,
-				"The new invalid configuration is already inplace so assure to fix the problem before reloading HAProxy!");
+		for (Map.Entry<String, String> mapContent : changedMaps.entrySet()) {
+			writeArtifact(mapContent.getKey(), mapContent.getValue());
+		}
+
+		console.printlnfStress("Updated HAProxy maps at runtime without reload.");
+		return true;
+	}
+
+	/**
+	 * Write changed maps and config, validate once and reload HAProxy. The
+	 * artifacts are registered as deployed only after a successful reload, so a
+	 * failed validation or reload is retried by the next run.
+	 * 
+	 * @param configContent null if haproxy.cfg is unchanged
+	 */
+	private void reload(String configContent, Map<String, String> changedMaps)
+			throws IOException, InterruptedException, AbortionException {
+
+		for (String filename : changedMaps.keySet()) {
+			deployedArtifacts.remove(filename);
+		}
+		if (configContent != null) {
+			deployedArtifacts.remove(CONFIG_FILE);
+		}
+
+		for (Map.Entry<String, String> mapContent : changedMaps.entrySet()) {
+			writeArtifactFile(mapContent.getKey(), mapContent.getValue());
+		}
+
+		if (configContent != null) {
+			// the temp file is validated against the new maps
+			writeAndCheckConfigFile(configContent);
+		} else {
+			validateConfig(CONFIG_FILE,
+					"The new invalid maps are already inplace so assure to fix the problem before reloading HAProxy!");
+		}
 
 		// reload HAProxy
 		exec(0, haProxyReloadCommand);
 
-		if (verbose && archive) {
-			compareWithArchive(CONFIG_FILE, backupPrefix);
-			compareWithArchive(DOMAIN_TO_BCKE_FILE, backupPrefix);
-			compareWithArchive(DOMAIN_TO_CERT_FILE, backupPrefix);
-			compareWithArchive(DOMAIN_TO_REDIRECT_FILE, backupPrefix);
-			compareWithArchive(DOMAIN_TO_PREFIX_FILE, backupPrefix);
+		for (Map.Entry<String, String> mapContent : changedMaps.entrySet()) {
+			registerDeployedArtifact(mapContent.getKey(), mapContent.getValue());
+		}
+		if (configContent != null) {
+			registerDeployedArtifact(CONFIG_FILE, configContent);
 		}
 
 		console.printlnfStress("Reloaded HAProxy with new configuration.");
 	}
 
+	private String readConfigFile(String filename) throws IOException {
+		Path path = Paths.get(CONFIG_PATH + filename);
+		if (!Files.exists(path)) {
+			return null;
+		}
+		return new String(Files.readAllBytes(path));
+	}
+
+	/*
+	 * Fingerprints of the artifacts deployed by this instance, initially empty so
+	 * the first run after a (re-)start always deploys
+	 */
+	private final Map<String, DeployedArtifact> deployedArtifacts = new ConcurrentHashMap<String, DeployedArtifact>();
+
+	private boolean isArtifactChanged(String filename, String content) throws IOException {
+
+		DeployedArtifact deployed = deployedArtifacts.get(filename);
+		if (deployed == null) {
+			return true;
+		}
+
+		// detect modifications outside of agiprx
+		Path path = Paths.get(CONFIG_PATH + filename);
+		if (!Files.exists(path) || Files.size(path) != deployed.size
+				|| Files.getLastModifiedTime(path).toMillis() != deployed.lastModified) {
+			return true;
+		}
+
+		return !deployed.sha256.equals(Fingerprint.sha256(content));
+	}
+
+	private void writeArtifact(String filename, String content) throws IOException {
+		writeArtifactFile(filename, content);
+		registerDeployedArtifact(filename, content);
+	}
+
+	private void writeArtifactFile(String filename, String content) throws IOException {
+		Files.write(Paths.get(CONFIG_PATH + filename), content.getBytes(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+	}
+
+	private void registerDeployedArtifact(String filename, String content) throws IOException {
+		Path path = Paths.get(CONFIG_PATH + filename);
+		deployedArtifacts.put(filename, new DeployedArtifact(Fingerprint.sha256(content), Files.size(path),
+				Files.getLastModifiedTime(path).toMillis()));
+	}
+
+	private static class DeployedArtifact {
+
+		private final String sha256;
+
+		private final long size;
+
+		private final long lastModified;
+
+		private DeployedArtifact(String sha256, long size, long lastModified) {
+			this.sha256 = sha256;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+	}
+
 	private void copyToArchive(String filename, String backupPrefix)
 			throws IOException, InterruptedException, AbortionException {
 		exec(0, "cp", "-p", CONFIG_PATH + filename, ARCHIVE_PATH + backupPrefix + filename);
@@ -182,6 +352,7 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 		String archivePrefix = DATE_FORMAT.format(new Date()) + (replaced ? "-replaced" : "") + "-cert-expires-"
 				+ DATE_FORMAT.format(notValidAfterDate) + "-";
 		exec(0, "mv", CERT_PATH + certFilename, ARCHIVE_PATH + archivePrefix + certFilename);
+		certMetadataIndex.remove(certFilename);
 	}
 
 	private void compareWithArchive(String filename, String backupPrefix) throws IOException, InterruptedException {
@@ -197,8 +368,7 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 		}
 	}
 
-	private void generateAndCheckConfigFile(List<Project> allProjects)
-			throws IOException, InterruptedException, AbortionException {
+	private String generateConfig(List<Project> allProjects) throws IOException {
 
 		StringBuilder buf = new StringBuilder();
 
@@ -220,9 +390,6 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 
 			for (Backend backend : project.getBackends()) {
 
-				// set back-reference
-				backend.setProject(project);
-
 				if (backend.isGlobalBackend()) {
 					// skip 'nocontent' or domain redirect backend
 					continue;
@@ -245,8 +412,14 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 		buf.append(new String(Files.readAllBytes(Paths.get(CONFIG_PATH + CONFIG_FOOTER_FILE))));
 		buf.append("\n");
 
+		return buf.toString();
+	}
+
+	private void writeAndCheckConfigFile(String configContent)
+			throws IOException, InterruptedException, AbortionException {
+
 		// write temp file
-		Files.write(Paths.get(CONFIG_PATH + CONFIG_TMP_FILE), buf.toString().getBytes(), StandardOpenOption.CREATE,
+		Files.write(Paths.get(CONFIG_PATH + CONFIG_TMP_FILE), configContent.getBytes(), StandardOpenOption.CREATE,
 				StandardOpenOption.TRUNCATE_EXISTING);
 
 		// validate temp file
@@ -256,8 +429,7 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 		exec(0, "mv", CONFIG_PATH + CONFIG_TMP_FILE, CONFIG_PATH + CONFIG_FILE);
 	}
 
-	private void generateDomainToBackendAndRedirectMap(List<Project> allProjects)
-			throws IOException, InterruptedException, AbortionException {
+	private Map<String, String> generateDomainToBackendAndRedirectMap(List<Project> allProjects) {
 
 		StringBuilder backendBuf = new StringBuilder();
 		StringBuilder redirectBuf = new StringBuilder();
@@ -273,9 +445,6 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 		for (Project project : allProjects) {
 			for (Backend backend : project.getBackends()) {
 
-				// set back-reference
-				backend.setProject(project);
-
 				backendBuf.append("# ").append(project.getLabel()).append(": ").append(backend.getLabel()).append("\n");
 
 				for (Domain domain : backend.getDomainForwardings()) {
@@ -322,32 +491,32 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 			}
 		}
 
-		// write to file
-		Files.write(Paths.get(CONFIG_PATH + DOMAIN_TO_BCKE_FILE), backendBuf.toString().getBytes(),
-				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-
-		Files.write(Paths.get(CONFIG_PATH + DOMAIN_TO_REDIRECT_FILE), redirectBuf.toString().getBytes(),
-				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-
-		Files.write(Paths.get(CONFIG_PATH + DOMAIN_TO_PREFIX_FILE), prefixBuf.toString().getBytes(),
-				StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+		// map filename -> map content
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		result.put(DOMAIN_TO_BCKE_FILE, backendBuf.toString());
+		result.put(DOMAIN_TO_REDIRECT_FILE, redirectBuf.toString());
+		result.put(DOMAIN_TO_PREFIX_FILE, prefixBuf.toString());
+		return result;
 	}
 
 	/**
-	 * TODO: optimize map modification:
-	 * https://www.haproxy.com/de/blog/introduction-to-haproxy-maps/ --> "Editing
-	 * with http-request set-map"
+	 * domain2cert.map is not referenced by haproxy.cfg (certificates are loaded
+	 * from CERT_PATH), so it is rewritten on changes without a reload or runtime
+	 * update.
 	 */
 	public void generateDomainToCertMap() throws IOException, InterruptedException, AbortionException {
-		List<Project> allProjects = projectDao.findAllAsAdmin(EnumSet.of(RelationType.BACKEND, RelationType.DOMAIN));
-		generateDomainToCertMap(allProjects);
+		List<Project> allProjects = configSnapshotDao.getSnapshot().getProjects();
+		String certMapContent = generateDomainToCertMapContent(allProjects);
+		if (isArtifactChanged(DOMAIN_TO_CERT_FILE, certMapContent)) {
+			writeArtifact(DOMAIN_TO_CERT_FILE, certMapContent);
+		}
 	}
 
-	private void generateDomainToCertMap(List<Project> allProjects)
+	private String generateDomainToCertMapContent(List<Project> allProjects)
 			throws IOException, InterruptedException, AbortionException {
 
 		// loop through CERT_PATH and find cert files for domains
-		Map<String, CertInfo> domToCertFiles = fetchDomainToCertFiles(null);
+		DomainNameTrie<CertInfo> domToCertFiles = fetchDomainToCertTrie(null);
 
 		StringBuilder buf = new StringBuilder();
 
@@ -362,27 +531,14 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 
 				for (Domain domain : backend.getDomainForwardings()) {
 
-					// set back-reference
-					domain.setBackend(backend);
-
 					String domainname = domain.getDomain();
-					String wildcardDomain = null;
-					int pointPos = domainname.indexOf(".");
-					if (pointPos >= 0) {
-						wildcardDomain = "*" + domainname.substring(pointPos);
-					}
-
-					if (domToCertFiles.containsKey(domainname)) {
-
-						String certFilename = domToCertFiles.get(domainname).getFilename();
-
-						buf.append(domainname).append(" ").append(certFilename).append("\n");
 
-					} else if (wildcardDomain != null && domToCertFiles.containsKey(wildcardDomain)) {
+					// exact or wildcard certificate
+					CertInfo certInfo = domToCertFiles.getMatching(domainname);
 
-						String certFilename = domToCertFiles.get(wildcardDomain).getFilename();
+					if (certInfo != null) {
 
-						buf.append(domainname).append(" ").append(certFilename).append("\n");
+						buf.append(domainname).append(" ").append(certInfo.getFilename()).append("\n");
 
 					} else if (Boolean.TRUE.equals(domain.getLetsEncrypt())) {
 
@@ -402,18 +558,18 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 			}
 		}
 
-		// write to file
-		Files.write(Paths.get(CONFIG_PATH + DOMAIN_TO_CERT_FILE), buf.toString().getBytes(), StandardOpenOption.CREATE,
-				StandardOpenOption.TRUNCATE_EXISTING);
+		return buf.toString();
 	}
 
 	/*
-	 * This map is cached
+	 * This index is cached and updated incrementally by the CertDirectoryWatcher
 	 */
-	private Map<String, CertInfo> domainToCertFiles;
+	private volatile CertIndex certIndex;
+
+	private CertDirectoryWatcher certDirectoryWatcher;
 
 	public void resetDomainToCertFiles() {
-		this.domainToCertFiles = null;
+		this.certIndex = null;
 	}
 
 	/*
@@ -432,21 +588,29 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 	 * HINT: BE AWARE that domain names in certificates can be wildcards
 	 */
 	public Map<String, CertInfo> fetchDomainToCertFiles(List<String> warningMessages) {
+		return fetchCertIndex(warningMessages).getDomainToCertMap();
+	}
 
-		if (domainToCertFiles != null) {
+	/*
+	 * Domain to cert index for exact, wildcard and filter lookups
+	 */
+	public DomainNameTrie<CertInfo> fetchDomainToCertTrie(List<String> warningMessages) {
+		return fetchCertIndex(warningMessages).getDomainToCertTrie();
+	}
 
-			// LOG.fine("Use existing domain-to-cert-map " + domainToCertFiles.hashCode()+"
-			// with "+domainToCertFiles.size()+" records.");
+	private CertIndex fetchCertIndex(List<String> warningMessages) {
 
-			return domainToCertFiles;
+		CertIndex certIndex = this.certIndex;
+		if (certIndex != null) {
+			return certIndex;
 		}
 
 		synchronized (this) {
 
 			// another check for threads that waited for the synchronized block to finish
-			if (domainToCertFiles == null) {
+			if (this.certIndex == null) {
 
-				Map<String, CertInfo> result = new HashMap<String, CertInfo>();
+				certIndex = new CertIndex();
 
 				File folder = new File(CERT_PATH);
 				File[] listOfFiles = folder.listFiles(new FilenameFilter() {
@@ -460,90 +624,56 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 
 				Set<String> lesslDomains = new HashSet<String>(domainDao.findAllLesslDomains());
 
-				CertUsage certUsage = new CertUsage();
+				for (File file : listOfFiles) {
+					processCertFile(file, lesslDomains, certIndex, warningMessages);
+				}
 
+				List<String> certFilenames = new ArrayList<String>();
 				for (File file : listOfFiles) {
-					processCertFile(file, lesslDomains, result, warningMessages, certUsage);
+					certFilenames.add(file.getName());
 				}
+				certMetadataIndex.retainAll(certFilenames);
 
-				this.domainToCertFiles = result;
+				archiveReplacedCerts(certIndex, lesslDomains, warningMessages);
 
-				for (String certFilename : certUsage.getReplacedCertFilenames()) {
-					CertInfo certInfo;
-					try {
-						certInfo = new CertInfo(certFilename);
-						moveCertToArchive(certFilename, certInfo.getCert().getNotAfter(), true);
-						if (warningMessages != null) {
-							warningMessages.add(
-									"Detected replaced cert " + certFilename + ", moved to archive " + ARCHIVE_PATH);
-						}
-					} catch (Exception ioe) {
-						String msg = "Could not move replaced certificate " + certFilename + " to archive";
-						if (warningMessages != null) {
-							warningMessages.add(msg);
-						}
-						console.printlnfError(msg);
-					}
-				}
+				certMetadataIndex.store();
 
-				// LOG.fine("Created new domain-to-cert-map " + domainToCertFiles.hashCode()+"
-				// with "+domainToCertFiles.size()+" records.");
+				certIndex.publish();
+				this.certIndex = certIndex;
+
+				startCertDirectoryWatcher();
 			}
 		}
 
-		return domainToCertFiles;
+		return this.certIndex;
 	}
 
 	/**
-	 * This methods adds a domain to CertInfo mapping to the result map if the map
-	 * doesn't contain a valid domain mapping yet. If a certificate has expired the
-	 * cert file is moved to the archive directory.
+	 * This methods adds a certificate to the cert index if it is currently valid.
+	 * If a certificate has expired the cert file is moved to the archive directory.
 	 * 
 	 * @param file         certificate File
 	 * @param lesslDomains list of Letsencrypt domains from the database
-	 * @param result       mapping file
+	 * @param certIndex    domain to cert index
 	 */
-	private void processCertFile(File file, Set<String> lesslDomains, Map<String, CertInfo> result,
-			List<String> warningMessages, CertUsage certUsage) {
+	private void processCertFile(File file, Set<String> lesslDomains, CertIndex certIndex,
+			List<String> warningMessages) {
 
 		if (file.isFile()) {
 			try {
-				CertInfo certInfo = new CertInfo(file.getName());
+				CertInfo certInfo = certMetadataIndex.get(file.getName());
 
 				if (!certInfo.isCurrentlyValid()) {
+					certIndex.remove(file.getName(), lesslDomains);
 					if (certInfo.isExpired()) {
 						// move this cert to archive
-						moveCertToArchive(file.getName(), certInfo.getCert().getNotAfter(), false);
+						moveCertToArchive(file.getName(), certInfo.getNotAfter(), false);
 					}
 					return;
 				}
 
-				if (certUsage != null) {
-					certUsage.register(certInfo.getFilename());
-				}
+				certIndex.put(certInfo, lesslDomains);
 
-				for (String domainName : certInfo.getCoveredDomainnames()) {
-					if (result.containsKey(domainName)) {
-
-						CertInfo otherCertInfo = result.get(domainName);
-						if (certInfo.hasPrecedence(lesslDomains.contains(domainName), otherCertInfo)) {
-							result.put(domainName, certInfo);
-							if (certUsage != null) {
-								certUsage.increment(certInfo.getFilename());
-								certUsage.decrement(otherCertInfo.getFilename());
-							}
-						} else if (certUsage != null) {
-							certUsage.increment(otherCertInfo.getFilename());
-							certUsage.decrement(certInfo.getFilename());
-						}
-
-					} else {
-						result.put(domainName, certInfo);
-						if (certUsage != null) {
-							certUsage.increment(certInfo.getFilename());
-						}
-					}
-				}
 			} catch (Exception e) {
 				String additionalInfo = "";
 				if (e instanceof CertificateParsingException && "signed fields invalid".equals(e.getMessage())) {
@@ -560,110 +690,212 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 		}
 	}
 
-	public void addLesslDomainToMap(Path combinedCert) {
-		// Set<String> can be empty because new cert has precedence
-		this.processCertFile(combinedCert.toFile(), new HashSet<String>(), this.fetchDomainToCertFiles(null), null,
-				null);
+	/*
+	 * Move certificates to the archive that are not selected for any of their
+	 * domain names because other certificates have precedence
+	 */
+	private void archiveReplacedCerts(CertIndex certIndex, Set<String> lesslDomains, List<String> warningMessages) {
+
+		for (String certFilename : certIndex.getReplacedCertFilenames()) {
+			try {
+				CertInfo certInfo = certIndex.getByFilename(certFilename);
+				certIndex.remove(certFilename, lesslDomains);
+				moveCertToArchive(certFilename, certInfo.getNotAfter(), true);
+				if (warningMessages != null) {
+					warningMessages
+							.add("Detected replaced cert " + certFilename + ", moved to archive " + ARCHIVE_PATH);
+				}
+			} catch (Exception ioe) {
+				String msg = "Could not move replaced certificate " + certFilename + " to archive";
+				if (warningMessages != null) {
+					warningMessages.add(msg);
+				}
+				console.printlnfError(msg);
+			}
+		}
 	}
 
-	public CertInfo getCertInfoForDomainName(String domainName) {
+	/**
+	 * Apply created, modified or deleted cert files to the cached cert index
+	 * without rescanning the whole cert directory. If the index wasn't built yet
+	 * the changes are picked up by the next full build.
+	 * 
+	 * @param certFilenames names of changed files in the cert directory
+	 */
+	public synchronized void applyCertFileChanges(Set<String> certFilenames) {
 
-		Map<String, CertInfo> domainToCertFiles = fetchDomainToCertFiles(null);
+		CertIndex certIndex = this.certIndex;
+		if (certIndex == null) {
+			return;
+		}
 
-		// return exact matches
-		if (domainToCertFiles.containsKey(domainName)) {
-			return domainToCertFiles.get(domainName);
+		Set<String> lesslDomains = new HashSet<String>(domainDao.findAllLesslDomains());
+
+		for (String certFilename : certFilenames) {
+			File file = new File(CERT_PATH, certFilename);
+			if (file.isFile()) {
+				processCertFile(file, lesslDomains, certIndex, null);
+			} else {
+				certIndex.remove(certFilename, lesslDomains);
+				certMetadataIndex.remove(certFilename);
+			}
 		}
 
-		int pointPos = domainName.indexOf(".");
-		if (pointPos >= 0) {
-			String wildcardDomain = "*" + domainName.substring(pointPos);
-			return domainToCertFiles.get(wildcardDomain);
+		archiveReplacedCerts(certIndex, lesslDomains, null);
+
+		certIndex.publish();
+
+		certMetadataIndex.store();
+	}
+
+	private void startCertDirectoryWatcher() {
+		if (certDirectoryWatcher == null && Config.getBean().getBoolean("cert.watchDirectory", true)) {
+			certDirectoryWatcher = new CertDirectoryWatcher(Paths.get(CERT_PATH), this);
+			certDirectoryWatcher.start();
 		}
+	}
+
+	public void addLesslDomainToMap(Path combinedCert) {
+		applyCertFileChanges(Collections.singleton(combinedCert.getFileName().toString()));
+	}
 
-		return null;
+	public void removeLesslDomainFromMap(Path combinedCert) {
+		applyCertFileChanges(Collections.singleton(combinedCert.getFileName().toString()));
 	}
 
-	private void printDomainToCertList(Map<String, CertInfo> certMap, String domainFilter) {
+	public CertInfo getCertInfoForDomainName(String domainName) {
 
-		if (certMap.isEmpty()) {
+		// exact matches first, then wildcard certificates
+		return fetchDomainToCertTrie(null).getMatching(domainName);
+	}
+
+	private void printDomainToCertList(DomainNameTrie<CertInfo> certTrie, String domainFilter) {
+
+		if (certTrie.isEmpty()) {
 			console.printlnfError("No currently valid certificates configured");
 			return;
 		}
 
-		List<String> domains = new ArrayList<String>(certMap.keySet());
-		Collections.sort(domains);
-
+		Map<String, CertInfo> certMap;
 		if (domainFilter != null) {
-			String pattern = domainFilter.replaceAll("\\?", ".?").replaceAll("\\*", ".*?");
-			for (String domain : domains) {
-				if (domain.matches(pattern)) {
-					console.printlnf("%s : %s", domain, certMap.get(domain));
-				}
-			}
+			certMap = certTrie.find(domainFilter);
 		} else {
-			for (String domain : domains) {
-				console.printlnf("%s : %s", domain, certMap.get(domain));
-			}
+			certMap = new TreeMap<String, CertInfo>(certTrie.asMap());
+		}
+
+		for (Map.Entry<String, CertInfo> entry : certMap.entrySet()) {
+			console.printlnf("%s : %s", entry.getKey(), entry.getValue());
 		}
 	}
 
-	public class CertInfo {
+	/**
+	 * Certificate metadata, either parsed from a cert file or restored from the
+	 * CertMetadataIndex.
+	 */
+	public static class CertInfo {
 
-		private String filename;
-		private X509Certificate cert;
+		private final String filename;
+		private final long size;
+		private final long lastModified;
+		private final String sha256;
+		private final Date notBefore;
+		private final Date notAfter;
+		private final String issuerName;
+		private final boolean lesslCert;
+		private final List<String> coveredDomainnames;
 
-		public CertInfo(String filename) throws CertificateException, IOException {
+		public CertInfo(String filename, String lesslIssuerPartialName) throws CertificateException, IOException {
+			this(filename, Files.readAllBytes(Paths.get(CERT_PATH + filename)), lesslIssuerPartialName);
+		}
+
+		CertInfo(String filename, byte[] content, String lesslIssuerPartialName)
+				throws CertificateException, IOException {
 
 			this.filename = filename;
 
+			Path path = Paths.get(CERT_PATH + filename);
+			this.size = content.length;
+			this.lastModified = Files.getLastModifiedTime(path).toMillis();
+			this.sha256 = Fingerprint.sha256(content);
+
 			CertificateFactory fact = CertificateFactory.getInstance("X.509");
-			FileInputStream is = new FileInputStream(CERT_PATH + filename);
-			this.cert = (X509Certificate) fact.generateCertificate(is);
-			is.close();
+			X509Certificate cert = (X509Certificate) fact.generateCertificate(new ByteArrayInputStream(content));
+
+			this.notBefore = cert.getNotBefore();
+			this.notAfter = cert.getNotAfter();
+			this.issuerName = cert.getIssuerX500Principal().getName();
+			this.lesslCert = issuerName.contains(lesslIssuerPartialName);
+
+			List<String> domains = new ArrayList<>();
+			if (cert.getSubjectAlternativeNames() != null) {
+				for (List<?> subjectAltName : cert.getSubjectAlternativeNames()) {
+					for (Object item : subjectAltName) {
+						if (item instanceof String) {
+							domains.add((String) item);
+						}
+					}
+				}
+			}
+			this.coveredDomainnames = Collections.unmodifiableList(domains);
+		}
+
+		CertInfo(String filename, long size, long lastModified, String sha256, Date notBefore, Date notAfter,
+				String issuerName, boolean lesslCert, List<String> coveredDomainnames) {
+			this.filename = filename;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.sha256 = sha256;
+			this.notBefore = notBefore;
+			this.notAfter = notAfter;
+			this.issuerName = issuerName;
+			this.lesslCert = lesslCert;
+			this.coveredDomainnames = Collections.unmodifiableList(new ArrayList<>(coveredDomainnames));
 		}
 
 		public String getFilename() {
 			return filename;
 		}
 
-		public X509Certificate getCert() {
-			return cert;
+		public long getSize() {
+			return size;
+		}
+
+		public long getLastModified() {
+			return lastModified;
+		}
+
+		public String getSha256() {
+			return sha256;
+		}
+
+		public Date getNotBefore() {
+			return notBefore;
+		}
+
+		public Date getNotAfter() {
+			return notAfter;
+		}
+
+		private boolean isValidAt(Date date) {
+			return !date.before(notBefore) && !date.after(notAfter);
 		}
 
 		public boolean isCurrentlyValid() {
-			try {
-				this.cert.checkValidity();
-			} catch (CertificateExpiredException | CertificateNotYetValidException e) {
-				return false;
-			}
-			return true;
+			return isValidAt(new Date());
 		}
 
 		public boolean isExpired() {
-			try {
-				this.cert.checkValidity();
-			} catch (CertificateExpiredException e) {
-				return true;
-			} catch (CertificateNotYetValidException e) {
-				return false;
-			}
-			return false;
+			return new Date().after(notAfter);
 		}
 
 		public boolean isValidInDays(int futureDays) {
-			try {
-				Calendar cal = Calendar.getInstance();
-				cal.add(Calendar.DATE, futureDays);
-				this.cert.checkValidity(cal.getTime());
-			} catch (CertificateExpiredException | CertificateNotYetValidException e) {
-				return false;
-			}
-			return true;
+			Calendar cal = Calendar.getInstance();
+			cal.add(Calendar.DATE, futureDays);
+			return isValidAt(cal.getTime());
 		}
 
-		public boolean isNewerThan(X509Certificate otherCert) {
-			return this.cert.getNotAfter().compareTo(otherCert.getNotAfter()) > 0;
+		public boolean isNewerThan(CertInfo otherCertInfo) {
+			return this.notAfter.compareTo(otherCertInfo.getNotAfter()) > 0;
 		}
 
 		public boolean hasPrecedence(boolean isLesslCert, CertInfo otherCertInfo) {
@@ -676,86 +908,29 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 				}
 			}
 
-			if (this.isNewerThan(otherCertInfo.getCert())) {
+			if (this.isNewerThan(otherCertInfo)) {
 				return true;
 			}
 			return false;
 		}
 
-		public List<String> getCoveredDomainnames() throws CertificateParsingException {
-			List<String> domains = new ArrayList<>();
-
-			if (this.cert.getSubjectAlternativeNames() != null) {
-				for (List<?> subjectAltName : this.cert.getSubjectAlternativeNames()) {
-					for (Object item : subjectAltName) {
-						if (item instanceof String) {
-							domains.add((String) item);
-						}
-					}
-				}
-			}
-
-			return domains;
+		public List<String> getCoveredDomainnames() {
+			return coveredDomainnames;
 		}
 
 		public String getIssuerName() {
-			return this.getCert().getIssuerX500Principal().getName();
-		}
-
-		public String getLesslIssuerDefaultPartialName() {
-			return lesslIssuerPartialName;
+			return issuerName;
 		}
 
 		public boolean isLesslCert() {
-			return getIssuerName().contains(lesslIssuerPartialName);
+			return lesslCert;
 		}
 
 		@Override
 		public String toString() {
 			return "CertInfo:\n\tIssuerName = " + this.getIssuerName() + ",\n\tfilename = " + filename
-					+ ",\n\tcert validity = " + DATE_FORMAT_YMD_HM.format(this.cert.getNotBefore()) + " - "
-					+ DATE_FORMAT_YMD_HM.format(this.cert.getNotAfter()) + "]";
-		}
-	}
-
-	private class CertUsage {
-
-		Map<String, Integer> usage = new HashMap<String, Integer>();
-
-		public void register(String filename) {
-			if (!usage.containsKey(filename)) {
-				usage.put(filename, null);
-			}
-		}
-
-		public void increment(String filename) {
-			Integer val = usage.get(filename);
-			if (val == null) {
-				usage.put(filename, 1);
-			} else {
-				usage.put(filename, val + 1);
-			}
-		}
-
-		public void decrement(String filename) {
-			Integer val = usage.get(filename);
-			if (val == null) {
-				usage.put(filename, -1);
-			} else {
-				usage.put(filename, val - 1);
-			}
-		}
-
-		public List<String> getReplacedCertFilenames() {
-			List<String> result = new ArrayList<String>();
-			for (Map.Entry<String, Integer> entry : usage.entrySet()) {
-				Integer val = entry.getValue();
-				if (val != null && entry.getValue() <= 0) {
-					// report unused certificate
-					result.add(entry.getKey());
-				}
-			}
-			return result;
+					+ ",\n\tcert validity = " + DATE_FORMAT_YMD_HM.format(notBefore) + " - "
+					+ DATE_FORMAT_YMD_HM.format(notAfter) + "]";
 		}
 	}
 
@@ -793,14 +968,18 @@ public class HAProxyProcessor extends AbstractProcessor implements DependencyInj
 	}
 
 	public void listCerts(String domainFilter) throws IOException, InterruptedException, AbortionException {
-		Map<String, CertInfo> certMap = this.fetchDomainToCertFiles(null);
-		printDomainToCertList(certMap, domainFilter);
+		DomainNameTrie<CertInfo> certTrie = this.fetchDomainToCertTrie(null);
+		printDomainToCertList(certTrie, domainFilter);
 	}
 
 	public String getCertPath() {
 		return CERT_PATH;
 	}
 
+	public String getLesslIssuerPartialName() {
+		return lesslIssuerPartialName;
+	}
+
 	// public static Map<String, String> getProductiveDomainToCertMap() throws
 	// FileNotFoundException, IOException {
 	//
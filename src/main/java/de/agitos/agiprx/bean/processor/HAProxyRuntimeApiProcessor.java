@@ -0,0 +1,200 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.bean.Config;
+import de.agitos.agiprx.exception.AbortionException;
+import de.agitos.agiprx.util.Assert;
+
+/**
+ * Applies map modifications to a running HAProxy by its runtime API (stats
+ * socket) instead of a reload, see
+ * https://www.haproxy.com/de/blog/introduction-to-haproxy-maps/ --> "Editing
+ * with the Runtime API".
+ * 
+ * The socket is connected by 'socat' as Java 11 does not support unix domain
+ * sockets. All commands of a run are sent in a single interactive ('prompt')
+ * session.
+ */
+public class HAProxyRuntimeApiProcessor extends AbstractProcessor implements DependencyInjector {
+
+	private static HAProxyRuntimeApiProcessor BEAN;
+
+	// @Value("${haproxy.runtimeApiSocket}")
+	private final String runtimeApiSocket;
+
+	public HAProxyRuntimeApiProcessor() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+
+		String socket = Config.getBean().getString("haproxy.runtimeApiSocket");
+		runtimeApiSocket = socket == null || socket.isBlank() ? null : socket.trim();
+	}
+
+	@Override
+	public void postConstruct() {
+	}
+
+	public static HAProxyRuntimeApiProcessor getBean() {
+		return BEAN;
+	}
+
+	public boolean isEnabled() {
+		return runtimeApiSocket != null;
+	}
+
+	/**
+	 * Parse the content of a HAProxy map file: one 'key value' pair per line,
+	 * comments and empty lines are skipped. The first occurrence of a key wins as
+	 * it does in HAProxy.
+	 */
+	public static Map<String, String> parseMap(String content) {
+
+		Map<String, String> result = new LinkedHashMap<String, String>();
+
+		if (content == null) {
+			return result;
+		}
+
+		for (String line : content.split("\n")) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			int spacePos = line.indexOf(' ');
+			if (spacePos < 0) {
+				continue;
+			}
+			result.putIfAbsent(line.substring(0, spacePos), line.substring(spacePos + 1).trim());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Determine the runtime API commands to transform the deployed map into the
+	 * generated map.
+	 * 
+	 * @param mapFile      full path of the map file as referenced in haproxy.cfg
+	 * @param deployedMap  currently active map content
+	 * @param generatedMap new map content
+	 * @param delta        the commands are appended to this delta
+	 */
+	public void addMapDelta(String mapFile, Map<String, String> deployedMap, Map<String, String> generatedMap,
+			MapDelta delta) {
+
+		for (Map.Entry<String, String> entry : generatedMap.entrySet()) {
+			String deployedValue = deployedMap.get(entry.getKey());
+			if (deployedValue == null) {
+				delta.add("add map " + mapFile + " " + entry.getKey() + " " + entry.getValue());
+				delta.added++;
+			} else if (!deployedValue.equals(entry.getValue())) {
+				delta.add("set map " + mapFile + " " + entry.getKey() + " " + entry.getValue());
+				delta.changed++;
+			}
+		}
+
+		for (String key : deployedMap.keySet()) {
+			if (!generatedMap.containsKey(key)) {
+				delta.add("del map " + mapFile + " " + key);
+				delta.removed++;
+			}
+		}
+	}
+
+	/**
+	 * Send all commands of the delta to the runtime API.
+	 * 
+	 * @throws AbortionException if the socket cannot be reached or HAProxy
+	 *                           responds with an error to any command
+	 */
+	public void apply(MapDelta delta) throws IOException, InterruptedException, AbortionException {
+
+		Assert.isTrue(isEnabled(), "HAProxy runtime API is not configured");
+
+		if (delta.isEmpty()) {
+			return;
+		}
+
+		StringBuilder input = new StringBuilder();
+		input.append("prompt\n");
+		for (String command : delta.getCommands()) {
+			input.append(command).append("\n");
+		}
+		input.append("quit\n");
+
+		StringBuilder output = new StringBuilder();
+		StringBuilder errorOutput = new StringBuilder();
+		int exitCode = execWithInput(output, errorOutput, input.toString(), "socat", "stdio",
+				"unix-connect:" + runtimeApiSocket);
+
+		if (exitCode != 0) {
+			throw new AbortionException("Connection to HAProxy runtime API " + runtimeApiSocket
+					+ " failed with exit code " + exitCode + ": " + errorOutput.toString().trim());
+		}
+
+		// successful map commands respond with an empty line, everything else is an
+		// error message
+		StringBuilder errors = new StringBuilder();
+		for (String line : output.toString().split("\n")) {
+			while (line.startsWith(">")) {
+				line = line.substring(1).trim();
+			}
+			if (!line.isBlank()) {
+				errors.append(line.trim()).append("; ");
+			}
+		}
+
+		if (errors.length() > 0) {
+			throw new AbortionException("HAProxy runtime API rejected map update: " + errors.toString());
+		}
+	}
+
+	public static class MapDelta {
+
+		private final StringBuilder commands = new StringBuilder();
+
+		private int added = 0;
+
+		private int changed = 0;
+
+		private int removed = 0;
+
+		private void add(String command) {
+			commands.append(command).append("\n");
+		}
+
+		public String[] getCommands() {
+			return commands.length() == 0 ? new String[0] : commands.toString().split("\n");
+		}
+
+		public boolean isEmpty() {
+			return commands.length() == 0;
+		}
+
+		@Override
+		public String toString() {
+			return added + " added, " + changed + " changed, " + removed + " removed";
+		}
+	}
+}
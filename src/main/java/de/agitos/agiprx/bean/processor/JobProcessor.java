@@ -0,0 +1,258 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.ByteArrayInputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.ConsoleWrapper;
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.bean.Config;
+import de.agitos.agiprx.dao.JobDao;
+import de.agitos.agiprx.dto.JobDto;
+import de.agitos.agiprx.model.Job;
+import de.agitos.agiprx.model.JobStatus;
+import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.UserContext;
+
+/**
+ * Runs asynchronous jobs of API users with bounded concurrency. Jobs of the
+ * same project run sequentially in the order of submission, the status of each
+ * job is persisted and can be requested by its id.
+ */
+public class JobProcessor implements DependencyInjector {
+
+	private static final Logger LOG = Logger.getLogger(JobProcessor.class.getName());
+
+	private static JobProcessor BEAN;
+
+	private static final String JOB_INTERRUPTED = "Interrupted by a restart of AgiPrx";
+
+	@FunctionalInterface
+	public interface JobTask {
+		void run(JobProgress progress) throws Exception;
+	}
+
+	private JobDao jobDao;
+
+	private UserContext userContext;
+
+	private ConsoleWrapper console;
+
+	// @Value("${agiprx.jobThreads:2}")
+	private final int jobThreads;
+
+	// @Value("${agiprx.jobQueueLimit:100}")
+	private final int jobQueueLimit;
+
+	// @Value("${agiprx.jobRetentionDays:30}")
+	private final int jobRetentionDays;
+
+	private final ExecutorService executor;
+
+	// guarded by this
+	private final List<JobProgress> queuedJobs = new ArrayList<>();
+
+	private final Set<String> busyProjects = new HashSet<>();
+
+	private int runningJobs = 0;
+
+	// queued and running jobs by id
+	private final Map<Long, JobProgress> activeJobs = new ConcurrentHashMap<>();
+
+	public JobProcessor() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+
+		jobThreads = Config.getBean().getInteger("agiprx.jobThreads", 2);
+		jobQueueLimit = Config.getBean().getInteger("agiprx.jobQueueLimit", 100);
+		jobRetentionDays = Config.getBean().getInteger("agiprx.jobRetentionDays", 30);
+
+		Assert.isTrue(jobThreads > 0, "agiprx.jobThreads needs to be positive");
+
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(jobThreads, runnable -> {
+			Thread thread = new Thread(runnable, "Job-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void postConstruct() {
+		jobDao = JobDao.getBean();
+		userContext = UserContext.getBean();
+		console = ConsoleWrapper.getBean();
+	}
+
+	public static JobProcessor getBean() {
+		return BEAN;
+	}
+
+	/**
+	 * Queue a job that runs with the permissions of the given API user.
+	 * 
+	 * @throws RejectedExecutionException if the queue limit is reached
+	 */
+	public JobDto submit(String type, Collection<String> projectLabels, String username, JobTask task) {
+
+		Job job = new Job();
+		job.setType(type);
+		job.setProjectLabels(new ArrayList<>(projectLabels));
+		Collections.sort(job.getProjectLabels());
+		job.setUsername(username);
+		job.setStatus(JobStatus.QUEUED);
+		job.setCreated(new Date());
+
+		JobProgress progress;
+
+		synchronized (this) {
+
+			if (queuedJobs.size() >= jobQueueLimit) {
+				throw new RejectedExecutionException("Job queue is full (" + jobQueueLimit + " queued jobs)");
+			}
+
+			jobDao.create(job);
+
+			progress = new JobProgress(job, task, jobDao);
+			activeJobs.put(job.getId(), progress);
+			queuedJobs.add(progress);
+
+			dispatch();
+		}
+
+		LOG.info("Queued job " + job.getId() + " (" + type + ") of projects " + job.getProjectLabels());
+
+		return progress.toDto();
+	}
+
+	/**
+	 * @return status of a job or null if it doesn't exist
+	 */
+	public JobDto find(Long id) {
+
+		JobProgress progress = activeJobs.get(id);
+		if (progress != null) {
+			return progress.toDto();
+		}
+
+		Job job = jobDao.find(id);
+		return job == null ? null : new JobDto(job);
+	}
+
+	/**
+	 * Mark jobs as failed that didn't finish before the last shutdown.
+	 */
+	public void failInterruptedJobs() {
+		int interruptedJobs = jobDao.failUnfinished(JOB_INTERRUPTED);
+		if (interruptedJobs > 0) {
+			LOG.warning("Marked " + interruptedJobs + " interrupted job(s) as failed");
+		}
+	}
+
+	public void pruneJobs() {
+		jobDao.deleteFinishedOlderThan(jobRetentionDays);
+	}
+
+	private synchronized void dispatch() {
+		for (JobProgress progress : selectJobs(queuedJobs, busyProjects, jobThreads - runningJobs)) {
+			queuedJobs.remove(progress);
+			busyProjects.addAll(progress.getProjectLabels());
+			runningJobs++;
+			executor.execute(() -> run(progress));
+		}
+	}
+
+	/**
+	 * @return queued jobs that can start now, in the order of submission
+	 */
+	static List<JobProgress> selectJobs(List<JobProgress> queuedJobs, Set<String> busyProjects, int freeSlots) {
+
+		List<JobProgress> selectedJobs = new ArrayList<>();
+		Set<String> blockedProjects = new HashSet<>(busyProjects);
+
+		for (JobProgress progress : queuedJobs) {
+			if (selectedJobs.size() >= freeSlots) {
+				break;
+			}
+			if (Collections.disjoint(progress.getProjectLabels(), blockedProjects)) {
+				selectedJobs.add(progress);
+			}
+			// later jobs of the same projects wait for this one
+			blockedProjects.addAll(progress.getProjectLabels());
+		}
+
+		return selectedJobs;
+	}
+
+	private void run(JobProgress progress) {
+
+		String error = null;
+
+		try {
+			userContext.registerApiUser(progress.getUsername());
+
+			// there is nothing to input, the output is part of the job status
+			console.registerClient(new ByteArrayInputStream(new byte[0]),
+					new PrintStream(progress.getOutputStream(), true, StandardCharsets.UTF_8), false);
+
+			progress.markRunning();
+
+			progress.run();
+
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "Job " + progress.getId() + " failed", e);
+			error = e.getMessage() != null ? e.getMessage() : e.toString();
+		}
+
+		try {
+			progress.markFinished(error);
+
+		} catch (RuntimeException e) {
+			LOG.log(Level.SEVERE, "Unable to persist the result of job " + progress.getId(), e);
+
+		} finally {
+			console.unRegisterClient();
+			userContext.unregister();
+
+			activeJobs.remove(progress.getId());
+
+			synchronized (this) {
+				busyProjects.removeAll(progress.getProjectLabels());
+				runningJobs--;
+				dispatch();
+			}
+		}
+	}
+}
@@ -0,0 +1,154 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.bean.processor.JobProcessor.JobTask;
+import de.agitos.agiprx.dao.JobDao;
+import de.agitos.agiprx.dto.JobDto;
+import de.agitos.agiprx.model.Job;
+import de.agitos.agiprx.model.JobStatus;
+
+/**
+ * Progress of a queued or running job, updated by the job thread and read by
+ * status requests. The progress is persisted at most once per interval.
+ */
+public class JobProgress {
+
+	private static final Logger LOG = Logger.getLogger(JobProgress.class.getName());
+
+	private static final long PERSIST_INTERVAL_MILLIS = 1000;
+
+	private final Job job;
+
+	private final JobTask task;
+
+	private final JobDao jobDao;
+
+	// console output of the job
+	private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+	private long lastPersisted = 0;
+
+	JobProgress(Job job, JobTask task, JobDao jobDao) {
+		this.job = job;
+		this.task = task;
+		this.jobDao = jobDao;
+
+		job.setWarnings(Collections.synchronizedList(new ArrayList<>(job.getWarnings())));
+	}
+
+	public synchronized void setTotal(int total) {
+		job.setTotal(total);
+	}
+
+	public synchronized void addTotal(int count) {
+		job.setTotal(job.getTotal() + count);
+	}
+
+	public synchronized void startItem(String item) {
+		job.setCurrentItem(item);
+	}
+
+	public void finishItem() {
+		synchronized (this) {
+			job.setDone(job.getDone() + 1);
+		}
+
+		long now = System.currentTimeMillis();
+		if (now - lastPersisted >= PERSIST_INTERVAL_MILLIS) {
+			lastPersisted = now;
+			persistProgress();
+		}
+	}
+
+	/**
+	 * @return warnings of the job, extended by the job while it runs
+	 */
+	public List<String> getWarningMessages() {
+		return job.getWarnings();
+	}
+
+	public String getOutput() {
+		return new String(output.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	public Long getId() {
+		return job.getId();
+	}
+
+	public String getUsername() {
+		return job.getUsername();
+	}
+
+	public List<String> getProjectLabels() {
+		return job.getProjectLabels();
+	}
+
+	OutputStream getOutputStream() {
+		return output;
+	}
+
+	void run() throws Exception {
+		task.run(this);
+	}
+
+	void markRunning() {
+		synchronized (this) {
+			job.setStatus(JobStatus.RUNNING);
+			job.setStarted(new Date());
+		}
+		persistProgress();
+	}
+
+	void markFinished(String error) {
+		synchronized (this) {
+			job.setStatus(error == null ? JobStatus.FINISHED : JobStatus.FAILED);
+			job.setError(error);
+			job.setCurrentItem(null);
+			job.setOutput(getOutput());
+			job.setFinished(new Date());
+		}
+		jobDao.updateResult(job);
+	}
+
+	private void persistProgress() {
+		try {
+			jobDao.updateProgress(job);
+		} catch (RuntimeException e) {
+			// the job continues, its status is available in memory
+			LOG.log(Level.WARNING, "Unable to persist the progress of job " + job.getId(), e);
+		}
+	}
+
+	synchronized JobDto toDto() {
+		JobDto jobDto = new JobDto(job);
+		if (job.getOutput() == null) {
+			jobDto.setOutput(getOutput());
+		}
+		return jobDto;
+	}
+}
@@ -100,7 +100,7 @@ public class LesslCertProcessor extends AbstractProcessor implements DependencyI
 					if (createNewLesslCert(warningMessages, domain)) {
 						warningMessages.add("As cert " + certInfo.getFilename() + " is of issuer "
 								+ certInfo.getIssuerName() + " instead of "
-								+ certInfo.getLesslIssuerDefaultPartialName() + " a LESSL cert was generated.");
+								+ haProxyProcessor.getLesslIssuerPartialName() + " a LESSL cert was generated.");
 					}
 				} else {
 
@@ -131,7 +131,8 @@ public class LesslCertProcessor extends AbstractProcessor implements DependencyI
 
 	public boolean checkCertAndOptCreate(List<String> warningMessages, String domainName) {
 
-		if (domainIpChecker.checkDomain(warningMessages, domainName)) {
+		// certbot is called on a positive answer, so do not rely on cached DNS answers
+		if (domainIpChecker.checkDomain(warningMessages, domainName, false)) {
 
 			// check if LESSL valid cert is already available
 			Map<String, CertInfo> domainCertMap = haProxyProcessor.fetchDomainToCertFiles(warningMessages);
@@ -230,7 +231,7 @@ public class LesslCertProcessor extends AbstractProcessor implements DependencyI
 		Path combinedCert = getLESSLCertFilePath(domainName);
 		try {
 			Files.delete(combinedCert);
-			haProxyProcessor.fetchDomainToCertFiles(null).remove(domainName);
+			haProxyProcessor.removeLesslDomainFromMap(combinedCert);
 		} catch (Exception e) {
 			warningMessages.add(combinedCert.toString() + " could not be deleted: " + e.getMessage());
 		}
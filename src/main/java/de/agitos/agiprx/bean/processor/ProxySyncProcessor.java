@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (C) 2021 Florian Sager, www.agitos.de
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
  * 
  * This program is free software: you can redistribute it and/or modify
  * it under the terms of the GNU General Public License as published by
@@ -17,6 +17,8 @@
 package de.agitos.agiprx.bean.processor;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Callable;
@@ -24,18 +26,36 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import de.agitos.agiprx.ConsoleWrapper;
 import de.agitos.agiprx.DependencyInjector;
 import de.agitos.agiprx.bean.Config;
+import de.agitos.agiprx.exception.AbortionException;
 import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.FileSystemOperation;
 
 public class ProxySyncProcessor extends AbstractProcessor implements DependencyInjector {
 
 	private static ProxySyncProcessor BEAN;
 
+	// arguments of the slaveSyncCommand: full sync with database and restart,
+	// files only on replication or files with database and a reload by the slave
+	// REST API instead of the restart, restart only if that reload failed
+	private static final String SYNC_MODE_FULL = "full";
+	private static final String SYNC_MODE_FILES = "files";
+	private static final String SYNC_MODE_DATA = "data";
+	private static final String SYNC_MODE_RESTART = "restart";
+
+	private static final String SYNC_PREPARE = "prepare";
+
+	private static final String SNAPSHOT_DIRECTORY_PREFIX = "agiprx-sync-";
+
 	protected ConsoleWrapper console;
 
+	private ReplicationProcessor replicationProcessor;
+
 	private final boolean isMasterInstance;
 
 	private final List<String> slaveIpList;
@@ -44,6 +64,18 @@ public class ProxySyncProcessor extends AbstractProcessor implements DependencyI
 
 	private final String slaveSyncCommand;
 
+	// @Value("${agiprx.slaveSyncSnapshot:true}")
+	private final boolean slaveSyncSnapshot;
+
+	// @Value("${agiprx.slaveSyncParallelism:4}")
+	private final int slaveSyncParallelism;
+
+	// @Value("${agiprx.slaveSyncTimeout:900}")
+	private final int slaveSyncTimeoutSeconds;
+
+	// @Value("${agiprx.slaveSyncRetries:2}")
+	private final int slaveSyncRetries;
+
 	public ProxySyncProcessor() {
 
 		Assert.singleton(this, BEAN);
@@ -56,11 +88,22 @@ public class ProxySyncProcessor extends AbstractProcessor implements DependencyI
 		masterIp = Config.getBean().getString("agiprx.masterIp");
 
 		slaveSyncCommand = Config.getBean().getString("agiprx.slaveSyncCommand");
+
+		slaveSyncSnapshot = Config.getBean().getBoolean("agiprx.slaveSyncSnapshot", Boolean.TRUE);
+
+		slaveSyncParallelism = Config.getBean().getInteger("agiprx.slaveSyncParallelism", 4);
+
+		slaveSyncTimeoutSeconds = Config.getBean().getInteger("agiprx.slaveSyncTimeout", 900);
+
+		slaveSyncRetries = Config.getBean().getInteger("agiprx.slaveSyncRetries", 2);
+
+		Assert.isTrue(slaveSyncParallelism > 0, "agiprx.slaveSyncParallelism needs to be positive");
 	}
 
 	@Override
 	public void postConstruct() {
 		console = ConsoleWrapper.getBean();
+		replicationProcessor = ReplicationProcessor.getBean();
 	}
 
 	public static ProxySyncProcessor getBean() {
@@ -79,6 +122,11 @@ public class ProxySyncProcessor extends AbstractProcessor implements DependencyI
 		return isMasterInstance && slaveIpList != null && slaveIpList.size() > 0;
 	}
 
+	/*
+	 * One snapshot (file manifest with content hashes and database dump) is taken
+	 * for all slave instances, the slaves are synchronized concurrently with a
+	 * timeout and retries each.
+	 */
 	public void syncToSlaveInstances(boolean verbose, List<String> warningMessages) {
 
 		if (!isSyncRequired()) {
@@ -89,32 +137,52 @@ public class ProxySyncProcessor extends AbstractProcessor implements DependencyI
 		Assert.isTrue(verbose || warningMessages != null,
 				"Use either verbose output or return warning messages by List<String>");
 
-		ExecutorService executorService = Executors.newCachedThreadPool();
-		List<Callable<List<String>>> tasks = new ArrayList<Callable<List<String>>>();
-		for (String slaveIp : slaveIpList) {
-
-			if (verbose) {
-				console.printlnfStress("Sync to %s", slaveIp);
+		List<String> prepareWarnings = new ArrayList<String>();
+		String mode = replicationProcessor.isEnabled() ? SYNC_MODE_FILES
+				: replicationProcessor.isSlaveApiConfigured() ? SYNC_MODE_DATA : SYNC_MODE_FULL;
+		Path snapshotDirectory = slaveSyncSnapshot ? prepareSnapshot(mode, verbose, prepareWarnings) : null;
+		if (verbose) {
+			for (String warning : prepareWarnings) {
+				console.printlnfError(warning);
 			}
-
-			Callable<List<String>> c = new Callable<List<String>>() {
-				@Override
-				public List<String> call() throws Exception {
-					return syncToSlaveInstance(slaveIp, verbose);
-				}
-			};
-			tasks.add(c);
+		} else {
+			warningMessages.addAll(prepareWarnings);
 		}
+
+		AtomicInteger threadCount = new AtomicInteger();
+		ExecutorService executorService = Executors
+				.newFixedThreadPool(Math.min(slaveSyncParallelism, slaveIpList.size()), runnable -> {
+					Thread thread = new Thread(runnable, "SlaveSync-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+
+		int failedSlaves = 0;
+
 		try {
-			List<Future<List<String>>> threadResults = executorService.invokeAll(tasks);
+			List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>();
+			List<List<String>> slaveWarningLists = new ArrayList<List<String>>();
+			for (String slaveIp : slaveIpList) {
+				List<String> slaveWarnings = new ArrayList<String>();
+				slaveWarningLists.add(slaveWarnings);
+				tasks.add(() -> syncToSlaveInstance(slaveIp, mode, snapshotDirectory, verbose, slaveWarnings));
+			}
 
-			for (Future<List<String>> threadResult : threadResults) {
+			// futures are in the order of the tasks
+			List<Future<Boolean>> threadResults = executorService.invokeAll(tasks);
+			for (int i = 0; i < threadResults.size(); i++) {
+				// warnings of a successful sync, e.g. rsync or regeneration messages, don't
+				// count as failure
+				if (!threadResults.get(i).get()) {
+					failedSlaves++;
+				}
+				List<String> slaveWarnings = slaveWarningLists.get(i);
 				if (verbose) {
-					for (String warning : threadResult.get()) {
+					for (String warning : slaveWarnings) {
 						console.printlnfError(warning);
 					}
 				} else {
-					warningMessages.addAll(threadResult.get());
+					warningMessages.addAll(slaveWarnings);
 				}
 			}
 
@@ -124,51 +192,208 @@ public class ProxySyncProcessor extends AbstractProcessor implements DependencyI
 			} else {
 				warningMessages.add("sync to slave instances failed, " + e.getMessage());
 			}
+			if (e instanceof InterruptedException) {
+				Thread.currentThread().interrupt();
+			}
+
+		} finally {
+			// every sync command is bounded by its timeout
+			executorService.shutdownNow();
+			removeSnapshot(snapshotDirectory, warningMessages);
 		}
 
 		if (verbose) {
-			console.printlnfStress("Updated %d slave instance(s)", slaveIpList.size());
+			console.printlnfStress("Updated %d slave instance(s)", slaveIpList.size() - failedSlaves);
+		}
+	}
+
+	/**
+	 * @return null if the snapshot failed, the slaves are synchronized directly
+	 */
+	private Path prepareSnapshot(String mode, boolean verbose, List<String> warningMessages) {
+
+		Path snapshotDirectory = null;
+		try {
+			snapshotDirectory = Files.createTempDirectory(SNAPSHOT_DIRECTORY_PREFIX);
+
+			long start = System.currentTimeMillis();
+			if (runSlaveSyncCommand("snapshot", verbose, warningMessages, SYNC_PREPARE,
+					snapshotDirectory.toString(), mode)) {
+				if (verbose) {
+					console.printlnf("Took sync snapshot in %d ms", System.currentTimeMillis() - start);
+				}
+				return snapshotDirectory;
+			}
+
+		} catch (IOException | InterruptedException | AbortionException e) {
+			warningMessages.add("Sync snapshot failed: " + e.getMessage());
 		}
 
+		removeSnapshot(snapshotDirectory, warningMessages);
+		return null;
 	}
 
-	private List<String> syncToSlaveInstance(String slaveIp, boolean verbose) {
+	private void removeSnapshot(Path snapshotDirectory, List<String> warningMessages) {
+		if (snapshotDirectory != null) {
+			List<String> removeWarnings = new ArrayList<String>();
+			FileSystemOperation.deletePathRecursively(snapshotDirectory, snapshotDirectory.toString(),
+					removeWarnings);
+			if (warningMessages != null) {
+				warningMessages.addAll(removeWarnings);
+			}
+		}
+	}
 
-		List<String> warningMessages = new ArrayList<String>();
+	/**
+	 * @return false if the slave instance could not be synchronized
+	 */
+	private boolean syncToSlaveInstance(String slaveIp, String mode, Path snapshotDirectory, boolean verbose,
+			List<String> warningMessages) {
+
+		if (verbose) {
+			console.printlnfStress("Sync to %s", slaveIp);
+		}
 
 		try {
 
+			if (SYNC_MODE_FILES.equals(mode)) {
+
+				/*
+				 * Sync the files only, database changes are replicated by the change log and
+				 * the slave regenerates the affected configuration without restart. Files go
+				 * first as the configuration refers to the certificates.
+				 */
+				if (!syncWithRetries(slaveIp, SYNC_MODE_FILES, snapshotDirectory, verbose, warningMessages)) {
+					return false;
+				}
+
+				if (replicationProcessor.replicateToSlaveInstance(slaveIp, verbose, warningMessages)) {
+					return true;
+				}
+
+				if (verbose) {
+					console.printlnfStress("Slave %s requires a full sync", slaveIp);
+				}
+
+				// the snapshot contains no database dump
+				snapshotDirectory = null;
+			}
+
+			if (replicationProcessor.isSlaveApiConfigured()) {
+
+				/*
+				 * Sync files and database without restart, the slave reloads the database
+				 * state in-process and regenerates what differs from its last applied state
+				 */
+				if (!syncWithRetries(slaveIp, SYNC_MODE_DATA, snapshotDirectory, verbose, warningMessages)) {
+					return false;
+				}
+
+				try {
+					if (replicationProcessor.reloadSlaveInstance(slaveIp, verbose, warningMessages)) {
+						return true;
+					}
+
+					if (verbose) {
+						console.printlnfStress("Slave %s doesn't support the reload, restarting", slaveIp);
+					}
+
+				} catch (IOException | RuntimeException e) {
+					// the imported database needs to be loaded in any case
+					if (verbose) {
+						console.printlnfStress("Reload of %s failed, restarting: %s", slaveIp, e.getMessage());
+					}
+				}
+
+				// files and database are in place already, the restart loads them
+				return syncWithRetries(slaveIp, SYNC_MODE_RESTART, null, verbose, warningMessages);
+			}
+
 			/*
 			 * The slaveSyncCommand needs to (a) sync /etc/letsencrypt, /etc/haproxy and
 			 * database to target/slave server (b) restart agiprx on target server (with
 			 * implicit config reprocessing)
 			 */
+			return syncWithRetries(slaveIp, SYNC_MODE_FULL, snapshotDirectory, verbose, warningMessages);
 
-			StringBuilder output = new StringBuilder();
-			StringBuilder errorOutput = new StringBuilder();
-			exec(output, errorOutput, new String[] { slaveSyncCommand, slaveIp });
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			warningMessages.add("Sync to " + slaveIp + " failed: " + e.getMessage());
+			return false;
+		}
+	}
 
-			if (verbose) {
-				console.printf("%s", output.toString());
-			}
-			if (errorOutput.length() > 0) {
-				if (verbose) {
-					console.printlnfError("%s", errorOutput.toString());
+	private boolean syncWithRetries(String slaveIp, String mode, Path snapshotDirectory, boolean verbose,
+			List<String> warningMessages) throws InterruptedException {
+
+		String label = "Sync to " + slaveIp;
+
+		for (int attempt = 1;; attempt++) {
+
+			long start = System.currentTimeMillis();
+			List<String> attemptWarnings = new ArrayList<String>();
+
+			try {
+				boolean success;
+				if (snapshotDirectory != null) {
+					success = runSlaveSyncCommand(label, verbose, attemptWarnings, slaveIp, mode,
+							snapshotDirectory.toString());
+				} else if (SYNC_MODE_FULL.equals(mode)) {
+					// compatible to sync commands with the slave ip as only argument
+					success = runSlaveSyncCommand(label, verbose, attemptWarnings, slaveIp);
 				} else {
-					warningMessages.add("Sync to " + slaveIp + " : " + errorOutput.toString());
+					success = runSlaveSyncCommand(label, verbose, attemptWarnings, slaveIp, mode);
 				}
+
+				if (success) {
+					if (verbose) {
+						console.printlnf("%s (%s) finished in %d ms", label, mode,
+								System.currentTimeMillis() - start);
+					}
+					warningMessages.addAll(attemptWarnings);
+					return true;
+				}
+
+			} catch (IOException | AbortionException e) {
+				attemptWarnings.add(label + " failed: " + e.getMessage());
+			}
+
+			if (attempt > slaveSyncRetries) {
+				warningMessages.addAll(attemptWarnings);
+				return false;
 			}
 
-		} catch (IOException | InterruptedException e) {
-			String errorMsg = "Sync to " + slaveIp + " failed: " + e.getMessage();
 			if (verbose) {
-				console.printlnfError(errorMsg);
-			} else {
-				warningMessages.add(errorMsg);
+				console.printlnfError("%s (%s) failed in attempt %d, retrying", label, mode, attempt);
 			}
+			TimeUnit.SECONDS.sleep(5L * attempt);
 		}
+	}
+
+	/**
+	 * @return false if the command failed
+	 */
+	private boolean runSlaveSyncCommand(String label, boolean verbose, List<String> warningMessages,
+			String... arguments) throws IOException, InterruptedException, AbortionException {
+
+		String[] commandArray = new String[arguments.length + 1];
+		commandArray[0] = slaveSyncCommand;
+		System.arraycopy(arguments, 0, commandArray, 1, arguments.length);
 
-		return warningMessages;
+		StringBuilder output = new StringBuilder();
+		StringBuilder errorOutput = new StringBuilder();
+		int exitCode = exec(output, errorOutput, slaveSyncTimeoutSeconds, commandArray);
+
+		if (verbose) {
+			console.printf("%s", output.toString());
+		}
+		if (errorOutput.length() > 0) {
+			warningMessages.add(label + " : " + errorOutput.toString());
+		}
+		if (exitCode != 0) {
+			warningMessages.add(label + " failed with exit code " + exitCode);
+			return false;
+		}
+		return true;
 	}
 
 }
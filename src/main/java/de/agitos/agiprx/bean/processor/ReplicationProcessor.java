@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.json.bind.Jsonb;
+import javax.json.bind.JsonbBuilder;
+import javax.json.bind.JsonbConfig;
+
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.apache.sshd.common.keyprovider.KeyIdentityProvider;
+
+import de.agitos.agiprx.ConsoleWrapper;
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.bean.Config;
+import de.agitos.agiprx.dao.ChangeLogDao;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
+import de.agitos.agiprx.dto.ChangeLogEntryDto;
+import de.agitos.agiprx.dto.ChangeSetDto;
+import de.agitos.agiprx.dto.ReplicationStateDto;
+import de.agitos.agiprx.exception.AbortionException;
+import de.agitos.agiprx.util.Assert;
+
+/**
+ * Replicates the change log of the master to the slave instances: the master
+ * pushes the change sets after the last applied sequence of a slave to its REST
+ * API, the slave applies them in one transaction and regenerates the HAProxy
+ * and SSH proxy configuration that depends on the changed tables. Requests to
+ * the slaves pass an SSH tunnel.
+ */
+public class ReplicationProcessor implements DependencyInjector {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationProcessor.class.getName());
+
+	private static ReplicationProcessor BEAN;
+
+	static final Set<String> HAPROXY_TABLES = Collections.unmodifiableSet(
+			new HashSet<String>(Arrays.asList("project", "backend", "backend_container", "container", "domain")));
+
+	static final Set<String> SSH_PROXY_TABLES = Collections.unmodifiableSet(
+			new HashSet<String>(Arrays.asList("project", "container", "container_permission", "user", "host")));
+
+	private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+
+	static final String REGENERATED_HAPROXY = "haproxy";
+
+	static final String REGENERATED_SSH_PROXY = "sshproxy";
+
+	// @Value("${agiprx.replication:false}")
+	private final boolean enabled;
+
+	// @Value("${agiprx.replicationApiUser}")
+	private final String apiUser;
+
+	// @Value("${agiprx.replicationApiPassword}")
+	private final String apiPassword;
+
+	// @Value("${agiprx.slaveApiPort:${server.port}}")
+	private final int slaveApiPort;
+
+	// @Value("${agiprx.slaveSshPort:2222}")
+	private final int slaveSshPort;
+
+	// @Value("${agiprx.slaveSshKey:${user.home}/.ssh/id_rsa}")
+	private final String slaveSshKey;
+
+	// @Value("${agiprx.replicationBatchSize:1000}")
+	private final int batchSize;
+
+	// @Value("${agiprx.replicationTimeout:120}")
+	private final Duration requestTimeout;
+
+	// @Value("${agiprx.changeLogRetentionDays:30}")
+	private final int changeLogRetentionDays;
+
+	private final KeyIdentityProvider slaveKeyIdentityProvider;
+
+	private final HttpClient httpClient;
+
+	private final Jsonb jsonb;
+
+	// set if a regeneration failed after its change set was applied
+	private volatile boolean regenerationPending = false;
+
+	// table checksums of the last successful regeneration
+	private Map<String, Long> appliedFingerprint;
+
+	private ConsoleWrapper console;
+
+	private ChangeLogDao changeLogDao;
+
+	private ConfigSnapshotDao configSnapshotDao;
+
+	private HAProxyProcessor haProxyProcessor;
+
+	private SshProxyProcessor sshProxyProcessor;
+
+	public ReplicationProcessor() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+
+		Config config = Config.getBean();
+
+		enabled = config.getBoolean("agiprx.replication", Boolean.FALSE);
+		apiUser = config.getString("agiprx.replicationApiUser");
+		apiPassword = config.getString("agiprx.replicationApiPassword");
+		slaveApiPort = config.getInteger("agiprx.slaveApiPort", config.getInteger("server.port", 8002));
+		slaveSshPort = config.getInteger("agiprx.slaveSshPort", 2222);
+		slaveSshKey = config.getString("agiprx.slaveSshKey",
+				Paths.get(System.getProperty("user.home"), ".ssh", "id_rsa").toString());
+		batchSize = config.getInteger("agiprx.replicationBatchSize", 1000);
+		requestTimeout = Duration.ofSeconds(config.getInteger("agiprx.replicationTimeout", 120));
+		changeLogRetentionDays = config.getInteger("agiprx.changeLogRetentionDays", 30);
+
+		Assert.isTrue(!enabled || (apiUser != null && apiPassword != null),
+				"agiprx.replicationApiUser and agiprx.replicationApiPassword are required for agiprx.replication");
+		Assert.isTrue(batchSize > 0, "agiprx.replicationBatchSize needs to be positive");
+
+		slaveKeyIdentityProvider = new FileKeyPairProvider(Paths.get(slaveSshKey));
+		httpClient = HttpClient.newBuilder().connectTimeout(CONNECT_TIMEOUT).build();
+		jsonb = JsonbBuilder.create(new JsonbConfig().withNullValues(true));
+	}
+
+	@Override
+	public void postConstruct() {
+		console = ConsoleWrapper.getBean();
+		changeLogDao = ChangeLogDao.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
+		haProxyProcessor = HAProxyProcessor.getBean();
+		sshProxyProcessor = SshProxyProcessor.getBean();
+	}
+
+	public static ReplicationProcessor getBean() {
+		return BEAN;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return true if the master can call the REST API of the slave instances,
+	 *         e.g. to reload without restart
+	 */
+	public boolean isSlaveApiConfigured() {
+		return apiUser != null && apiPassword != null;
+	}
+
+	public boolean isReplicationUser(String username) {
+		return apiUser != null && apiUser.equals(username);
+	}
+
+	public void pruneChangeLog() {
+		int deleted = changeLogDao.deleteOlderThan(changeLogRetentionDays);
+		if (deleted > 0) {
+			LOG.log(Level.INFO, "Removed {0} change log entries older than {1} days",
+					new Object[] { deleted, changeLogRetentionDays });
+		}
+	}
+
+	public long getLastSequence() {
+		return changeLogDao.getLastSequence();
+	}
+
+	/**
+	 * Push the changes after the last applied sequence of the slave instance.
+	 * 
+	 * @return false if the slave instance needs a full synchronization, e.g. if the
+	 *         changes are not available in the change log anymore or the change
+	 *         log has a gap
+	 */
+	public boolean replicateToSlaveInstance(String slaveIp, boolean verbose, List<String> warningMessages)
+			throws IOException, InterruptedException {
+
+		try (SlaveApiTunnel tunnel = openTunnel(slaveIp)) {
+			return replicateToSlaveInstance(tunnel, slaveIp, verbose, warningMessages);
+		}
+	}
+
+	private boolean replicateToSlaveInstance(SlaveApiTunnel tunnel, String slaveIp, boolean verbose,
+			List<String> warningMessages) throws IOException, InterruptedException {
+
+		ReplicationStateDto slaveState = send(tunnel, slaveIp, "state", null, false);
+		if (slaveState == null) {
+			return false;
+		}
+
+		long sequence = slaveState.getLastSequence();
+		long firstSequence = changeLogDao.getFirstSequence();
+		long lastSequence = changeLogDao.getLastSequence();
+
+		if (sequence > lastSequence || (firstSequence > 0 && sequence < firstSequence - 1)) {
+			LOG.log(Level.INFO, "Change log of {0} ends at sequence {1}, available are {2} to {3}",
+					new Object[] { slaveIp, sequence, firstSequence, lastSequence });
+			return false;
+		}
+
+		int appliedEntries = 0;
+
+		while (true) {
+
+			ChangeSetDto changeSet = changeLogDao.readChanges(sequence, batchSize);
+
+			// an empty change set is sent as well, it retries a pending regeneration
+			if (!changeSet.getEntries().isEmpty() || appliedEntries == 0) {
+				ReplicationStateDto result = send(tunnel, slaveIp, "apply", changeSet, true);
+				if (result == null) {
+					return false;
+				}
+				for (String warning : result.getWarnings()) {
+					warningMessages.add("Replication to " + slaveIp + ": " + warning);
+				}
+				sequence = result.getLastSequence();
+				appliedEntries += changeSet.getEntries().size();
+			}
+
+			if (changeSet.isComplete()) {
+				break;
+			}
+
+			if (changeSet.getEntries().isEmpty()) {
+				// the entry after the sequence is missing, skipping it would lose changes
+				LOG.log(Level.WARNING, "Change log has a gap after sequence {0}, {1} requires a full sync",
+						new Object[] { sequence, slaveIp });
+				return false;
+			}
+		}
+
+		if (verbose) {
+			console.printlnf("Replicated %d change(s) to %s, sequence %d", appliedEntries, slaveIp, sequence);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Reload the slave instance after its database was imported instead of
+	 * restarting it.
+	 * 
+	 * @return false if the slave instance doesn't support the reload and needs a
+	 *         restart
+	 */
+	public boolean reloadSlaveInstance(String slaveIp, boolean verbose, List<String> warningMessages)
+			throws IOException, InterruptedException {
+
+		ReplicationStateDto result;
+		try (SlaveApiTunnel tunnel = openTunnel(slaveIp)) {
+			result = send(tunnel, slaveIp, "reload", null, true);
+		}
+		if (result == null) {
+			return false;
+		}
+
+		for (String warning : result.getWarnings()) {
+			warningMessages.add("Reload of " + slaveIp + ": " + warning);
+		}
+
+		if (verbose) {
+			console.printlnf("Reloaded %s, regenerated: %s", slaveIp,
+					result.getRegenerated().isEmpty() ? "nothing" : String.join(", ", result.getRegenerated()));
+		}
+
+		return true;
+	}
+
+	private SlaveApiTunnel openTunnel(String slaveIp) throws IOException {
+		return new SlaveApiTunnel(slaveKeyIdentityProvider, slaveIp, slaveSshPort, slaveApiPort,
+				CONNECT_TIMEOUT.toMillis());
+	}
+
+	/**
+	 * @return null if the slave instance doesn't provide the replication state and
+	 *         needs a full synchronization
+	 */
+	private ReplicationStateDto send(SlaveApiTunnel tunnel, String slaveIp, String path, Object body,
+			boolean post) throws IOException, InterruptedException {
+
+		String credentials = Base64.getEncoder()
+				.encodeToString((apiUser + ":" + apiPassword).getBytes(StandardCharsets.UTF_8));
+
+		HttpRequest.Builder request = HttpRequest
+				.newBuilder(URI.create(tunnel.getUrl() + "/replication/" + path))
+				.timeout(requestTimeout).header("Authorization", "Basic " + credentials);
+
+		if (!post) {
+			request.GET();
+		} else if (body == null) {
+			request.POST(HttpRequest.BodyPublishers.noBody());
+		} else {
+			request.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(jsonb.toJson(body), StandardCharsets.UTF_8));
+		}
+
+		HttpResponse<String> response = httpClient.send(request.build(),
+				HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8));
+
+		switch (response.statusCode()) {
+		case 200:
+			return jsonb.fromJson(response.body(), ReplicationStateDto.class);
+		case 404:
+		case 409:
+			// replication not available on the slave or change log conflict
+			LOG.log(Level.INFO, "Replication {0} on {1} answered {2}",
+					new Object[] { path, slaveIp, response.statusCode() });
+			return null;
+		default:
+			throw new IOException("Replication " + path + " on " + slaveIp + " failed with status "
+					+ response.statusCode() + ": " + response.body());
+		}
+	}
+
+	/**
+	 * Apply a change set of the master on a slave instance and regenerate the
+	 * configuration of the changed tables. HAProxy and SSH proxy processors write
+	 * only the artifacts and accounts that differ.
+	 * 
+	 * @return the applied sequence and warnings of the regeneration
+	 */
+	public synchronized ReplicationStateDto apply(ChangeSetDto changeSet) {
+
+		changeLogDao.applyChanges(changeSet);
+		configSnapshotDao.invalidate();
+
+		List<String> warningMessages = new ArrayList<String>();
+		List<String> regenerated = new ArrayList<String>();
+
+		RegenerationScope scope = regenerationPending ? RegenerationScope.ALL
+				: RegenerationScope.of(changeSet.getEntries());
+
+		try {
+			regenerate(scope, regenerated);
+
+		} catch (Exception e) {
+			LOG.log(Level.SEVERE, "Regeneration after replication failed", e);
+			warningMessages.add("Regeneration failed, it is retried on the next replication: " + e.getMessage());
+		}
+
+		return new ReplicationStateDto(changeSet.getToSequence(), warningMessages, regenerated);
+	}
+
+	/**
+	 * Reload the database state in-process, e.g. after the import of a database
+	 * dump, and regenerate the configuration of the tables that differ from the
+	 * last applied fingerprint. Regenerates all on the first call.
+	 */
+	public synchronized ReplicationStateDto reload() throws IOException, InterruptedException, AbortionException {
+
+		configSnapshotDao.invalidate();
+
+		RegenerationScope scope = regenerationPending ? RegenerationScope.ALL
+				: RegenerationScope.ofTables(getChangedTables(appliedFingerprint, changeLogDao.checksumTables()));
+
+		List<String> regenerated = new ArrayList<String>();
+		regenerate(scope, regenerated);
+
+		return new ReplicationStateDto(changeLogDao.getLastSequence(), new ArrayList<String>(), regenerated);
+	}
+
+	private void regenerate(RegenerationScope scope, List<String> regenerated)
+			throws IOException, InterruptedException, AbortionException {
+
+		// fetched before the regeneration, changes while regenerating are detected
+		// on the next call
+		Map<String, Long> fingerprint = changeLogDao.checksumTables();
+
+		try {
+			if (scope.isHaProxy()) {
+				haProxyProcessor.manageConfiguration(false, false);
+				regenerated.add(REGENERATED_HAPROXY);
+			}
+			if (scope.isSshProxy()) {
+				sshProxyProcessor.manageConfiguration(false);
+				regenerated.add(REGENERATED_SSH_PROXY);
+			}
+		} catch (IOException | InterruptedException | AbortionException | RuntimeException e) {
+			regenerationPending = true;
+			throw e;
+		}
+
+		regenerationPending = false;
+		appliedFingerprint = fingerprint;
+	}
+
+	/**
+	 * @return tables with a different checksum, all tables without previous
+	 *         fingerprint
+	 */
+	static Set<String> getChangedTables(Map<String, Long> previous, Map<String, Long> current) {
+
+		Set<String> changedTables = new TreeSet<String>();
+		for (Map.Entry<String, Long> checksum : current.entrySet()) {
+			if (previous == null || !checksum.getValue().equals(previous.get(checksum.getKey()))) {
+				changedTables.add(checksum.getKey());
+			}
+		}
+		return changedTables;
+	}
+
+	static class RegenerationScope {
+
+		static final RegenerationScope ALL = new RegenerationScope(true, true);
+
+		private final boolean haProxy;
+
+		private final boolean sshProxy;
+
+		private RegenerationScope(boolean haProxy, boolean sshProxy) {
+			this.haProxy = haProxy;
+			this.sshProxy = sshProxy;
+		}
+
+		static RegenerationScope of(List<ChangeLogEntryDto> entries) {
+			Set<String> tableNames = new HashSet<String>();
+			for (ChangeLogEntryDto entry : entries) {
+				tableNames.add(entry.getTableName());
+			}
+			return ofTables(tableNames);
+		}
+
+		static RegenerationScope ofTables(Set<String> tableNames) {
+			boolean haProxy = false;
+			boolean sshProxy = false;
+			for (String tableName : tableNames) {
+				haProxy |= HAPROXY_TABLES.contains(tableName);
+				sshProxy |= SSH_PROXY_TABLES.contains(tableName);
+			}
+			return new RegenerationScope(haProxy, sshProxy);
+		}
+
+		boolean isHaProxy() {
+			return haProxy;
+		}
+
+		boolean isSshProxy() {
+			return sshProxy;
+		}
+	}
+}
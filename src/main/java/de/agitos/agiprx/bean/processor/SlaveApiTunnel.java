@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.client.session.forward.ExplicitPortForwardingTracker;
+import org.apache.sshd.common.keyprovider.KeyIdentityProvider;
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+
+/**
+ * Forwards a local port to the REST API of a slave instance over the SSH access
+ * that sync-to-slave.sh uses, change sets and API credentials don't pass the
+ * network unencrypted.
+ */
+public class SlaveApiTunnel implements Closeable {
+
+	private final SshClient client;
+
+	private ClientSession session;
+
+	private ExplicitPortForwardingTracker tracker;
+
+	public SlaveApiTunnel(KeyIdentityProvider keyIdentityProvider, String slaveIp, int sshPort, int apiPort,
+			long connectTimeoutMillis) throws IOException {
+
+		client = SshClient.setUpDefaultClient();
+		// same as -oStrictHostKeyChecking=no of sync-to-slave.sh
+		client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+		client.setKeyIdentityProvider(keyIdentityProvider);
+		client.start();
+
+		try {
+			session = client.connect("root", slaveIp, sshPort).verify(connectTimeoutMillis).getSession();
+			session.auth().verify(connectTimeoutMillis);
+			tracker = session.createLocalPortForwardingTracker(
+					new SshdSocketAddress(SshdSocketAddress.LOCALHOST_IPV4, 0),
+					new SshdSocketAddress(SshdSocketAddress.LOCALHOST_IPV4, apiPort));
+		} catch (IOException | RuntimeException e) {
+			close();
+			throw new IOException("SSH tunnel to " + slaveIp + ":" + sshPort + " failed: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * @return base URL of the forwarded REST API
+	 */
+	public String getUrl() {
+		SshdSocketAddress boundAddress = tracker.getBoundAddress();
+		return "http://" + boundAddress.getHostName() + ":" + boundAddress.getPort();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			if (tracker != null) {
+				tracker.close();
+			}
+			if (session != null) {
+				session.close(true);
+			}
+		} finally {
+			client.stop();
+		}
+	}
+}
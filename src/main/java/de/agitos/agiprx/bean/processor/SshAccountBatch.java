@@ -0,0 +1,181 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import de.agitos.agiprx.exception.AbortionException;
+
+/**
+ * Collects account creations and password changes of a generation run and
+ * applies them with one newusers and one chpasswd invocation each instead of
+ * one process per account.
+ * 
+ * newusers and chpasswd ignore all changes of a batch if one line fails. Failed
+ * lines are attributed to their accounts by the line number or the quoted
+ * username of the error message, removed from the batch and the rest of the
+ * batch is applied again. Errors are reported per account. A batch that
+ * exceeds the timeout is killed and all of its accounts fail.
+ */
+public class SshAccountBatch extends AbstractProcessor {
+
+	private static final Pattern LINE_NUMBER = Pattern.compile("line (\\d+)");
+
+	private static final Pattern QUOTED_NAME = Pattern.compile("'([^']+)'");
+
+	// username -> newusers line
+	private final Map<String, String> newUsers = new LinkedHashMap<String, String>();
+
+	// username -> chpasswd line
+	private final Map<String, String> passwords = new LinkedHashMap<String, String>();
+
+	// username -> chpasswd -e line, used to remove passwords
+	private final Map<String, String> encryptedPasswords = new LinkedHashMap<String, String>();
+
+	// username -> error message
+	private final Map<String, String> errors = new LinkedHashMap<String, String>();
+
+	private final long timeoutSeconds;
+
+	public SshAccountBatch(long timeoutSeconds) {
+		this.timeoutSeconds = timeoutSeconds;
+	}
+
+	/**
+	 * @param password plain text password or null for an account without password
+	 */
+	public void addUser(String username, String password, String homeDirectory, String loginShell) {
+
+		String newUsersPassword = "";
+		if (password != null && password.indexOf(':') < 0 && password.indexOf('\n') < 0) {
+			newUsersPassword = password;
+		} else {
+			setPassword(username, password);
+		}
+
+		// pw_name:pw_passwd:pw_uid:pw_gid:pw_gecos:pw_dir:pw_shell, an empty gid
+		// creates a group with the name of the user
+		newUsers.put(username, String.join(":", username, newUsersPassword, "", "", "", homeDirectory, loginShell));
+	}
+
+	/**
+	 * @param password plain text password or null to remove the password
+	 */
+	public void setPassword(String username, String password) {
+		if (password == null) {
+			encryptedPasswords.put(username, username + ":");
+		} else {
+			passwords.put(username, username + ":" + password);
+		}
+	}
+
+	public boolean isEmpty() {
+		return newUsers.isEmpty() && passwords.isEmpty() && encryptedPasswords.isEmpty();
+	}
+
+	/**
+	 * Run all batches, new accounts first
+	 * 
+	 * @return error message by username of all failed entries
+	 */
+	public Map<String, String> apply() throws IOException, InterruptedException {
+
+		runBatch(newUsers, "newusers");
+
+		// passwords of accounts that could not be created fail anyway
+		passwords.keySet().removeAll(errors.keySet());
+		encryptedPasswords.keySet().removeAll(errors.keySet());
+
+		runBatch(passwords, "chpasswd");
+		runBatch(encryptedPasswords, "chpasswd", "-e");
+
+		return errors;
+	}
+
+	private void runBatch(Map<String, String> lines, String... command) throws IOException, InterruptedException {
+
+		while (!lines.isEmpty()) {
+
+			List<String> usernames = new ArrayList<String>(lines.keySet());
+
+			StringBuilder input = new StringBuilder();
+			for (String line : lines.values()) {
+				input.append(line).append("\n");
+			}
+
+			StringBuilder output = new StringBuilder();
+			StringBuilder errorOutput = new StringBuilder();
+			try {
+				if (execWithInput(output, errorOutput, input.toString(), timeoutSeconds, command) == 0) {
+					return;
+				}
+			} catch (AbortionException e) {
+				// changes of a killed batch are unknown, the accounts are retried next run
+				for (String username : usernames) {
+					errors.put(username, e.getMessage());
+				}
+				lines.clear();
+				return;
+			}
+
+			// attribute the error messages to their entries
+			int attributed = 0;
+			for (String errorLine : errorOutput.toString().split("\n")) {
+				String username = findUsername(errorLine, usernames);
+				if (username != null && lines.remove(username) != null) {
+					errors.put(username, errorLine.trim());
+					attributed++;
+				}
+			}
+
+			if (attributed == 0) {
+				// the whole batch failed, e.g. missing permissions
+				String message = String.join(" ", command) + " failed: " + errorOutput.toString().trim();
+				for (String username : usernames) {
+					errors.put(username, message);
+				}
+				lines.clear();
+			}
+		}
+	}
+
+	private String findUsername(String errorLine, List<String> usernames) {
+
+		Matcher matcher = LINE_NUMBER.matcher(errorLine);
+		if (matcher.find()) {
+			int lineNumber = Integer.parseInt(matcher.group(1));
+			if (lineNumber >= 1 && lineNumber <= usernames.size()) {
+				return usernames.get(lineNumber - 1);
+			}
+		}
+
+		matcher = QUOTED_NAME.matcher(errorLine);
+		while (matcher.find()) {
+			if (usernames.contains(matcher.group(1))) {
+				return matcher.group(1);
+			}
+		}
+
+		return null;
+	}
+}
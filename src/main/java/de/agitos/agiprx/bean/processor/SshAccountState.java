@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.util.Fingerprint;
+
+/**
+ * Actual state of the system accounts, read once per generation run from
+ * /etc/passwd and /etc/shadow, so SshProxyProcessor only applies differences
+ * to the desired state.
+ * 
+ * Passwords are set by chpasswd with a random salt, so a plain text password
+ * cannot be compared with its shadow hash. Instead the state file keeps a
+ * SHA-256 of shadow hash and encrypted DB password for every password set by
+ * agiprx, nothing derived from the plain text is written. A password is
+ * applied if the shadow hash is unchanged and the fingerprint matches.
+ * 
+ * Format of the state file: one tab separated line per account with username
+ * and fingerprint.
+ */
+public class SshAccountState {
+
+	private static final Logger LOG = Logger.getLogger(SshAccountState.class.getName());
+
+	private static final String HEADER = "# agiprx ssh account state, DO NOT EDIT";
+
+	private final Path shadowFile;
+
+	private final Path stateFile;
+
+	// username -> home directory
+	private final Map<String, String> homeDirectories;
+
+	// username -> shadow password field
+	private Map<String, String> passwordHashes;
+
+	// username -> fingerprint of shadow hash and encrypted password
+	private final Map<String, String> passwordFingerprints;
+
+	// encrypted passwords changed in this run, fingerprinted on store()
+	private final Map<String, String> changedPasswords = new HashMap<String, String>();
+
+	private boolean modified = false;
+
+	public SshAccountState(Path passwdFile, Path shadowFile, Path stateFile) throws IOException {
+		this.shadowFile = shadowFile;
+		this.stateFile = stateFile;
+
+		this.homeDirectories = readColumn(passwdFile, 5);
+		this.passwordHashes = readColumn(shadowFile, 1);
+		this.passwordFingerprints = readStateFile();
+	}
+
+	public boolean userExists(String username) {
+		return homeDirectories.containsKey(username);
+	}
+
+	public void userCreated(String username, String homeDirectory) {
+		homeDirectories.put(username, homeDirectory);
+		// useradd creates a locked account
+		passwordHashes.put(username, "!");
+	}
+
+	public void userRemoved(String username) {
+		homeDirectories.remove(username);
+		passwordHashes.remove(username);
+		if (passwordFingerprints.remove(username) != null) {
+			modified = true;
+		}
+	}
+
+	/**
+	 * @param encryptedPassword password as stored in the DB or null for an account
+	 *                          without password
+	 */
+	public boolean isPasswordApplied(String username, String encryptedPassword) {
+
+		String hash = passwordHashes.get(username);
+		if (hash == null) {
+			return false;
+		}
+
+		if (encryptedPassword == null) {
+			return hash.isEmpty();
+		}
+
+		String fingerprint = passwordFingerprints.get(username);
+		return fingerprint != null && fingerprint.equals(fingerprint(hash, encryptedPassword));
+	}
+
+	public void passwordChanged(String username, String encryptedPassword) {
+		changedPasswords.put(username, encryptedPassword);
+		if (encryptedPassword == null) {
+			passwordHashes.put(username, "");
+		}
+	}
+
+	/**
+	 * Fingerprint changed passwords against the new shadow hashes and write the
+	 * state file if it was modified
+	 */
+	public void store() {
+
+		if (!changedPasswords.isEmpty()) {
+			try {
+				passwordHashes = readColumn(shadowFile, 1);
+			} catch (IOException e) {
+				LOG.log(Level.WARNING, "Could not read " + shadowFile, e);
+				passwordHashes = new HashMap<String, String>();
+			}
+			for (Map.Entry<String, String> entry : changedPasswords.entrySet()) {
+				String hash = passwordHashes.get(entry.getKey());
+				if (entry.getValue() == null || hash == null) {
+					passwordFingerprints.remove(entry.getKey());
+				} else {
+					passwordFingerprints.put(entry.getKey(), fingerprint(hash, entry.getValue()));
+				}
+			}
+			changedPasswords.clear();
+			modified = true;
+		}
+
+		if (!modified) {
+			return;
+		}
+
+		List<String> lines = new ArrayList<String>();
+		lines.add(HEADER);
+		for (Map.Entry<String, String> entry : passwordFingerprints.entrySet()) {
+			lines.add(entry.getKey() + "\t" + entry.getValue());
+		}
+
+		try {
+			Path tmpFile = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+			Files.deleteIfExists(tmpFile);
+			Files.createFile(tmpFile, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));
+			Files.write(tmpFile, lines);
+			Files.move(tmpFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			modified = false;
+		} catch (IOException e) {
+			// the state is an optimization only, passwords are set again on the next run
+			LOG.log(Level.WARNING, "Could not write ssh account state " + stateFile, e);
+		}
+	}
+
+	public Set<String> getUsernames() {
+		return homeDirectories.keySet();
+	}
+
+	private static String fingerprint(String hash, String encryptedPassword) {
+		return Fingerprint.sha256(hash + ":" + encryptedPassword);
+	}
+
+	private static Map<String, String> readColumn(Path file, int column) throws IOException {
+		Map<String, String> result = new HashMap<String, String>();
+		for (String line : Files.readAllLines(file)) {
+			String[] fields = line.split(":", -1);
+			if (fields.length > column) {
+				result.put(fields[0], fields[column]);
+			}
+		}
+		return result;
+	}
+
+	private Map<String, String> readStateFile() {
+
+		Map<String, String> result = new HashMap<String, String>();
+
+		if (!Files.exists(stateFile)) {
+			return result;
+		}
+
+		try {
+			for (String line : Files.readAllLines(stateFile)) {
+				if (line.isEmpty() || line.startsWith("#")) {
+					continue;
+				}
+				String[] fields = line.split("\t", -1);
+				if (fields.length == 2) {
+					result.put(fields[0], fields[1]);
+				}
+			}
+		} catch (IOException e) {
+			LOG.log(Level.WARNING, "Could not read ssh account state " + stateFile, e);
+		}
+
+		return result;
+	}
+}
@@ -21,26 +21,39 @@ import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.LinkOption;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.util.Arrays;
 import java.util.ArrayList;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+
+import de.agitos.agiprx.AgiPrx;
 import de.agitos.agiprx.ConsoleWrapper;
 import de.agitos.agiprx.DependencyInjector;
 import de.agitos.agiprx.bean.Config;
-import de.agitos.agiprx.dao.ProjectDao;
-import de.agitos.agiprx.dao.RelationType;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.exception.AbortionException;
 import de.agitos.agiprx.model.Container;
 import de.agitos.agiprx.model.ContainerPermission;
 import de.agitos.agiprx.model.Project;
 import de.agitos.agiprx.model.User;
+import de.agitos.agiprx.ssh.AuthorizedKeysIndex;
 import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.FileSystemOperation;
+import de.agitos.agiprx.util.FileWriteStats;
 import de.agitos.agiprx.util.UserContext;
 import de.agitos.agiprx.util.Validator;
 
@@ -56,7 +69,7 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 
 	protected ConsoleWrapper console;
 
-	private ProjectDao projectDao;
+	private ConfigSnapshotDao configSnapshotDao;
 
 	protected Validator validator;
 
@@ -64,6 +77,41 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 
 	private ProxySyncProcessor proxySyncProcessor;
 
+	protected Path passwdFile = Paths.get("/etc/passwd");
+
+	protected Path shadowFile = Paths.get("/etc/shadow");
+
+	private final Path accountStateFile;
+
+	// @Value("${agiprx.authorizedKeysLookup:false}")
+	private final boolean authorizedKeysLookup;
+
+	private final int containerSshParallelism;
+
+	private final long containerSshConnectTimeoutMillis;
+
+	private final long containerSshCommandTimeoutMillis;
+
+	// @Value("${agiprx.accountBatchTimeout:300}")
+	private final long accountBatchTimeoutSeconds;
+
+	// @Value("${agiprx.sshMultiplexing:false}")
+	private final boolean sshMultiplexing;
+
+	// @Value("${agiprx.sshControlPersist:60}")
+	private final String sshControlPersist;
+
+	private static final Charset LATIN1 = Charset.forName("latin1");
+
+	private static final Set<PosixFilePermission> LOGIN_SHELL_SCRIPT_PERMISSIONS = PosixFilePermissions
+			.fromString("rwxr-xr-x");
+
+	private static final Set<PosixFilePermission> PRIVATE_KEY_PERMISSIONS = PosixFilePermissions
+			.fromString("rw-------");
+
+	private static final Set<PosixFilePermission> CONTROL_SOCKET_DIRECTORY_PERMISSIONS = PosixFilePermissions
+			.fromString("rwx------");
+
 	public SshProxyProcessor() {
 
 		Assert.singleton(this, BEAN);
@@ -71,12 +119,25 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 
 		homeRootDirectory = Config.getBean().getString("agiprx.homeDirectory", "/home/");
 		defaultSshKeyFullpath = Config.getBean().getString("agiprx.defaultSshKey", "/opt/agiprx/etc/prx_rsa");
+		accountStateFile = Paths.get(Config.getBean().getString("agiprx.sshAccountStateFile",
+				Paths.get(AgiPrx.agiPrxRootDirectory, "etc", "ssh-account-state.tsv").toString()));
+		authorizedKeysLookup = Config.getBean().getBoolean("agiprx.authorizedKeysLookup", false);
+		containerSshParallelism = Config.getBean().getInteger("agiprx.containerSshParallelism", 8);
+		containerSshConnectTimeoutMillis = Config.getBean().getInteger("agiprx.containerSshConnectTimeout", 10)
+				* 1000L;
+		containerSshCommandTimeoutMillis = Config.getBean().getInteger("agiprx.containerSshCommandTimeout", 30)
+				* 1000L;
+		accountBatchTimeoutSeconds = Config.getBean().getInteger("agiprx.accountBatchTimeout", 300);
+		sshMultiplexing = Config.getBean().getBoolean("agiprx.sshMultiplexing", false);
+		sshControlPersist = Config.getBean().getString("agiprx.sshControlPersist", "60");
+		Assert.isTrue(sshControlPersist.matches("[0-9]+[smhdwSMHDW]?"),
+				"agiprx.sshControlPersist needs to be a time like 60 or 10m");
 	}
 
 	@Override
 	public void postConstruct() {
 		console = ConsoleWrapper.getBean();
-		projectDao = ProjectDao.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
 		validator = Validator.getBean();
 		userContext = UserContext.getBean();
 		proxySyncProcessor = ProxySyncProcessor.getBean();
@@ -86,32 +147,57 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 		return BEAN;
 	}
 
+	/*
+	 * Read the actual state of all system accounts once per generation run
+	 */
+	protected SshAccountState readAccountState() throws IOException {
+		return new SshAccountState(passwdFile, shadowFile, accountStateFile);
+	}
+
 	public void manageConfiguration(boolean verbose) throws IOException, InterruptedException, AbortionException {
 
-		Set<String> processedUserAccounts = new HashSet<String>();
+		List<SshProxyUser> prxUsers = new ArrayList<SshProxyUser>();
 
 		// HINT: all projects are processed; only user's projects are shown in verbose
 		// mode
-		for (Project project : projectDao.findAllAsAdmin(EnumSet.of(RelationType.CONTAINER, RelationType.PERMISSION))) {
+		for (Project project : configSnapshotDao.getSnapshot().getProjects()) {
 
 			boolean projectVerbose = verbose && userContext.isUserAllowed(project.getLabel());
 
 			if (projectVerbose) {
 				console.printlnfStress("Project %s (%s)", project.getLabel(), project.getFullname());
 			}
-			processedUserAccounts.addAll(manageConfiguration(project, projectVerbose));
+			collectProxyUsers(project, projectVerbose, prxUsers);
 			if (projectVerbose) {
 				console.printlnf("\n");
 			}
 		}
 
-		// CLEANUP: remove all accounts in /home that were not processed
-		cleanupProxyUsers(processedUserAccounts);
+		SshAccountState accountState = readAccountState();
+		try {
+			Set<String> processedUserAccounts = applyProxyUsers(prxUsers, accountState, verbose);
+
+			// CLEANUP: remove all accounts in /home that were not processed
+			cleanupProxyUsers(processedUserAccounts, accountState);
+		} finally {
+			accountState.store();
+		}
 	}
 
 	protected void cleanupProxyUsers(Set<String> keepUsernames)
 			throws IOException, InterruptedException, AbortionException {
 
+		SshAccountState accountState = readAccountState();
+		try {
+			cleanupProxyUsers(keepUsernames, accountState);
+		} finally {
+			accountState.store();
+		}
+	}
+
+	private void cleanupProxyUsers(Set<String> keepUsernames, SshAccountState accountState)
+			throws IOException, InterruptedException, AbortionException {
+
 		try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(Paths.get(homeRootDirectory))) {
 			for (Path path : directoryStream) {
 
@@ -132,8 +218,9 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 				}
 
 				// remove account if not processed anymore
-				if (userExists(username)) {
+				if (accountState.userExists(username)) {
 					removeUser(username);
+					accountState.userRemoved(username);
 				}
 			}
 		} catch (IOException ex) {
@@ -144,7 +231,32 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 	public Set<String> manageConfiguration(Project project, boolean verbose)
 			throws IOException, InterruptedException, AbortionException {
 
-		Set<String> processedUserAccounts = new HashSet<String>();
+		List<SshProxyUser> prxUsers = new ArrayList<SshProxyUser>();
+		collectProxyUsers(project, verbose, prxUsers);
+
+		SshAccountState accountState = readAccountState();
+		try {
+			return applyProxyUsers(prxUsers, accountState, verbose);
+		} finally {
+			accountState.store();
+		}
+	}
+
+	public Set<String> manageConfiguration(Container container, boolean verbose)
+			throws IOException, InterruptedException, AbortionException {
+
+		List<SshProxyUser> prxUsers = new ArrayList<SshProxyUser>();
+		collectProxyUsers(container, verbose, prxUsers);
+
+		SshAccountState accountState = readAccountState();
+		try {
+			return applyProxyUsers(prxUsers, accountState, verbose);
+		} finally {
+			accountState.store();
+		}
+	}
+
+	private void collectProxyUsers(Project project, boolean verbose, List<SshProxyUser> prxUsers) {
 
 		for (Container container : project.getContainers()) {
 
@@ -155,18 +267,16 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 				console.printlnfStress("  Container %s (%s)", container.getLabel(), container.getIpv6());
 			}
 
-			processedUserAccounts.addAll(manageConfiguration(container, verbose));
+			collectProxyUsers(container, verbose, prxUsers);
 		}
-
-		return processedUserAccounts;
 	}
 
-	public Set<String> manageConfiguration(Container container, boolean verbose)
-			throws IOException, InterruptedException, AbortionException {
-
-		Set<String> processedUserAccounts = new HashSet<String>();
+	/*
+	 * Compute the desired proxy accounts of a container
+	 */
+	private void collectProxyUsers(Container container, boolean verbose, List<SshProxyUser> prxUsers) {
 
-		Map<String, SshProxyUser> prxUsers = new HashMap<>();
+		Map<String, SshProxyUser> containerPrxUsers = new LinkedHashMap<>();
 
 		for (ContainerPermission permission : container.getContainerPermissions()) {
 
@@ -175,84 +285,145 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 
 			String sshProxyUsername = permission.getSshProxyUsername();
 
-			if (!prxUsers.containsKey(sshProxyUsername)) {
-				prxUsers.put(sshProxyUsername, new SshProxyUser(sshProxyUsername, permission.getPassword(),
-						permission.getPermission(), container));
+			if (!containerPrxUsers.containsKey(sshProxyUsername)) {
+				SshProxyUser prxUser = new SshProxyUser(sshProxyUsername, permission.getPassword(),
+						permission.getPermission(), container);
+				prxUser.setEncryptedProxyPassword(permission.getEncryptedPassword());
+				containerPrxUsers.put(sshProxyUsername, prxUser);
 			}
 
-			prxUsers.get(sshProxyUsername).addAllowedUser(permission.getUser());
+			containerPrxUsers.get(sshProxyUsername).addAllowedUser(permission.getUser());
 		}
 
-		// process SshProxyUsers
-		for (SshProxyUser prxUser : prxUsers.values()) {
+		for (SshProxyUser prxUser : containerPrxUsers.values()) {
+
+			prxUser.setVerbose(verbose);
 
 			if (verbose) {
 				console.printlnf("    # %s%s", prxUser.getProxyUsername(),
 						prxUser.getProxyPassword() != null ? " with password" : "");
+				for (User allowedUser : prxUser.getAllowedUsers()) {
+					console.printlnf("      %s (%s)", allowedUser.getFullname(), allowedUser.getEmail());
+				}
 			}
 
-			// check if user exists, opt. creation
-			if (!userExists(prxUser.getProxyUsername())) {
-				createUser(prxUser);
+			prxUsers.add(prxUser);
+		}
+	}
+
+	/*
+	 * Apply the desired state of the proxy accounts: missing accounts are created
+	 * and passwords that differ are set in one batch, then only login shell
+	 * scripts and authorized_keys files that differ are written. An account that
+	 * fails is reported and skipped, it doesn't abort the run.
+	 */
+	private Set<String> applyProxyUsers(List<SshProxyUser> prxUsers, SshAccountState accountState,
+			boolean verbose) throws IOException, InterruptedException, AbortionException {
+
+		Set<String> processedUserAccounts = new HashSet<String>();
+
+		List<SshProxyUser> newPrxUsers = new ArrayList<SshProxyUser>();
+		List<SshProxyUser> changedPasswordPrxUsers = new ArrayList<SshProxyUser>();
+
+		SshAccountBatch batch = new SshAccountBatch(accountBatchTimeoutSeconds);
+
+		for (SshProxyUser prxUser : prxUsers) {
+			if (!accountState.userExists(prxUser.getProxyUsername())) {
+				batch.addUser(prxUser.getProxyUsername(), prxUser.getProxyPassword(), prxUser.getHomeDirectory(),
+						prxUser.getLoginShellScriptFile());
+				newPrxUsers.add(prxUser);
+			} else if (!accountState.isPasswordApplied(prxUser.getProxyUsername(),
+					prxUser.getEncryptedProxyPassword())) {
+				batch.setPassword(prxUser.getProxyUsername(), prxUser.getProxyPassword());
+				changedPasswordPrxUsers.add(prxUser);
 			}
+		}
 
-			if (prxUser.getProxyPassword() != null) {
-				// set password if available
-				if (execWithInput("chpasswd", prxUser.getProxyUsername() + ":" + prxUser.getProxyPassword()) != 0) {
-					throw new AbortionException("Setting password for user " + prxUser.getProxyUsername() + " failed");
+		Map<String, String> errors = batch.isEmpty() ? new HashMap<String, String>() : batch.apply();
+
+		for (SshProxyUser prxUser : newPrxUsers) {
+			if (!errors.containsKey(prxUser.getProxyUsername())) {
+				try {
+					setupHomeDirectory(prxUser);
+				} catch (IOException e) {
+					errors.put(prxUser.getProxyUsername(), "Setting up home directory failed: " + e.getMessage());
+					continue;
 				}
-			} else {
-				// reset password if not available
-				exec(0, "passwd", "-d", prxUser.getProxyUsername());
+				accountState.userCreated(prxUser.getProxyUsername(), prxUser.getHomeDirectory());
+				accountState.passwordChanged(prxUser.getProxyUsername(), prxUser.getEncryptedProxyPassword());
+			}
+		}
+
+		for (SshProxyUser prxUser : changedPasswordPrxUsers) {
+			if (!errors.containsKey(prxUser.getProxyUsername())) {
+				accountState.passwordChanged(prxUser.getProxyUsername(), prxUser.getEncryptedProxyPassword());
+			}
+		}
+
+		ContainerCommandRunner scpwdWriter = new ContainerCommandRunner(
+				new FileKeyPairProvider(Paths.get(defaultSshKeyFullpath)), containerSshParallelism,
+				containerSshConnectTimeoutMillis, containerSshCommandTimeoutMillis);
+		Map<String, SshProxyUser> scpwdPrxUsers = new HashMap<String, SshProxyUser>();
+		FileWriteStats fileWriteStats = new FileWriteStats();
+
+		for (SshProxyUser prxUser : prxUsers) {
+
+			// keep failed accounts, they are retried with the next run
+			processedUserAccounts.add(prxUser.getProxyUsername());
+
+			if (errors.containsKey(prxUser.getProxyUsername())) {
+				console.printlnfError("Account %s: %s", prxUser.getProxyUsername(),
+						errors.get(prxUser.getProxyUsername()));
+				continue;
 			}
 
 			// re-generate login shell script
-			generateLoginShellScript(prxUser);
+			generateLoginShellScript(prxUser, fileWriteStats);
 
 			// re-generate authorized_keys file
-			generateAuthorizedKeysFile(prxUser, verbose);
+			generateAuthorizedKeysFile(prxUser, fileWriteStats);
 
 			if (proxySyncProcessor.isMasterInstance()) {
 				// write ProxyUsername to container for scpwd.sh
-				writeProxyUsernameToContainer(prxUser, verbose);
+				addWriteProxyUsernameToContainer(scpwdWriter, prxUser);
+				scpwdPrxUsers.put(prxUser.getProxyUsername(), prxUser);
 			}
+		}
 
-			// add username to list of processed accounts
-			processedUserAccounts.add(prxUser.getProxyUsername());
+		if (!scpwdWriter.isEmpty()) {
+			reportWriteProxyUsernameToContainers(scpwdWriter.run(), scpwdPrxUsers);
+		}
+
+		if (verbose) {
+			console.printlnf("SSH proxy files: %s", fileWriteStats);
 		}
 
 		return processedUserAccounts;
 	}
 
-	private void writeProxyUsernameToContainer(SshProxyUser prxUser, boolean verbose) {
+	private void addWriteProxyUsernameToContainer(ContainerCommandRunner scpwdWriter, SshProxyUser prxUser) {
+		scpwdWriter.add(prxUser.getProxyUsername(), prxUser.getContainerUsername(), prxUser.getContainer().getIpv6(),
+				22, "/bin/bash -c \"/bin/echo 'LOGIN=" + prxUser.getProxyUsername() + "@proxy.agitos.de' > ~/.scpwd\"");
+	}
 
-		StringBuilder out = new StringBuilder();
-		StringBuilder errOut = new StringBuilder();
-		try {
-			// exec(out, errOut, "ssh", "-p22", "-6", "-i" + defaultSshKeyFullpath,
-			// "-oStrictHostKeyChecking=no",
-			// prxUser.getContainerUsername() + "@" + prxUser.getContainer().getIpv6(),
-			// "\"/bin/echo 'LOGIN="
-			// + prxUser.getProxyUsername() + "@proxy.agitos.de' >
-			// /root/tools/scpwd.conf\"");
-
-			exec(out, errOut, "ssh", "-p22", "-6", "-i" + defaultSshKeyFullpath, "-oStrictHostKeyChecking=no",
-					prxUser.getContainerUsername() + "@" + prxUser.getContainer().getIpv6(),
-					"/bin/bash -c \"/bin/echo 'LOGIN=" + prxUser.getProxyUsername() + "@proxy.agitos.de' > ~/.scpwd\"");
-
-		} catch (Exception e) {
-			if (verbose) {
+	private void reportWriteProxyUsernameToContainers(ContainerCommandRunner.Report report,
+			Map<String, SshProxyUser> prxUsersByUsername) {
+
+		boolean verbose = false;
+
+		for (ContainerCommandRunner.Result result : report.getResults()) {
+
+			SshProxyUser prxUser = prxUsersByUsername.get(result.getLabel());
+			verbose |= prxUser.isVerbose();
+
+			if (!result.isSuccess() && prxUser.isVerbose()) {
 				console.printlnfError("Error writing .scpwd for %s on container %s: %s", prxUser.getContainerUsername(),
-						prxUser.getContainer().getFQLabel(), e.getMessage());
+						prxUser.getContainer().getFQLabel(), result.getMessage());
 			}
 		}
+
 		if (verbose) {
-			if (out.length() > 0) {
-				console.printlnf(out.toString());
-			}
-			if (errOut.length() > 0) {
-				console.printlnfError(errOut.toString());
-			}
+			console.printlnf("Wrote .scpwd files: %s", report.getSummary());
 		}
 	}
 
@@ -264,75 +435,127 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 	protected void createUser(SshProxyUser prxUser) throws IOException, InterruptedException, AbortionException {
 		exec(0, "useradd", "-d", prxUser.getHomeDirectory(), "-s", prxUser.getLoginShellScriptFile(),
 				prxUser.getProxyUsername());
-		exec(0, "mkdir", "-p", prxUser.getSshDirectory());
-		exec(0, "cp", defaultSshKeyFullpath, prxUser.getSshPrivateKeyFile());
+		setupHomeDirectory(prxUser);
+	}
+
+	/*
+	 * Create the SSH directory with the proxy key and the .hushlogin file and hand
+	 * the home directory over to the account
+	 */
+	private void setupHomeDirectory(SshProxyUser prxUser) throws IOException {
+
+		Files.createDirectories(Paths.get(prxUser.getSshDirectory()));
+
+		Path privateKeyFile = Paths.get(prxUser.getSshPrivateKeyFile());
+		Files.copy(Paths.get(defaultSshKeyFullpath), privateKeyFile, StandardCopyOption.REPLACE_EXISTING);
+		Files.setPosixFilePermissions(privateKeyFile, PRIVATE_KEY_PERMISSIONS);
+
 		// turn off the login banner
-		exec(0, "touch", prxUser.getHushLoginFile());
-		exec(0, "chown", "-R", prxUser.getProxyUsername() + "." + prxUser.getProxyUsername(),
-				prxUser.getHomeDirectory());
+		Path hushLoginFile = Paths.get(prxUser.getHushLoginFile());
+		if (!Files.exists(hushLoginFile)) {
+			Files.createFile(hushLoginFile);
+		}
+
+		try (Stream<Path> paths = Files.walk(Paths.get(prxUser.getHomeDirectory()))) {
+			for (Path path : (Iterable<Path>) paths::iterator) {
+				setOwner(path, prxUser.getProxyUsername());
+			}
+		}
+	}
+
+	private void setOwner(Path path, String username) throws IOException {
+		UserPrincipalLookupService lookupService = path.getFileSystem().getUserPrincipalLookupService();
+		PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class,
+				LinkOption.NOFOLLOW_LINKS);
+		view.setOwner(lookupService.lookupPrincipalByName(username));
+		view.setGroup(lookupService.lookupPrincipalByGroupName(username));
 	}
 
 	private void removeUser(String username) throws IOException, InterruptedException, AbortionException {
 		exec(0, "userdel", "-rf", username);
 	}
 
-	private void generateLoginShellScript(SshProxyUser prxUser)
-			throws IOException, InterruptedException, AbortionException {
+	private void generateLoginShellScript(SshProxyUser prxUser, FileWriteStats fileWriteStats) throws IOException {
 		List<String> lines = new ArrayList<>();
 
 		lines.add("#!/bin/bash");
 		lines.add("export SSH_ORIGINAL_COMMAND=${*:2}");
 
-		StringBuilder buf = new StringBuilder();
-		buf.append("ssh -t -A -p22 -6 -oLogLevel=QUIET -oSendEnv=SSH_LOGIN_USER -oStrictHostKeyChecking=no -i ");
-		buf.append(prxUser.getSshPrivateKeyFile()).append(" ");
-		buf.append(prxUser.getContainerUsername()).append("@").append(prxUser.getContainer().getIpv6());
-		buf.append(" $SSH_ORIGINAL_COMMAND");
-		lines.add(buf.toString());
+		StringBuilder target = new StringBuilder();
+		target.append("-i ").append(prxUser.getSshPrivateKeyFile()).append(" ");
+		target.append(prxUser.getContainerUsername()).append("@").append(prxUser.getContainer().getIpv6());
+		target.append(" $SSH_ORIGINAL_COMMAND");
+
+		String plainSsh = "ssh -t -A -p22 -6 -oLogLevel=QUIET -oSendEnv=SSH_LOGIN_USER -oStrictHostKeyChecking=no "
+				+ target;
+
+		if (sshMultiplexing) {
+			ensureControlSocketDirectory(prxUser);
+
+			// the agent forwarded by a master connection would be used by all logins
+			// sharing it, so logins with agent forwarding connect on their own
+			lines.add("if [ -z \"$SSH_AUTH_SOCK\" ]; then");
+			lines.add("ssh -t -p22 -6 -oLogLevel=QUIET -oSendEnv=SSH_LOGIN_USER -oStrictHostKeyChecking=no"
+					+ " -oControlMaster=auto -oControlPath=" + prxUser.getControlSocketDirectory() + "%C"
+					+ " -oControlPersist=" + sshControlPersist + " " + target);
+			lines.add("else");
+			lines.add(plainSsh);
+			lines.add("fi");
+		} else {
+			lines.add(plainSsh);
+		}
 
 		Path file = Paths.get(prxUser.getLoginShellScriptFile());
-		Files.write(file, lines, Charset.forName("latin1"));
-
-		exec(0, "chmod", "755", prxUser.getLoginShellScriptFile());
+		fileWriteStats.count(FileSystemOperation.writeIfChanged(file, lines, LATIN1, LOGIN_SHELL_SCRIPT_PERMISSIONS));
 	}
 
-	private void generateAuthorizedKeysFile(SshProxyUser prxUser, boolean verbose)
-			throws IOException, InterruptedException, AbortionException {
-		List<String> lines = new ArrayList<>();
+	/*
+	 * The control sockets of multiplexed connections must only be accessible by
+	 * the proxy account
+	 */
+	private void ensureControlSocketDirectory(SshProxyUser prxUser) throws IOException {
 
-		for (User allowedUser : prxUser.getAllowedUsers()) {
+		Path directory = Paths.get(prxUser.getControlSocketDirectory());
 
-			if (verbose) {
-				console.printlnf("      %s (%s)", allowedUser.getFullname(), allowedUser.getEmail());
+		if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+			Files.createDirectories(directory);
+		}
+		if (!CONTROL_SOCKET_DIRECTORY_PERMISSIONS.equals(Files.getPosixFilePermissions(directory))) {
+			Files.setPosixFilePermissions(directory, CONTROL_SOCKET_DIRECTORY_PERMISSIONS);
+		}
+		if (!prxUser.getProxyUsername().equals(Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS).getName())) {
+			setOwner(directory, prxUser.getProxyUsername());
+		}
+	}
+
+	private void generateAuthorizedKeysFile(SshProxyUser prxUser, FileWriteStats fileWriteStats)
+			throws IOException {
+
+		if (authorizedKeysLookup) {
+			// sshd queries the keys by AuthorizedKeysCommand, a remaining file would
+			// still authorize removed keys
+			if (Files.deleteIfExists(Paths.get(prxUser.getAuthorizedKeysFile()))) {
+				fileWriteStats.removed();
 			}
+			return;
+		}
+
+		List<String> lines = new ArrayList<>();
 
+		for (User allowedUser : prxUser.getAllowedUsers()) {
 			lines.add(generateAuthorizedKeysLine(prxUser, allowedUser));
 		}
 
 		Path file = Paths.get(prxUser.getAuthorizedKeysFile());
-		Files.write(file, lines, Charset.forName("latin1"));
+		fileWriteStats.count(FileSystemOperation.writeIfChanged(file, lines, LATIN1, null));
 
-		exec(0, "chown", prxUser.getProxyUsername() + "." + prxUser.getProxyUsername(),
-				prxUser.getAuthorizedKeysFile());
+		if (!prxUser.getProxyUsername().equals(Files.getOwner(file, LinkOption.NOFOLLOW_LINKS).getName())) {
+			setOwner(file, prxUser.getProxyUsername());
+		}
 	}
 
 	private String generateAuthorizedKeysLine(SshProxyUser prxUser, User allowedUser) {
-
-		StringBuilder buf = new StringBuilder();
-
-		// environment="SSH_USER=sager@agitos.de"
-
-		buf.append("environment=\"SSH_LOGIN_USER=");
-		buf.append(prxUser.getProxyUsername());
-		buf.append("\" ");
-
-		// ssh-rsa
-		// AAAAB3NzaC1yc2EAAAADAQABAAABAQDRA8T6Td/OGEyoxr0IK42K3hq6jcx8kYg9eJoa72lTcazOI7o4gTW1LRpdRzmc4VfdTbWtii8rIHtQG8AGFZHnlcCRqxG36QmWq8/RwexdbC3fLgSPJXfEyOSg5I99Os1ixjaqWomXaDf+YpFDM+oBIC0WfBedmZ44Ef95Nvo9HefotjBc+PwqX0vyn2wYczdJd7n9JeHi9HCbWcxtoxAgafWx9o77fUdDE6lfPaCV7NgjDaVkj/CLkKl3ICJ4R9j3SrCmdfmbzwm3i6n+v6zYCEzQhDYkBDaYdvKfEwuVdSvxWcjP3StwCdHSxonuIFVeTjWsXfT2DrZDZeztq5Ct
-		// sager@agitos.de
-
-		buf.append(allowedUser.getSshPublicKey());
-
-		return buf.toString();
+		return AuthorizedKeysIndex.toAuthorizedKeysLine(prxUser.getProxyUsername(), allowedUser.getSshPublicKey());
 	}
 
 	protected class SshProxyUser {
@@ -341,12 +564,16 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 
 		private final String proxyPassword;
 
+		private String encryptedProxyPassword;
+
 		private final String containerUsername;
 
 		private final Container container;
 
 		private List<User> allowedUsers;
 
+		private boolean verbose;
+
 		public SshProxyUser(String proxyUsername, String proxyPassword, String containerUsername, Container container) {
 			this.proxyUsername = proxyUsername;
 			this.proxyPassword = proxyPassword;
@@ -363,6 +590,14 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 			return proxyPassword;
 		}
 
+		public String getEncryptedProxyPassword() {
+			return encryptedProxyPassword;
+		}
+
+		public void setEncryptedProxyPassword(String encryptedProxyPassword) {
+			this.encryptedProxyPassword = encryptedProxyPassword;
+		}
+
 		public String getContainerUsername() {
 			return containerUsername;
 		}
@@ -387,6 +622,15 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 			return homeRootDirectory + proxyUsername + "/.hushlogin";
 		}
 
+		/**
+		 * @return the directory of the multiplexing control sockets; the socket
+		 *         path with the 40 chars of %C and the temporary suffix of ssh stays
+		 *         below the 108 bytes limit for 32 chars usernames in /home/
+		 */
+		public String getControlSocketDirectory() {
+			return homeRootDirectory + proxyUsername + "/.ssh/cm/";
+		}
+
 		public String getLoginShellScriptFile() {
 			return homeRootDirectory + proxyUsername + "/sshprx.sh";
 		}
@@ -402,5 +646,13 @@ public class SshProxyProcessor extends AbstractProcessor implements DependencyIn
 		public void addAllowedUser(User u) {
 			this.allowedUsers.add(u);
 		}
+
+		public boolean isVerbose() {
+			return verbose;
+		}
+
+		public void setVerbose(boolean verbose) {
+			this.verbose = verbose;
+		}
 	}
 }
@@ -129,6 +129,14 @@ public class BackendContainerDao extends AbstractDao implements DependencyInject
 		return result;
 	}
 
+	/**
+	 * Find all backend container references without relations, see
+	 * ProjectGraphDao
+	 */
+	public List<BackendContainer> findAllWithoutRelations() {
+		return jdbcTemplate.query(SELECT_ALL_STMT, new BackendContainerRowMapper());
+	}
+
 	public List<BackendContainer> findAllByContainer(Long containerId) {
 		List<BackendContainer> result = jdbcTemplate.query(SELECT_ALL_STMT + " WHERE container_id = ?",
 				new Object[] { containerId }, new int[] { Types.NUMERIC }, new BackendContainerRowMapper());
@@ -0,0 +1,354 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dao;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.db.exception.OptimisticLockingFailureException;
+import de.agitos.agiprx.dto.ChangeLogEntryDto;
+import de.agitos.agiprx.dto.ChangeSetDto;
+import de.agitos.agiprx.dto.RowStateDto;
+import de.agitos.agiprx.util.Assert;
+
+/**
+ * Reads and applies the row change log that is written by the triggers of
+ * sql/v07.sql. Change sets are read and applied with plain JDBC transactions:
+ * the entries and row states of a change set need to be consistent, the
+ * transaction levels of DataSourceUtils commit after each statement.
+ */
+public class ChangeLogDao extends AbstractDao implements DependencyInjector {
+
+	private static ChangeLogDao BEAN;
+
+	public static final Set<String> REPLICATED_TABLES = Collections.unmodifiableSet(new HashSet<String>(
+			Arrays.asList("host", "user", "project", "container", "container_permission", "backend",
+					"backend_container", "domain", "api_user")));
+
+	private static final Pattern COLUMN_NAME_PATTERN = Pattern.compile("[a-z_]+");
+
+	// @formatter:off
+	private static final String SELECT_ENTRIES_STMT =
+			"SELECT "
+			+ "`seq`,"
+			+ "`table_name`,"
+			+ "`row_id`,"
+			+ "`operation`"
+			+ " FROM `change_log` WHERE `seq` > ? ORDER BY `seq` LIMIT ?";
+
+	private static final String INSERT_ENTRY_STMT =
+			"INSERT INTO `change_log` ("
+			+ "`seq`,"
+			+ "`table_name`,"
+			+ "`row_id`,"
+			+ "`operation`"
+			+ ") VALUES (?, ?, ?, ?)";
+
+	private static final String SELECT_LAST_SEQUENCE_STMT = "SELECT COALESCE(MAX(`seq`), 0) FROM `change_log`";
+
+	private static final String CHECKSUM_TABLES_STMT = "CHECKSUM TABLE `"
+			+ String.join("`, `", new TreeSet<String>(REPLICATED_TABLES)) + "`";
+
+	private static final String UPDATE_SEQUENCE_STMT =
+			"UPDATE `change_log_sequence` SET `seq` = GREATEST(`seq`, ?) WHERE `id` = 1";
+
+	private static final String SELECT_FIRST_SEQUENCE_STMT = "SELECT COALESCE(MIN(`seq`), 0) FROM `change_log`";
+
+	private static final String DELETE_OLD_ENTRIES_STMT =
+			"DELETE FROM `change_log` WHERE `created` < NOW() - INTERVAL ? DAY AND `seq` < ?";
+
+	// suppresses the change log triggers for the session
+	private static final String SET_REPLICATION_STMT = "SET @agiprx_replication = 1";
+
+	private static final String RESET_REPLICATION_STMT = "SET @agiprx_replication = NULL";
+	// @formatter:on
+
+	public ChangeLogDao() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+	}
+
+	public static ChangeLogDao getBean() {
+		return BEAN;
+	}
+
+	public long getLastSequence() {
+		return jdbcTemplate.queryForObject(SELECT_LAST_SEQUENCE_STMT, (rs, rowNum) -> rs.getLong(1));
+	}
+
+	/**
+	 * @return checksum by replicated table, a fingerprint of the database state
+	 */
+	public Map<String, Long> checksumTables() {
+
+		Map<String, Long> checksums = new TreeMap<String, Long>();
+		jdbcTemplate.query(CHECKSUM_TABLES_STMT, (rs, rowNum) -> {
+			// the table is qualified by the database name
+			String tableName = rs.getString("Table");
+			checksums.put(tableName.substring(tableName.lastIndexOf('.') + 1), rs.getLong("Checksum"));
+			return null;
+		});
+		return checksums;
+	}
+
+	public long getFirstSequence() {
+		return jdbcTemplate.queryForObject(SELECT_FIRST_SEQUENCE_STMT, (rs, rowNum) -> rs.getLong(1));
+	}
+
+	/**
+	 * Delete entries older than the given days, the last entry is kept as it
+	 * defines the applied sequence of a slave instance.
+	 */
+	public int deleteOlderThan(int days) {
+		return jdbcTemplate.update(DELETE_OLD_ENTRIES_STMT, days, getLastSequence());
+	}
+
+	/**
+	 * Read up to maxEntries change log entries after fromSequence and the current
+	 * state of the changed rows from one consistent snapshot.
+	 * 
+	 * Sequences are committed in order without gaps (sql/v07.sql), a gap means
+	 * that entries are missing. The change set ends before a gap and is
+	 * incomplete, a gap is never skipped.
+	 */
+	public ChangeSetDto readChanges(long fromSequence, int maxEntries) {
+
+		ChangeSetDto changeSet = new ChangeSetDto();
+		changeSet.setFromSequence(fromSequence);
+		changeSet.setToSequence(fromSequence);
+		changeSet.setComplete(true);
+
+		try (Connection conn = dataSourceUtils.getDataSource().getConnection()) {
+
+			conn.setAutoCommit(false);
+			conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+
+			try {
+				readEntries(conn, changeSet, maxEntries);
+				readRowStates(conn, changeSet);
+				conn.commit();
+			} catch (SQLException | RuntimeException e) {
+				conn.rollback();
+				throw e;
+			}
+
+		} catch (SQLException e) {
+			throw new RuntimeException("Reading the change log after sequence " + fromSequence + " failed", e);
+		}
+
+		return changeSet;
+	}
+
+	private void readEntries(Connection conn, ChangeSetDto changeSet, int maxEntries) throws SQLException {
+
+		try (PreparedStatement stmt = conn.prepareStatement(SELECT_ENTRIES_STMT)) {
+
+			stmt.setLong(1, changeSet.getFromSequence());
+			stmt.setInt(2, maxEntries + 1);
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				while (rs.next()) {
+
+					long sequence = rs.getLong("seq");
+
+					if (changeSet.getEntries().size() == maxEntries || sequence != changeSet.getToSequence() + 1) {
+						changeSet.setComplete(false);
+						break;
+					}
+
+					changeSet.getEntries().add(new ChangeLogEntryDto(sequence, rs.getString("table_name"),
+							rs.getLong("row_id"), rs.getString("operation")));
+					changeSet.setToSequence(sequence);
+				}
+			}
+		}
+	}
+
+	private void readRowStates(Connection conn, ChangeSetDto changeSet) throws SQLException {
+
+		Map<String, Set<Long>> rowIdsByTable = new LinkedHashMap<String, Set<Long>>();
+		for (ChangeLogEntryDto entry : changeSet.getEntries()) {
+			Assert.isTrue(REPLICATED_TABLES.contains(entry.getTableName()),
+					"Unexpected change log table " + entry.getTableName());
+			rowIdsByTable.computeIfAbsent(entry.getTableName(), t -> new LinkedHashSet<Long>())
+					.add(entry.getRowId());
+		}
+
+		for (Map.Entry<String, Set<Long>> tableRowIds : rowIdsByTable.entrySet()) {
+
+			Map<Long, Map<String, String>> rows = selectRows(conn, tableRowIds.getKey(), tableRowIds.getValue());
+
+			// rows that are missing in the snapshot were deleted
+			for (Long rowId : tableRowIds.getValue()) {
+				changeSet.getRows().add(new RowStateDto(tableRowIds.getKey(), rowId, rows.get(rowId)));
+			}
+		}
+	}
+
+	private Map<Long, Map<String, String>> selectRows(Connection conn, String tableName, Set<Long> rowIds)
+			throws SQLException {
+
+		StringBuilder sql = new StringBuilder("SELECT * FROM `").append(tableName).append("` WHERE `id` IN (");
+		sql.append(String.join(",", Collections.nCopies(rowIds.size(), "?"))).append(")");
+
+		Map<Long, Map<String, String>> rows = new LinkedHashMap<Long, Map<String, String>>();
+
+		try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+
+			int i = 1;
+			for (Long rowId : rowIds) {
+				stmt.setLong(i++, rowId);
+			}
+
+			try (ResultSet rs = stmt.executeQuery()) {
+				ResultSetMetaData metaData = rs.getMetaData();
+				while (rs.next()) {
+					Map<String, String> values = new LinkedHashMap<String, String>();
+					for (int column = 1; column <= metaData.getColumnCount(); column++) {
+						values.put(metaData.getColumnLabel(column), rs.getString(column));
+					}
+					rows.put(rs.getLong("id"), values);
+				}
+			}
+		}
+
+		return rows;
+	}
+
+	/**
+	 * Apply a change set of the master in one transaction: rows are replaced or
+	 * deleted and the entries are added to the local change log without firing the
+	 * change log triggers. The sequence counter follows the master, e.g. for a
+	 * later failover.
+	 * 
+	 * @throws OptimisticLockingFailureException if the local change log doesn't end
+	 *                                           at the first sequence of the change
+	 *                                           set
+	 */
+	public void applyChanges(ChangeSetDto changeSet) {
+
+		try (Connection conn = dataSourceUtils.getDataSource().getConnection()) {
+
+			conn.setAutoCommit(false);
+
+			try (Statement stmt = conn.createStatement()) {
+
+				stmt.execute(SET_REPLICATION_STMT);
+
+				long lastSequence = readLastSequenceForUpdate(conn);
+				if (lastSequence != changeSet.getFromSequence()) {
+					throw new OptimisticLockingFailureException("Change log ends at sequence " + lastSequence
+							+ ", the change set starts after sequence " + changeSet.getFromSequence());
+				}
+
+				for (RowStateDto row : changeSet.getRows()) {
+					applyRowState(conn, row);
+				}
+
+				try (PreparedStatement insertStmt = conn.prepareStatement(INSERT_ENTRY_STMT)) {
+					for (ChangeLogEntryDto entry : changeSet.getEntries()) {
+						insertStmt.setLong(1, entry.getSequence());
+						insertStmt.setString(2, entry.getTableName());
+						insertStmt.setLong(3, entry.getRowId());
+						insertStmt.setString(4, entry.getOperation());
+						insertStmt.addBatch();
+					}
+					insertStmt.executeBatch();
+				}
+
+				try (PreparedStatement updateStmt = conn.prepareStatement(UPDATE_SEQUENCE_STMT)) {
+					updateStmt.setLong(1, changeSet.getToSequence());
+					updateStmt.executeUpdate();
+				}
+
+				conn.commit();
+
+			} catch (SQLException | RuntimeException e) {
+				conn.rollback();
+				throw e;
+			} finally {
+				// the connection returns to the pool
+				try (Statement stmt = conn.createStatement()) {
+					stmt.execute(RESET_REPLICATION_STMT);
+				}
+				conn.setAutoCommit(true);
+			}
+
+		} catch (SQLException e) {
+			throw new RuntimeException("Applying the change set up to sequence " + changeSet.getToSequence()
+					+ " failed: " + e.getMessage(), e);
+		}
+	}
+
+	private long readLastSequenceForUpdate(Connection conn) throws SQLException {
+		// locks the end of the change log against concurrent change sets
+		try (PreparedStatement stmt = conn.prepareStatement(SELECT_LAST_SEQUENCE_STMT + " FOR UPDATE");
+				ResultSet rs = stmt.executeQuery()) {
+			rs.next();
+			return rs.getLong(1);
+		}
+	}
+
+	private void applyRowState(Connection conn, RowStateDto row) throws SQLException {
+
+		Assert.isTrue(REPLICATED_TABLES.contains(row.getTableName()), "Unexpected table " + row.getTableName());
+
+		if (row.getValues() == null) {
+			try (PreparedStatement stmt = conn
+					.prepareStatement("DELETE FROM `" + row.getTableName() + "` WHERE `id` = ?")) {
+				stmt.setLong(1, row.getRowId());
+				stmt.executeUpdate();
+			}
+			return;
+		}
+
+		for (String column : row.getValues().keySet()) {
+			Assert.isTrue(COLUMN_NAME_PATTERN.matcher(column).matches(), "Unexpected column name " + column);
+		}
+		Assert.isTrue(String.valueOf(row.getRowId()).equals(row.getValues().get("id")),
+				"Row id mismatch in table " + row.getTableName());
+
+		// REPLACE doesn't fire the optimistic lock triggers, the version is kept
+		StringBuilder sql = new StringBuilder("REPLACE INTO `").append(row.getTableName()).append("` (`");
+		sql.append(String.join("`,`", row.getValues().keySet())).append("`) VALUES (");
+		sql.append(String.join(",", Collections.nCopies(row.getValues().size(), "?"))).append(")");
+
+		try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+			int i = 1;
+			for (String value : row.getValues().values()) {
+				stmt.setString(i++, value);
+			}
+			stmt.executeUpdate();
+		}
+	}
+}
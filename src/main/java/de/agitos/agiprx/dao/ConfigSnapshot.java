@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import de.agitos.agiprx.model.Backend;
+import de.agitos.agiprx.model.Container;
+import de.agitos.agiprx.model.Domain;
+import de.agitos.agiprx.model.Host;
+import de.agitos.agiprx.model.Project;
+import de.agitos.agiprx.model.User;
+import de.agitos.agiprx.util.UserContext;
+
+/**
+ * Fully linked view of all hosts, projects, containers, permissions, backends,
+ * domains and users at a given modification version, see ConfigSnapshotDao.
+ * 
+ * A snapshot is shared between threads: the contained models must be treated
+ * as read-only, modifications have to be done on models loaded by the DAOs.
+ */
+public class ConfigSnapshot {
+
+	private final long version;
+
+	private final List<Project> projects;
+
+	private final List<Host> hosts;
+
+	private final List<User> users;
+
+	private final Map<String, Project> projectsByLabel = new HashMap<String, Project>();
+
+	private final Map<String, Domain> domainsByName = new HashMap<String, Domain>();
+
+	public ConfigSnapshot(long version, List<Project> projects, List<Host> hosts, List<User> users) {
+
+		this.version = version;
+		this.projects = Collections.unmodifiableList(new ArrayList<Project>(projects));
+		this.hosts = Collections.unmodifiableList(new ArrayList<Host>(hosts));
+		this.users = Collections.unmodifiableList(new ArrayList<User>(users));
+
+		for (Project project : projects) {
+			projectsByLabel.put(project.getLabel(), project);
+			for (Backend backend : project.getBackends()) {
+				for (Domain domain : backend.getDomainForwardings()) {
+					domainsByName.put(domain.getDomain(), domain);
+				}
+			}
+		}
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return all projects without permission filtering
+	 */
+	public List<Project> getProjects() {
+		return projects;
+	}
+
+	public List<Host> getHosts() {
+		return hosts;
+	}
+
+	public List<User> getUsers() {
+		return users;
+	}
+
+	public List<Project> getAllowedProjects(UserContext userContext) {
+		List<Project> result = new ArrayList<Project>();
+		for (Project project : projects) {
+			if (userContext.isUserAllowed(project.getLabel())) {
+				result.add(project);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the project or null if it does not exist or the user is not allowed
+	 *         to access it
+	 */
+	public Project findProject(String label, UserContext userContext) {
+		if (!userContext.isUserAllowed(label)) {
+			return null;
+		}
+		return projectsByLabel.get(label);
+	}
+
+	public Domain findDomain(String domainName) {
+		return domainsByName.get(domainName);
+	}
+
+	/*
+	 * The filter methods correspond to the 'LIKE' queries of the DAOs with '*' as
+	 * wildcard.
+	 */
+
+	public List<Domain> findDomainsWithFilter(String filter) {
+		Pattern pattern = toPattern(filter);
+		List<Domain> result = new ArrayList<Domain>();
+		for (Project project : projects) {
+			for (Backend backend : project.getBackends()) {
+				for (Domain domain : backend.getDomainForwardings()) {
+					if (pattern.matcher(domain.getDomain()).matches()) {
+						result.add(domain);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	public List<Container> findContainersWithFilterIPv6(String filter) {
+		Pattern pattern = toPattern(filter);
+		List<Container> result = new ArrayList<Container>();
+		for (Project project : projects) {
+			for (Container container : project.getContainers()) {
+				if (container.getIpv6() != null && pattern.matcher(container.getIpv6()).matches()) {
+					result.add(container);
+				}
+			}
+		}
+		return result;
+	}
+
+	public List<Project> findProjectsWithFilter(String filter, UserContext userContext) {
+		Pattern pattern = toPattern(filter);
+		List<Project> result = new ArrayList<Project>();
+		for (Project project : getAllowedProjects(userContext)) {
+			if (pattern.matcher(project.getLabel()).matches()
+					|| (project.getFullname() != null && pattern.matcher(project.getFullname()).matches())) {
+				result.add(project);
+			}
+		}
+		return result;
+	}
+
+	public List<User> findUsersWithFilter(String filter) {
+		Pattern pattern = toPattern(filter);
+		List<User> result = new ArrayList<User>();
+		for (User user : users) {
+			if ((user.getFullname() != null && pattern.matcher(user.getFullname()).matches())
+					|| (user.getEmail() != null && pattern.matcher(user.getEmail()).matches())) {
+				result.add(user);
+			}
+		}
+		return result;
+	}
+
+	private static Pattern toPattern(String filter) {
+		List<String> quotedParts = new ArrayList<String>();
+		for (String part : filter.split("\\*", -1)) {
+			quotedParts.add(part.isEmpty() ? "" : Pattern.quote(part));
+		}
+		return Pattern.compile(String.join(".*", quotedParts), Pattern.CASE_INSENSITIVE);
+	}
+}
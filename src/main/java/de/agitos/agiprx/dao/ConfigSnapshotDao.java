@@ -0,0 +1,153 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dao;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.db.DataSourceUtils;
+import de.agitos.agiprx.util.Assert;
+
+/**
+ * Publishes the current ConfigSnapshot. Every committed DAO modification bumps
+ * the modification version and triggers an asynchronous rebuild. Readers get
+ * the published snapshot without locking as long as it is up to date, a stale
+ * snapshot is rebuilt synchronously before it is returned.
+ */
+public class ConfigSnapshotDao implements DependencyInjector {
+
+	private static final Logger LOG = Logger.getLogger(ConfigSnapshotDao.class.getName());
+
+	private static ConfigSnapshotDao BEAN;
+
+	private final AtomicLong modificationVersion = new AtomicLong();
+
+	private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<ConfigSnapshot>();
+
+	private final ExecutorService rebuildExecutor;
+
+	private ProjectGraphDao projectGraphDao;
+
+	public ConfigSnapshotDao() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+
+		rebuildExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "ConfigSnapshotRebuild");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void postConstruct() {
+		projectGraphDao = ProjectGraphDao.getBean();
+
+		// all DAO create/update/delete operations run in transactions
+		DataSourceUtils.getBean().addCommitListener(this::invalidate);
+	}
+
+	public static ConfigSnapshotDao getBean() {
+		return BEAN;
+	}
+
+	public ConfigSnapshot getSnapshot() {
+		ConfigSnapshot current = snapshot.get();
+		if (current != null && current.getVersion() == modificationVersion.get()) {
+			return current;
+		}
+		return rebuild();
+	}
+
+	/**
+	 * @param factory computes a value like a lookup index from a snapshot
+	 * @return a holder of the value for the current snapshot, recomputed only
+	 *         after modifications
+	 */
+	public <T> Derived<T> derive(Function<ConfigSnapshot, T> factory) {
+		return new Derived<T>(factory);
+	}
+
+	public void invalidate() {
+		modificationVersion.incrementAndGet();
+		rebuildExecutor.execute(() -> {
+			try {
+				getSnapshot();
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "Rebuild of config snapshot failed", e);
+			}
+		});
+	}
+
+	private synchronized ConfigSnapshot rebuild() {
+
+		// the version is fetched before loading, modifications committed while
+		// loading invalidate the new snapshot
+		long version = modificationVersion.get();
+
+		ConfigSnapshot current = snapshot.get();
+		if (current != null && current.getVersion() == version) {
+			return current;
+		}
+
+		ConfigSnapshot newSnapshot = projectGraphDao.loadSnapshot(version);
+		snapshot.set(newSnapshot);
+		return newSnapshot;
+	}
+
+	public class Derived<T> {
+
+		private final Function<ConfigSnapshot, T> factory;
+
+		private volatile Entry<T> entry;
+
+		private Derived(Function<ConfigSnapshot, T> factory) {
+			this.factory = factory;
+		}
+
+		public T get() {
+
+			ConfigSnapshot current = getSnapshot();
+
+			Entry<T> e = entry;
+			if (e == null || e.version != current.getVersion()) {
+				e = new Entry<T>(current.getVersion(), factory.apply(current));
+				entry = e;
+			}
+			return e.value;
+		}
+	}
+
+	private static class Entry<T> {
+
+		private final long version;
+
+		private final T value;
+
+		private Entry(long version, T value) {
+			this.version = version;
+			this.value = value;
+		}
+	}
+}
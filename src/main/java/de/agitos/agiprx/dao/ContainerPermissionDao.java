@@ -159,6 +159,13 @@ public class ContainerPermissionDao extends AbstractDao implements DependencyInj
 		return result;
 	}
 
+	/**
+	 * Find all permissions without user relation, see ProjectGraphDao
+	 */
+	public List<ContainerPermission> findAllWithoutRelations() {
+		return jdbcTemplate.query(SELECT_ALL_STMT, new ContainerPermissionRowMapper(stringEncryptor));
+	}
+
 	public List<ContainerPermission> findAllByContainer(Long containerId) {
 		List<ContainerPermission> result = jdbcTemplate.query(SELECT_ALL_STMT + " WHERE container_id = ?",
 				new Object[] { containerId }, new int[] { Types.NUMERIC },
@@ -17,6 +17,8 @@
 package de.agitos.agiprx.dao;
 
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -68,6 +70,26 @@ public class DomainDao extends AbstractDao implements DependencyInjector {
 			+ "`redirect_to_url` = :redirect_to_url"
 			+ " WHERE `id` = :id";
 
+	private static final String BATCH_INSERT_STMT =
+			"INSERT INTO `domain` ("
+			+ "`version`,"
+			+ "`domain`,"
+			+ "`backend_id`,"
+			+ "`certprovided`,"
+			+ "`letsencrypt`,"
+			+ "`redirect_to_url`"
+			+ ") VALUES (0, ?, ?, ?, ?, ?)";
+
+	private static final String BATCH_UPDATE_STMT =
+			"UPDATE `domain` SET "
+			+ "`version` = ?,"
+			+ "`domain` = ?,"
+			+ "`backend_id` = ?,"
+			+ "`certprovided` = ?,"
+			+ "`letsencrypt` = ?,"
+			+ "`redirect_to_url` = ?"
+			+ " WHERE `id` = ?";
+
 	private static final String DELETE_STMT = "DELETE FROM `domain` WHERE `id` = ? AND `version` = ?";
 	// @formatter:on
 
@@ -165,6 +187,32 @@ public class DomainDao extends AbstractDao implements DependencyInjector {
 		}
 	}
 
+	/**
+	 * Fetch all domains with one of the given names or assigned to one of the
+	 * given backends in a single query.
+	 */
+	public List<Domain> findAllByDomainNamesOrBackends(Collection<String> domainNames, Collection<Long> backendIds) {
+
+		List<String> conditions = new ArrayList<>();
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+
+		if (domainNames != null && !domainNames.isEmpty()) {
+			conditions.add("`domain` IN (:domains)");
+			parameters.addValue("domains", domainNames);
+		}
+		if (backendIds != null && !backendIds.isEmpty()) {
+			conditions.add("`backend_id` IN (:backend_ids)");
+			parameters.addValue("backend_ids", backendIds);
+		}
+
+		if (conditions.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		return namedParamsJdbcTemplate.query(SELECT_ALL_STMT + " WHERE " + String.join(" OR ", conditions),
+				parameters, new DomainRowMapper());
+	}
+
 	public Set<Long> findAllIdsByBackend(Long backendId) {
 		Set<Long> result = new HashSet<Long>();
 		for (Domain domain : findAllByBackend(backendId, null)) {
@@ -216,6 +264,89 @@ public class DomainDao extends AbstractDao implements DependencyInjector {
 		}
 	}
 
+	/**
+	 * Insert all domains with one batch statement, the generated ids are not
+	 * assigned to the models.
+	 */
+	// @Transactional
+	public void batchCreate(List<Domain> models) {
+
+		if (models.isEmpty()) {
+			return;
+		}
+
+		try {
+			dataSourceUtils.startTransaction();
+
+			List<Object[]> batchArgs = new ArrayList<>(models.size());
+			for (Domain model : models) {
+				batchArgs.add(new Object[] { model.getDomain(), model.getBackendId(), model.getCertProvided(),
+						model.getLetsEncrypt(), model.getRedirectToUrl() });
+			}
+
+			jdbcTemplate.batchUpdate(BATCH_INSERT_STMT, batchArgs);
+
+			for (Domain model : models) {
+				model.setVersion(0);
+			}
+
+		} catch (Exception e) {
+			handleInsertionError(models, e);
+		}
+	}
+
+	// @Transactional
+	public void batchUpdate(List<Domain> models) {
+
+		if (models.isEmpty()) {
+			return;
+		}
+
+		try {
+			dataSourceUtils.startTransaction();
+
+			List<Object[]> batchArgs = new ArrayList<>(models.size());
+			for (Domain model : models) {
+				batchArgs.add(new Object[] { model.getVersion(), model.getDomain(), model.getBackendId(),
+						model.getCertProvided(), model.getLetsEncrypt(), model.getRedirectToUrl(), model.getId() });
+			}
+
+			jdbcTemplate.batchUpdate(BATCH_UPDATE_STMT, batchArgs);
+
+			for (Domain model : models) {
+				model.incrementVersion();
+			}
+
+		} catch (Exception e) {
+			handleUpdateError(models, e);
+		}
+	}
+
+	// @Transactional
+	public void batchDelete(List<Domain> models) {
+
+		if (models.isEmpty()) {
+			return;
+		}
+
+		try {
+			dataSourceUtils.startTransaction();
+
+			List<Object[]> batchArgs = new ArrayList<>(models.size());
+			for (Domain model : models) {
+				batchArgs.add(new Object[] { model.getId(), model.getVersion() });
+			}
+
+			int[] rowsAffected = jdbcTemplate.batchUpdate(DELETE_STMT, batchArgs);
+			for (int i = 0; i < rowsAffected.length; i++) {
+				checkDeletionError(models.get(i), rowsAffected[i]);
+			}
+
+		} catch (Exception e) {
+			handleDeletionError(models, e);
+		}
+	}
+
 	// @Transactional
 	public void delete(Domain model, List<DomainDto> removedDomains) {
 
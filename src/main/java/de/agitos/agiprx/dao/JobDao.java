@@ -0,0 +1,198 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dao;
+
+import java.sql.Types;
+
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.dao.mapper.JobRowMapper;
+import de.agitos.agiprx.db.GeneratedKeyHolder;
+import de.agitos.agiprx.db.KeyHolder;
+import de.agitos.agiprx.db.MapSqlParameterSource;
+import de.agitos.agiprx.db.exception.EmptyResultDataAccessException;
+import de.agitos.agiprx.model.Job;
+import de.agitos.agiprx.util.Assert;
+
+/**
+ * Status of asynchronous jobs, the table is not part of the change log
+ * replication.
+ */
+public class JobDao extends AbstractDao implements DependencyInjector {
+
+	private static JobDao BEAN;
+
+	// @formatter:off
+	private static final String SELECT_ALL_STMT =
+			"SELECT "
+			+ "`id`,"
+			+ "`type`,"
+			+ "`project_labels`,"
+			+ "`username`,"
+			+ "`status`,"
+			+ "`total`,"
+			+ "`done`,"
+			+ "`current_item`,"
+			+ "`warnings`,"
+			+ "`output`,"
+			+ "`error`,"
+			+ "`created`,"
+			+ "`started`,"
+			+ "`finished`"
+			+ " FROM `job`";
+
+	private static final String INSERT_STMT =
+			"INSERT INTO `job` ("
+			+ "`type`,"
+			+ "`project_labels`,"
+			+ "`username`,"
+			+ "`status`,"
+			+ "`created`"
+			+ ") VALUES (:type, :project_labels, :username, :status, :created)";
+
+	private static final String UPDATE_PROGRESS_STMT =
+			"UPDATE `job` SET "
+			+ "`status` = :status,"
+			+ "`total` = :total,"
+			+ "`done` = :done,"
+			+ "`current_item` = :current_item,"
+			+ "`warnings` = :warnings,"
+			+ "`started` = :started"
+			+ " WHERE `id` = :id";
+
+	private static final String UPDATE_RESULT_STMT =
+			"UPDATE `job` SET "
+			+ "`status` = :status,"
+			+ "`total` = :total,"
+			+ "`done` = :done,"
+			+ "`current_item` = :current_item,"
+			+ "`warnings` = :warnings,"
+			+ "`output` = :output,"
+			+ "`error` = :error,"
+			+ "`started` = :started,"
+			+ "`finished` = :finished"
+			+ " WHERE `id` = :id";
+
+	private static final String FAIL_UNFINISHED_STMT =
+			"UPDATE `job` SET `status` = 'FAILED', `error` = ?, `finished` = NOW()"
+			+ " WHERE `status` IN ('QUEUED', 'RUNNING')";
+
+	private static final String DELETE_OLD_JOBS_STMT =
+			"DELETE FROM `job` WHERE `finished` < NOW() - INTERVAL ? DAY";
+	// @formatter:on
+
+	public JobDao() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+	}
+
+	public static JobDao getBean() {
+		return BEAN;
+	}
+
+	public void create(Job model) {
+
+		try {
+			MapSqlParameterSource parameters = new MapSqlParameterSource();
+			parameters.addValue("type", model.getType());
+			parameters.addValue("project_labels", String.join(",", model.getProjectLabels()));
+			parameters.addValue("username", model.getUsername());
+			parameters.addValue("status", model.getStatus().name());
+			parameters.addValue("created", model.getCreated());
+
+			KeyHolder keyHolder = new GeneratedKeyHolder();
+
+			namedParamsJdbcTemplate.update(INSERT_STMT, parameters, keyHolder);
+
+			model.setId(keyHolder.getKey().longValue());
+
+		} catch (Exception e) {
+			handleInsertionError(model, e);
+		}
+	}
+
+	public Job find(Long id) {
+		try {
+			return jdbcTemplate.queryForObject(SELECT_ALL_STMT + " WHERE id = ?", new Object[] { id },
+					new int[] { Types.NUMERIC }, new JobRowMapper());
+		} catch (EmptyResultDataAccessException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Write status and progress of a running job.
+	 */
+	public void updateProgress(Job model) {
+
+		try {
+			MapSqlParameterSource parameters = createProgressParameters(model);
+
+			namedParamsJdbcTemplate.update(UPDATE_PROGRESS_STMT, parameters);
+
+		} catch (Exception e) {
+			handleUpdateError(model, e);
+		}
+	}
+
+	/**
+	 * Write the final status of a job including its output.
+	 */
+	public void updateResult(Job model) {
+
+		try {
+			MapSqlParameterSource parameters = createProgressParameters(model);
+			parameters.addValue("output", model.getOutput());
+			parameters.addValue("error", model.getError());
+			parameters.addValue("finished", model.getFinished());
+
+			namedParamsJdbcTemplate.update(UPDATE_RESULT_STMT, parameters);
+
+		} catch (Exception e) {
+			handleUpdateError(model, e);
+		}
+	}
+
+	private MapSqlParameterSource createProgressParameters(Job model) {
+		MapSqlParameterSource parameters = new MapSqlParameterSource();
+		parameters.addValue("id", model.getId());
+		parameters.addValue("status", model.getStatus().name());
+		parameters.addValue("total", model.getTotal());
+		parameters.addValue("done", model.getDone());
+		parameters.addValue("current_item", model.getCurrentItem());
+		parameters.addValue("warnings",
+				model.getWarnings().isEmpty() ? null : String.join("\n", model.getWarnings()));
+		parameters.addValue("started", model.getStarted());
+		return parameters;
+	}
+
+	/**
+	 * Mark jobs as failed that were queued or running while AgiPrx stopped.
+	 * 
+	 * @return number of interrupted jobs
+	 */
+	public int failUnfinished(String error) {
+		return jdbcTemplate.update(FAIL_UNFINISHED_STMT, error);
+	}
+
+	/**
+	 * @return number of deleted jobs that finished more than the given days ago
+	 */
+	public int deleteFinishedOlderThan(int days) {
+		return jdbcTemplate.update(DELETE_OLD_JOBS_STMT, days);
+	}
+}
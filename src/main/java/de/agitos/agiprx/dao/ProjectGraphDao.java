@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dao;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.model.AbstractModel;
+import de.agitos.agiprx.model.Backend;
+import de.agitos.agiprx.model.BackendContainer;
+import de.agitos.agiprx.model.Container;
+import de.agitos.agiprx.model.ContainerPermission;
+import de.agitos.agiprx.model.Domain;
+import de.agitos.agiprx.model.Host;
+import de.agitos.agiprx.model.Project;
+import de.agitos.agiprx.model.User;
+import de.agitos.agiprx.util.Assert;
+
+/**
+ * Loads the complete project graph with one query per table instead of
+ * ProjectDao.initRelations() queries per row. The relations are assembled in
+ * memory by id. Intended for the full config generation, e.g. of HAProxy or SSH
+ * proxy.
+ */
+public class ProjectGraphDao extends AbstractDao implements DependencyInjector {
+
+	private static ProjectGraphDao BEAN;
+
+	private ProjectDao projectDao;
+
+	private BackendDao backendDao;
+
+	private BackendContainerDao backendContainerDao;
+
+	private ContainerDao containerDao;
+
+	private ContainerPermissionDao containerPermissionDao;
+
+	private DomainDao domainDao;
+
+	private HostDao hostDao;
+
+	private UserDao userDao;
+
+	public ProjectGraphDao() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+	}
+
+	@Override
+	public void postConstruct() {
+		super.postConstruct();
+
+		projectDao = ProjectDao.getBean();
+		backendDao = BackendDao.getBean();
+		backendContainerDao = BackendContainerDao.getBean();
+		containerDao = ContainerDao.getBean();
+		containerPermissionDao = ContainerPermissionDao.getBean();
+		domainDao = DomainDao.getBean();
+		hostDao = HostDao.getBean();
+		userDao = UserDao.getBean();
+	}
+
+	public static ProjectGraphDao getBean() {
+		return BEAN;
+	}
+
+	/**
+	 * Equivalent of ProjectDao.findAllAsAdmin(relationTypes). Containers
+	 * referenced by backend containers (CONTAINERREF) are initialized with project
+	 * and host.
+	 */
+	public List<Project> findAllAsAdmin(EnumSet<RelationType> relationTypes) {
+		return findAllAsAdmin(relationTypes, null, null);
+	}
+
+	/**
+	 * Load all projects with all relations together with hosts and users, the
+	 * containers and permissions reference the same host and user instances.
+	 */
+	public ConfigSnapshot loadSnapshot(long version) {
+		List<Host> hosts = hostDao.findAll();
+		List<User> users = userDao.findAll();
+		List<Project> projects = findAllAsAdmin(EnumSet.of(RelationType.ALL), hosts, users);
+		return new ConfigSnapshot(version, projects, hosts, users);
+	}
+
+	private List<Project> findAllAsAdmin(EnumSet<RelationType> relationTypes, List<Host> hosts, List<User> users) {
+
+		List<Project> projects = projectDao.findAll(true, null);
+
+		if (relationTypes == null) {
+			return projects;
+		}
+
+		boolean updateAll = relationTypes.contains(RelationType.ALL);
+		boolean initContainers = updateAll || relationTypes.contains(RelationType.CONTAINER);
+		boolean initPermissions = updateAll || relationTypes.contains(RelationType.PERMISSION);
+		boolean initHosts = updateAll || relationTypes.contains(RelationType.HOST);
+		boolean initBackends = updateAll || relationTypes.contains(RelationType.BACKEND);
+		boolean initDomains = updateAll || relationTypes.contains(RelationType.DOMAIN);
+		boolean initContainerRefs = updateAll || relationTypes.contains(RelationType.CONTAINERREF);
+
+		Map<Long, Project> projectsById = mapById(projects);
+
+		Map<Long, Container> containersById = null;
+
+		if (initContainers || (initBackends && initContainerRefs)) {
+
+			List<Container> containers = containerDao.findAll(null);
+			containersById = mapById(containers);
+
+			Map<Long, Host> hostsById = null;
+			if (initHosts || (initBackends && initContainerRefs)) {
+				hostsById = mapById(hosts != null ? hosts : hostDao.findAll());
+			}
+
+			for (Container container : containers) {
+				container.setProject(projectsById.get(container.getProjectId()));
+				if (hostsById != null) {
+					container.setHost(hostsById.get(container.getHostId()));
+				}
+			}
+
+			if (initPermissions) {
+				Map<Long, User> usersById = mapById(users != null ? users : userDao.findAll());
+				Map<Long, List<ContainerPermission>> permissionsByContainerId = new HashMap<Long, List<ContainerPermission>>();
+
+				for (ContainerPermission cp : containerPermissionDao.findAllWithoutRelations()) {
+					cp.setUser(usersById.get(cp.getUserId()));
+					permissionsByContainerId.computeIfAbsent(cp.getContainerId(), k -> new ArrayList<>()).add(cp);
+				}
+
+				for (Container container : containers) {
+					container.setContainerPermissions(
+							permissionsByContainerId.getOrDefault(container.getId(), new ArrayList<>()));
+				}
+			}
+
+			if (initContainers) {
+				Map<Long, List<Container>> containersByProjectId = new HashMap<Long, List<Container>>();
+				for (Container container : containers) {
+					containersByProjectId.computeIfAbsent(container.getProjectId(), k -> new ArrayList<>())
+							.add(container);
+				}
+				for (Project project : projects) {
+					project.setContainers(containersByProjectId.getOrDefault(project.getId(), new ArrayList<>()));
+				}
+			}
+		}
+
+		if (initBackends) {
+
+			List<Backend> backends = backendDao.findAll(null);
+
+			if (initDomains) {
+				Map<Long, List<Domain>> domainsByBackendId = new HashMap<Long, List<Domain>>();
+				for (Domain domain : domainDao.findAll()) {
+					domainsByBackendId.computeIfAbsent(domain.getBackendId(), k -> new ArrayList<>()).add(domain);
+				}
+				for (Backend backend : backends) {
+					backend.setDomainForwardings(domainsByBackendId.getOrDefault(backend.getId(), new ArrayList<>()));
+					for (Domain domain : backend.getDomainForwardings()) {
+						domain.setBackend(backend);
+					}
+				}
+			}
+
+			if (initContainerRefs) {
+				Map<Long, List<BackendContainer>> backendContainersByBackendId = new HashMap<Long, List<BackendContainer>>();
+				for (BackendContainer backendContainer : backendContainerDao.findAllWithoutRelations()) {
+					backendContainer.setContainer(containersById.get(backendContainer.getContainerId()));
+					backendContainersByBackendId
+							.computeIfAbsent(backendContainer.getBackendId(), k -> new ArrayList<>())
+							.add(backendContainer);
+				}
+				for (Backend backend : backends) {
+					backend.setBackendContainers(
+							backendContainersByBackendId.getOrDefault(backend.getId(), new ArrayList<>()));
+				}
+			}
+
+			Map<Long, List<Backend>> backendsByProjectId = new HashMap<Long, List<Backend>>();
+			for (Backend backend : backends) {
+				backend.setProject(projectsById.get(backend.getProjectId()));
+				backendsByProjectId.computeIfAbsent(backend.getProjectId(), k -> new ArrayList<>()).add(backend);
+			}
+			for (Project project : projects) {
+				project.setBackends(backendsByProjectId.getOrDefault(project.getId(), new ArrayList<>()));
+			}
+		}
+
+		return projects;
+	}
+
+	private static <T extends AbstractModel> Map<Long, T> mapById(List<T> models) {
+		Map<Long, T> result = new HashMap<Long, T>();
+		for (T model : models) {
+			result.put(model.getId(), model);
+		}
+		return result;
+	}
+}
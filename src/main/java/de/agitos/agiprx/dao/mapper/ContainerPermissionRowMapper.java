@@ -43,6 +43,7 @@ public class ContainerPermissionRowMapper extends AbstractRowMapper implements R
 		model.setPermission(rs.getString("permission"));
 
 		String encryptedPassword = rs.getString("password");
+		model.setEncryptedPassword(encryptedPassword);
 		if (encryptedPassword == null) {
 			model.setPassword(null);
 		} else {
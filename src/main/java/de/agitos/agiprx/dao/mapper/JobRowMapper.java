@@ -0,0 +1,51 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dao.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import de.agitos.agiprx.db.RowMapper;
+import de.agitos.agiprx.model.Job;
+import de.agitos.agiprx.model.JobStatus;
+
+public class JobRowMapper extends AbstractRowMapper implements RowMapper<Job> {
+
+	public Job mapRow(ResultSet rs, int line) throws SQLException {
+
+		Job model = new Job();
+		model.setId(getLong(rs, "id"));
+
+		model.setType(rs.getString("type"));
+		model.setProjectLabels(new ArrayList<>(Arrays.asList(getStringArray(rs, "project_labels", ","))));
+		model.setUsername(rs.getString("username"));
+		model.setStatus(nullSafeEnumValue(JobStatus.class, rs.getString("status")));
+		model.setTotal(rs.getInt("total"));
+		model.setDone(rs.getInt("done"));
+		model.setCurrentItem(rs.getString("current_item"));
+		model.setWarnings(new ArrayList<>(Arrays.asList(getStringArray(rs, "warnings", "\n"))));
+		model.setOutput(rs.getString("output"));
+		model.setError(rs.getString("error"));
+		model.setCreated(getDate(rs, "created"));
+		model.setStarted(getDate(rs, "started"));
+		model.setFinished(getDate(rs, "finished"));
+
+		return model;
+	}
+}
@@ -2,6 +2,8 @@ package de.agitos.agiprx.db;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.sql.DataSource;
 
@@ -25,6 +27,10 @@ public class DataSourceUtils implements DependencyInjector {
 
 	private ThreadLocal<DataSourceConnection> dsConnection = new ThreadLocal<>();
 
+	// notified after each successful commit, all DAO modifications run in a
+	// transaction
+	private List<Runnable> commitListeners = new CopyOnWriteArrayList<>();
+
 	public DataSourceUtils() {
 
 		Assert.singleton(this, BEAN);
@@ -57,6 +63,10 @@ public class DataSourceUtils implements DependencyInjector {
 		return ds;
 	}
 
+	public void addCommitListener(Runnable commitListener) {
+		commitListeners.add(commitListener);
+	}
+
 	// Connection / Transaction Management
 
 	public static Connection getConnection() {
@@ -104,6 +114,39 @@ public class DataSourceUtils implements DependencyInjector {
 		dsConn.addTaLevel();
 	}
 
+	/**
+	 * Run all DAO modifications of the callback in one transaction: the nested
+	 * statements are committed together or rolled back on the first error.
+	 */
+	public void runInTransaction(TransactionCallback callback) {
+
+		startTransaction();
+		DataSourceConnection dsConn = dsConnection.get();
+
+		try {
+			callback.doInTransaction();
+		} catch (Exception e) {
+			try {
+				// statement errors already rolled back the connection
+				if (!dsConn.isInErrorState()) {
+					rollbackAndReleaseConnection();
+				}
+			} catch (SQLException ex) {
+				e.addSuppressed(ex);
+			}
+			if (e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			}
+			throw new RuntimeException(e);
+		} finally {
+			try {
+				commitAndReleaseConnection();
+			} catch (SQLException e) {
+				throw new InvalidDataAccessResourceUsageException("DB connection release error", e);
+			}
+		}
+	}
+
 	public static void releaseConnection(boolean inSuccessState) {
 
 		try {
@@ -140,15 +183,23 @@ public class DataSourceUtils implements DependencyInjector {
 			return;
 		}
 
+		boolean committed = false;
 		if (!dsConn.isInErrorState()) {
 			dsConn.getConn().createStatement().execute("COMMIT");
 			dsConn.getConn().close();
+			committed = true;
 		} else {
 			if (!dsConn.getConn().isClosed()) {
 				dsConn.getConn().close();
 			}
 		}
 		dsConnection.remove();
+
+		if (committed) {
+			for (Runnable commitListener : commitListeners) {
+				commitListener.run();
+			}
+		}
 	}
 
 	private void rollbackAndReleaseConnection() throws SQLException {
@@ -174,4 +225,10 @@ public class DataSourceUtils implements DependencyInjector {
 		dsConn.getConn().close();
 		// dsConnection.remove();
 	}
+
+	@FunctionalInterface
+	public interface TransactionCallback {
+
+		void doInTransaction() throws Exception;
+	}
 }
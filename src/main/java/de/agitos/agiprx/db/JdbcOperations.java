@@ -797,6 +797,20 @@ public interface JdbcOperations {
 	 */
 	int update(String sql, Object... args) throws DataAccessException;
 
+	/**
+	 * Execute a batch using the supplied SQL statement with the batch of supplied
+	 * arguments.
+	 * 
+	 * @param sql       the SQL statement to execute
+	 * @param batchArgs the List of Object arrays containing the batch of arguments
+	 *                  for the query
+	 * @return an array containing the numbers of rows affected by each update in
+	 *         the batch (may also contain special JDBC-defined negative values for
+	 *         affected rows such as {@link java.sql.Statement#SUCCESS_NO_INFO})
+	 * @throws DataAccessException if there is any problem issuing the update
+	 */
+	int[] batchUpdate(String sql, List<Object[]> batchArgs) throws DataAccessException;
+
 	// -------------------------------------------------------------------------
 	// Methods dealing with callable statements
 	// -------------------------------------------------------------------------
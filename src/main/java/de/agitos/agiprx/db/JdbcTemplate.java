@@ -843,6 +843,25 @@ public class JdbcTemplate extends JdbcAccessor implements JdbcOperations {
 		return update(sql, newArgPreparedStatementSetter(args));
 	}
 
+	@Override
+	public int[] batchUpdate(String sql, List<Object[]> batchArgs) throws DataAccessException {
+		Assert.notNull(batchArgs, "Batch arguments must not be null");
+		if (batchArgs.isEmpty()) {
+			return new int[0];
+		}
+		if (LOG.isLoggable(Level.FINE)) {
+			LOG.log(Level.FINE, "Executing SQL batch update [" + sql + "] with " + batchArgs.size() + " statements");
+		}
+
+		return execute(sql, (PreparedStatementCallback<int[]>) ps -> {
+			for (Object[] args : batchArgs) {
+				newArgPreparedStatementSetter(args).setValues(ps);
+				ps.addBatch();
+			}
+			return ps.executeBatch();
+		});
+	}
+
 	// -------------------------------------------------------------------------
 	// Methods dealing with callable statements
 	// -------------------------------------------------------------------------
@@ -0,0 +1,371 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dns;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.PortUnreachableException;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.naming.CommunicationException;
+import javax.naming.ConfigurationException;
+import javax.naming.NamingException;
+
+/**
+ * Resolves a batch of DNS queries over one non-blocking UDP channel. Up to
+ * inFlightWindow queries are outstanding at the same time, responses are
+ * matched to their queries by transaction id and question section. Timeouts
+ * and retries follow DnsClient: the timeout doubles with every retry.
+ * Truncated responses are re-queried over TCP by DnsClient.
+ */
+public class AsyncDnsResolver {
+
+	private static final int DEFAULT_PORT = 53;
+	private static final int TRANSACTION_ID_BOUND = 0x10000;
+	private static final int MAX_PACKET_SIZE = 8000;
+
+	private static final SecureRandom random = JCAUtil.getSecureRandom();
+
+	private final InetSocketAddress server;
+	private final int timeout;
+	private final int retries;
+	private final int inFlightWindow;
+
+	private final DnsClient tcpFallbackClient;
+
+	/*
+	 * The server is of the form "server[:port]", timeout is the initial timeout
+	 * interval (in ms) for UDP queries and retries gives the number of retries.
+	 */
+	public AsyncDnsResolver(String server, int timeout, int retries, int inFlightWindow) throws NamingException {
+
+		this.timeout = timeout;
+		this.retries = retries;
+		this.inFlightWindow = Math.max(1, Math.min(inFlightWindow, TRANSACTION_ID_BOUND / 2));
+
+		int colon = server.indexOf(':', server.indexOf(']') + 1);
+		int port = (colon < 0) ? DEFAULT_PORT : Integer.parseInt(server.substring(colon + 1));
+		String host = (colon < 0) ? server : server.substring(0, colon);
+		try {
+			this.server = new InetSocketAddress(InetAddress.getByName(host), port);
+		} catch (java.net.UnknownHostException e) {
+			NamingException ne = new ConfigurationException("Unknown DNS server: " + host);
+			ne.setRootCause(e);
+			throw ne;
+		}
+
+		this.tcpFallbackClient = new DnsClient(new String[] { server }, timeout, retries);
+	}
+
+	public static class Query {
+
+		private final String domainName;
+
+		private final int type;
+
+		public Query(String domainName, int type) {
+			this.domainName = domainName;
+			this.type = type;
+		}
+
+		public String getDomainName() {
+			return domainName;
+		}
+
+		public int getType() {
+			return type;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof Query)) {
+				return false;
+			}
+			Query other = (Query) obj;
+			return type == other.type && domainName.equals(other.domainName);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(domainName, type);
+		}
+
+		@Override
+		public String toString() {
+			return domainName + " " + ResourceRecord.getTypeName(type);
+		}
+	}
+
+	public static class Answer {
+
+		private final Query query;
+
+		private final ResourceRecords records;
+
+		private final NamingException error;
+
+		Answer(Query query, ResourceRecords records) {
+			this.query = query;
+			this.records = records;
+			this.error = null;
+		}
+
+		Answer(Query query, NamingException error) {
+			this.query = query;
+			this.records = null;
+			this.error = error;
+		}
+
+		public Query getQuery() {
+			return query;
+		}
+
+		/**
+		 * @return the address of the last answer record if it is of the queried type
+		 *         (e.g. at the end of a CNAME chain), otherwise null
+		 * @throws NamingException if the query failed
+		 */
+		public String getAddress() throws NamingException {
+			if (error != null) {
+				throw error;
+			}
+			if (records.getLastAnsType() != query.getType()) {
+				return null;
+			}
+			return records.answer.lastElement().getRdata().toString();
+		}
+
+		ResourceRecords getRecords() {
+			return records;
+		}
+
+		public NamingException getError() {
+			return error;
+		}
+	}
+
+	private static class PendingQuery {
+
+		private final Query query;
+
+		private final ResourceRecord question;
+
+		private final Packet packet;
+
+		private int attempt;
+
+		private long deadline;
+
+		PendingQuery(Query query, ResourceRecord question, Packet packet) {
+			this.query = query;
+			this.question = question;
+			this.packet = packet;
+		}
+	}
+
+	/**
+	 * Resolve all queries and wait until every query was answered, failed or
+	 * timed out.
+	 * 
+	 * @return answer by query, errors are reported per answer
+	 */
+	public Map<Query, Answer> resolve(Collection<Query> queries) throws IOException {
+
+		Map<Query, Answer> result = new HashMap<Query, Answer>();
+
+		Deque<Query> queue = new ArrayDeque<Query>(new LinkedHashSet<Query>(queries));
+		Map<Integer, PendingQuery> inFlight = new HashMap<Integer, PendingQuery>();
+		List<Query> truncated = new ArrayList<Query>();
+
+		ByteBuffer receiveBuffer = ByteBuffer.allocate(MAX_PACKET_SIZE);
+
+		try (Selector selector = Selector.open(); DatagramChannel channel = DatagramChannel.open()) {
+
+			channel.configureBlocking(false);
+			channel.connect(server);
+			channel.register(selector, SelectionKey.OP_READ);
+
+			while (!queue.isEmpty() || !inFlight.isEmpty()) {
+
+				// fill the in-flight window
+				while (inFlight.size() < inFlightWindow && !queue.isEmpty()) {
+					Query query = queue.poll();
+					try {
+						int xid;
+						do {
+							xid = random.nextInt(TRANSACTION_ID_BOUND);
+						} while (inFlight.containsKey(xid));
+
+						Packet packet = DnsClient.makeQueryPacket(new DnsName(query.getDomainName()), xid,
+								ResourceRecord.CLASS_INTERNET, query.getType(), true);
+						ResourceRecord question = new ResourceRecord(packet.getData(), packet.length(),
+								Header.HEADER_SIZE, true, false);
+
+						PendingQuery pendingQuery = new PendingQuery(query, question, packet);
+						send(channel, pendingQuery);
+						inFlight.put(xid, pendingQuery);
+
+					} catch (NamingException e) {
+						result.put(query, new Answer(query, e));
+					}
+				}
+
+				if (inFlight.isEmpty()) {
+					continue;
+				}
+
+				long now = System.nanoTime();
+				long nextDeadline = Long.MAX_VALUE;
+				for (PendingQuery pendingQuery : inFlight.values()) {
+					nextDeadline = Math.min(nextDeadline, pendingQuery.deadline);
+				}
+
+				if (nextDeadline > now) {
+					selector.select(Math.max(1, (nextDeadline - now) / 1_000_000));
+					selector.selectedKeys().clear();
+				}
+
+				// read all available responses
+				while (true) {
+					receiveBuffer.clear();
+					try {
+						if (channel.read(receiveBuffer) <= 0) {
+							break;
+						}
+					} catch (PortUnreachableException e) {
+						failAll(result, queue, inFlight, e);
+						break;
+					}
+
+					byte[] msg = Arrays.copyOf(receiveBuffer.array(), receiveBuffer.position());
+					handleResponse(msg, inFlight, result, truncated);
+				}
+
+				// retry or fail timed out queries
+				now = System.nanoTime();
+				Iterator<PendingQuery> iter = inFlight.values().iterator();
+				while (iter.hasNext()) {
+					PendingQuery pendingQuery = iter.next();
+					if (pendingQuery.deadline > now) {
+						continue;
+					}
+					if (pendingQuery.attempt + 1 < retries) {
+						pendingQuery.attempt++;
+						send(channel, pendingQuery);
+					} else {
+						iter.remove();
+						result.put(pendingQuery.query, new Answer(pendingQuery.query,
+								new CommunicationException("DNS error: no response from " + server)));
+					}
+				}
+			}
+		}
+
+		// responses too large for UDP
+		for (Query query : truncated) {
+			try {
+				result.put(query, new Answer(query, tcpFallbackClient.query(new DnsName(query.getDomainName()),
+						ResourceRecord.CLASS_INTERNET, query.getType(), true, false)));
+			} catch (NamingException e) {
+				result.put(query, new Answer(query, e));
+			}
+		}
+
+		return result;
+	}
+
+	private void send(DatagramChannel channel, PendingQuery pendingQuery) throws IOException {
+		channel.write(ByteBuffer.wrap(pendingQuery.packet.getData(), 0, pendingQuery.packet.length()));
+		pendingQuery.deadline = System.nanoTime() + (long) (timeout * (1 << pendingQuery.attempt)) * 1_000_000;
+	}
+
+	private void handleResponse(byte[] msg, Map<Integer, PendingQuery> inFlight, Map<Query, Answer> result,
+			List<Query> truncated) {
+
+		try {
+			Header hdr = new Header(msg, msg.length);
+			if (hdr.query || hdr.numQuestions != 1) {
+				return;
+			}
+
+			// late responses of retried queries are ignored
+			PendingQuery pendingQuery = inFlight.get(hdr.xid);
+			if (pendingQuery == null) {
+				return;
+			}
+
+			// check that the type/class/name in the question section match the query
+			ResourceRecord rr = new ResourceRecord(msg, msg.length, Header.HEADER_SIZE, true, false);
+			ResourceRecord question = pendingQuery.question;
+			if (question.getType() != rr.getType() || question.getRrclass() != rr.getRrclass()
+					|| !question.getName().equals(rr.getName())) {
+				return;
+			}
+
+			inFlight.remove(hdr.xid);
+
+			if (hdr.truncated) {
+				truncated.add(pendingQuery.query);
+				return;
+			}
+
+			try {
+				DnsClient.checkResponseCode(hdr);
+				result.put(pendingQuery.query,
+						new Answer(pendingQuery.query, new ResourceRecords(msg, msg.length, hdr, false)));
+			} catch (NamingException e) {
+				result.put(pendingQuery.query, new Answer(pendingQuery.query, e));
+			}
+
+		} catch (NamingException | RuntimeException e) {
+			// ignore corrupt packets, the query times out or is answered by a retry
+		}
+	}
+
+	private void failAll(Map<Query, Answer> result, Deque<Query> queue, Map<Integer, PendingQuery> inFlight,
+			IOException cause) {
+
+		List<Query> failed = new ArrayList<Query>(queue);
+		for (PendingQuery pendingQuery : inFlight.values()) {
+			failed.add(pendingQuery.query);
+		}
+		queue.clear();
+		inFlight.clear();
+
+		for (Query query : failed) {
+			NamingException ne = new CommunicationException("DNS error: " + server + " is unreachable");
+			ne.setRootCause(cause);
+			result.put(query, new Answer(query, ne));
+		}
+	}
+}
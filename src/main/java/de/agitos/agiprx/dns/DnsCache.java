@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dns;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NameNotFoundException;
+
+import de.agitos.agiprx.dns.AsyncDnsResolver.Answer;
+import de.agitos.agiprx.dns.AsyncDnsResolver.Query;
+
+/**
+ * LRU cache of DNS answers by (name, type). Positive answers are cached for the
+ * lowest TTL of their answer records. NXDOMAIN and empty answers are cached
+ * negatively for the SOA minimum of the authority section (RFC 2308) or else
+ * for negativeTtl seconds. Other errors like timeouts are not cached.
+ */
+public class DnsCache {
+
+	private static class CacheEntry {
+
+		private final Answer answer;
+
+		private final long expiresAt;
+
+		CacheEntry(Answer answer, long expiresAt) {
+			this.answer = answer;
+			this.expiresAt = expiresAt;
+		}
+	}
+
+	private final int negativeTtl;
+
+	private final Map<Query, CacheEntry> entries;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * @param maxSize     max. number of cached answers
+	 * @param negativeTtl TTL in seconds for negative answers without SOA record
+	 */
+	public DnsCache(int maxSize, int negativeTtl) {
+		this.negativeTtl = negativeTtl;
+		this.entries = new LinkedHashMap<Query, CacheEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Query, CacheEntry> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * @return cached answer or null if there is no unexpired answer
+	 */
+	public synchronized Answer get(Query query) {
+
+		CacheEntry entry = entries.get(query);
+		if (entry != null && entry.expiresAt <= System.currentTimeMillis()) {
+			entries.remove(query);
+			entry = null;
+		}
+
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+
+		hits.incrementAndGet();
+		return entry.answer;
+	}
+
+	public synchronized void put(Answer answer) {
+
+		long ttl = getTtl(answer);
+		if (ttl <= 0) {
+			return;
+		}
+
+		entries.put(answer.getQuery(), new CacheEntry(answer, System.currentTimeMillis() + ttl * 1000));
+	}
+
+	/**
+	 * @return TTL in seconds, 0 if the answer must not be cached
+	 */
+	private long getTtl(Answer answer) {
+
+		if (answer.getError() != null) {
+			return answer.getError() instanceof NameNotFoundException ? negativeTtl : 0;
+		}
+
+		ResourceRecords records = answer.getRecords();
+
+		if (records.answer.isEmpty()) {
+			for (ResourceRecord rr : records.authority) {
+				if (rr.getType() == ResourceRecord.TYPE_SOA && rr.getRdata() != null) {
+					String[] soa = rr.getRdata().toString().split(" ");
+					return Math.min(rr.getTtl(), Long.parseLong(soa[soa.length - 1]));
+				}
+			}
+			return negativeTtl;
+		}
+
+		long ttl = Long.MAX_VALUE;
+		for (ResourceRecord rr : records.answer) {
+			ttl = Math.min(ttl, rr.getTtl());
+		}
+		return ttl;
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	@Override
+	public String toString() {
+		return "DnsCache: size = " + size() + ", hits = " + getHits() + ", misses = " + getMisses();
+	}
+}
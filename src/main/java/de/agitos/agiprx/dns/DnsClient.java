@@ -467,7 +467,7 @@ public class DnsClient {
 		return msg;
 	}
 
-	private Packet makeQueryPacket(DnsName fqdn, int xid, int qclass, int qtype, boolean recursion) {
+	static Packet makeQueryPacket(DnsName fqdn, int xid, int qclass, int qtype, boolean recursion) {
 		int qnameLen = fqdn.getOctets();
 		int pktLen = DNS_HDR_SIZE + qnameLen + 4;
 		Packet pkt = new Packet(pktLen);
@@ -488,7 +488,7 @@ public class DnsClient {
 	}
 
 	// Builds a query name in pkt according to the RFC spec.
-	private void makeQueryName(DnsName fqdn, Packet pkt, int off) {
+	private static void makeQueryName(DnsName fqdn, Packet pkt, int off) {
 
 		// Loop through labels, least-significant first.
 		for (int i = fqdn.size() - 1; i >= 0; i--) {
@@ -613,7 +613,7 @@ public class DnsClient {
 	/*
 	 * Throws an exception if appropriate for the response code of a given header.
 	 */
-	private void checkResponseCode(Header hdr) throws NamingException {
+	static void checkResponseCode(Header hdr) throws NamingException {
 
 		int rcode = hdr.rcode;
 		if (rcode == NO_ERROR) {
@@ -665,47 +665,3 @@ class Tcp {
 		sock.close();
 	}
 }
-
-/*
- * javaos emulation -cj
- */
-class Packet {
-	byte buf[];
-
-	Packet(int len) {
-		buf = new byte[len];
-	}
-
-	Packet(byte data[], int len) {
-		buf = new byte[len];
-		System.arraycopy(data, 0, buf, 0, len);
-	}
-
-	void putInt(int x, int off) {
-		buf[off + 0] = (byte) (x >> 24);
-		buf[off + 1] = (byte) (x >> 16);
-		buf[off + 2] = (byte) (x >> 8);
-		buf[off + 3] = (byte) x;
-	}
-
-	void putShort(int x, int off) {
-		buf[off + 0] = (byte) (x >> 8);
-		buf[off + 1] = (byte) x;
-	}
-
-	void putByte(int x, int off) {
-		buf[off] = (byte) x;
-	}
-
-	void putBytes(byte src[], int src_offset, int dst_offset, int len) {
-		System.arraycopy(src, src_offset, buf, dst_offset, len);
-	}
-
-	int length() {
-		return buf.length;
-	}
-
-	byte[] getData() {
-		return buf;
-	}
-}
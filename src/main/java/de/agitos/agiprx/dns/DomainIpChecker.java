@@ -17,14 +17,21 @@
 package de.agitos.agiprx.dns;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.logging.Logger;
 
+import javax.naming.NameNotFoundException;
 import javax.naming.NamingException;
 
 import de.agitos.agiprx.DependencyInjector;
 import de.agitos.agiprx.bean.Config;
 import de.agitos.agiprx.bean.processor.HAProxyProcessor;
+import de.agitos.agiprx.dns.AsyncDnsResolver.Answer;
+import de.agitos.agiprx.dns.AsyncDnsResolver.Query;
 import de.agitos.agiprx.util.Assert;
 
 /**
@@ -37,14 +44,22 @@ public class DomainIpChecker implements DependencyInjector {
 
 	private static DomainIpChecker BEAN;
 
+	private static final Logger LOG = Logger.getLogger(DomainIpChecker.class.getName());
+
 	private HAProxyProcessor haProxyProcessor;
 
 	protected Set<String> trustedIpSet;
 
 	protected String nameServer;
 
+	protected int dnsInFlightWindow;
+
 	private DnsClient dnsClient = null;
 
+	private AsyncDnsResolver asyncDnsResolver = null;
+
+	private final DnsCache dnsCache;
+
 	public DomainIpChecker() {
 
 		Assert.singleton(this, BEAN);
@@ -52,6 +67,9 @@ public class DomainIpChecker implements DependencyInjector {
 
 		trustedIpSet = Config.getBean().getStringSet("domain.trustedIps", Config.DEFAULT_LIST_SPLIT_EXP);
 		nameServer = Config.getBean().getString("proxy.nameServer", "localhost");
+		dnsInFlightWindow = Config.getBean().getInteger("domain.dnsInFlightWindow", 64);
+		dnsCache = new DnsCache(Config.getBean().getInteger("domain.dnsCacheSize", 10000),
+				Config.getBean().getInteger("domain.dnsNegativeTtl", 60));
 	}
 
 	@Override
@@ -65,53 +83,112 @@ public class DomainIpChecker implements DependencyInjector {
 
 	public void run(List<String> warningMessages, Set<String> domainsInErrorState) {
 
+		List<String> productiveDomains;
+		String productiveDomainsPath = HAProxyProcessor.CONFIG_PATH + HAProxyProcessor.DOMAIN_TO_BCKE_FILE;
+		try {
+			productiveDomains = haProxyProcessor.getProductiveDomains();
+		} catch (IOException e) {
+			warningMessages.add("Error reading productive domains from " + productiveDomainsPath + ": " + e);
+			return;
+		}
+
 		try {
 
 			// check if productive domains are still configured
-			for (String domainName : haProxyProcessor.getProductiveDomains()) {
-				if (!checkDomain(warningMessages, domainName)) {
-					domainsInErrorState.add(domainName);
-				}
+			for (String domainName : checkDomains(warningMessages, productiveDomains)) {
+				domainsInErrorState.add(domainName);
 			}
 
 		} catch (IOException e) {
-			warningMessages.add("Error reading productive domains from HAProxy configuration: " + e.getMessage());
+			warningMessages.add("Error checking productive domains of " + productiveDomainsPath + " with name server "
+					+ nameServer + ": " + e);
 		}
 
+		LOG.info(dnsCache.toString());
 	}
 
-	public boolean checkDomain(List<String> warningMessages, String domainName) {
-		try {
+	public DnsCache getDnsCache() {
+		return dnsCache;
+	}
 
-			if (trustedIpSet != null) {
+	/**
+	 * Check a batch of domains with pipelined A and AAAA queries.
+	 * 
+	 * @return domains that do not resolve to a trusted IP
+	 */
+	public List<String> checkDomains(List<String> warningMessages, List<String> domainNames) throws IOException {
 
-				if (dnsClient == null) {
-					dnsClient = new DnsClient(new String[] { nameServer }, 2000, 3);
+		List<String> result = new ArrayList<String>();
+
+		if (trustedIpSet == null) {
+			return result;
+		}
+
+		Map<Query, Answer> answers = new HashMap<Query, Answer>();
+		List<Query> queries = new ArrayList<Query>();
+		for (String domainName : domainNames) {
+			for (int type : new int[] { ResourceRecord.TYPE_A, ResourceRecord.TYPE_AAAA }) {
+				Query query = new Query(domainName, type);
+				Answer answer = dnsCache.get(query);
+				if (answer != null) {
+					answers.put(query, answer);
+				} else {
+					queries.add(query);
 				}
+			}
+		}
 
-				String ipv4 = dnsLookupIpDirect(domainName, ResourceRecord.TYPE_A);
-				if (ipv4 == null) {
-					warningMessages.add("Domain " + domainName + " does not resolve to an IPv4 address");
+		try {
+			if (asyncDnsResolver == null) {
+				asyncDnsResolver = new AsyncDnsResolver(nameServer, 2000, 3, dnsInFlightWindow);
+			}
+			for (Answer answer : asyncDnsResolver.resolve(queries).values()) {
+				dnsCache.put(answer);
+				answers.put(answer.getQuery(), answer);
+			}
+		} catch (NamingException ne) {
+			warningMessages.add("Exception resolving IPs by nameserver " + nameServer + ": " + ne.getMessage());
+			return new ArrayList<String>(domainNames);
+		}
+
+		for (String domainName : domainNames) {
+			try {
+				String ipv4 = answers.get(new Query(domainName, ResourceRecord.TYPE_A)).getAddress();
+				String ipv6 = answers.get(new Query(domainName, ResourceRecord.TYPE_AAAA)).getAddress();
+				if (!checkAddresses(warningMessages, domainName, ipv4, ipv6)) {
+					result.add(domainName);
 				}
+			} catch (NamingException ne) {
+				warningMessages.add("Exception resolving IPs by nameserver " + nameServer + " on domain "
+						+ domainName + ": " + ne.getMessage());
+				result.add(domainName);
+			}
+		}
 
-				String ipv6 = dnsLookupIpDirect(domainName, ResourceRecord.TYPE_AAAA);
+		return result;
+	}
 
-				if (!trustedIpSet.contains(ipv4) && !trustedIpSet.contains(ipv6)) {
+	public boolean checkDomain(List<String> warningMessages, String domainName) {
+		return checkDomain(warningMessages, domainName, true);
+	}
 
-					StringBuilder buf = new StringBuilder();
-					buf.append("Domain ").append(domainName).append(" resolves to ");
-					if (ipv4 != null) {
-						buf.append("IPv4 ").append(ipv4);
-					}
-					if (ipv6 != null) {
-						buf.append("IPv6 ").append(ipv6);
-					}
-					buf.append(" instead of trusted IP(s) ");
-					buf.append(stringSetToString(trustedIpSet));
+	/**
+	 * @param useCache false to query the name server in any case, e.g. before a
+	 *                 certificate is requested or while waiting for a DNS change
+	 */
+	public boolean checkDomain(List<String> warningMessages, String domainName, boolean useCache) {
+		try {
+
+			if (trustedIpSet != null) {
 
-					warningMessages.add(buf.toString());
-					return false;
+				if (dnsClient == null) {
+					dnsClient = new DnsClient(new String[] { nameServer }, 2000, 3);
 				}
+
+				String ipv4 = dnsLookupIpDirect(domainName, ResourceRecord.TYPE_A, useCache);
+				String ipv6 = dnsLookupIpDirect(domainName, ResourceRecord.TYPE_AAAA, useCache);
+
+				return checkAddresses(warningMessages, domainName, ipv4, ipv6);
 			}
 
 		} catch (NamingException ne) {
@@ -122,20 +199,57 @@ public class DomainIpChecker implements DependencyInjector {
 		return true;
 	}
 
+	private boolean checkAddresses(List<String> warningMessages, String domainName, String ipv4, String ipv6) {
+
+		if (ipv4 == null) {
+			warningMessages.add("Domain " + domainName + " does not resolve to an IPv4 address");
+		}
+
+		if (!trustedIpSet.contains(ipv4) && !trustedIpSet.contains(ipv6)) {
+
+			StringBuilder buf = new StringBuilder();
+			buf.append("Domain ").append(domainName).append(" resolves to ");
+			if (ipv4 != null) {
+				buf.append("IPv4 ").append(ipv4);
+			}
+			if (ipv6 != null) {
+				buf.append("IPv6 ").append(ipv6);
+			}
+			buf.append(" instead of trusted IP(s) ");
+			buf.append(stringSetToString(trustedIpSet));
+
+			warningMessages.add(buf.toString());
+			return false;
+		}
+
+		return true;
+	}
+
 	public String dnsLookupIpDirect(String domainName, int type) throws NamingException {
+		return dnsLookupIpDirect(domainName, type, true);
+	}
+
+	public String dnsLookupIpDirect(String domainName, int type, boolean useCache) throws NamingException {
 
 		if (dnsClient == null) {
 			dnsClient = new DnsClient(new String[] { nameServer }, 2000, 3);
 		}
 
-		ResourceRecords records = dnsClient.query(new DnsName(domainName), ResourceRecord.CLASS_INTERNET, type, true,
-				false);
+		Query query = new Query(domainName, type);
 
-		if (records.getLastAnsType() != type) {
-			return null;
+		// a fresh answer replaces the cached one
+		Answer answer = useCache ? dnsCache.get(query) : null;
+		if (answer == null) {
+			try {
+				answer = new Answer(query, dnsClient.query(new DnsName(domainName), ResourceRecord.CLASS_INTERNET,
+						type, true, false));
+			} catch (NameNotFoundException e) {
+				answer = new Answer(query, e);
+			}
+			dnsCache.put(answer);
 		}
 
-		return records.answer.lastElement().getRdata().toString();
+		return answer.getAddress();
 	}
 
 	private String stringSetToString(Set<String> set) {
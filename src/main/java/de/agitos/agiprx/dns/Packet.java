@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (C) 2021 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dns;
+
+/*
+ * Copyright (c) 2000, 2017, Oracle and/or its affiliates. All rights reserved.
+ * DO NOT ALTER OR REMOVE COPYRIGHT NOTICES OR THIS FILE HEADER.
+ *
+ * This code is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU General Public License version 2 only, as
+ * published by the Free Software Foundation.  Oracle designates this
+ * particular file as subject to the "Classpath" exception as provided
+ * by Oracle in the LICENSE file that accompanied this code.
+ *
+ * This code is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE.  See the GNU General Public License
+ * version 2 for more details (a copy is included in the LICENSE file that
+ * accompanied this code).
+ *
+ * You should have received a copy of the GNU General Public License version
+ * 2 along with this work; if not, write to the Free Software Foundation,
+ * Inc., 51 Franklin St, Fifth Floor, Boston, MA 02110-1301 USA.
+ *
+ * Please contact Oracle, 500 Oracle Parkway, Redwood Shores, CA 94065 USA
+ * or visit www.oracle.com if you need additional information or have any
+ * questions.
+ */
+
+// package com.sun.jndi.dns;
+
+/*
+ * javaos emulation -cj
+ */
+class Packet {
+	byte buf[];
+
+	Packet(int len) {
+		buf = new byte[len];
+	}
+
+	Packet(byte data[], int len) {
+		buf = new byte[len];
+		System.arraycopy(data, 0, buf, 0, len);
+	}
+
+	void putInt(int x, int off) {
+		buf[off + 0] = (byte) (x >> 24);
+		buf[off + 1] = (byte) (x >> 16);
+		buf[off + 2] = (byte) (x >> 8);
+		buf[off + 3] = (byte) x;
+	}
+
+	void putShort(int x, int off) {
+		buf[off + 0] = (byte) (x >> 8);
+		buf[off + 1] = (byte) x;
+	}
+
+	void putByte(int x, int off) {
+		buf[off] = (byte) x;
+	}
+
+	void putBytes(byte src[], int src_offset, int dst_offset, int len) {
+		System.arraycopy(src, src_offset, buf, dst_offset, len);
+	}
+
+	int length() {
+		return buf.length;
+	}
+
+	byte[] getData() {
+		return buf;
+	}
+}
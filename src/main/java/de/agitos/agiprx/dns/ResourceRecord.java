@@ -171,6 +171,10 @@ public class ResourceRecord {
 		return rdata;
 	}
 
+	public int getTtl() {
+		return ttl;
+	}
+
 	public static String getTypeName(int rrtype) {
 		return valueToName(rrtype, rrTypeNames);
 	}
@@ -0,0 +1,81 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Change log entries after fromSequence up to toSequence with the resulting
+ * state of each changed row.
+ */
+public class ChangeSetDto {
+
+	private long fromSequence;
+
+	private long toSequence;
+
+	// false if more entries are available or the change log has a gap
+	private boolean complete;
+
+	private List<ChangeLogEntryDto> entries = new ArrayList<>();
+
+	private List<RowStateDto> rows = new ArrayList<>();
+
+	public ChangeSetDto() {
+	}
+
+	public long getFromSequence() {
+		return fromSequence;
+	}
+
+	public void setFromSequence(long fromSequence) {
+		this.fromSequence = fromSequence;
+	}
+
+	public long getToSequence() {
+		return toSequence;
+	}
+
+	public void setToSequence(long toSequence) {
+		this.toSequence = toSequence;
+	}
+
+	public boolean isComplete() {
+		return complete;
+	}
+
+	public void setComplete(boolean complete) {
+		this.complete = complete;
+	}
+
+	public List<ChangeLogEntryDto> getEntries() {
+		return entries;
+	}
+
+	public void setEntries(List<ChangeLogEntryDto> entries) {
+		this.entries = entries;
+	}
+
+	public List<RowStateDto> getRows() {
+		return rows;
+	}
+
+	public void setRows(List<RowStateDto> rows) {
+		this.rows = rows;
+	}
+}
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dto;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import de.agitos.agiprx.model.Backend;
+import de.agitos.agiprx.model.Domain;
+
+/**
+ * Planned state of a domain in a mass update dry run, updates list the previous
+ * values of the changed fields.
+ */
+public class DomainChangeDto {
+
+	private String domainName;
+
+	private String projectLabel;
+
+	private String backendLabel;
+
+	private Boolean letsEncrypt;
+
+	private Boolean certProvided;
+
+	private String redirectToUrl;
+
+	private Map<String, String> previousValues;
+
+	public DomainChangeDto() {
+	}
+
+	public DomainChangeDto(Domain domain, Domain existingDomain) {
+		this.domainName = domain.getDomain();
+		this.projectLabel = getProjectLabel(domain.getBackend());
+		this.backendLabel = domain.getBackend() != null ? domain.getBackend().getLabel() : null;
+		this.letsEncrypt = domain.getLetsEncrypt();
+		this.certProvided = domain.getCertProvided();
+		this.redirectToUrl = domain.getRedirectToUrl();
+
+		if (existingDomain != null && existingDomain != domain) {
+			previousValues = new LinkedHashMap<>();
+			String previousProjectLabel = getProjectLabel(existingDomain.getBackend());
+			if (!Objects.equals(previousProjectLabel, projectLabel)) {
+				previousValues.put("projectLabel", previousProjectLabel);
+			}
+			if (!Objects.equals(existingDomain.getBackendId(), domain.getBackendId())) {
+				previousValues.put("backendLabel",
+						existingDomain.getBackend() != null ? existingDomain.getBackend().getLabel()
+								: String.valueOf(existingDomain.getBackendId()));
+			}
+			if (!Objects.equals(existingDomain.getLetsEncrypt(), letsEncrypt)) {
+				previousValues.put("letsEncrypt", String.valueOf(existingDomain.getLetsEncrypt()));
+			}
+			if (!Objects.equals(existingDomain.getCertProvided(), certProvided)) {
+				previousValues.put("certProvided", String.valueOf(existingDomain.getCertProvided()));
+			}
+			if (!Objects.equals(existingDomain.getRedirectToUrl(), redirectToUrl)) {
+				previousValues.put("redirectToUrl", existingDomain.getRedirectToUrl());
+			}
+		}
+	}
+
+	private static String getProjectLabel(Backend backend) {
+		if (backend == null || backend.getProject() == null) {
+			return null;
+		}
+		return backend.getProject().getLabel();
+	}
+
+	public String getDomainName() {
+		return domainName;
+	}
+
+	public void setDomainName(String domainName) {
+		this.domainName = domainName;
+	}
+
+	public String getProjectLabel() {
+		return projectLabel;
+	}
+
+	public void setProjectLabel(String projectLabel) {
+		this.projectLabel = projectLabel;
+	}
+
+	public String getBackendLabel() {
+		return backendLabel;
+	}
+
+	public void setBackendLabel(String backendLabel) {
+		this.backendLabel = backendLabel;
+	}
+
+	public Boolean getLetsEncrypt() {
+		return letsEncrypt;
+	}
+
+	public void setLetsEncrypt(Boolean letsEncrypt) {
+		this.letsEncrypt = letsEncrypt;
+	}
+
+	public Boolean getCertProvided() {
+		return certProvided;
+	}
+
+	public void setCertProvided(Boolean certProvided) {
+		this.certProvided = certProvided;
+	}
+
+	public String getRedirectToUrl() {
+		return redirectToUrl;
+	}
+
+	public void setRedirectToUrl(String redirectToUrl) {
+		this.redirectToUrl = redirectToUrl;
+	}
+
+	public Map<String, String> getPreviousValues() {
+		return previousValues;
+	}
+
+	public void setPreviousValues(Map<String, String> previousValues) {
+		this.previousValues = previousValues;
+	}
+}
@@ -0,0 +1,101 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of a mass update dry run: the changes and certificate operations a
+ * mass update would apply.
+ */
+public class MassDomainUpdatePlanDto {
+
+	private boolean fullSync;
+
+	private List<DomainChangeDto> creates = new ArrayList<>();
+
+	private List<DomainChangeDto> updates = new ArrayList<>();
+
+	private List<DomainChangeDto> deletes = new ArrayList<>();
+
+	private List<String> unchanged = new ArrayList<>();
+
+	// domain names of Let's Encrypt certificates to issue and to remove
+	private List<String> certIssuances = new ArrayList<>();
+
+	private List<String> certDeletions = new ArrayList<>();
+
+	public MassDomainUpdatePlanDto() {
+	}
+
+	public boolean isFullSync() {
+		return fullSync;
+	}
+
+	public void setFullSync(boolean fullSync) {
+		this.fullSync = fullSync;
+	}
+
+	public List<DomainChangeDto> getCreates() {
+		return creates;
+	}
+
+	public void setCreates(List<DomainChangeDto> creates) {
+		this.creates = creates;
+	}
+
+	public List<DomainChangeDto> getUpdates() {
+		return updates;
+	}
+
+	public void setUpdates(List<DomainChangeDto> updates) {
+		this.updates = updates;
+	}
+
+	public List<DomainChangeDto> getDeletes() {
+		return deletes;
+	}
+
+	public void setDeletes(List<DomainChangeDto> deletes) {
+		this.deletes = deletes;
+	}
+
+	public List<String> getUnchanged() {
+		return unchanged;
+	}
+
+	public void setUnchanged(List<String> unchanged) {
+		this.unchanged = unchanged;
+	}
+
+	public List<String> getCertIssuances() {
+		return certIssuances;
+	}
+
+	public void setCertIssuances(List<String> certIssuances) {
+		this.certIssuances = certIssuances;
+	}
+
+	public List<String> getCertDeletions() {
+		return certDeletions;
+	}
+
+	public void setCertDeletions(List<String> certDeletions) {
+		this.certDeletions = certDeletions;
+	}
+}
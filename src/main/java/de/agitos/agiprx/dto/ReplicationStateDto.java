@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dto;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class ReplicationStateDto {
+
+	private long lastSequence;
+
+	private List<String> warnings = new ArrayList<>();
+
+	// regenerated configurations, e.g. haproxy or sshproxy
+	private List<String> regenerated = new ArrayList<>();
+
+	public ReplicationStateDto() {
+	}
+
+	public ReplicationStateDto(long lastSequence, List<String> warnings) {
+		this.lastSequence = lastSequence;
+		this.warnings = warnings;
+	}
+
+	public ReplicationStateDto(long lastSequence, List<String> warnings, List<String> regenerated) {
+		this.lastSequence = lastSequence;
+		this.warnings = warnings;
+		this.regenerated = regenerated;
+	}
+
+	public long getLastSequence() {
+		return lastSequence;
+	}
+
+	public void setLastSequence(long lastSequence) {
+		this.lastSequence = lastSequence;
+	}
+
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	public void setWarnings(List<String> warnings) {
+		this.warnings = warnings;
+	}
+
+	public List<String> getRegenerated() {
+		return regenerated;
+	}
+
+	public void setRegenerated(List<String> regenerated) {
+		this.regenerated = regenerated;
+	}
+}
@@ -0,0 +1,64 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dto;
+
+import java.util.Map;
+
+/**
+ * State of a changed row, the values are null if the row was deleted.
+ */
+public class RowStateDto {
+
+	private String tableName;
+
+	private long rowId;
+
+	private Map<String, String> values;
+
+	public RowStateDto() {
+	}
+
+	public RowStateDto(String tableName, long rowId, Map<String, String> values) {
+		this.tableName = tableName;
+		this.rowId = rowId;
+		this.values = values;
+	}
+
+	public String getTableName() {
+		return tableName;
+	}
+
+	public void setTableName(String tableName) {
+		this.tableName = tableName;
+	}
+
+	public long getRowId() {
+		return rowId;
+	}
+
+	public void setRowId(long rowId) {
+		this.rowId = rowId;
+	}
+
+	public Map<String, String> getValues() {
+		return values;
+	}
+
+	public void setValues(Map<String, String> values) {
+		this.values = values;
+	}
+}
@@ -65,6 +65,7 @@ public abstract class AbstractExecutor implements DependencyInjector {
 	protected static final String CMD_INFORMALL = "informall";
 	protected static final String CMD_INFORM = "_inform";
 	protected static final String CMD_POSTGENLESSLCERTS = "_postgenlesslcerts";
+	protected static final String CMD_MASSUPDATEPLAN = "massupdate-plan";
 	// protected static final String CMD_ = "";
 
 	protected ConsoleWrapper console;
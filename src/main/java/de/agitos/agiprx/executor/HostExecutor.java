@@ -21,6 +21,7 @@ import java.util.List;
 
 import com.mysql.cj.util.StringUtils;
 
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.dao.ContainerDao;
 import de.agitos.agiprx.dao.HostDao;
 import de.agitos.agiprx.dao.RelationType;
@@ -42,6 +43,8 @@ public class HostExecutor extends AbstractExecutor {
 
 	private ContainerDao containerDao;
 
+	private ConfigSnapshotDao configSnapshotDao;
+
 	public HostExecutor() {
 
 		Assert.singleton(this, BEAN);
@@ -54,6 +57,7 @@ public class HostExecutor extends AbstractExecutor {
 
 		hostDao = HostDao.getBean();
 		containerDao = ContainerDao.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
 	}
 
 	public static HostExecutor getBean() {
@@ -145,7 +149,7 @@ public class HostExecutor extends AbstractExecutor {
 		tableBuf.addColumn(new StringColumn("hostname", 20));
 		tableBuf.addColumn(new StringColumn("ipv6", 25));
 
-		for (Host host : hostDao.findAll()) {
+		for (Host host : configSnapshotDao.getSnapshot().getHosts()) {
 			// console.printlnf("\t%s", host);
 
 			Row row = new Row(host.getId(), host.getHostname(), host.getIpv6());
@@ -16,6 +16,13 @@
  ******************************************************************************/
 package de.agitos.agiprx.executor;
 
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Map;
+
+import javax.json.bind.JsonbBuilder;
+
 import de.agitos.agiprx.AgiPrx;
 import de.agitos.agiprx.bean.SearchBean;
 import de.agitos.agiprx.bean.processor.AgiPrxSshAuthProcessor;
@@ -23,6 +30,9 @@ import de.agitos.agiprx.bean.processor.DatabaseBackupProcessor;
 import de.agitos.agiprx.bean.processor.HAProxyProcessor;
 import de.agitos.agiprx.bean.processor.ProxySyncProcessor;
 import de.agitos.agiprx.bean.processor.SshProxyProcessor;
+import de.agitos.agiprx.dto.DomainChangeDto;
+import de.agitos.agiprx.dto.MassDomainUpdateDto;
+import de.agitos.agiprx.dto.MassDomainUpdatePlanDto;
 import de.agitos.agiprx.exception.AbortionException;
 import de.agitos.agiprx.exception.ExitException;
 import de.agitos.agiprx.exception.GotoTopException;
@@ -41,6 +51,8 @@ public class MainExecutor extends AbstractExecutor {
 
 	private ProjectExecutor projectExecutor;
 
+	private NonInteractiveDomainExecutor nonInteractiveDomainExecutor;
+
 	private HAProxyProcessor haProxyProcessor;
 
 	private DatabaseBackupProcessor databaseBackupProcessor;
@@ -69,6 +81,7 @@ public class MainExecutor extends AbstractExecutor {
 		userExecutor = UserExecutor.getBean();
 		apiUserExecutor = ApiUserExecutor.getBean();
 		projectExecutor = ProjectExecutor.getBean();
+		nonInteractiveDomainExecutor = NonInteractiveDomainExecutor.getBean();
 		haProxyProcessor = HAProxyProcessor.getBean();
 		databaseBackupProcessor = DatabaseBackupProcessor.getBean();
 		sshProxyProcessor = SshProxyProcessor.getBean();
@@ -175,6 +188,8 @@ public class MainExecutor extends AbstractExecutor {
 						haProxyProcessor.listCerts(getStringParam(out));
 					} else if (isCommand(CMD_CERTS, out)) {
 						haProxyProcessor.listCerts(null);
+					} else if (isCommandWithParam(CMD_MASSUPDATEPLAN, out)) {
+						planMassDomainUpdate(getStringParam(out));
 					} else if (isCommand(CMD_GENHAPRX, out)) {
 						haProxyProcessor.manageConfiguration(true, true);
 					} else if (isCommand(CMD_WRITESSHPRX, out)) {
@@ -208,6 +223,62 @@ public class MainExecutor extends AbstractExecutor {
 		}
 	}
 
+	private void planMassDomainUpdate(String jsonFilename) {
+
+		if (jsonFilename == null) {
+			return;
+		}
+
+		MassDomainUpdatePlanDto plan;
+		try (Reader reader = Files.newBufferedReader(Paths.get(jsonFilename))) {
+			MassDomainUpdateDto massDomainUpdate = JsonbBuilder.create().fromJson(reader, MassDomainUpdateDto.class);
+			plan = nonInteractiveDomainExecutor.planMassDomainUpdate(massDomainUpdate);
+		} catch (Exception e) {
+			console.printlnfError("Unable to plan mass update: %s", e.getMessage());
+			return;
+		}
+
+		console.printlnfStress("%s mass update, %d unchanged domain(s)", plan.isFullSync() ? "Full sync" : "Partial",
+				plan.getUnchanged().size());
+
+		for (DomainChangeDto change : plan.getCreates()) {
+			console.printlnf("create %s", formatDomainChange(change));
+		}
+		for (DomainChangeDto change : plan.getUpdates()) {
+			console.printlnf("update %s", formatDomainChange(change));
+			for (Map.Entry<String, String> previousValue : change.getPreviousValues().entrySet()) {
+				console.printlnf("       %s was %s", previousValue.getKey(), previousValue.getValue());
+			}
+		}
+		for (DomainChangeDto change : plan.getDeletes()) {
+			console.printlnf("delete %s", formatDomainChange(change));
+		}
+		for (String domainName : plan.getCertIssuances()) {
+			console.printlnf("issue Let's Encrypt cert for %s", domainName);
+		}
+		for (String domainName : plan.getCertDeletions()) {
+			console.printlnf("remove Let's Encrypt cert of %s", domainName);
+		}
+	}
+
+	private String formatDomainChange(DomainChangeDto change) {
+
+		StringBuilder buf = new StringBuilder();
+		buf.append(change.getDomainName()).append(" -> ").append(change.getProjectLabel()).append("/")
+				.append(change.getBackendLabel());
+
+		if (Boolean.TRUE.equals(change.getLetsEncrypt())) {
+			buf.append(", Let's Encrypt");
+		} else if (Boolean.TRUE.equals(change.getCertProvided())) {
+			buf.append(", provided cert");
+		}
+		if (change.getRedirectToUrl() != null) {
+			buf.append(", redirect to ").append(change.getRedirectToUrl());
+		}
+
+		return buf.toString();
+	}
+
 	private void help() {
 		printHelp(CMD_PROJECTS, "list, add, edit and delete projects");
 		printHelp(CMD_FIND + " *domain*",
@@ -224,6 +295,8 @@ public class MainExecutor extends AbstractExecutor {
 
 		printHelp(CMD_CERTS + " [*domain*]",
 				"list configured and currently valid SSL certificates, optionally filter by domain, *-wildcard supported");
+		printHelp(CMD_MASSUPDATEPLAN + " <json-file>",
+				"dry run of a domain mass update as posted to /domains/massupdate, shows the planned changes");
 		printHelp(CMD_GENHAPRX, "generate HAProxy config and reload proxy");
 		printHelp(CMD_WRITESSHPRX, "update ssh proxy configuration");
 		if (proxySyncProcessor.isSyncRequired()) {
@@ -236,13 +309,13 @@ public class MainExecutor extends AbstractExecutor {
 
 		if (proxySyncProcessor.isSyncRequired()) {
 			console.setCommandCompletion(CMD_HELP, CMD_ABORT, CMD_CANCEL, CMD_CDUP, CMD_TOP, CMD_EXIT, CMD_QUIT,
-					CMD_PROJECTS, CMD_FIND, CMD_JUMP, CMD_USERS, CMD_APIUSERS, CMD_HOSTS, CMD_CERTS, CMD_GENHAPRX,
-					CMD_WRITESSHPRX, CMD_SYNCSLAVES);
+					CMD_PROJECTS, CMD_FIND, CMD_JUMP, CMD_USERS, CMD_APIUSERS, CMD_HOSTS, CMD_CERTS, CMD_MASSUPDATEPLAN,
+					CMD_GENHAPRX, CMD_WRITESSHPRX, CMD_SYNCSLAVES);
 
 		} else {
 			console.setCommandCompletion(CMD_HELP, CMD_ABORT, CMD_CANCEL, CMD_CDUP, CMD_TOP, CMD_EXIT, CMD_QUIT,
-					CMD_PROJECTS, CMD_FIND, CMD_JUMP, CMD_USERS, CMD_APIUSERS, CMD_HOSTS, CMD_CERTS, CMD_GENHAPRX,
-					CMD_WRITESSHPRX);
+					CMD_PROJECTS, CMD_FIND, CMD_JUMP, CMD_USERS, CMD_APIUSERS, CMD_HOSTS, CMD_CERTS, CMD_MASSUPDATEPLAN,
+					CMD_GENHAPRX, CMD_WRITESSHPRX);
 		}
 	}
 
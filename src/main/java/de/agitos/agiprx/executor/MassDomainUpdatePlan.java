@@ -0,0 +1,324 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.executor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import de.agitos.agiprx.bean.processor.HAProxyProcessor.CertInfo;
+import de.agitos.agiprx.dto.DomainChangeDto;
+import de.agitos.agiprx.dto.DomainOperationDto;
+import de.agitos.agiprx.dto.MassDomainUpdateDto;
+import de.agitos.agiprx.dto.MassDomainUpdatePlanDto;
+import de.agitos.agiprx.model.Backend;
+import de.agitos.agiprx.model.Domain;
+import de.agitos.agiprx.model.Project;
+
+/**
+ * Changes of a mass domain update, computed from the requested operations and
+ * the pre-loaded existing domains without any further DB access.
+ */
+public class MassDomainUpdatePlan {
+
+	public enum ChangeType {
+		CREATE, UPDATE, DELETE, UNCHANGED
+	}
+
+	public enum CertAction {
+		NONE, CREATE_LESSL, DELETE_LESSL
+	}
+
+	public static class DomainChange {
+
+		private final ChangeType type;
+
+		// target state, the existing domain on deletions
+		private final Domain domain;
+
+		private final Domain existingDomain;
+
+		private final CertAction certAction;
+
+		DomainChange(ChangeType type, Domain domain, Domain existingDomain, CertAction certAction) {
+			this.type = type;
+			this.domain = domain;
+			this.existingDomain = existingDomain;
+			this.certAction = certAction;
+		}
+
+		public ChangeType getType() {
+			return type;
+		}
+
+		public Domain getDomain() {
+			return domain;
+		}
+
+		public Domain getExistingDomain() {
+			return existingDomain;
+		}
+
+		public CertAction getCertAction() {
+			return certAction;
+		}
+
+		public String getDomainName() {
+			return domain.getDomain();
+		}
+
+		@Override
+		public String toString() {
+			return type + " " + domain.getDomain() + (certAction != CertAction.NONE ? " (" + certAction + ")" : "");
+		}
+	}
+
+	private final boolean fullSync;
+
+	private final List<DomainChange> changes = new ArrayList<>();
+
+	private MassDomainUpdatePlan(boolean fullSync) {
+		this.fullSync = fullSync;
+	}
+
+	/**
+	 * @param massDomainUpdate  requested operations, checked by verifyUniq()
+	 * @param projectMap        projects of the operations by label
+	 * @param existingDomains   existing domains by name, covering all requested
+	 *                          domain names and on full synchronizations all
+	 *                          domains of the project
+	 * @param certLookup        certificate covering a domain name or null
+	 * @param redirectValidator check of redirect URLs
+	 */
+	public static MassDomainUpdatePlan create(MassDomainUpdateDto massDomainUpdate, Map<String, Project> projectMap,
+			Map<String, Domain> existingDomains, Function<String, CertInfo> certLookup,
+			Predicate<String> redirectValidator) throws Exception {
+
+		MassDomainUpdatePlan plan = new MassDomainUpdatePlan(massDomainUpdate.isFullSync());
+
+		Set<String> containedDomains = massDomainUpdate.verifyUniq();
+
+		Map<String, Map<String, Backend>> backendsByProject = new HashMap<>();
+		for (Map.Entry<String, Project> entry : projectMap.entrySet()) {
+			Map<String, Backend> backends = new HashMap<>();
+			for (Backend backend : entry.getValue().getBackends()) {
+				backends.put(backend.getLabel(), backend);
+			}
+			backendsByProject.put(entry.getKey(), backends);
+		}
+
+		for (DomainOperationDto domainOp : massDomainUpdate.getDomainOperations()) {
+
+			Map<String, Backend> backends = backendsByProject.get(domainOp.getProjectLabel());
+			if (backends == null) {
+				throw new RuntimeException(
+						"Invalid project: label " + domainOp.getProjectLabel() + " not existing or access denied");
+			}
+			Backend backend = backends.get(domainOp.getBackendLabel());
+			if (backend == null) {
+				throw new RuntimeException(
+						"Invalid backend: label " + domainOp.getBackendLabel() + " not existing or access denied");
+			}
+
+			Domain existingDomain = existingDomains.get(domainOp.getDomainName());
+
+			switch (domainOp.getOperation()) {
+			case CREATE:
+			case UPDATE:
+			case REPLACE:
+				plan.changes.add(planCreateOrUpdate(domainOp, backend, existingDomain, certLookup, redirectValidator));
+				break;
+			case DELETE:
+				if (existingDomain != null && Objects.equals(existingDomain.getBackendId(), backend.getId())) {
+					plan.changes.add(new DomainChange(ChangeType.DELETE, existingDomain, existingDomain,
+							getDeletionCertAction(existingDomain, certLookup)));
+				} else {
+					// not assigned to the backend, nothing to delete
+					Domain domain = new Domain();
+					domain.setDomain(domainOp.getDomainName());
+					plan.changes.add(new DomainChange(ChangeType.UNCHANGED, domain, existingDomain, CertAction.NONE));
+				}
+				break;
+			default:
+				throw new RuntimeException("Unknown update operation '" + domainOp.getOperation() + "'");
+			}
+		}
+
+		if (massDomainUpdate.isFullSync() && containedDomains.size() > 0) {
+
+			Project project = projectMap.values().iterator().next();
+
+			Set<Long> backendIds = new HashSet<>();
+			for (Backend backend : project.getBackends()) {
+				backendIds.add(backend.getId());
+			}
+
+			// delete all project domains that are not contained in the mass update
+			for (Domain existingDomain : existingDomains.values()) {
+				if (backendIds.contains(existingDomain.getBackendId())
+						&& !containedDomains.contains(existingDomain.getDomain())) {
+					plan.changes.add(new DomainChange(ChangeType.DELETE, existingDomain, existingDomain,
+							getDeletionCertAction(existingDomain, certLookup)));
+				}
+			}
+		}
+
+		return plan;
+	}
+
+	// corresponds to LesslCertProcessor.cleanupLesslCerts()
+	private static CertAction getDeletionCertAction(Domain existingDomain, Function<String, CertInfo> certLookup) {
+
+		if (Boolean.TRUE.equals(existingDomain.getLetsEncrypt())) {
+			return CertAction.DELETE_LESSL;
+		}
+
+		CertInfo certInfo = certLookup.apply(existingDomain.getDomain());
+		if (certInfo != null && certInfo.isLesslCert()) {
+			return CertAction.DELETE_LESSL;
+		}
+
+		return CertAction.NONE;
+	}
+
+	private static DomainChange planCreateOrUpdate(DomainOperationDto domainOp, Backend backend,
+			Domain existingDomain, Function<String, CertInfo> certLookup, Predicate<String> redirectValidator) {
+
+		String domainName = domainOp.getDomainName();
+		String redirectUrl = domainOp.getRedirectToUrl();
+
+		if (redirectUrl != null && !redirectValidator.test(redirectUrl)) {
+			throw new RuntimeException(domainName + ": invalid redirect URL " + redirectUrl);
+		}
+
+		boolean letsencrypt = false;
+		boolean certprovided = false;
+
+		if (Boolean.TRUE.equals(domainOp.getEnableSSL())) {
+
+			CertInfo certInfo = certLookup.apply(domainName);
+
+			// check if domain is covered by any cert
+			if (certInfo != null) {
+				if (certInfo.isLesslCert()) {
+					letsencrypt = true;
+				} else {
+					certprovided = true;
+				}
+			} else {
+				letsencrypt = true;
+			}
+		}
+
+		Domain domain = new Domain();
+		domain.setDomain(domainName);
+		domain.setBackend(backend);
+		domain.setCertProvided(certprovided);
+		domain.setLetsEncrypt(letsencrypt);
+		domain.setRedirectToUrl(redirectUrl);
+
+		if (existingDomain == null) {
+			return new DomainChange(ChangeType.CREATE, domain, null,
+					letsencrypt ? CertAction.CREATE_LESSL : CertAction.NONE);
+		}
+
+		domain.setId(existingDomain.getId());
+		domain.setVersion(existingDomain.getVersion());
+
+		if (Objects.equals(existingDomain.getBackendId(), domain.getBackendId())
+				&& Objects.equals(existingDomain.getCertProvided(), domain.getCertProvided())
+				&& Objects.equals(existingDomain.getLetsEncrypt(), domain.getLetsEncrypt())
+				&& Objects.equals(existingDomain.getRedirectToUrl(), domain.getRedirectToUrl())) {
+			return new DomainChange(ChangeType.UNCHANGED, domain, existingDomain, CertAction.NONE);
+		}
+
+		CertAction certAction = CertAction.NONE;
+		if (!Boolean.TRUE.equals(existingDomain.getLetsEncrypt()) && letsencrypt) {
+			certAction = CertAction.CREATE_LESSL;
+		} else if (Boolean.TRUE.equals(existingDomain.getLetsEncrypt()) && !letsencrypt) {
+			certAction = CertAction.DELETE_LESSL;
+		}
+
+		return new DomainChange(ChangeType.UPDATE, domain, existingDomain, certAction);
+	}
+
+	public List<DomainChange> getChanges() {
+		return changes;
+	}
+
+	public List<Domain> getDomains(ChangeType type) {
+		List<Domain> result = new ArrayList<>();
+		for (DomainChange change : changes) {
+			if (change.getType() == type) {
+				result.add(change.getDomain());
+			}
+		}
+		return result;
+	}
+
+	public List<String> getDomainNames(CertAction certAction) {
+		List<String> result = new ArrayList<>();
+		for (DomainChange change : changes) {
+			if (change.getCertAction() == certAction) {
+				result.add(change.getDomainName());
+			}
+		}
+		return result;
+	}
+
+	public boolean hasModifications() {
+		for (DomainChange change : changes) {
+			if (change.getType() != ChangeType.UNCHANGED) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public MassDomainUpdatePlanDto toDto() {
+
+		MassDomainUpdatePlanDto dto = new MassDomainUpdatePlanDto();
+		dto.setFullSync(fullSync);
+
+		for (DomainChange change : changes) {
+			switch (change.getType()) {
+			case CREATE:
+				dto.getCreates().add(new DomainChangeDto(change.getDomain(), null));
+				break;
+			case UPDATE:
+				dto.getUpdates().add(new DomainChangeDto(change.getDomain(), change.getExistingDomain()));
+				break;
+			case DELETE:
+				dto.getDeletes().add(new DomainChangeDto(change.getDomain(), null));
+				break;
+			default:
+				dto.getUnchanged().add(change.getDomainName());
+			}
+		}
+
+		dto.setCertIssuances(getDomainNames(CertAction.CREATE_LESSL));
+		dto.setCertDeletions(getDomainNames(CertAction.DELETE_LESSL));
+
+		return dto;
+	}
+}
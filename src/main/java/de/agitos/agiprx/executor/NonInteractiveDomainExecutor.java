@@ -16,30 +16,38 @@
  ******************************************************************************/
 package de.agitos.agiprx.executor;
 
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
 import java.util.logging.Logger;
 
 import de.agitos.agiprx.ConsoleWrapper;
 import de.agitos.agiprx.bean.processor.HAProxyProcessor;
 import de.agitos.agiprx.bean.processor.HAProxyProcessor.CertInfo;
+import de.agitos.agiprx.bean.processor.JobProcessor;
+import de.agitos.agiprx.bean.processor.JobProgress;
+import de.agitos.agiprx.dao.ConfigSnapshot;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.dao.DomainDao;
-import de.agitos.agiprx.dao.ProjectDao;
+import de.agitos.agiprx.db.DataSourceUtils;
 import de.agitos.agiprx.dto.DomainDto;
 import de.agitos.agiprx.dto.DomainOperationDto;
+import de.agitos.agiprx.dto.JobDto;
 import de.agitos.agiprx.dto.MassDomainUpdateDto;
+import de.agitos.agiprx.dto.MassDomainUpdatePlanDto;
+import de.agitos.agiprx.executor.MassDomainUpdatePlan.CertAction;
+import de.agitos.agiprx.executor.MassDomainUpdatePlan.ChangeType;
+import de.agitos.agiprx.executor.MassDomainUpdatePlan.DomainChange;
 import de.agitos.agiprx.model.Backend;
 import de.agitos.agiprx.model.Domain;
 import de.agitos.agiprx.model.Project;
 import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.DomainNameTrie;
 import de.agitos.agiprx.util.EmailSender;
 import de.agitos.agiprx.util.UserContext;
 import de.agitos.agiprx.util.Validator;
@@ -50,12 +58,16 @@ public class NonInteractiveDomainExecutor extends AbstractCertificateRelatedExec
 
 	private static final Logger LOG = Logger.getLogger(NonInteractiveDomainExecutor.class.getName());
 
-	private ProjectDao projectDao;
+	public static final String JOB_TYPE_MASS_DOMAIN_UPDATE = "domain-massupdate";
+
+	private ConfigSnapshotDao configSnapshotDao;
 
 	private DomainDao domainDao;
 
 	private HAProxyProcessor haProxyProcessor;
 
+	private JobProcessor jobProcessor;
+
 	private UserContext userContext;
 
 	private ConsoleWrapper console;
@@ -78,9 +90,10 @@ public class NonInteractiveDomainExecutor extends AbstractCertificateRelatedExec
 	public void postConstruct() {
 		super.postConstruct();
 
-		projectDao = ProjectDao.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
 		domainDao = DomainDao.getBean();
 		haProxyProcessor = HAProxyProcessor.getBean();
+		jobProcessor = JobProcessor.getBean();
 		userContext = UserContext.getBean();
 		console = ConsoleWrapper.getBean();
 		validator = Validator.getBean();
@@ -88,7 +101,11 @@ public class NonInteractiveDomainExecutor extends AbstractCertificateRelatedExec
 	}
 
 	private Project checkAndFindProject(String projectLabel) {
-		Project project = projectDao.find(projectLabel);
+		return checkAndFindProject(configSnapshotDao.getSnapshot(), projectLabel);
+	}
+
+	private Project checkAndFindProject(ConfigSnapshot snapshot, String projectLabel) {
+		Project project = snapshot.findProject(projectLabel, userContext);
 		if (project == null) {
 			throw new RuntimeException("Invalid project: label " + projectLabel + " not existing or access denied");
 		}
@@ -107,230 +124,186 @@ public class NonInteractiveDomainExecutor extends AbstractCertificateRelatedExec
 	}
 
 	/**
-	 * Run mass updates of domain names of multiple projects/backends either in full
-	 * synchronization mode or as partial operations.
+	 * Queue mass updates of domain names of multiple projects/backends either in
+	 * full synchronization mode or as partial operations. The projects and the
+	 * uniqueness of the domain names are checked before the job is queued.
 	 * 
 	 * @param massDomainUpdate
-	 * @return List of unstructured warning messages
+	 * @return status of the queued job
 	 * @throws Exception
 	 */
-	public List<String> massDomainUpdate(MassDomainUpdateDto massDomainUpdate) throws Exception {
-
-		if (!massDomainUpdate.isFullSync()) {
-
-			// run single updates directly and return warnings
-			return this.massDomainUpdateHelper(massDomainUpdate, null);
+	public JobDto massDomainUpdate(MassDomainUpdateDto massDomainUpdate) throws Exception {
 
-		} else {
-
-			// start thread on full sync, run-detached with email information in the end
-			Thread massUpdateThread = new Thread(
-					new DetachedRunner(massDomainUpdate, userContext.getApiUser().getUsername()));
-			massUpdateThread.start();
-
-			// return nothing as no warnings are available yet
-			return new ArrayList<String>();
+		Set<String> projectLabels = new TreeSet<>();
+		for (DomainOperationDto domainOp : massDomainUpdate.getDomainOperations()) {
+			if (projectLabels.add(domainOp.getProjectLabel())) {
+				checkAndFindProject(domainOp.getProjectLabel());
+			}
 		}
-	}
-
-	private List<String> massDomainUpdateHelper(MassDomainUpdateDto massDomainUpdate, String username)
-			throws Exception {
-
-		LOG.info("Starting mass domain update on " + massDomainUpdate.getDomainOperations().size() + " domain names.");
 
-		PrintStream out = null;
-		ByteArrayOutputStream bos = null;
+		massDomainUpdate.verifyUniq();
 
-		if (username != null) {
-			userContext.registerApiUser(username);
-		}
-
-		if (massDomainUpdate.isFullSync()) {
-			// there is nothing to input, so create dummy
-			InputStream is = new ByteArrayInputStream(new byte[0]);
-			bos = new ByteArrayOutputStream();
-			out = new PrintStream(bos);
-			console.registerClient(is, out, false);
-		}
+		return jobProcessor.submit(JOB_TYPE_MASS_DOMAIN_UPDATE, projectLabels,
+				userContext.getApiUser().getUsername(),
+				progress -> massDomainUpdateHelper(massDomainUpdate, progress));
+	}
 
-		List<String> warningMessages = new ArrayList<String>();
+	private Map<String, Project> checkAndFindProjects(ConfigSnapshot snapshot, MassDomainUpdateDto massDomainUpdate) {
 
 		Map<String, Project> projectMap = new HashMap<>();
 
 		for (DomainOperationDto domainOp : massDomainUpdate.getDomainOperations()) {
 			Project project = projectMap.get(domainOp.getProjectLabel());
 			if (project == null) {
-				project = checkAndFindProject(domainOp.getProjectLabel());
+				project = checkAndFindProject(snapshot, domainOp.getProjectLabel());
 				projectMap.put(domainOp.getProjectLabel(), project);
 			}
 		}
 
-		Set<String> containedDomains = massDomainUpdate.verifyUniq();
-
-		boolean domainModification = false;
+		return projectMap;
+	}
 
-		for (DomainOperationDto domainOp : massDomainUpdate.getDomainOperations()) {
-			Project project = projectMap.get(domainOp.getProjectLabel());
-			Backend backend = checkAndFindBackend(project, domainOp.getBackendLabel());
-
-			switch (domainOp.getOperation()) {
-			case CREATE:
-			case UPDATE:
-			case REPLACE:
-				domainModification |= createOrUpdateDomain(domainOp.getDomainName(), backend, domainOp.getEnableSSL(),
-						domainOp.getRedirectToUrl(), warningMessages);
-				LOG.info("Modified domain " + domainOp.getDomainName());
-				break;
-			case DELETE:
-				domainModification |= deleteDomain(domainOp.getDomainName(), backend, warningMessages);
-				LOG.info("Deleted domain " + domainOp.getDomainName());
-				break;
-			default:
-				throw new RuntimeException("Unknown update operation '" + domainOp.getOperation() + "'");
-			}
-		}
+	/**
+	 * Dry run of a mass update: the plan is computed from the config snapshot and
+	 * the cached certificate index, neither the DB nor the filesystem are
+	 * accessed.
+	 * 
+	 * @param massDomainUpdate
+	 * @return creates, updates, deletes and certificate operations of the update
+	 * @throws Exception
+	 */
+	public MassDomainUpdatePlanDto planMassDomainUpdate(MassDomainUpdateDto massDomainUpdate) throws Exception {
 
-		if (massDomainUpdate.isFullSync() && containedDomains.size() > 0) {
+		ConfigSnapshot snapshot = configSnapshotDao.getSnapshot();
 
-			Project project = projectMap.values().iterator().next();
-			if (project == null) {
-				throw new RuntimeException(
-						"Something went wrong: there must be a project from pre-processed mass-update-records");
-			}
+		Map<String, Project> projectMap = checkAndFindProjects(snapshot, massDomainUpdate);
 
-			// delete all project domains that are not contained in the mass update
-			for (Backend backend : project.getBackends()) {
-				for (Domain domain : backend.getDomainForwardings()) {
-					if (!containedDomains.contains(domain.getDomain())) {
-						domainModification |= deleteDomain(domain.getDomain(), backend, warningMessages);
-						LOG.info("Deleted unreferenced domain " + domain.getDomain());
-					}
-				}
+		Map<String, Domain> existingDomains = new TreeMap<>();
+		for (DomainOperationDto domainOp : massDomainUpdate.getDomainOperations()) {
+			Domain domain = snapshot.findDomain(domainOp.getDomainName());
+			if (domain != null) {
+				existingDomains.put(domain.getDomain(), domain);
 			}
 		}
-
-		// persist config and reload
-		// if (domainModification) {
-		// haProxyProcessor.manageConfiguration(false, true);
-		// }
-
-		// output handling of detached full syncs
 		if (massDomainUpdate.isFullSync()) {
-
-			StringBuilder buf = new StringBuilder();
-			buf.append("Synchronization finished\n\n");
-
-			if (warningMessages.size() > 0) {
-				buf.append("Warnings:\n");
-				for (String warning : warningMessages) {
-					buf.append(warning).append("\n");
+			for (Project project : projectMap.values()) {
+				for (Backend backend : project.getBackends()) {
+					for (Domain domain : backend.getDomainForwardings()) {
+						existingDomains.put(domain.getDomain(), domain);
+					}
 				}
-				buf.append("\n");
 			}
+		}
 
-			if (bos != null) {
-				buf.append(bos.toString());
-				bos.close();
-			}
+		DomainNameTrie<CertInfo> certTrie = haProxyProcessor.fetchDomainToCertTrie(null);
 
-			emailSender.sendMailToUser(userContext.getApiUser().getEmail(), userContext.getApiUser().getUsername(),
-					"AgiPrx Domain-Mass-Update on project " + projectMap.values().iterator().next().getFullname(),
-					buf.toString());
+		return MassDomainUpdatePlan
+				.create(massDomainUpdate, projectMap, existingDomains, certTrie::getMatching, validator::isUrl)
+				.toDto();
+	}
 
-			console.unRegisterClient();
-		}
+	private void massDomainUpdateHelper(MassDomainUpdateDto massDomainUpdate, JobProgress progress)
+			throws Exception {
 
-		if (username != null) {
-			userContext.unregister();
-		}
+		LOG.info("Starting mass domain update on " + massDomainUpdate.getDomainOperations().size() + " domain names.");
 
-		LOG.info("Finished mass domain update, " + (domainModification ? "changes occurred" : "no changes required"));
+		List<String> warningMessages = progress.getWarningMessages();
 
-		return warningMessages;
-	}
+		Map<String, Project> projectMap = checkAndFindProjects(configSnapshotDao.getSnapshot(), massDomainUpdate);
 
-	private boolean deleteDomain(String domainName, Backend backend, List<String> warningMessages) throws IOException {
+		Set<String> containedDomains = massDomainUpdate.verifyUniq();
 
-		for (Domain existingDomain : backend.getDomainForwardings()) {
-			if (existingDomain.getDomain().equals(domainName)) {
-				List<DomainDto> removedDomains = new ArrayList<>();
-				domainDao.delete(existingDomain, removedDomains);
-				cleanupCertificates(removedDomains, warningMessages);
-				return true;
+		// pre-load all involved domains with one query, full synchronizations need all
+		// project domains in addition
+		Set<Long> backendIds = new HashSet<>();
+		if (massDomainUpdate.isFullSync()) {
+			for (Project project : projectMap.values()) {
+				for (Backend backend : project.getBackends()) {
+					backendIds.add(backend.getId());
+				}
 			}
 		}
 
-		return false;
-	}
-
-	private boolean createOrUpdateDomain(String domainName, Backend backend, boolean enableSSL, String redirectUrl,
-			List<String> warningMessages) throws Exception {
-
-		boolean domainModification = false;
+		Map<String, Domain> existingDomains = new TreeMap<>();
+		for (Domain domain : domainDao.findAllByDomainNamesOrBackends(containedDomains, backendIds)) {
+			existingDomains.put(domain.getDomain(), domain);
+		}
 
-		boolean letsencrypt = false;
-		boolean certprovided = false;
+		DomainNameTrie<CertInfo> certTrie = haProxyProcessor.fetchDomainToCertTrie(null);
 
-		if (redirectUrl != null && !validator.isUrl(redirectUrl)) {
-			throw new RuntimeException(domainName + ": invalid redirect URL " + redirectUrl);
-		}
+		MassDomainUpdatePlan plan = MassDomainUpdatePlan.create(massDomainUpdate, projectMap, existingDomains,
+				certTrie::getMatching, validator::isUrl);
 
-		if (enableSSL) {
+		progress.setTotal(plan.getChanges().size());
 
-			CertInfo certInfo = haProxyProcessor.getCertInfoForDomainName(domainName);
+		// apply all DB changes in one transaction
+		DataSourceUtils.getBean().runInTransaction(() -> {
+			domainDao.batchDelete(plan.getDomains(ChangeType.DELETE));
+			domainDao.batchUpdate(plan.getDomains(ChangeType.UPDATE));
+			domainDao.batchCreate(plan.getDomains(ChangeType.CREATE));
+		});
 
-			// check if domain is covered by any cert
-			if (certInfo != null) {
-				if (certInfo.isLesslCert()) {
-					letsencrypt = true;
-				} else {
-					certprovided = true;
-				}
+		List<DomainChange> certChanges = new ArrayList<>();
+		for (DomainChange change : plan.getChanges()) {
+			if (change.getType() != ChangeType.UNCHANGED) {
+				LOG.info(change.getType() + " domain " + change.getDomainName());
+			}
+			if (change.getCertAction() == CertAction.NONE) {
+				progress.startItem(change.getDomainName());
+				progress.finishItem();
 			} else {
-				letsencrypt = true;
+				certChanges.add(change);
 			}
 		}
 
-		// check if domain exists and needs to be updated
-		Domain existingDomain = domainDao.find(domainName, false);
-		if (existingDomain != null) {
-
-			// update
-			domainModification = true;
+		// certificates are issued and removed as soon as the domains are committed
+		for (DomainChange change : certChanges) {
+			progress.startItem(change.getDomainName());
 
-			if (!existingDomain.getLetsEncrypt() && letsencrypt) {
-				lesslCertProcessor.checkCertAndOptCreate(warningMessages, domainName);
-			} else if (existingDomain.getLetsEncrypt() && !letsencrypt) {
-				lesslCertProcessor.deleteLesslCert(domainName, warningMessages);
+			switch (change.getCertAction()) {
+			case CREATE_LESSL:
+				lesslCertProcessor.checkCertAndOptCreate(warningMessages, change.getDomainName());
+				break;
+			case DELETE_LESSL:
+				lesslCertProcessor.deleteLesslCert(change.getDomainName(), warningMessages);
+				break;
+			default:
+				break;
 			}
 
-			existingDomain.setBackend(backend);
-			existingDomain.setCertProvided(certprovided);
-			existingDomain.setLetsEncrypt(letsencrypt);
-			existingDomain.setRedirectToUrl(redirectUrl);
-			domainDao.update(existingDomain);
+			progress.finishItem();
 		}
 
-		if (!domainModification) {
+		// persist config and reload
+		// if (plan.hasModifications()) {
+		// haProxyProcessor.manageConfiguration(false, true);
+		// }
 
-			// insert
-			domainModification = true;
+		// results of full syncs are mailed in addition to the job status
+		if (massDomainUpdate.isFullSync()) {
 
-			Domain newDomain = new Domain();
-			newDomain.setBackend(backend);
-			newDomain.setDomain(domainName);
-			newDomain.setCertProvided(certprovided);
-			newDomain.setLetsEncrypt(letsencrypt);
-			newDomain.setRedirectToUrl(redirectUrl);
-			domainDao.create(newDomain);
+			StringBuilder buf = new StringBuilder();
+			buf.append("Synchronization finished (job ").append(progress.getId()).append(")\n\n");
 
-			if (letsencrypt) {
-				lesslCertProcessor.checkCertAndOptCreate(warningMessages, domainName);
+			synchronized (warningMessages) {
+				if (warningMessages.size() > 0) {
+					buf.append("Warnings:\n");
+					for (String warning : warningMessages) {
+						buf.append(warning).append("\n");
+					}
+					buf.append("\n");
+				}
 			}
 
+			buf.append(progress.getOutput());
+
+			emailSender.sendMailToUser(userContext.getApiUser().getEmail(), userContext.getApiUser().getUsername(),
+					"AgiPrx Domain-Mass-Update on project " + projectMap.values().iterator().next().getFullname(),
+					buf.toString());
 		}
 
-		return domainModification;
+		LOG.info("Finished mass domain update, "
+				+ (plan.hasModifications() ? "changes occurred" : "no changes required"));
 	}
 
 	public Map<String, DomainDto> findProjectDomains(String projectLabel) {
@@ -340,7 +313,6 @@ public class NonInteractiveDomainExecutor extends AbstractCertificateRelatedExec
 		Map<String, DomainDto> projectDomains = new HashMap<>();
 		for (Backend backend : project.getBackends()) {
 			for (Domain domain : backend.getDomainForwardings()) {
-				domain.setBackend(backend);
 				projectDomains.put(domain.getDomain(), new DomainDto(domain));
 			}
 		}
@@ -355,34 +327,12 @@ public class NonInteractiveDomainExecutor extends AbstractCertificateRelatedExec
 
 		Map<String, DomainDto> domainDtoMap = new HashMap<>();
 		for (Domain domain : backend.getDomainForwardings()) {
-			domain.setBackend(backend);
 			domainDtoMap.put(domain.getDomain(), new DomainDto(domain));
 		}
 
 		return domainDtoMap;
 	}
 
-	private class DetachedRunner implements Runnable {
-
-		private MassDomainUpdateDto massDomainUpdate;
-		private String username;
-
-		public DetachedRunner(MassDomainUpdateDto massDomainUpdate, String username) {
-			this.massDomainUpdate = massDomainUpdate;
-			this.username = username;
-		}
-
-		@Override
-		public void run() {
-			try {
-				NonInteractiveDomainExecutor.this.massDomainUpdateHelper(this.massDomainUpdate, this.username);
-			} catch (Exception e) {
-				// TODO Auto-generated catch block
-				e.printStackTrace();
-			}
-		}
-	}
-
 	@Override
 	protected void setCommandCompletion() {
 		console.setCommandCompletion();
@@ -21,7 +21,7 @@ import java.util.List;
 import java.util.logging.Logger;
 
 import de.agitos.agiprx.ConsoleWrapper;
-import de.agitos.agiprx.dao.ProjectDao;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.dto.ProjectDto;
 import de.agitos.agiprx.model.Backend;
 import de.agitos.agiprx.model.Container;
@@ -29,6 +29,7 @@ import de.agitos.agiprx.model.ContainerPermission;
 import de.agitos.agiprx.model.Domain;
 import de.agitos.agiprx.model.Project;
 import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.UserContext;
 import de.agitos.agiprx.util.Validator;
 
 public class NonInteractiveProjectExecutor extends AbstractExecutor {
@@ -37,7 +38,9 @@ public class NonInteractiveProjectExecutor extends AbstractExecutor {
 
 	private static final Logger LOG = Logger.getLogger(NonInteractiveProjectExecutor.class.getName());
 
-	private ProjectDao projectDao;
+	private ConfigSnapshotDao configSnapshotDao;
+
+	private UserContext userContext;
 
 	private ConsoleWrapper console;
 
@@ -55,7 +58,8 @@ public class NonInteractiveProjectExecutor extends AbstractExecutor {
 	public void postConstruct() {
 		super.postConstruct();
 
-		projectDao = ProjectDao.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
+		userContext = UserContext.getBean();
 		console = ConsoleWrapper.getBean();
 		validator = Validator.getBean();
 	}
@@ -64,7 +68,7 @@ public class NonInteractiveProjectExecutor extends AbstractExecutor {
 
 		List<String> result = new ArrayList<>();
 
-		List<Project> projects = projectDao.findAllAsUser(null);
+		List<Project> projects = configSnapshotDao.getSnapshot().getAllowedProjects(userContext);
 
 		for (Project project : projects) {
 			result.add(project.getLabel());
@@ -74,7 +78,7 @@ public class NonInteractiveProjectExecutor extends AbstractExecutor {
 	}
 
 	private Project checkAndFindProject(String projectLabel) {
-		Project project = projectDao.find(projectLabel);
+		Project project = configSnapshotDao.getSnapshot().findProject(projectLabel, userContext);
 		if (project == null) {
 			throw new RuntimeException("Invalid project: label " + projectLabel + " not existing or access denied");
 		}
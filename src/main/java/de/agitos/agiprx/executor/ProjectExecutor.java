@@ -19,11 +19,12 @@ package de.agitos.agiprx.executor;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
-import java.util.Set;
 
 import com.mysql.cj.util.StringUtils;
 
 import de.agitos.agiprx.bean.processor.SshProxyProcessor;
+import de.agitos.agiprx.dao.ConfigSnapshot;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.dao.DomainDao;
 import de.agitos.agiprx.dao.ProjectDao;
 import de.agitos.agiprx.dao.RelationType;
@@ -41,6 +42,7 @@ import de.agitos.agiprx.output.table.LongColumn;
 import de.agitos.agiprx.output.table.Row;
 import de.agitos.agiprx.output.table.StringColumn;
 import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.UserContext;
 import de.agitos.agiprx.util.Validator;
 
 public class ProjectExecutor extends AbstractCertificateRelatedExecutor {
@@ -57,6 +59,10 @@ public class ProjectExecutor extends AbstractCertificateRelatedExecutor {
 
 	private DomainDao domainDao;
 
+	private ConfigSnapshotDao configSnapshotDao;
+
+	private UserContext userContext;
+
 	public ProjectExecutor() {
 
 		Assert.singleton(this, BEAN);
@@ -72,6 +78,8 @@ public class ProjectExecutor extends AbstractCertificateRelatedExecutor {
 		sshProxyProcessor = SshProxyProcessor.getBean();
 		projectDao = ProjectDao.getBean();
 		domainDao = DomainDao.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
+		userContext = UserContext.getBean();
 	}
 
 	public static ProjectExecutor getBean() {
@@ -182,17 +190,15 @@ public class ProjectExecutor extends AbstractCertificateRelatedExecutor {
 	private void list(String filter) {
 		console.printlnfStress("Available projects");
 
+		ConfigSnapshot snapshot = configSnapshotDao.getSnapshot();
+
 		List<Project> result;
 		if (filter == null) {
-			result = projectDao.findAllAsUser(EnumSet.of(RelationType.CONTAINER, RelationType.BACKEND));
+			result = snapshot.getAllowedProjects(userContext);
 		} else {
-			String sqlFilter = filter.replaceAll("\\*", "%");
-			result = projectDao.findAllWithFilterLabel(sqlFilter,
-					EnumSet.of(RelationType.CONTAINER, RelationType.BACKEND));
+			result = snapshot.findProjectsWithFilter(filter, userContext);
 		}
 
-		Set<Long> allAllowedProjectIds = projectDao.findAllAllowedProjectIds();
-
 		ConsoleTableBuffer tableBuf = new ConsoleTableBuffer(console.getTerminalColumns());
 		tableBuf.addColumn(new LongColumn("id", 5));
 		tableBuf.addColumn(new StringColumn("label", 15));
@@ -201,13 +207,10 @@ public class ProjectExecutor extends AbstractCertificateRelatedExecutor {
 		tableBuf.addColumn(new IntegerColumn("#backends", 5));
 
 		for (Project model : result) {
-
-			if (allAllowedProjectIds.contains(model.getId())) {
-				// console.printlnf("\t%s", model);
-				Row row = new Row(model.getId(), model.getLabel(), model.getFullname(), model.getContainers().size(),
-						model.getBackends().size());
-				tableBuf.addRow(row);
-			}
+			// console.printlnf("\t%s", model);
+			Row row = new Row(model.getId(), model.getLabel(), model.getFullname(), model.getContainers().size(),
+					model.getBackends().size());
+			tableBuf.addRow(row);
 		}
 
 		tableBuf.printTable(console, "\t");
@@ -219,16 +222,13 @@ public class ProjectExecutor extends AbstractCertificateRelatedExecutor {
 			return;
 		}
 
-		Set<Long> allAllowedProjectIds = projectDao.findAllAllowedProjectIds();
-
-		String sqlFilter = domainFilter.replaceAll("\\*", "%");
-		List<Domain> result = domainDao.findAllWithFilterDomain(sqlFilter);
+		List<Domain> result = configSnapshotDao.getSnapshot().findDomainsWithFilter(domainFilter);
 
 		if (result.size() > 0) {
 			console.printlnfStress("Found " + domainFilter + " in project/backend/container");
 
 			for (Domain model : result) {
-				if (allAllowedProjectIds.contains(model.getBackend().getProject().getId())) {
+				if (userContext.isUserAllowed(model.getBackend().getProject().getLabel())) {
 					console.printlnf("\tPROJ %d: %s BCKE %d: %s PORT %d DOMAIN %d: %s",
 							model.getBackend().getProject().getId(), model.getBackend().getProject().getLabel(),
 							model.getBackend().getId(), model.getBackend().getLabel(), model.getBackend().getPort(),
@@ -20,11 +20,13 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Objects;
 
 import com.mysql.cj.util.StringUtils;
 
 import de.agitos.agiprx.bean.processor.AgiPrxSshAuthProcessor;
 import de.agitos.agiprx.bean.processor.SshProxyProcessor;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
 import de.agitos.agiprx.dao.ContainerPermissionDao;
 import de.agitos.agiprx.dao.ProjectDao;
 import de.agitos.agiprx.dao.RelationType;
@@ -40,6 +42,7 @@ import de.agitos.agiprx.output.table.ConsoleTableBuffer;
 import de.agitos.agiprx.output.table.LongColumn;
 import de.agitos.agiprx.output.table.Row;
 import de.agitos.agiprx.output.table.StringColumn;
+import de.agitos.agiprx.ssh.AuthorizedKeysLookupServer;
 import de.agitos.agiprx.util.Assert;
 import de.agitos.agiprx.util.SshKeyConverter;
 
@@ -57,6 +60,10 @@ public class UserExecutor extends AbstractExecutor {
 
 	private AgiPrxSshAuthProcessor agiPrxSshAuthProcessor;
 
+	private ConfigSnapshotDao configSnapshotDao;
+
+	private AuthorizedKeysLookupServer authorizedKeysLookupServer;
+
 	public UserExecutor() {
 
 		Assert.singleton(this, BEAN);
@@ -72,6 +79,8 @@ public class UserExecutor extends AbstractExecutor {
 		permissionDao = ContainerPermissionDao.getBean();
 		sshProxyProcessor = SshProxyProcessor.getBean();
 		agiPrxSshAuthProcessor = AgiPrxSshAuthProcessor.getBean();
+		configSnapshotDao = ConfigSnapshotDao.getBean();
+		authorizedKeysLookupServer = AuthorizedKeysLookupServer.getBean();
 	}
 
 	public static UserExecutor getBean() {
@@ -132,10 +141,9 @@ public class UserExecutor extends AbstractExecutor {
 
 		List<User> result;
 		if (filter == null) {
-			result = userDao.findAll();
+			result = configSnapshotDao.getSnapshot().getUsers();
 		} else {
-			String sqlFilter = filter.replaceAll("\\*", "%");
-			result = userDao.findAllWithFilter(sqlFilter);
+			result = configSnapshotDao.getSnapshot().findUsersWithFilter(filter);
 		}
 
 		ConsoleTableBuffer tableBuf = new ConsoleTableBuffer(console.getTerminalColumns());
@@ -374,6 +382,8 @@ public class UserExecutor extends AbstractExecutor {
 			return;
 		}
 
+		String previousSshPublicKey = model.getSshPublicKey();
+
 		try {
 			editHelper(model);
 		} catch (AbortionException e) {
@@ -392,6 +402,11 @@ public class UserExecutor extends AbstractExecutor {
 				userDao.update(model);
 				console.printlnfStress("Updated user with id %d", model.getId());
 
+				if (authorizedKeysLookupServer.isEnabled()
+						&& !Objects.equals(previousSshPublicKey, model.getSshPublicKey())) {
+					console.printlnf("The changed SSH key applies to proxy logins immediately");
+				}
+
 				applyDefaultPermissions(model);
 			} catch (DuplicateKeyException e) {
 				handleCaughtException(e);
@@ -31,6 +31,9 @@ public class ContainerPermission extends AbstractModel {
 
 	private String password;
 
+	// password as stored in the DB, changes with every password update
+	private String encryptedPassword;
+
 	public Long getContainerId() {
 		return containerId;
 	}
@@ -81,12 +84,32 @@ public class ContainerPermission extends AbstractModel {
 		this.password = password;
 	}
 
+	public String getEncryptedPassword() {
+		return encryptedPassword;
+	}
+
+	public void setEncryptedPassword(String encryptedPassword) {
+		this.encryptedPassword = encryptedPassword;
+	}
+
 	public String getSshProxyUsername() {
 		if (this.container == null) {
 			throw new RuntimeException("Permission id " + id + ": container is not initialized");
 		}
+		if (this.container.getProject() == null) {
+			throw new RuntimeException("Container id " + container.getId() + ": project is not initialized");
+		}
+		return formatSshProxyUsername(this.container.getProject().getLabel(), this.container.getLabel(),
+				this.permission);
+	}
+
+	/**
+	 * Login name of the SSH proxy account of a permission, for callers without
+	 * initialized back-references
+	 */
+	public static String formatSshProxyUsername(String projectLabel, String containerLabel, String permission) {
 		// TOWATCH: max user name length : 32 chars
-		return this.container.getFQLabel() + "_" + this.permission;
+		return projectLabel + "-" + containerLabel + "_" + permission;
 	}
 
 	@Override
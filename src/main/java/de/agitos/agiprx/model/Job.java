@@ -0,0 +1,159 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.model;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+public class Job extends AbstractModel {
+
+	private String type;
+
+	private List<String> projectLabels = new ArrayList<>();
+
+	private String username;
+
+	private JobStatus status;
+
+	private int total;
+
+	private int done;
+
+	private String currentItem;
+
+	private List<String> warnings = new ArrayList<>();
+
+	private String output;
+
+	private String error;
+
+	private Date created;
+
+	private Date started;
+
+	private Date finished;
+
+	public String getType() {
+		return type;
+	}
+
+	public void setType(String type) {
+		this.type = type;
+	}
+
+	public List<String> getProjectLabels() {
+		return projectLabels;
+	}
+
+	public void setProjectLabels(List<String> projectLabels) {
+		this.projectLabels = projectLabels;
+	}
+
+	public String getUsername() {
+		return username;
+	}
+
+	public void setUsername(String username) {
+		this.username = username;
+	}
+
+	public JobStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(JobStatus status) {
+		this.status = status;
+	}
+
+	public int getTotal() {
+		return total;
+	}
+
+	public void setTotal(int total) {
+		this.total = total;
+	}
+
+	public int getDone() {
+		return done;
+	}
+
+	public void setDone(int done) {
+		this.done = done;
+	}
+
+	public String getCurrentItem() {
+		return currentItem;
+	}
+
+	public void setCurrentItem(String currentItem) {
+		this.currentItem = currentItem;
+	}
+
+	public List<String> getWarnings() {
+		return warnings;
+	}
+
+	public void setWarnings(List<String> warnings) {
+		this.warnings = warnings;
+	}
+
+	public String getOutput() {
+		return output;
+	}
+
+	public void setOutput(String output) {
+		this.output = output;
+	}
+
+	public String getError() {
+		return error;
+	}
+
+	public void setError(String error) {
+		this.error = error;
+	}
+
+	public Date getCreated() {
+		return created;
+	}
+
+	public void setCreated(Date created) {
+		this.created = created;
+	}
+
+	public Date getStarted() {
+		return started;
+	}
+
+	public void setStarted(Date started) {
+		this.started = started;
+	}
+
+	public Date getFinished() {
+		return finished;
+	}
+
+	public void setFinished(Date finished) {
+		this.finished = finished;
+	}
+
+	@Override
+	public String toString() {
+		return "Job [id=" + id + ", type=" + type + ", projectLabels=" + projectLabels + ", status=" + status + "]";
+	}
+}
@@ -8,8 +8,12 @@ public abstract class AbstractService implements Service {
 
 	protected final boolean isMaster;
 
+	// runs handlers with blocking work off the webserver event loop
+	protected final RestWorkerPool workerPool;
+
 	protected AbstractService(boolean isMaster) {
 		this.isMaster = isMaster;
+		this.workerPool = RestWorkerPool.getBean();
 	}
 
 	protected boolean validateMasterInstance(ServerResponse serverResponse) {
@@ -18,6 +18,7 @@ package de.agitos.agiprx.rest;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -47,7 +48,8 @@ public class AdminService extends AbstractService {
 
 	private static final String ADMIN_THREAD_NAME = "MainAdminJob";
 
-	private static boolean adminJobRunning = false;
+	// handlers run concurrently on the worker pool
+	private static final AtomicBoolean adminJobRunning = new AtomicBoolean();
 
 	public AdminService(boolean isMaster) {
 		super(isMaster);
@@ -59,7 +61,8 @@ public class AdminService extends AbstractService {
 
 	@Override
 	public void update(Rules rules) {
-		rules.get("/gensynchaprx", WebSecurity.authenticate(), this::generateConfigAndSyncHAProxy);
+		rules.get("/gensynchaprx", WebSecurity.authenticate(),
+				workerPool.offload(this::generateConfigAndSyncHAProxy));
 		rules.get("/writesshprx", WebSecurity.authenticate(), this::writeSshProxyConfiguration);
 	}
 
@@ -70,14 +73,12 @@ public class AdminService extends AbstractService {
 			return;
 		}
 
-		if (adminJobRunning) {
+		if (!adminJobRunning.compareAndSet(false, true)) {
 			serverResponse.status(ResponseStatus.create(423 /* Locked */, "Job is already running")).send();
 			return;
 		}
 
 		try {
-			adminJobRunning = true;
-
 			userContext.registerApiUser(RestServiceUtil.getUsername(serverRequest));
 
 			LOG.log(Level.INFO, "Started reload and sync of HAProxy");
@@ -105,7 +106,7 @@ public class AdminService extends AbstractService {
 		} finally {
 			userContext.unregister();
 
-			adminJobRunning = false;
+			adminJobRunning.set(false);
 		}
 	}
 
@@ -116,7 +117,7 @@ public class AdminService extends AbstractService {
 			return;
 		}
 
-		if (adminJobRunning) {
+		if (!adminJobRunning.compareAndSet(false, true)) {
 			serverResponse.status(ResponseStatus.create(423 /* Locked */, "Job is already running")).send();
 			return;
 		}
@@ -124,8 +125,6 @@ public class AdminService extends AbstractService {
 		Runnable maintenanceJob = () -> {
 
 			try {
-				adminJobRunning = true;
-
 				userContext.registerApiUser(RestServiceUtil.getUsername(serverRequest));
 
 				LOG.log(Level.INFO, "Started writing SSH proxy configuration");
@@ -145,7 +144,7 @@ public class AdminService extends AbstractService {
 			} finally {
 				userContext.unregister();
 
-				adminJobRunning = false;
+				adminJobRunning.set(false);
 			}
 
 		};
@@ -28,7 +28,6 @@ import de.agitos.agiprx.executor.NonInteractiveBackendExecutor;
 import de.agitos.agiprx.util.UserContext;
 import io.helidon.common.http.Http;
 import io.helidon.security.integration.webserver.WebSecurity;
-import io.helidon.webserver.Handler;
 import io.helidon.webserver.HttpException;
 import io.helidon.webserver.Routing.Rules;
 import io.helidon.webserver.ServerRequest;
@@ -53,10 +52,10 @@ public class BackendService extends AbstractService {
 
 	@Override
 	public void update(Rules rules) {
-		rules.post("/{+projectLabel}", WebSecurity.authenticate(),
-				Handler.create(BackendDto.class, (req, res, backendDto) -> res.send(putBackend(req, res, backendDto))));
+		rules.post("/{+projectLabel}", WebSecurity.authenticate(), workerPool.offload(BackendDto.class,
+				(req, res, backendDto) -> res.send(putBackend(req, res, backendDto))));
 		rules.patch("/{+projectLabel}/{+backendLabel}/setContainersOf/{+targetBackendLabel}",
-				WebSecurity.authenticate(), this::setContainersOfTargetBackend);
+				WebSecurity.authenticate(), workerPool.offload(this::setContainersOfTargetBackend));
 	}
 
 	// Sample POST-Request:
@@ -28,7 +28,6 @@ import de.agitos.agiprx.executor.NonInteractiveContainerExecutor;
 import de.agitos.agiprx.util.UserContext;
 import io.helidon.common.http.Http;
 import io.helidon.security.integration.webserver.WebSecurity;
-import io.helidon.webserver.Handler;
 import io.helidon.webserver.HttpException;
 import io.helidon.webserver.Routing.Rules;
 import io.helidon.webserver.ServerRequest;
@@ -53,7 +52,7 @@ public class ContainerService extends AbstractService {
 
 	@Override
 	public void update(Rules rules) {
-		rules.post("/{+projectLabel}", WebSecurity.authenticate(), Handler.create(ContainerDto.class,
+		rules.post("/{+projectLabel}", WebSecurity.authenticate(), workerPool.offload(ContainerDto.class,
 				(req, res, containerDto) -> res.send(putContainer(req, res, containerDto))));
 	}
 
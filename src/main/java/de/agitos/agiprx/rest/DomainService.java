@@ -16,17 +16,19 @@
  ******************************************************************************/
 package de.agitos.agiprx.rest;
 
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import de.agitos.agiprx.bean.processor.ProxySyncProcessor;
 import de.agitos.agiprx.dto.DomainDto;
+import de.agitos.agiprx.dto.JobDto;
 import de.agitos.agiprx.dto.MassDomainUpdateDto;
+import de.agitos.agiprx.dto.MassDomainUpdatePlanDto;
 import de.agitos.agiprx.executor.NonInteractiveDomainExecutor;
 import de.agitos.agiprx.util.UserContext;
 import io.helidon.common.http.Http;
+import io.helidon.common.http.Http.ResponseStatus;
 import io.helidon.security.integration.webserver.WebSecurity;
-import io.helidon.webserver.Handler;
 import io.helidon.webserver.HttpException;
 import io.helidon.webserver.Routing.Rules;
 import io.helidon.webserver.ServerRequest;
@@ -49,31 +51,45 @@ public class DomainService extends AbstractService {
 
 	@Override
 	public void update(Rules rules) {
-		rules.post("/massupdate", WebSecurity.authenticate(), Handler.create(MassDomainUpdateDto.class,
-				(req, res, massDomainUpdateDto) -> res.send(massUpdate(req, res, massDomainUpdateDto))));
-		rules.get("/{+projectLabel}/{+backendLabel}", WebSecurity.authenticate(), this::findBackendDomains);
-		rules.get("/{+projectLabel}", WebSecurity.authenticate(), this::findProjectDomains);
+		rules.post("/massupdate", WebSecurity.authenticate(),
+				workerPool.offload(MassDomainUpdateDto.class, this::massUpdate));
+		rules.get("/{+projectLabel}/{+backendLabel}", WebSecurity.authenticate(),
+				workerPool.offload(this::findBackendDomains));
+		rules.get("/{+projectLabel}", WebSecurity.authenticate(), workerPool.offload(this::findProjectDomains));
 	}
 
-	// POST: /domains/massupdate
-	private List<String> massUpdate(ServerRequest serverRequest, ServerResponse serverResponse,
+	// POST: /domains/massupdate[?dryRun=true]
+	// the update runs as job, its status is available at /jobs/{id}; a dry run
+	// returns the planned changes only
+	private void massUpdate(ServerRequest serverRequest, ServerResponse serverResponse,
 			MassDomainUpdateDto massDomainUpdate) {
 
 		if (!validateMasterInstance(serverResponse)) {
-			return null;
+			return;
 		}
 
 		try {
 			userContext.registerApiUser(RestServiceUtil.getUsername(serverRequest));
-			List<String> warningMessages = nonInteractiveDomainExecutor.massDomainUpdate(massDomainUpdate);
-			// if (proxySyncProcessor.isSyncRequired()) {
-			// proxySyncProcessor.syncToSlaveInstances(false, warningMessages);
-			// }
-			return warningMessages;
+
+			if (serverRequest.queryParams().first("dryRun").map(Boolean::parseBoolean).orElse(false)) {
+				MassDomainUpdatePlanDto plan = nonInteractiveDomainExecutor.planMassDomainUpdate(massDomainUpdate);
+				serverResponse.send(plan);
+				return;
+			}
+
+			JobDto job = nonInteractiveDomainExecutor.massDomainUpdate(massDomainUpdate);
+
+			serverResponse.headers().put(Http.Header.LOCATION, "/jobs/" + job.getId());
+			serverResponse.status(Http.Status.ACCEPTED_202).send(job);
+
+		} catch (RejectedExecutionException e) {
+			serverResponse.headers().put(Http.Header.RETRY_AFTER, JobService.RETRY_AFTER_SECONDS);
+			serverResponse.status(ResponseStatus.create(503 /* Service Unavailable */, e.getMessage())).send();
 
 		} catch (Exception e) {
 			// TODO: status(...create(500, "Unable to process mass update")).send() ??
-			throw new HttpException("Unable to process mass update", Http.Status.INTERNAL_SERVER_ERROR_500, e);
+			throw new HttpException("Unable to process mass update: " + e.getMessage(),
+					Http.Status.INTERNAL_SERVER_ERROR_500, e);
 		} finally {
 			userContext.unregister();
 		}
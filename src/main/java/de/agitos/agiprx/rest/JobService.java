@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.rest;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.bean.processor.JobProcessor;
+import de.agitos.agiprx.dto.JobDto;
+import io.helidon.common.http.Http;
+import io.helidon.security.integration.webserver.WebSecurity;
+import io.helidon.webserver.HttpException;
+import io.helidon.webserver.Routing.Rules;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+
+/**
+ * Status and progress of asynchronous jobs, e.g. started by
+ * /domains/massupdate. Jobs are visible to the API user that started them.
+ */
+public class JobService extends AbstractService {
+
+	private static final Logger LOG = Logger.getLogger(JobService.class.getName());
+
+	// suggested delay if the job queue is full
+	static final String RETRY_AFTER_SECONDS = "30";
+
+	JobProcessor jobProcessor;
+
+	public JobService(boolean isMaster) {
+		super(isMaster);
+		jobProcessor = JobProcessor.getBean();
+	}
+
+	@Override
+	public void update(Rules rules) {
+		rules.get("/{jobId}", WebSecurity.authenticate(), workerPool.offload(this::findJob));
+	}
+
+	// GET: /jobs/{jobId}
+	private void findJob(ServerRequest serverRequest, ServerResponse serverResponse) {
+
+		if (!validateMasterInstance(serverResponse)) {
+			return;
+		}
+
+		Long jobId;
+		try {
+			jobId = Long.valueOf(serverRequest.path().param("jobId"));
+		} catch (NumberFormatException e) {
+			serverResponse.status(Http.Status.NOT_FOUND_404).send();
+			return;
+		}
+
+		try {
+			JobDto job = jobProcessor.find(jobId);
+
+			// jobs of other API users are not disclosed
+			if (job == null || !job.getUsername().equals(RestServiceUtil.getUsername(serverRequest))) {
+				serverResponse.status(Http.Status.NOT_FOUND_404).send();
+				return;
+			}
+
+			serverResponse.send(job);
+
+		} catch (Exception e) {
+
+			LOG.log(Level.SEVERE, "Unable to fetch job " + jobId, e);
+
+			throw new HttpException("Unable to fetch job: " + e.getMessage(), Http.Status.INTERNAL_SERVER_ERROR_500,
+					e);
+		}
+	}
+}
@@ -40,8 +40,8 @@ public class ProjectService extends AbstractService {
 
 	@Override
 	public void update(Rules rules) {
-		rules.get("/{+projectLabel}", WebSecurity.authenticate(), this::findProjectDetails);
-		rules.get("/", WebSecurity.authenticate(), this::findProjectList);
+		rules.get("/{+projectLabel}", WebSecurity.authenticate(), workerPool.offload(this::findProjectDetails));
+		rules.get("/", WebSecurity.authenticate(), workerPool.offload(this::findProjectList));
 	}
 
 	// GET: /projects/
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.rest;
+
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.bean.processor.ReplicationProcessor;
+import de.agitos.agiprx.db.exception.OptimisticLockingFailureException;
+import de.agitos.agiprx.dto.ChangeSetDto;
+import de.agitos.agiprx.dto.ReplicationStateDto;
+import io.helidon.common.http.Http;
+import io.helidon.common.http.Http.ResponseStatus;
+import io.helidon.security.integration.webserver.WebSecurity;
+import io.helidon.webserver.HttpException;
+import io.helidon.webserver.Routing.Rules;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+
+/**
+ * Slave side of the change log replication and of the reload after a database
+ * import, called by the ReplicationProcessor of the master.
+ */
+public class ReplicationService extends AbstractService {
+
+	private static final Logger LOG = Logger.getLogger(ReplicationService.class.getName());
+
+	ReplicationProcessor replicationProcessor;
+
+	public ReplicationService(boolean isMaster) {
+		super(isMaster);
+		replicationProcessor = ReplicationProcessor.getBean();
+	}
+
+	@Override
+	public void update(Rules rules) {
+		rules.get("/state", WebSecurity.authenticate(), workerPool.offload(this::getState));
+		rules.post("/apply", WebSecurity.authenticate(), workerPool.offload(ChangeSetDto.class, this::apply));
+		rules.post("/reload", WebSecurity.authenticate(), workerPool.offload(this::reload));
+	}
+
+	// GET: /replication/state
+	private void getState(ServerRequest serverRequest, ServerResponse serverResponse) {
+
+		if (!validateReplicationRequest(serverRequest, serverResponse)) {
+			return;
+		}
+
+		serverResponse.send(new ReplicationStateDto(replicationProcessor.getLastSequence(), new ArrayList<>()));
+	}
+
+	// POST: /replication/apply
+	private void apply(ServerRequest serverRequest, ServerResponse serverResponse, ChangeSetDto changeSet) {
+
+		if (!validateReplicationRequest(serverRequest, serverResponse)) {
+			return;
+		}
+
+		try {
+			serverResponse.send(replicationProcessor.apply(changeSet));
+
+		} catch (OptimisticLockingFailureException e) {
+
+			LOG.log(Level.WARNING, "Change set is not applicable: " + e.getMessage());
+			serverResponse.status(ResponseStatus.create(409 /* Conflict */, "Change log conflict")).send();
+
+		} catch (Exception e) {
+
+			LOG.log(Level.SEVERE, "Unable to apply change set", e);
+
+			throw new HttpException("Unable to apply change set: " + e.getMessage(),
+					Http.Status.INTERNAL_SERVER_ERROR_500, e);
+		}
+	}
+
+	// POST: /replication/reload
+	private void reload(ServerRequest serverRequest, ServerResponse serverResponse) {
+
+		// available without change log replication, called after a database import
+		if (!validateSlaveRequest(serverRequest, serverResponse, true)) {
+			return;
+		}
+
+		try {
+			serverResponse.send(replicationProcessor.reload());
+
+		} catch (Exception e) {
+
+			LOG.log(Level.SEVERE, "Unable to reload", e);
+
+			throw new HttpException("Unable to reload: " + e.getMessage(), Http.Status.INTERNAL_SERVER_ERROR_500,
+					e);
+		}
+	}
+
+	private boolean validateReplicationRequest(ServerRequest serverRequest, ServerResponse serverResponse) {
+		return validateSlaveRequest(serverRequest, serverResponse, replicationProcessor.isEnabled());
+	}
+
+	private boolean validateSlaveRequest(ServerRequest serverRequest, ServerResponse serverResponse,
+			boolean available) {
+
+		if (isMaster || !available) {
+			serverResponse.status(Http.Status.NOT_FOUND_404).send();
+			return false;
+		}
+
+		if (!replicationProcessor.isReplicationUser(RestServiceUtil.getUsername(serverRequest))) {
+			serverResponse.status(Http.Status.FORBIDDEN_403).send();
+			return false;
+		}
+
+		return true;
+	}
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.rest;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.bean.Config;
+import de.agitos.agiprx.util.Assert;
+import io.helidon.common.http.Http;
+import io.helidon.webserver.Handler;
+import io.helidon.webserver.ServerRequest;
+import io.helidon.webserver.ServerResponse;
+
+/**
+ * Bounded worker pool for REST handlers with blocking work (JDBC, certbot,
+ * HAProxy validation and reload, slave sync). The handlers run off the
+ * webserver event loop, requests exceeding the queue are answered with 503 and
+ * a Retry-After header.
+ */
+public class RestWorkerPool implements DependencyInjector {
+
+	private static final Logger LOG = Logger.getLogger(RestWorkerPool.class.getName());
+
+	private static final String RETRY_AFTER_SECONDS = "5";
+
+	private static RestWorkerPool BEAN;
+
+	// @Value("${agiprx.restWorkerThreads:8}")
+	private final int threads;
+
+	// @Value("${agiprx.restWorkerQueue:32}")
+	private final int queueSize;
+
+	private final ThreadPoolExecutor executor;
+
+	public RestWorkerPool() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+
+		threads = Config.getBean().getInteger("agiprx.restWorkerThreads", 8);
+		queueSize = Config.getBean().getInteger("agiprx.restWorkerQueue", 32);
+
+		Assert.isTrue(threads > 0, "agiprx.restWorkerThreads needs to be positive");
+		Assert.isTrue(queueSize > 0, "agiprx.restWorkerQueue needs to be positive");
+
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize), runnable -> {
+					Thread thread = new Thread(runnable, "RestWorker-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				});
+	}
+
+	@Override
+	public void postConstruct() {
+	}
+
+	public static RestWorkerPool getBean() {
+		return BEAN;
+	}
+
+	/**
+	 * @return handler that runs the given handler on the worker pool
+	 */
+	public Handler offload(Handler handler) {
+		return (req, res) -> execute(req, res, () -> handler.accept(req, res));
+	}
+
+	/**
+	 * @return handler that reads the entity on the event loop and runs the given
+	 *         entity handler on the worker pool
+	 */
+	public <T> Handler offload(Class<T> type, Handler.EntityHandler<T> entityHandler) {
+		return Handler.create(type,
+				(req, res, entity) -> execute(req, res, () -> entityHandler.accept(req, res, entity)));
+	}
+
+	private void execute(ServerRequest serverRequest, ServerResponse serverResponse, Runnable task) {
+		try {
+			executor.execute(() -> {
+				try {
+					task.run();
+				} catch (RuntimeException e) {
+					// thrown off the event loop, e.g. HttpException, continue with the error
+					// handling of the routing
+					serverRequest.next(e);
+				}
+			});
+
+		} catch (RejectedExecutionException e) {
+
+			LOG.log(Level.WARNING, "REST worker queue is full (" + threads + " threads, " + queueSize
+					+ " queued), rejected " + serverRequest.method().name() + " " + serverRequest.path());
+
+			serverResponse.headers().put(Http.Header.RETRY_AFTER, RETRY_AFTER_SECONDS);
+			serverResponse.status(Http.Status.SERVICE_UNAVAILABLE_503).send();
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.agitos.agiprx.dao.ConfigSnapshot;
+import de.agitos.agiprx.model.Container;
+import de.agitos.agiprx.model.ContainerPermission;
+import de.agitos.agiprx.model.Project;
+import de.agitos.agiprx.model.User;
+
+/**
+ * Index of proxy username to authorized_keys lines computed from the container
+ * permissions and users of a config snapshot.
+ */
+public class AuthorizedKeysIndex {
+
+	private final long version;
+
+	private final Map<String, List<String>> keyLinesByUsername = new HashMap<String, List<String>>();
+
+	public AuthorizedKeysIndex(ConfigSnapshot snapshot) {
+
+		this.version = snapshot.getVersion();
+
+		for (Project project : snapshot.getProjects()) {
+			for (Container container : project.getContainers()) {
+				for (ContainerPermission permission : container.getContainerPermissions()) {
+
+					String username = ContainerPermission.formatSshProxyUsername(project.getLabel(),
+							container.getLabel(), permission.getPermission());
+
+					List<String> keyLines = keyLinesByUsername.computeIfAbsent(username,
+							k -> new ArrayList<String>());
+
+					User user = permission.getUser();
+					if (user != null && user.getSshPublicKey() != null) {
+						keyLines.add(toAuthorizedKeysLine(username, user.getSshPublicKey()));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the authorized_keys line of a user's key for a proxy account, e.g.
+	 *         environment="SSH_LOGIN_USER=project-container_root" ssh-rsa AAA...
+	 *         user@example.org
+	 */
+	public static String toAuthorizedKeysLine(String proxyUsername, String sshPublicKey) {
+		return "environment=\"SSH_LOGIN_USER=" + proxyUsername + "\" " + sshPublicKey;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the authorized_keys lines of the proxy account, an empty list for
+	 *         unknown accounts
+	 */
+	public List<String> getKeyLines(String username) {
+		List<String> keyLines = keyLinesByUsername.get(username);
+		return keyLines == null ? Collections.emptyList() : Collections.unmodifiableList(keyLines);
+	}
+
+	public boolean containsUsername(String username) {
+		return keyLinesByUsername.containsKey(username);
+	}
+}
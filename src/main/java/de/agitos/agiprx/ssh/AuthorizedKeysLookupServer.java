@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import de.agitos.agiprx.ConsoleWrapper;
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.bean.Config;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
+import de.agitos.agiprx.util.Assert;
+import de.agitos.agiprx.util.Validator;
+
+/**
+ * Loopback endpoint for the OpenSSH AuthorizedKeysCommand, see
+ * scripts/authorized-keys-lookup.sh: a client sends a proxy username line and
+ * receives the authorized_keys lines of the account. The lines are taken from
+ * the current config snapshot, so key and permission changes apply with the
+ * next login without writing authorized_keys files.
+ * 
+ * sshd trusts the keys of whatever answers on the port, it needs to be a
+ * privileged port that no other local user can bind while agiprx is down.
+ */
+public class AuthorizedKeysLookupServer implements DependencyInjector, Runnable {
+
+	private static final Logger LOG = Logger.getLogger(AuthorizedKeysLookupServer.class.getName());
+
+	private static final int READ_TIMEOUT_MILLIS = 2000;
+
+	private static final int MAX_USERNAME_LENGTH = 256;
+
+	private static AuthorizedKeysLookupServer BEAN;
+
+	private ConsoleWrapper console;
+
+	private Validator validator;
+
+	// @Value("${agiprx.authorizedKeysLookup:false}")
+	private final boolean enabled;
+
+	// @Value("${agiprx.authorizedKeysLookupPort:224}")
+	private final int port;
+
+	private final int threads;
+
+	private ConfigSnapshotDao.Derived<AuthorizedKeysIndex> index;
+
+	private ServerSocket serverSocket;
+
+	private ExecutorService executor;
+
+	public AuthorizedKeysLookupServer() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+
+		Config config = Config.getBean();
+
+		enabled = config.getBoolean("agiprx.authorizedKeysLookup", false);
+		port = config.getInteger("agiprx.authorizedKeysLookupPort", 224);
+		threads = config.getInteger("agiprx.authorizedKeysLookupThreads", 4);
+
+		Assert.isTrue(!enabled || (port > 0 && port < 1024),
+				"agiprx.authorizedKeysLookupPort needs to be a privileged port below 1024");
+	}
+
+	@Override
+	public void postConstruct() {
+		console = ConsoleWrapper.getBean();
+		index = ConfigSnapshotDao.getBean().derive(AuthorizedKeysIndex::new);
+		validator = Validator.getBean();
+	}
+
+	public static AuthorizedKeysLookupServer getBean() {
+		return BEAN;
+	}
+
+	/**
+	 * @return true if sshd looks up the keys of the proxy accounts and no
+	 *         authorized_keys files are written
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void runServer() throws IOException {
+
+		// only local processes (sshd) may query keys
+		serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+
+		AtomicInteger threadCount = new AtomicInteger();
+		executor = Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "AuthorizedKeysLookup-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+
+		Thread acceptThread = new Thread(this, "AuthorizedKeysLookupAccept");
+		acceptThread.setDaemon(true);
+		acceptThread.start();
+
+		console.printlnf("Started authorized keys lookup at %s:%d", serverSocket.getInetAddress().getHostAddress(),
+				port);
+	}
+
+	@Override
+	public void run() {
+		while (!serverSocket.isClosed()) {
+			try {
+				Socket socket = serverSocket.accept();
+				executor.execute(() -> handle(socket));
+			} catch (IOException e) {
+				if (!serverSocket.isClosed()) {
+					LOG.log(Level.WARNING, "Accepting authorized keys lookup failed", e);
+				}
+			}
+		}
+	}
+
+	private void handle(Socket socket) {
+		try (Socket s = socket) {
+
+			s.setSoTimeout(READ_TIMEOUT_MILLIS);
+
+			String username = readLine(new BufferedInputStream(s.getInputStream()));
+
+			StringBuilder response = new StringBuilder();
+			if (username != null && validator.isSshProxyUsername(username)) {
+				for (String keyLine : getIndex().getKeyLines(username)) {
+					response.append(keyLine).append('\n');
+				}
+			}
+
+			OutputStream out = s.getOutputStream();
+			out.write(response.toString().getBytes(StandardCharsets.UTF_8));
+			out.flush();
+
+		} catch (IOException | RuntimeException e) {
+			LOG.log(Level.WARNING, "Authorized keys lookup failed", e);
+		}
+	}
+
+	/**
+	 * @return the trimmed first line or null if it exceeds the maximum username
+	 *         length
+	 */
+	private static String readLine(InputStream in) throws IOException {
+		StringBuilder buf = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1 && c != '\n') {
+			if (buf.length() == MAX_USERNAME_LENGTH) {
+				return null;
+			}
+			buf.append((char) c);
+		}
+		return buf.toString().trim();
+	}
+
+	public AuthorizedKeysIndex getIndex() {
+		return index.get();
+	}
+}
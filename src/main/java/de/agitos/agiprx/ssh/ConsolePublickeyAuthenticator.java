@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.security.PublicKey;
+
+import org.apache.sshd.common.AttributeRepository.AttributeKey;
+import org.apache.sshd.server.auth.pubkey.PublickeyAuthenticator;
+import org.apache.sshd.server.session.ServerSession;
+
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
+
+/**
+ * Authenticates console logins by the SSH public keys of the users in the
+ * config snapshot and attaches the user id to the session, see
+ * SshConsoleUtil.getUserIdFromChannel().
+ */
+public class ConsolePublickeyAuthenticator implements PublickeyAuthenticator {
+
+	public static final AttributeKey<Long> USER_ID = new AttributeKey<Long>();
+
+	private final String agiPrxUser;
+
+	private final ConfigSnapshotDao.Derived<ConsoleUserKeyIndex> index;
+
+	public ConsolePublickeyAuthenticator(String agiPrxUser, ConfigSnapshotDao configSnapshotDao) {
+		this.agiPrxUser = agiPrxUser;
+		this.index = configSnapshotDao
+				.derive(snapshot -> new ConsoleUserKeyIndex(snapshot.getVersion(), snapshot.getUsers()));
+	}
+
+	@Override
+	public boolean authenticate(String username, PublicKey key, ServerSession session) {
+
+		if (!agiPrxUser.equals(username)) {
+			return false;
+		}
+
+		Long userId = index.get().getUserId(key);
+		if (userId == null) {
+			return false;
+		}
+
+		session.setAttribute(USER_ID, userId);
+		return true;
+	}
+}
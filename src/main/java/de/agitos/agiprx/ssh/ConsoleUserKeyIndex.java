@@ -0,0 +1,104 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.security.PublicKey;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.sshd.common.config.keys.AuthorizedKeyEntry;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.common.config.keys.PublicKeyEntryResolver;
+
+import de.agitos.agiprx.model.User;
+import de.agitos.agiprx.model.UserRoleType;
+import de.agitos.agiprx.util.SshPublicKeyReaderUtil;
+import de.agitos.agiprx.util.SshPublicKeyReaderUtil.PublicKeyParseException;
+
+/**
+ * Index of the SHA256 key fingerprint to the id of the user allowed to access
+ * the AgiPrx console, i.e. users with role ADMIN or USER.
+ */
+public class ConsoleUserKeyIndex {
+
+	private static final Logger LOG = Logger.getLogger(ConsoleUserKeyIndex.class.getName());
+
+	private final long version;
+
+	private final Map<String, Long> userIdsByFingerprint = new HashMap<String, Long>();
+
+	public ConsoleUserKeyIndex(long version, List<User> users) {
+
+		this.version = version;
+
+		for (User user : users) {
+
+			UserRoleType roleType = user.getRole();
+			if (roleType == null || !(roleType == UserRoleType.ADMIN || roleType == UserRoleType.USER)) {
+				continue;
+			}
+
+			if (user.getSshPublicKey() == null || user.getSshPublicKey().trim().isEmpty()) {
+				continue;
+			}
+
+			PublicKey publicKey = parsePublicKey(user.getSshPublicKey().trim());
+			if (publicKey == null) {
+				LOG.warning("Unable to parse SSH public key of user " + user.getEmail());
+				continue;
+			}
+
+			userIdsByFingerprint.put(KeyUtils.getFingerPrint(publicKey), user.getId());
+		}
+	}
+
+	private static PublicKey parsePublicKey(String sshPublicKey) {
+
+		// RSA and DSA keys
+		try {
+			return SshPublicKeyReaderUtil.load(sshPublicKey);
+		} catch (PublicKeyParseException | RuntimeException e) {
+			// try other key types
+		}
+
+		try {
+			return AuthorizedKeyEntry.parseAuthorizedKeyEntry(sshPublicKey).resolvePublicKey(null,
+					PublicKeyEntryResolver.IGNORING);
+		} catch (Exception e) {
+			LOG.log(Level.FINE, "Parsing SSH public key failed", e);
+			return null;
+		}
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the user id or null if the key is unknown
+	 */
+	public Long getUserId(PublicKey key) {
+		return userIdsByFingerprint.get(KeyUtils.getFingerPrint(key));
+	}
+
+	public int size() {
+		return userIdsByFingerprint.size();
+	}
+}
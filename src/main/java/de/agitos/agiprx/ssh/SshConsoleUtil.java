@@ -16,38 +16,18 @@
  ******************************************************************************/
 package de.agitos.agiprx.ssh;
 
-import org.apache.sshd.common.config.keys.AuthorizedKeyEntry;
 import org.apache.sshd.server.channel.ChannelSession;
 
-import de.agitos.agiprx.AbstractTool;
-
 public class SshConsoleUtil {
 
 	public static Long getUserIdFromChannel(ChannelSession channel) {
 
-		AuthorizedKeyEntry authorizedKeyEntry = channel.getSession().getAttribute(
-				org.apache.sshd.server.auth.pubkey.AuthorizedKeyEntriesPublickeyAuthenticator.AUTHORIZED_KEY);
-
-		String userEnvironment = authorizedKeyEntry.getLoginOptions().get("environment");
-		if (userEnvironment == null) {
-			throw new RuntimeException("Authorized key is missing environment configuration for AgiPrx user ID");
-		}
-		String[] userEnvSplitted = userEnvironment.split("=");
-		if (userEnvSplitted.length != 2) {
-			throw new RuntimeException("Authorized key's environment configuration has an invalid format");
-		}
-
-		if (!AbstractTool.USER_ID.equals(userEnvSplitted[0])) {
-			throw new RuntimeException("Parameters of authorized key's environment needs to be in format "
-					+ AbstractTool.USER_ID + "=<ID>");
+		Long userId = channel.getSession().getAttribute(ConsolePublickeyAuthenticator.USER_ID);
+		if (userId == null) {
+			throw new RuntimeException("Session is missing the AgiPrx user ID of the authenticated key");
 		}
 
-		try {
-			return Long.valueOf(userEnvSplitted[1]);
-		} catch (NumberFormatException nfe) {
-			throw new RuntimeException(
-					"The " + AbstractTool.USER_ID + " in authorized key's environment is not a number");
-		}
+		return userId;
 	}
 
 }
@@ -0,0 +1,182 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.sshd.common.config.keys.AuthorizedKeyEntry;
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.common.config.keys.PublicKeyEntryResolver;
+
+import de.agitos.agiprx.dao.ConfigSnapshot;
+import de.agitos.agiprx.model.Container;
+import de.agitos.agiprx.model.ContainerPermission;
+import de.agitos.agiprx.model.Project;
+import de.agitos.agiprx.model.User;
+
+/**
+ * Proxy accounts of the SSH gateway computed from a config snapshot: one
+ * account per project-container_permission username like the system accounts
+ * generated by SshProxyProcessor.
+ */
+public class SshGatewayAccounts {
+
+	private static final Logger LOG = Logger.getLogger(SshGatewayAccounts.class.getName());
+
+	private final long version;
+
+	private final Map<String, Account> accountsByUsername = new HashMap<String, Account>();
+
+	public SshGatewayAccounts(ConfigSnapshot snapshot) {
+
+		this.version = snapshot.getVersion();
+
+		Map<String, PublicKey> parsedKeys = new HashMap<String, PublicKey>();
+
+		for (Project project : snapshot.getProjects()) {
+			for (Container container : project.getContainers()) {
+
+				if (container.getIpv6() == null) {
+					continue;
+				}
+
+				for (ContainerPermission permission : container.getContainerPermissions()) {
+
+					String username = ContainerPermission.formatSshProxyUsername(project.getLabel(),
+							container.getLabel(), permission.getPermission());
+
+					Account account = accountsByUsername.get(username);
+					if (account == null) {
+						account = new Account(username, permission.getPermission(), container.getIpv6(),
+								permission.getPassword());
+						accountsByUsername.put(username, account);
+					}
+
+					PublicKey publicKey = parsePublicKey(permission.getUser(), parsedKeys);
+					if (publicKey != null) {
+						account.allowedKeys.add(publicKey);
+					}
+				}
+			}
+		}
+	}
+
+	private PublicKey parsePublicKey(User user, Map<String, PublicKey> parsedKeys) {
+
+		if (user == null || user.getSshPublicKey() == null || user.getSshPublicKey().trim().isEmpty()) {
+			return null;
+		}
+
+		String line = user.getSshPublicKey().trim();
+		if (parsedKeys.containsKey(line)) {
+			return parsedKeys.get(line);
+		}
+
+		PublicKey publicKey = null;
+		try {
+			publicKey = AuthorizedKeyEntry.parseAuthorizedKeyEntry(line).resolvePublicKey(null,
+					PublicKeyEntryResolver.IGNORING);
+		} catch (Exception e) {
+			LOG.log(Level.WARNING, "Unable to parse SSH public key of user " + user.getEmail(), e);
+		}
+
+		parsedKeys.put(line, publicKey);
+		return publicKey;
+	}
+
+	public long getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the account or null if no container permission matches the username
+	 */
+	public Account getAccount(String username) {
+		return accountsByUsername.get(username);
+	}
+
+	public int size() {
+		return accountsByUsername.size();
+	}
+
+	public boolean authenticate(String username, PublicKey key) {
+		Account account = accountsByUsername.get(username);
+		if (account == null) {
+			return false;
+		}
+		for (PublicKey allowedKey : account.allowedKeys) {
+			if (KeyUtils.compareKeys(allowedKey, key)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public boolean authenticate(String username, String password) {
+		Account account = accountsByUsername.get(username);
+		if (account == null || account.password == null || account.password.isEmpty() || password == null) {
+			return false;
+		}
+		return MessageDigest.isEqual(account.password.getBytes(StandardCharsets.UTF_8),
+				password.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public static class Account {
+
+		private final String proxyUsername;
+
+		private final String containerUsername;
+
+		private final String containerIpv6;
+
+		private final String password;
+
+		private final List<PublicKey> allowedKeys = new ArrayList<PublicKey>();
+
+		Account(String proxyUsername, String containerUsername, String containerIpv6, String password) {
+			this.proxyUsername = proxyUsername;
+			this.containerUsername = containerUsername;
+			this.containerIpv6 = containerIpv6;
+			this.password = password;
+		}
+
+		public String getProxyUsername() {
+			return proxyUsername;
+		}
+
+		public String getContainerUsername() {
+			return containerUsername;
+		}
+
+		public String getContainerIpv6() {
+			return containerIpv6;
+		}
+
+		public List<PublicKey> getAllowedKeys() {
+			return Collections.unmodifiableList(allowedKeys);
+		}
+	}
+}
@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.sshd.client.channel.ClientChannel;
+import org.apache.sshd.client.channel.PtyCapableChannelSession;
+import org.apache.sshd.client.session.ClientSession;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.Signal;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+
+/**
+ * Relays a shell, an exec request or a subsystem of a gateway login to a
+ * channel on the pooled upstream session of the container account. This
+ * replaces the generated sshprx.sh login shell which forks an ssh client per
+ * login.
+ */
+public class SshGatewayRelayCommand implements Command {
+
+	private static final Logger LOG = Logger.getLogger(SshGatewayRelayCommand.class.getName());
+
+	public static final String SSH_LOGIN_USER = "SSH_LOGIN_USER";
+
+	private final SshGatewayServer gateway;
+
+	// null for shells and subsystems
+	private final String command;
+
+	// null for shells and exec requests
+	private final String subsystem;
+
+	private InputStream in;
+	private OutputStream out;
+	private OutputStream err;
+	private ExitCallback callback;
+
+	private SshSessionPool.PooledSession pooledSession;
+	private ClientChannel upstreamChannel;
+
+	private final AtomicBoolean finished = new AtomicBoolean();
+
+	private SshGatewayRelayCommand(SshGatewayServer gateway, String command, String subsystem) {
+		this.gateway = gateway;
+		this.command = command;
+		this.subsystem = subsystem;
+	}
+
+	public static SshGatewayRelayCommand shell(SshGatewayServer gateway) {
+		return new SshGatewayRelayCommand(gateway, null, null);
+	}
+
+	public static SshGatewayRelayCommand exec(SshGatewayServer gateway, String command) {
+		return new SshGatewayRelayCommand(gateway, command, null);
+	}
+
+	public static SshGatewayRelayCommand subsystem(SshGatewayServer gateway, String subsystem) {
+		return new SshGatewayRelayCommand(gateway, null, subsystem);
+	}
+
+	@Override
+	public void setInputStream(InputStream in) {
+		this.in = in;
+	}
+
+	@Override
+	public void setOutputStream(OutputStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void setErrorStream(OutputStream err) {
+		this.err = err;
+	}
+
+	@Override
+	public void setExitCallback(ExitCallback callback) {
+		this.callback = callback;
+	}
+
+	@Override
+	public void start(ChannelSession channel, Environment env) throws IOException {
+
+		String username = channel.getSession().getUsername();
+
+		SshGatewayAccounts.Account account = gateway.getAccount(username);
+		if (account == null) {
+			throw new IOException("No container permission for " + username);
+		}
+
+		pooledSession = gateway.getSessionPool().acquire(account);
+		try {
+			upstreamChannel = createUpstreamChannel(pooledSession.getSession(), username, env);
+			upstreamChannel.setIn(in);
+			upstreamChannel.setOut(out);
+			upstreamChannel.setErr(err);
+			upstreamChannel.open().verify(gateway.getConnectTimeoutMillis());
+		} catch (IOException | RuntimeException e) {
+			finished.set(true);
+			if (upstreamChannel != null) {
+				upstreamChannel.close(true);
+			}
+			gateway.getSessionPool().release(pooledSession);
+			throw e;
+		}
+
+		upstreamChannel.addCloseFutureListener(future -> finish());
+	}
+
+	private ClientChannel createUpstreamChannel(ClientSession session, String username, Environment env)
+			throws IOException {
+
+		if (subsystem != null) {
+			return session.createSubsystemChannel(subsystem);
+		}
+
+		PtyCapableChannelSession ptyChannel = command == null ? session.createShellChannel()
+				: session.createExecChannel(command);
+
+		// like ssh -t: a pty is only requested upstream if the client requested one
+		Map<String, String> envVars = env.getEnv();
+		String term = envVars.get(Environment.ENV_TERM);
+		ptyChannel.setUsePty(term != null);
+		if (term != null) {
+			ptyChannel.setPtyType(term);
+			ptyChannel.setPtyColumns(parseInt(envVars.get(Environment.ENV_COLUMNS), ptyChannel.getPtyColumns()));
+			ptyChannel.setPtyLines(parseInt(envVars.get(Environment.ENV_LINES), ptyChannel.getPtyLines()));
+			ptyChannel.setPtyModes(env.getPtyModes());
+
+			env.addSignalListener((channel, signal) -> {
+				try {
+					ptyChannel.sendWindowChange(parseInt(envVars.get(Environment.ENV_COLUMNS), 80),
+							parseInt(envVars.get(Environment.ENV_LINES), 24));
+				} catch (IOException e) {
+					LOG.log(Level.FINE, "Forwarding window change failed", e);
+				}
+			}, Signal.WINCH);
+		}
+
+		// same as environment="SSH_LOGIN_USER=..." in the authorized_keys of the
+		// system accounts
+		ptyChannel.setEnv(SSH_LOGIN_USER, username);
+
+		return ptyChannel;
+	}
+
+	private static int parseInt(String value, int defaultValue) {
+		try {
+			return value == null ? defaultValue : Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+
+	private void finish() {
+
+		if (!finished.compareAndSet(false, true)) {
+			return;
+		}
+
+		gateway.getSessionPool().release(pooledSession);
+
+		Integer exitStatus = upstreamChannel.getExitStatus();
+		callback.onExit(exitStatus != null ? exitStatus : 0);
+	}
+
+	@Override
+	public void destroy(ChannelSession channel) throws Exception {
+
+		if (!finished.compareAndSet(false, true)) {
+			return;
+		}
+
+		if (upstreamChannel != null) {
+			upstreamChannel.close(false);
+		}
+		if (pooledSession != null) {
+			gateway.getSessionPool().release(pooledSession);
+		}
+	}
+}
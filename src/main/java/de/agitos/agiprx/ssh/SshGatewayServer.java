@@ -0,0 +1,243 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.keyverifier.AcceptAllServerKeyVerifier;
+import org.apache.sshd.common.keyprovider.FileKeyPairProvider;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.channel.ChannelSessionFactory;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.forward.AgentForwardingFilter;
+import org.apache.sshd.server.forward.ForwardingFilter;
+import org.apache.sshd.server.forward.TcpForwardingFilter;
+import org.apache.sshd.server.forward.X11ForwardingFilter;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.apache.sshd.server.subsystem.SubsystemFactory;
+
+import de.agitos.agiprx.ConsoleWrapper;
+import de.agitos.agiprx.DependencyInjector;
+import de.agitos.agiprx.bean.Config;
+import de.agitos.agiprx.dao.ConfigSnapshotDao;
+import de.agitos.agiprx.util.Assert;
+
+/**
+ * Optional SSH jump gateway: project-container_permission logins are
+ * authenticated against the container permissions of the config snapshot and
+ * relayed to the container over pooled upstream sessions, without system
+ * accounts, PAM or a forked ssh client per login.
+ */
+public class SshGatewayServer implements DependencyInjector {
+
+	private static final Logger LOG = Logger.getLogger(SshGatewayServer.class.getName());
+
+	private static final String SFTP_SUBSYSTEM = "sftp";
+
+	private static SshGatewayServer BEAN;
+
+	private ConsoleWrapper console;
+
+	// @Value("${gateway.enabled:false}")
+	private final boolean enabled;
+
+	// @Value("${gateway.port:2225}")
+	private final int port;
+
+	// @Value("${gateway.hostKeys:/opt/agiprx/.ssh/gateway-hostkey.ser}")
+	private final String hostKeys;
+
+	// @Value("${agiprx.defaultSshKey:/opt/agiprx/etc/prx_rsa}")
+	private final String defaultSshKeyFullpath;
+
+	private final long connectTimeoutMillis;
+
+	private final int maxChannelsPerSession;
+
+	private final long idleTimeoutMillis;
+
+	// @Value("${gateway.permitOpen:any}")
+	private final List<String> permitOpen;
+
+	private ConfigSnapshotDao.Derived<SshGatewayAccounts> accounts;
+
+	private SshSessionPool sessionPool;
+
+	public SshGatewayServer() {
+
+		Assert.singleton(this, BEAN);
+		BEAN = this;
+
+		Config config = Config.getBean();
+
+		enabled = config.getBoolean("gateway.enabled", false);
+		port = config.getInteger("gateway.port", 2225);
+		hostKeys = config.getString("gateway.hostKeys", "/opt/agiprx/.ssh/gateway-hostkey.ser");
+		defaultSshKeyFullpath = config.getString("agiprx.defaultSshKey", "/opt/agiprx/etc/prx_rsa");
+		connectTimeoutMillis = config.getInteger("gateway.connectTimeout", 10) * 1000L;
+		maxChannelsPerSession = config.getInteger("gateway.maxChannelsPerSession", 8);
+		idleTimeoutMillis = config.getInteger("gateway.upstreamIdleTimeout", 300) * 1000L;
+		permitOpen = config.getStringList("gateway.permitOpen", "[ ]+");
+		if (permitOpen != null) {
+			for (String target : permitOpen) {
+				Assert.isTrue(target.equals("any") || target.lastIndexOf(':') > 0,
+						"gateway.permitOpen needs to list host:port targets: " + target);
+			}
+		}
+	}
+
+	@Override
+	public void postConstruct() {
+		console = ConsoleWrapper.getBean();
+		accounts = ConfigSnapshotDao.getBean().derive(SshGatewayAccounts::new);
+	}
+
+	public static SshGatewayServer getBean() {
+		return BEAN;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void runServer() throws IOException {
+
+		SshClient client = SshClient.setUpDefaultClient();
+		// same as -oStrictHostKeyChecking=no of the generated sshprx.sh
+		client.setServerKeyVerifier(AcceptAllServerKeyVerifier.INSTANCE);
+		client.setKeyIdentityProvider(new FileKeyPairProvider(Paths.get(defaultSshKeyFullpath)));
+		client.start();
+
+		sessionPool = new SshSessionPool(client, connectTimeoutMillis, maxChannelsPerSession,
+				idleTimeoutMillis);
+
+		ScheduledExecutorService idleSweeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "SshGatewayIdleSweeper");
+			thread.setDaemon(true);
+			return thread;
+		});
+		idleSweeper.scheduleWithFixedDelay(() -> {
+			try {
+				sessionPool.closeIdleSessions();
+			} catch (RuntimeException e) {
+				LOG.log(Level.WARNING, "Closing idle upstream sessions failed", e);
+			}
+		}, 30, 30, TimeUnit.SECONDS);
+
+		SshServer sshd = SshServer.setUpDefaultServer();
+		sshd.setPort(port);
+
+		sshd.setPublickeyAuthenticator((username, key, session) -> getAccounts().authenticate(username, key));
+		sshd.setPasswordAuthenticator(
+				(username, password, session) -> getAccounts().authenticate(username, password));
+
+		SimpleGeneratorHostKeyProvider keyPairProvider = new SimpleGeneratorHostKeyProvider(Paths.get(hostKeys));
+		keyPairProvider.setAlgorithm(org.apache.sshd.common.config.keys.KeyUtils.EC_ALGORITHM);
+		sshd.setKeyPairProvider(keyPairProvider);
+
+		sshd.setShellFactory(channel -> SshGatewayRelayCommand.shell(this));
+		sshd.setCommandFactory((channel, command) -> SshGatewayRelayCommand.exec(this, command));
+		sshd.setSubsystemFactories(Collections.singletonList(new SubsystemFactory() {
+
+			@Override
+			public String getName() {
+				return SFTP_SUBSYSTEM;
+			}
+
+			@Override
+			public Command createSubsystem(ChannelSession channel) {
+				return SshGatewayRelayCommand.subsystem(SshGatewayServer.this, SFTP_SUBSYSTEM);
+			}
+		}));
+
+		// local port forwarding only, the targets are connected from the containers by
+		// SshGatewayTcpipChannel which passes the requested address to this filter
+		sshd.setChannelFactories(
+				Arrays.asList(ChannelSessionFactory.INSTANCE, new SshGatewayTcpipChannel.Factory(this)));
+		sshd.setForwardingFilter(ForwardingFilter.asForwardingFilter(AgentForwardingFilter.DEFAULT,
+				X11ForwardingFilter.DEFAULT, new TcpForwardingFilter() {
+
+					@Override
+					public boolean canListen(SshdSocketAddress address,
+							Session session) {
+						return false;
+					}
+
+					@Override
+					public boolean canConnect(Type type, SshdSocketAddress address,
+							Session session) {
+						return type == Type.Direct && isPermittedTarget(address.getHostName(), address.getPort());
+					}
+				}));
+
+		sshd.start();
+
+		console.printlnf("Started SSH gateway for %d proxy accounts at port %d", getAccounts().size(), port);
+	}
+
+	SshGatewayAccounts getAccounts() {
+		return accounts.get();
+	}
+
+	/**
+	 * Like PermitOpen of sshd: any or host:port targets, * matches any host or
+	 * port
+	 */
+	boolean isPermittedTarget(String host, int targetPort) {
+
+		if (permitOpen == null || permitOpen.contains("any")) {
+			return true;
+		}
+
+		for (String target : permitOpen) {
+			int separator = target.lastIndexOf(':');
+			String permittedHost = target.substring(0, separator).replace("[", "").replace("]", "");
+			String permittedPort = target.substring(separator + 1);
+			if ((permittedHost.equals("*") || permittedHost.equalsIgnoreCase(host))
+					&& (permittedPort.equals("*") || permittedPort.equals(String.valueOf(targetPort)))) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	SshGatewayAccounts.Account getAccount(String username) {
+		return getAccounts().getAccount(username);
+	}
+
+	SshSessionPool getSessionPool() {
+		return sessionPool;
+	}
+
+	long getConnectTimeoutMillis() {
+		return connectTimeoutMillis;
+	}
+}
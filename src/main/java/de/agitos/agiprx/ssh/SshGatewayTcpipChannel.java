@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.sshd.client.channel.ChannelDirectTcpip;
+import org.apache.sshd.client.future.DefaultOpenFuture;
+import org.apache.sshd.client.future.OpenFuture;
+import org.apache.sshd.common.SshConstants;
+import org.apache.sshd.common.channel.Channel;
+import org.apache.sshd.common.channel.ChannelOutputStream;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.util.buffer.Buffer;
+import org.apache.sshd.common.util.net.SshdSocketAddress;
+import org.apache.sshd.common.util.threads.CloseableExecutorService;
+import org.apache.sshd.common.util.threads.ThreadUtils;
+import org.apache.sshd.server.channel.AbstractServerChannel;
+import org.apache.sshd.server.forward.TcpForwardingFilter;
+import org.apache.sshd.server.forward.TcpipServerChannel;
+
+/**
+ * direct-tcpip channel of the gateway: the requested target is not connected
+ * from the gateway host but from the container. The channel is piped to a
+ * direct-tcpip channel of the pooled upstream session, no port is opened on the
+ * gateway host. The forwarding filter of the gateway decides on the requested
+ * target.
+ */
+public class SshGatewayTcpipChannel extends AbstractServerChannel {
+
+	private static final Logger LOG = Logger.getLogger(SshGatewayTcpipChannel.class.getName());
+
+	private static final int PIPE_BUFFER_SIZE = 32 * 1024;
+
+	private final SshGatewayServer gateway;
+
+	private SshSessionPool.PooledSession pooledSession;
+
+	private volatile ChannelDirectTcpip upstreamChannel;
+
+	public SshGatewayTcpipChannel(CloseableExecutorService executor, SshGatewayServer gateway) {
+		super(executor);
+		this.gateway = gateway;
+		addCloseFutureListener(future -> releaseUpstream());
+	}
+
+	@Override
+	protected OpenFuture doInit(Buffer buffer) {
+
+		String hostToConnect = buffer.getString();
+		int portToConnect = buffer.getInt();
+		String originatorHost = buffer.getString();
+		int originatorPort = buffer.getInt();
+
+		String username = getSession().getUsername();
+		SshdSocketAddress target = new SshdSocketAddress(hostToConnect, portToConnect);
+
+		DefaultOpenFuture future = new DefaultOpenFuture(target, null);
+
+		try {
+			TcpForwardingFilter filter = getSession().getFactoryManager().getTcpForwardingFilter();
+			if (filter == null || !filter.canConnect(TcpForwardingFilter.Type.Direct, target, getSession())) {
+				throw new IOException("Forwarding to " + target + " is not permitted");
+			}
+
+			SshGatewayAccounts.Account account = gateway.getAccount(username);
+			if (account == null) {
+				throw new IOException("No container permission for " + username);
+			}
+
+			pooledSession = gateway.getSessionPool().acquire(account);
+			ChannelDirectTcpip upstream = pooledSession.getSession().createDirectTcpipChannel(
+					new SshdSocketAddress(originatorHost, originatorPort), target);
+			upstreamChannel = upstream;
+			upstream.addCloseFutureListener(closed -> close(false));
+
+			upstream.open().addListener(opened -> {
+				Throwable exception = opened.getException();
+				if (exception != null) {
+					failOpen(future, username, target, exception);
+					return;
+				}
+				future.setOpened();
+				// started after the open confirmation, data must not precede it
+				Thread pipe = new Thread(() -> pipeUpstreamToChannel(upstream), "SshGatewayTcpip");
+				pipe.setDaemon(true);
+				pipe.start();
+			});
+
+		} catch (IOException | RuntimeException e) {
+			failOpen(future, username, target, e);
+		}
+
+		return future;
+	}
+
+	private void failOpen(DefaultOpenFuture future, String username, SshdSocketAddress target,
+			Throwable exception) {
+		LOG.log(Level.FINE, "Forwarding of " + username + " to " + target + " failed", exception);
+		releaseUpstream();
+		future.setException(exception);
+	}
+
+	private void pipeUpstreamToChannel(ChannelDirectTcpip upstream) {
+
+		InputStream in = upstream.getInvertedOut();
+		// respects the window of the client, EOF is sent on close
+		try (OutputStream out = new ChannelOutputStream(this, getRemoteWindow(), log,
+				SshConstants.SSH_MSG_CHANNEL_DATA, true)) {
+
+			byte[] buffer = new byte[PIPE_BUFFER_SIZE];
+			for (;;) {
+				int len = in.read(buffer);
+				if (len < 0) {
+					break;
+				}
+				out.write(buffer, 0, len);
+				out.flush();
+			}
+
+		} catch (IOException e) {
+			LOG.log(Level.FINE, "Relaying from the container failed", e);
+		}
+
+		close(false);
+	}
+
+	@Override
+	protected void doWriteData(byte[] data, int off, long len) throws IOException {
+		// blocks on the window of the container session, the window of the client is
+		// released after the data was passed on
+		ChannelDirectTcpip upstream = upstreamChannel;
+		if (upstream == null) {
+			throw new IOException("Upstream channel is closed");
+		}
+		OutputStream upstreamIn = upstream.getInvertedIn();
+		upstreamIn.write(data, off, (int) len);
+		upstreamIn.flush();
+		getLocalWindow().release(len);
+	}
+
+	@Override
+	protected void doWriteExtendedData(byte[] data, int off, long len) throws IOException {
+		throw new UnsupportedOperationException("direct-tcpip channel does not support extended data");
+	}
+
+	@Override
+	public void handleEof() throws IOException {
+		super.handleEof();
+		// closing the inverted input sends EOF to the container
+		ChannelDirectTcpip upstream = upstreamChannel;
+		if (upstream != null && upstream.isOpen()) {
+			upstream.getInvertedIn().close();
+		}
+	}
+
+	private synchronized void releaseUpstream() {
+
+		if (upstreamChannel != null) {
+			upstreamChannel.close(false);
+			upstreamChannel = null;
+		}
+
+		if (pooledSession != null) {
+			gateway.getSessionPool().release(pooledSession);
+			pooledSession = null;
+		}
+	}
+
+	public static class Factory extends TcpipServerChannel.TcpipFactory {
+
+		private final SshGatewayServer gateway;
+
+		public Factory(SshGatewayServer gateway) {
+			super(TcpForwardingFilter.Type.Direct);
+			this.gateway = gateway;
+		}
+
+		@Override
+		public Channel createChannel(Session session) throws IOException {
+			return new SshGatewayTcpipChannel(ThreadUtils.noClose(getExecutorService()), gateway);
+		}
+	}
+}
@@ -0,0 +1,239 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.sshd.client.SshClient;
+import org.apache.sshd.client.session.ClientSession;
+
+/**
+ * Pool of authenticated client sessions to container accounts. Channels to the
+ * same account share a session until it carries maxChannelsPerSession channels,
+ * the default MaxSessions of OpenSSH is 10.
+ */
+public class SshSessionPool {
+
+	private static final Logger LOG = Logger.getLogger(SshSessionPool.class.getName());
+
+	private static final int SSH_PORT = 22;
+
+	private final SshClient client;
+
+	private final long connectTimeoutMillis;
+
+	private final int maxChannelsPerSession;
+
+	private final long idleTimeoutMillis;
+
+	// guarded by this
+	private final Map<String, List<PooledSession>> sessionsByKey = new HashMap<String, List<PooledSession>>();
+
+	private final Map<String, Object> connectLocks = new ConcurrentHashMap<String, Object>();
+
+	public SshSessionPool(SshClient client, long connectTimeoutMillis, int maxChannelsPerSession,
+			long idleTimeoutMillis) {
+		this.client = client;
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.maxChannelsPerSession = maxChannelsPerSession;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	public PooledSession acquire(SshGatewayAccounts.Account account) throws IOException {
+		return acquire(account.getContainerUsername(), account.getContainerIpv6(), SSH_PORT);
+	}
+
+	/**
+	 * Reserve a channel on an open session of username@host, a new session is
+	 * connected and authenticated if all sessions are busy. The reservation must
+	 * be given back by release().
+	 */
+	public PooledSession acquire(String username, String host, int port) throws IOException {
+
+		String key = username + "@[" + host + "]:" + port;
+
+		PooledSession pooledSession = reserve(key);
+		if (pooledSession != null) {
+			return pooledSession;
+		}
+
+		// concurrent logins into the same container account wait for one connect
+		synchronized (connectLocks.computeIfAbsent(key, k -> new Object())) {
+
+			pooledSession = reserve(key);
+			if (pooledSession != null) {
+				return pooledSession;
+			}
+
+			ClientSession session;
+			try {
+				session = client.connect(username, host, port).verify(connectTimeoutMillis).getSession();
+			} catch (IOException e) {
+				throw new UnreachableException("Connecting " + key + " failed: " + e.getMessage(), e);
+			}
+
+			try {
+				session.auth().verify(connectTimeoutMillis);
+			} catch (IOException | RuntimeException e) {
+				session.close(true);
+				throw e;
+			}
+
+			pooledSession = new PooledSession(key, session);
+			synchronized (this) {
+				sessionsByKey.computeIfAbsent(key, k -> new ArrayList<PooledSession>()).add(pooledSession);
+			}
+
+			LOG.fine("Opened session " + key);
+			return pooledSession;
+		}
+	}
+
+	private synchronized PooledSession reserve(String key) {
+
+		List<PooledSession> sessions = sessionsByKey.get(key);
+		if (sessions == null) {
+			return null;
+		}
+
+		for (Iterator<PooledSession> it = sessions.iterator(); it.hasNext();) {
+			PooledSession pooledSession = it.next();
+			if (!pooledSession.session.isOpen()) {
+				it.remove();
+				continue;
+			}
+			if (pooledSession.channels < maxChannelsPerSession) {
+				pooledSession.channels++;
+				return pooledSession;
+			}
+		}
+
+		return null;
+	}
+
+	public synchronized void release(PooledSession pooledSession) {
+		pooledSession.channels--;
+		pooledSession.lastReleased = System.currentTimeMillis();
+	}
+
+	/**
+	 * Close upstream sessions without channels that were idle longer than the idle
+	 * timeout
+	 */
+	public void closeIdleSessions() {
+
+		List<PooledSession> idleSessions = new ArrayList<PooledSession>();
+		long now = System.currentTimeMillis();
+
+		synchronized (this) {
+			for (Iterator<List<PooledSession>> listIt = sessionsByKey.values().iterator(); listIt.hasNext();) {
+				List<PooledSession> sessions = listIt.next();
+				for (Iterator<PooledSession> it = sessions.iterator(); it.hasNext();) {
+					PooledSession pooledSession = it.next();
+					if (!pooledSession.session.isOpen() || (pooledSession.channels == 0
+							&& now - pooledSession.lastReleased > idleTimeoutMillis)) {
+						it.remove();
+						idleSessions.add(pooledSession);
+					}
+				}
+				if (sessions.isEmpty()) {
+					listIt.remove();
+				}
+			}
+		}
+
+		for (PooledSession pooledSession : idleSessions) {
+			try {
+				pooledSession.session.close();
+			} catch (IOException e) {
+				LOG.log(Level.FINE, "Closing session " + pooledSession.key + " failed", e);
+			}
+		}
+	}
+
+	/**
+	 * Close all sessions, channels still open on them are closed as well
+	 */
+	public void close() {
+
+		List<PooledSession> sessions = new ArrayList<PooledSession>();
+		synchronized (this) {
+			for (List<PooledSession> keySessions : sessionsByKey.values()) {
+				sessions.addAll(keySessions);
+			}
+			sessionsByKey.clear();
+		}
+
+		for (PooledSession pooledSession : sessions) {
+			try {
+				pooledSession.session.close();
+			} catch (IOException e) {
+				LOG.log(Level.FINE, "Closing session " + pooledSession.key + " failed", e);
+			}
+		}
+	}
+
+	public synchronized int getSessionCount() {
+		int count = 0;
+		for (List<PooledSession> sessions : sessionsByKey.values()) {
+			count += sessions.size();
+		}
+		return count;
+	}
+
+	/**
+	 * The host couldn't be connected, in contrast to an authentication failure
+	 * this affects all accounts of the host
+	 */
+	public static class UnreachableException extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		public UnreachableException(String message, Throwable cause) {
+			super(message, cause);
+		}
+	}
+
+	public static class PooledSession {
+
+		private final String key;
+
+		private final ClientSession session;
+
+		// guarded by the pool
+		private int channels = 1;
+
+		private long lastReleased = System.currentTimeMillis();
+
+		PooledSession(String key, ClientSession session) {
+			this.key = key;
+			this.session = session;
+		}
+
+		public ClientSession getSession() {
+			return session;
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+/**
+ * Domain name index on reversed labels, e.g. www.example.org is stored as org
+ * -> example -> www. Exact and wildcard lookups take O(labels), filter queries
+ * only visit the subtree below the literal suffix of the filter.
+ * 
+ * A wildcard name like *.example.org is stored as child "*" of example.org and
+ * covers exactly one additional label, as in TLS certificates.
+ */
+public class DomainNameTrie<V> {
+
+	private static final String WILDCARD_LABEL = "*";
+
+	private static class Node<V> {
+
+		private final Map<String, Node<V>> children = new HashMap<String, Node<V>>();
+
+		private V value;
+	}
+
+	private final Node<V> root = new Node<V>();
+
+	private final Map<String, V> entries = new HashMap<String, V>();
+
+	public void put(String domainName, V value) {
+
+		Node<V> node = root;
+		for (String label : reversedLabels(domainName)) {
+			node = node.children.computeIfAbsent(label, k -> new Node<V>());
+		}
+		node.value = value;
+
+		entries.put(domainName, value);
+	}
+
+	/**
+	 * @return value of the exact domain name, wildcard names are matched literally
+	 */
+	public V get(String domainName) {
+		Node<V> node = findNode(reversedLabels(domainName), 0);
+		return node == null ? null : node.value;
+	}
+
+	/**
+	 * @return value of the exact domain name or else of the wildcard name covering
+	 *         it
+	 */
+	public V getMatching(String domainName) {
+
+		List<String> labels = reversedLabels(domainName);
+
+		Node<V> parent = findNode(labels, 1);
+		if (parent == null) {
+			return null;
+		}
+
+		Node<V> node = parent.children.get(labels.get(labels.size() - 1));
+		if (node != null && node.value != null) {
+			return node.value;
+		}
+
+		Node<V> wildcardNode = parent.children.get(WILDCARD_LABEL);
+		return wildcardNode == null ? null : wildcardNode.value;
+	}
+
+	/**
+	 * @param domainName exact or wildcard domain name, e.g. of a certificate
+	 * @return all stored domain names that are covered by domainName
+	 */
+	public List<String> getCoveredBy(String domainName) {
+
+		List<String> result = new ArrayList<String>();
+
+		List<String> labels = reversedLabels(domainName);
+		if (!WILDCARD_LABEL.equals(labels.get(labels.size() - 1))) {
+			if (get(domainName) != null) {
+				result.add(domainName);
+			}
+			return result;
+		}
+
+		Node<V> parent = findNode(labels, 1);
+		if (parent != null) {
+			String suffix = domainName.substring(WILDCARD_LABEL.length());
+			for (Map.Entry<String, Node<V>> child : parent.children.entrySet()) {
+				if (child.getValue().value != null) {
+					result.add(child.getKey() + suffix);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	public boolean isCoveredBy(String domainName) {
+		return !getCoveredBy(domainName).isEmpty();
+	}
+
+	/**
+	 * Find all domain names matching a console filter where '*' stands for any
+	 * characters and '?' for an optional single character.
+	 * 
+	 * @return matching domain names and their values sorted by domain name
+	 */
+	public SortedMap<String, V> find(String filter) {
+
+		SortedMap<String, V> result = new TreeMap<String, V>();
+
+		// descend along the labels of the filter suffix without wildcards
+		List<String> labels = reversedLabels(filter);
+		Node<V> node = root;
+		StringBuilder suffix = new StringBuilder();
+		int depth = 0;
+		for (; depth < labels.size() - 1; depth++) {
+			String label = labels.get(depth);
+			if (label.contains("*") || label.contains("?")) {
+				break;
+			}
+			node = node.children.get(label);
+			if (node == null) {
+				return result;
+			}
+			suffix.insert(0, "." + label);
+		}
+
+		Pattern pattern = toPattern(filter);
+		collect(node, suffix.toString(), pattern, result);
+
+		return result;
+	}
+
+	private void collect(Node<V> node, String suffix, Pattern pattern, SortedMap<String, V> result) {
+		for (Map.Entry<String, Node<V>> child : node.children.entrySet()) {
+			String domainName = child.getKey() + suffix;
+			if (child.getValue().value != null && pattern.matcher(domainName).matches()) {
+				result.put(domainName, child.getValue().value);
+			}
+			collect(child.getValue(), "." + domainName, pattern, result);
+		}
+	}
+
+	/**
+	 * @return unmodifiable map of all stored domain names
+	 */
+	public Map<String, V> asMap() {
+		return Collections.unmodifiableMap(entries);
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	private Node<V> findNode(List<String> labels, int skipLastLabels) {
+		Node<V> node = root;
+		for (int i = 0; i < labels.size() - skipLastLabels; i++) {
+			node = node.children.get(labels.get(i));
+			if (node == null) {
+				return null;
+			}
+		}
+		return node;
+	}
+
+	private static List<String> reversedLabels(String domainName) {
+		List<String> labels = new ArrayList<String>();
+		int end = domainName.length();
+		for (int pos = domainName.lastIndexOf('.'); pos >= 0; pos = domainName.lastIndexOf('.', end - 1)) {
+			labels.add(domainName.substring(pos + 1, end));
+			end = pos;
+		}
+		labels.add(domainName.substring(0, end));
+		return labels;
+	}
+
+	private static Pattern toPattern(String filter) {
+		StringBuilder regex = new StringBuilder();
+		for (char c : filter.toCharArray()) {
+			if (c == '*') {
+				regex.append(".*?");
+			} else if (c == '?') {
+				regex.append(".?");
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+}
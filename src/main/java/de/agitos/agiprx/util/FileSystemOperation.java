@@ -18,12 +18,21 @@ package de.agitos.agiprx.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
 
 public class FileSystemOperation {
 
@@ -71,6 +80,58 @@ public class FileSystemOperation {
 		}
 	}
 	
+	/**
+	 * Write the lines to the file only if its content differs. A changed file is
+	 * written to a temporary file that replaces it by an atomic rename, owner and
+	 * group of a replaced file are kept. Differing permissions of an unchanged
+	 * file are set without rewriting it.
+	 * 
+	 * @param permissions of the written file, null keeps the permissions of a
+	 *                    replaced file and uses rw-r--r-- for a new one
+	 * @return true if the file was written
+	 */
+	public static boolean writeIfChanged(Path file, List<String> lines, Charset charset,
+			Set<PosixFilePermission> permissions) throws IOException {
+
+		StringBuilder buf = new StringBuilder();
+		for (String line : lines) {
+			buf.append(line).append(System.lineSeparator());
+		}
+		byte[] content = buf.toString().getBytes(charset);
+
+		PosixFileAttributes existingAttributes = null;
+		if (Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+			if (Arrays.equals(content, Files.readAllBytes(file))) {
+				if (permissions != null && !permissions.equals(Files.getPosixFilePermissions(file))) {
+					Files.setPosixFilePermissions(file, permissions);
+				}
+				return false;
+			}
+			existingAttributes = Files.readAttributes(file, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+		}
+
+		if (permissions == null) {
+			permissions = existingAttributes != null ? existingAttributes.permissions()
+					: PosixFilePermissions.fromString("rw-r--r--");
+		}
+
+		Path tmpFile = Files.createTempFile(file.toAbsolutePath().getParent(), "." + file.getFileName(), ".tmp");
+		try {
+			Files.write(tmpFile, content);
+			Files.setPosixFilePermissions(tmpFile, permissions);
+			if (existingAttributes != null) {
+				PosixFileAttributeView view = Files.getFileAttributeView(tmpFile, PosixFileAttributeView.class);
+				view.setOwner(existingAttributes.owner());
+				view.setGroup(existingAttributes.group());
+			}
+			Files.move(tmpFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tmpFile);
+		}
+
+		return true;
+	}
+
 	// security check before deletion
 	private static void checkPathPraefix(Path pathToBeDeleted, String pathStartsWith) {
 		if (!pathToBeDeleted.toAbsolutePath().toString().startsWith(pathStartsWith)) {
@@ -0,0 +1,61 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.util;
+
+/**
+ * Counters of the files handled by a generation run
+ */
+public class FileWriteStats {
+
+	private int written;
+
+	private int unchanged;
+
+	private int removed;
+
+	/**
+	 * @param written result of FileSystemOperation.writeIfChanged()
+	 */
+	public void count(boolean written) {
+		if (written) {
+			this.written++;
+		} else {
+			this.unchanged++;
+		}
+	}
+
+	public void removed() {
+		removed++;
+	}
+
+	public int getWritten() {
+		return written;
+	}
+
+	public int getUnchanged() {
+		return unchanged;
+	}
+
+	public int getRemoved() {
+		return removed;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d written, %d unchanged, %d removed", written, unchanged, removed);
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * SHA-256 content fingerprints to detect unchanged generated files.
+ */
+public class Fingerprint {
+
+	private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+	public static String sha256(byte[] content) {
+
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// SHA-256 is mandatory for every Java platform
+			throw new IllegalStateException(e);
+		}
+
+		byte[] hash = digest.digest(content);
+
+		char[] result = new char[hash.length * 2];
+		for (int i = 0; i < hash.length; i++) {
+			result[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0f];
+			result[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0f];
+		}
+		return new String(result);
+	}
+
+	public static String sha256(String content) {
+		return sha256(content.getBytes());
+	}
+
+	/**
+	 * @return the fingerprint of the file content or null if the file does not
+	 *         exist
+	 */
+	public static String sha256(Path path) throws IOException {
+		if (!Files.exists(path)) {
+			return null;
+		}
+		return sha256(Files.readAllBytes(path));
+	}
+}
@@ -19,8 +19,17 @@ agiprx.masterinstance=true
 # slave = proxy2.infomaxnet.de
 agiprx.slaveIpList=1.2.3.5
 
-# path to sync script for slave synchronization; first and only argument is the slave server ip
+# path to sync script for slave synchronization; first argument is the slave server ip, the optional second
+# argument 'files' skips the database transfer and the restart on replication, 'data' transfers the database
+# without restart if the replication API user is configured, the slave is reloaded by its REST API then,
+# 'restart' only restarts the slave if that reload failed
 agiprx.slaveSyncCommand=/opt/agiprx/scripts/sync-to-slave.sh
+# take one snapshot (file manifest, database dump) for all slaves, requires the 'prepare' mode of the sync script
+#agiprx.slaveSyncSnapshot=true
+# concurrently synchronized slaves, timeout in seconds and retries of a slave sync
+#agiprx.slaveSyncParallelism=4
+#agiprx.slaveSyncTimeout=900
+#agiprx.slaveSyncRetries=2
 
 # accepted IPs in domain name validation; a list of IPs is space separated, ip4 can be mixed with ip6
 # those IPs directly or indirectly need to refer/forward to the configured master/slave proxies;
@@ -38,9 +47,38 @@ domain.trustedIps=1.2.3.4
 
 ### END: slave instance configuration ###
 
+# REST handlers with blocking work run on a bounded worker pool, requests exceeding the queue get 503
+#agiprx.restWorkerThreads=8
+#agiprx.restWorkerQueue=32
+
+# asynchronous jobs of the REST API (sql/v08.sql): concurrently running jobs, jobs of a project run
+# sequentially; queued jobs before new jobs are rejected with 503; days to keep finished jobs
+#agiprx.jobThreads=2
+#agiprx.jobQueueLimit=100
+#agiprx.jobRetentionDays=30
+
+# replicate database changes by the change log (sql/v07.sql) to the REST API of the slaves instead of
+# dump and restart; the API user of master and slaves, it is part of the replicated database; without
+# replication the API user reloads the slaves after the database transfer instead of restarting them
+#agiprx.replication=false
+#agiprx.replicationApiUser=
+#agiprx.replicationApiPassword=
+# REST API port of the slaves, default is server.port; the requests pass an SSH tunnel to root of the
+# slaves like sync-to-slave.sh, SSH port and private key
+#agiprx.slaveApiPort=8002
+#agiprx.slaveSshPort=2222
+#agiprx.slaveSshKey=/root/.ssh/id_rsa
+#agiprx.replicationBatchSize=1000
+# timeout of replication requests in seconds
+#agiprx.replicationTimeout=120
+#agiprx.changeLogRetentionDays=30
+
 # HAProxy reload command
 haproxy.reloadCommand=/usr/bin/systemctl reload haproxy
 
+# HAProxy runtime API socket (requires socat): if set, map-only changes are applied without a reload
+#haproxy.runtimeApiSocket=/run/haproxy/admin.sock
+
 # HAProxy redirect code http -> https: 301 (default) or 302
 haproxy.httpsRedirectCode=301
 
@@ -50,9 +88,18 @@ proxy.port=2222
 
 # DNS for domainname resolution
 proxy.nameServer=1.2.3.10
+# max. number of outstanding DNS queries of the daily domain IP check
+#domain.dnsInFlightWindow=64
+# max. number of cached DNS answers and TTL in seconds for NXDOMAIN answers without SOA record
+#domain.dnsCacheSize=10000
+#domain.dnsNegativeTtl=60
 
 # Let's Encrypt Issuer Partial Name
 cert.lesslissuerparname=Let's Encrypt
+# persistent index of parsed certificate metadata, defaults to <agiprx root>/etc/cert-index.tsv
+#cert.indexFile=/opt/agiprx/etc/cert-index.tsv
+# watch the HAProxy cert directory and apply changed cert files without a full rescan
+#cert.watchDirectory=true
 # Let's Encrypt cert request, run 'certbot register' to create a new account
 cert.certbotnewcertcommand=/usr/bin/certbot certonly --account 12345 --non-interactive --standalone --force-renewal --agree-tos -m webmaster@example.org --preferred-challenges http --http-01-port 8001 --disable-hook-validation --deploy-hook "/opt/agiprx/scripts/concat-lesslcert-for-haproxy.sh" --post-hook "/opt/agiprx/scripts/haproxy-safe-reload.sh" -d %s
 # Let's Encrypt cert renewal
@@ -71,10 +118,52 @@ db.port=3306
 agiprx.user=agiprx
 agiprx.port=2223
 agiprx.defaultSshKey=/opt/agiprx/etc/prx_rsa
+# fingerprints of passwords applied to SSH proxy accounts, defaults to <agiprx root>/etc/ssh-account-state.tsv
+#agiprx.sshAccountStateFile=/opt/agiprx/etc/ssh-account-state.tsv
 # files will be generated if not available
 agiprx.authorizedAccessKeys=/opt/agiprx/.ssh/authorized_keys
+# console logins are authenticated by the users' keys in the database, the authorized access keys file is
+# only written as export e.g. for sync-to-slave.sh
+#agiprx.exportAuthorizedAccessKeys=true
 agiprx.hostKeys=/opt/agiprx/.ssh/hostkey.ser
 
+# serve the keys of SSH proxy accounts to sshd instead of writing authorized_keys files, configure sshd with
+#   AuthorizedKeysCommand /opt/agiprx/scripts/authorized-keys-lookup.sh %u
+#   AuthorizedKeysCommandUser nobody
+#agiprx.authorizedKeysLookup=false
+# port of the lookup on the loopback interface: sshd trusts the keys of whatever answers on it, so it has to be
+# a privileged port below 1024 (and below net.ipv4.ip_unprivileged_port_start) that no other local user can
+# bind while agiprx is down; set AGIPRX_LOOKUP_PORT for authorized-keys-lookup.sh if it differs
+#agiprx.authorizedKeysLookupPort=224
+#agiprx.authorizedKeysLookupThreads=4
+
+# writing .scpwd to the containers on the master: parallel containers, timeouts in seconds
+#agiprx.containerSshParallelism=8
+#agiprx.containerSshConnectTimeout=10
+#agiprx.containerSshCommandTimeout=30
+# timeout in seconds of the newusers and chpasswd runs creating and updating the proxy accounts
+#agiprx.accountBatchTimeout=300
+
+# multiplex the SSH connections of a proxy account to its container (ControlMaster), logins with agent
+# forwarding connect on their own; see scripts/ssh-mux-benchmark.sh
+#agiprx.sshMultiplexing=false
+# idle time of the master connection, e.g. 60 or 10m
+#agiprx.sshControlPersist=60
+
+# optional SSH jump gateway for proxy accounts (project-container_permission logins), relays shell, exec,
+# sftp and local port forwardings to the containers without system accounts
+#gateway.enabled=false
+#gateway.port=2225
+#gateway.hostKeys=/opt/agiprx/.ssh/gateway-hostkey.ser
+# seconds
+#gateway.connectTimeout=10
+#gateway.upstreamIdleTimeout=300
+# channels per upstream session, must not exceed MaxSessions of the container sshd
+#gateway.maxChannelsPerSession=8
+# targets of local port forwardings as requested by the client, connected from the container; any or a space
+# separated list of host:port, * matches any host or port, e.g. localhost:3306 [::1]:*
+#gateway.permitOpen=any
+
 # AgiPrx REST-API
 server.port=8002
 server.jetty.max-http-post-size=5000000B
@@ -0,0 +1,336 @@
+-- ordered row change log for the replication to slave instances, written by triggers within the
+-- transaction of each DAO modification; slaves set @agiprx_replication while applying master changes
+-- sequences are allocated from a locked counter row: a transaction holds the lock until its commit, so
+-- sequences are committed in order and a rollback releases its sequences, the change log has no gaps
+
+CREATE TABLE `change_log` (
+  `seq` BIGINT(20) NOT NULL,
+  `table_name` varchar(30) NOT NULL,
+  `row_id` INT(11) NOT NULL,
+  `operation` varchar(6) NOT NULL COMMENT 'INSERT, UPDATE or DELETE',
+  `created` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+ALTER TABLE `change_log`
+  ADD PRIMARY KEY (`seq`),
+  ADD KEY `created` (`created`);
+
+CREATE TABLE `change_log_sequence` (
+  `id` TINYINT(4) NOT NULL,
+  `seq` BIGINT(20) NOT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+ALTER TABLE `change_log_sequence`
+  ADD PRIMARY KEY (`id`);
+
+INSERT INTO `change_log_sequence` (`id`, `seq`) VALUES (1, 0);
+
+DELIMITER $$
+DROP PROCEDURE IF EXISTS `change_log_append`$$
+CREATE DEFINER=root@localhost PROCEDURE `change_log_append`(IN `p_table_name` varchar(30), IN `p_row_id` INT(11),
+	IN `p_operation` varchar(6))
+BEGIN
+	DECLARE `next_seq` BIGINT(20);
+	UPDATE `change_log_sequence` SET `seq` = `seq` + 1 WHERE `id` = 1;
+	SELECT `seq` INTO `next_seq` FROM `change_log_sequence` WHERE `id` = 1;
+	INSERT INTO `change_log` (`seq`, `table_name`, `row_id`, `operation`)
+		VALUES (`next_seq`, `p_table_name`, `p_row_id`, `p_operation`);
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `host_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `host_changelog_insert` AFTER INSERT ON `host`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('host', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `host_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `host_changelog_update` AFTER UPDATE ON `host`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('host', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `host_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `host_changelog_delete` AFTER DELETE ON `host`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('host', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `user_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `user_changelog_insert` AFTER INSERT ON `user`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('user', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `user_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `user_changelog_update` AFTER UPDATE ON `user`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('user', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `user_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `user_changelog_delete` AFTER DELETE ON `user`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('user', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `project_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `project_changelog_insert` AFTER INSERT ON `project`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('project', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `project_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `project_changelog_update` AFTER UPDATE ON `project`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('project', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `project_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `project_changelog_delete` AFTER DELETE ON `project`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('project', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `container_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `container_changelog_insert` AFTER INSERT ON `container`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('container', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `container_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `container_changelog_update` AFTER UPDATE ON `container`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('container', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `container_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `container_changelog_delete` AFTER DELETE ON `container`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('container', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `container_permission_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `container_permission_changelog_insert` AFTER INSERT ON `container_permission`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('container_permission', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `container_permission_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `container_permission_changelog_update` AFTER UPDATE ON `container_permission`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('container_permission', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `container_permission_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `container_permission_changelog_delete` AFTER DELETE ON `container_permission`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('container_permission', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `backend_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `backend_changelog_insert` AFTER INSERT ON `backend`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('backend', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `backend_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `backend_changelog_update` AFTER UPDATE ON `backend`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('backend', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `backend_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `backend_changelog_delete` AFTER DELETE ON `backend`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('backend', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `backend_container_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `backend_container_changelog_insert` AFTER INSERT ON `backend_container`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('backend_container', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `backend_container_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `backend_container_changelog_update` AFTER UPDATE ON `backend_container`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('backend_container', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `backend_container_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `backend_container_changelog_delete` AFTER DELETE ON `backend_container`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('backend_container', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `domain_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `domain_changelog_insert` AFTER INSERT ON `domain`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('domain', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `domain_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `domain_changelog_update` AFTER UPDATE ON `domain`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('domain', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `domain_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `domain_changelog_delete` AFTER DELETE ON `domain`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('domain', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `api_user_changelog_insert`$$
+CREATE DEFINER=root@localhost TRIGGER `api_user_changelog_insert` AFTER INSERT ON `api_user`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('api_user', NEW.id, 'INSERT');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `api_user_changelog_update`$$
+CREATE DEFINER=root@localhost TRIGGER `api_user_changelog_update` AFTER UPDATE ON `api_user`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('api_user', NEW.id, 'UPDATE');
+	END IF;
+END;$$
+DELIMITER ;
+
+DELIMITER $$
+DROP TRIGGER IF EXISTS `api_user_changelog_delete`$$
+CREATE DEFINER=root@localhost TRIGGER `api_user_changelog_delete` AFTER DELETE ON `api_user`
+FOR EACH ROW
+BEGIN
+	IF @agiprx_replication IS NULL THEN
+		CALL `change_log_append`('api_user', OLD.id, 'DELETE');
+	END IF;
+END;$$
+DELIMITER ;
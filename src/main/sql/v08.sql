@@ -0,0 +1,26 @@
+-- status and progress of asynchronous jobs, e.g. domain mass updates started by the REST API
+
+CREATE TABLE `job` (
+  `id` BIGINT(20) NOT NULL,
+  `type` varchar(30) NOT NULL,
+  `project_labels` varchar(1000) NOT NULL COMMENT 'comma separated, jobs of a project run sequentially',
+  `username` varchar(50) NOT NULL COMMENT 'api user that started the job',
+  `status` varchar(10) NOT NULL COMMENT 'QUEUED, RUNNING, FINISHED or FAILED',
+  `total` INT(11) NOT NULL DEFAULT 0,
+  `done` INT(11) NOT NULL DEFAULT 0,
+  `current_item` varchar(255) DEFAULT NULL,
+  `warnings` MEDIUMTEXT DEFAULT NULL COMMENT 'newline separated',
+  `output` MEDIUMTEXT DEFAULT NULL,
+  `error` TEXT DEFAULT NULL,
+  `created` DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP,
+  `started` DATETIME DEFAULT NULL,
+  `finished` DATETIME DEFAULT NULL
+) ENGINE=InnoDB DEFAULT CHARSET=utf8;
+
+ALTER TABLE `job`
+  ADD PRIMARY KEY (`id`),
+  ADD KEY `status` (`status`),
+  ADD KEY `finished` (`finished`);
+
+ALTER TABLE `job`
+  MODIFY `id` BIGINT(20) NOT NULL AUTO_INCREMENT;
@@ -0,0 +1,194 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+import de.agitos.agiprx.bean.processor.HAProxyProcessor.CertInfo;
+
+public class CertIndexTest {
+
+	private static final long DAY = 24L * 60 * 60 * 1000;
+
+	private static final Set<String> NO_LESSL_DOMAINS = Collections.emptySet();
+
+	private static CertInfo cert(String filename, int validDays, boolean lesslCert, String... domainNames) {
+		long now = System.currentTimeMillis();
+		return new CertInfo(filename, 0, 0, null, new Date(now - DAY), new Date(now + validDays * DAY),
+				lesslCert ? "Let's Encrypt" : "Other CA", lesslCert, Arrays.asList(domainNames));
+	}
+
+	@Test
+	public void precedenceTest() {
+
+		CertIndex certIndex = new CertIndex();
+
+		CertInfo older = cert("older.pem", 10, false, "www.example.org", "example.org");
+		CertInfo newer = cert("newer.pem", 20, false, "www.example.org");
+
+		certIndex.put(older, NO_LESSL_DOMAINS);
+		certIndex.put(newer, NO_LESSL_DOMAINS);
+
+		// nothing is visible before publish
+		assertTrue(certIndex.getDomainToCertMap().isEmpty());
+
+		certIndex.publish();
+		Map<String, CertInfo> domainToCert = certIndex.getDomainToCertMap();
+		assertSame(newer, domainToCert.get("www.example.org"));
+		assertSame(older, domainToCert.get("example.org"));
+		assertTrue(certIndex.getReplacedCertFilenames().isEmpty());
+
+		// removing the selected cert falls back to the remaining candidate
+		certIndex.remove("newer.pem", NO_LESSL_DOMAINS);
+		certIndex.publish();
+		assertSame(older, certIndex.getDomainToCertMap().get("www.example.org"));
+
+		// published snapshots are not affected by later changes
+		certIndex.remove("older.pem", NO_LESSL_DOMAINS);
+		certIndex.publish();
+		assertSame(newer, domainToCert.get("www.example.org"));
+		assertTrue(certIndex.getDomainToCertMap().isEmpty());
+	}
+
+	@Test
+	public void lesslPrecedenceAndReplacedTest() {
+
+		CertIndex certIndex = new CertIndex();
+		Set<String> lesslDomains = Collections.singleton("shop.example.org");
+
+		CertInfo other = cert("other.pem", 300, false, "shop.example.org");
+		CertInfo lessl = cert("shop.example.org.pem", 60, true, "shop.example.org");
+
+		certIndex.put(other, lesslDomains);
+		certIndex.put(lessl, lesslDomains);
+		certIndex.publish();
+
+		assertSame(lessl, certIndex.getDomainToCertMap().get("shop.example.org"));
+		assertEquals(Collections.singletonList("other.pem"), certIndex.getReplacedCertFilenames());
+		assertNull(certIndex.getByFilename("missing.pem"));
+	}
+
+	/**
+	 * Writers put and remove certificates that always cover a pair of domain
+	 * names while readers check that both names of a pair resolve to the same
+	 * certificate in every snapshot. A torn or partially applied update would
+	 * break this invariant.
+	 */
+	@Test
+	public void concurrentStressTest() throws InterruptedException {
+
+		final int pairs = 50;
+		final int writers = 4;
+		final int readers = 4;
+		final int iterations = 2000;
+
+		CertIndex certIndex = new CertIndex();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		ConcurrentLinkedQueue<String> failures = new ConcurrentLinkedQueue<String>();
+		CountDownLatch start = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(writers + readers);
+
+		List<Runnable> writerTasks = new ArrayList<Runnable>();
+		for (int w = 0; w < writers; w++) {
+			final int writer = w;
+			writerTasks.add(() -> {
+				Random random = new Random(writer);
+				for (int i = 0; i < iterations; i++) {
+					int pair = random.nextInt(pairs);
+					String filename = "w" + writer + "-p" + pair + ".pem";
+					if (random.nextInt(3) == 0) {
+						certIndex.remove(filename, NO_LESSL_DOMAINS);
+					} else {
+						certIndex.put(cert(filename, 1 + random.nextInt(365), false, "a" + pair + ".example.org",
+								"b" + pair + ".example.org"), NO_LESSL_DOMAINS);
+					}
+					certIndex.publish();
+				}
+			});
+		}
+
+		CountDownLatch writersDone = new CountDownLatch(writers);
+		for (Runnable writerTask : writerTasks) {
+			executor.execute(() -> {
+				try {
+					start.await();
+					writerTask.run();
+				} catch (Throwable t) {
+					failures.add("writer failed: " + t);
+				} finally {
+					writersDone.countDown();
+				}
+			});
+		}
+
+		for (int r = 0; r < readers; r++) {
+			executor.execute(() -> {
+				try {
+					start.await();
+					while (writing.get()) {
+						Map<String, CertInfo> domainToCert = certIndex.getDomainToCertMap();
+						for (int pair = 0; pair < pairs; pair++) {
+							CertInfo a = domainToCert.get("a" + pair + ".example.org");
+							CertInfo b = domainToCert.get("b" + pair + ".example.org");
+							if (a != b) {
+								failures.add("torn snapshot for pair " + pair + ": " + a + " / " + b);
+								return;
+							}
+						}
+					}
+				} catch (Throwable t) {
+					failures.add("reader failed: " + t);
+				}
+			});
+		}
+
+		start.countDown();
+		assertTrue(writersDone.await(60, TimeUnit.SECONDS));
+		writing.set(false);
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertTrue(failures.toString(), failures.isEmpty());
+
+		// every selected cert is still part of the index and covers its domain name
+		for (Map.Entry<String, CertInfo> entry : certIndex.getDomainToCertMap().entrySet()) {
+			assertTrue(entry.getValue().getCoveredDomainnames().contains(entry.getKey()));
+			assertSame(entry.getValue(), certIndex.getByFilename(entry.getValue().getFilename()));
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.sshd.common.config.keys.KeyUtils;
+import org.apache.sshd.common.keyprovider.KeyIdentityProvider;
+import org.apache.sshd.common.session.Session;
+import org.apache.sshd.common.session.SessionListener;
+import org.apache.sshd.server.Environment;
+import org.apache.sshd.server.ExitCallback;
+import org.apache.sshd.server.SshServer;
+import org.apache.sshd.server.channel.ChannelSession;
+import org.apache.sshd.server.command.Command;
+import org.apache.sshd.server.keyprovider.SimpleGeneratorHostKeyProvider;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Runs the commands against an embedded SSHD as container stand-in
+ */
+public class ContainerCommandRunnerTest {
+
+	private static final String HOST = "127.0.0.1";
+
+	private KeyPair keyPair;
+
+	private SshServer sshd;
+
+	private final Queue<String> executedCommands = new ConcurrentLinkedQueue<String>();
+
+	private final AtomicInteger sessionCount = new AtomicInteger();
+
+	@Before
+	public void setup() throws Exception {
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		keyPair = generator.generateKeyPair();
+
+		sshd = SshServer.setUpDefaultServer();
+		sshd.setHost(HOST);
+		sshd.setPort(0);
+		sshd.setKeyPairProvider(new SimpleGeneratorHostKeyProvider());
+		sshd.setPublickeyAuthenticator((username, key, session) -> !"denied".equals(username)
+				&& KeyUtils.compareKeys(keyPair.getPublic(), key));
+		sshd.setCommandFactory((channel, command) -> new TestCommand(command));
+		sshd.addSessionListener(new SessionListener() {
+			@Override
+			public void sessionCreated(Session session) {
+				sessionCount.incrementAndGet();
+			}
+		});
+		sshd.start();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		sshd.stop(true);
+	}
+
+	private ContainerCommandRunner createRunner(long commandTimeoutMillis) {
+		return new ContainerCommandRunner(KeyIdentityProvider.wrapKeyPairs(keyPair), 4, 5000, commandTimeoutMillis);
+	}
+
+	private Map<String, ContainerCommandRunner.Result> byLabel(List<ContainerCommandRunner.Result> results) {
+		Map<String, ContainerCommandRunner.Result> map = new HashMap<String, ContainerCommandRunner.Result>();
+		for (ContainerCommandRunner.Result result : results) {
+			map.put(result.getLabel(), result);
+		}
+		return map;
+	}
+
+	@Test
+	public void sessionPerAccountTest() throws Exception {
+
+		ContainerCommandRunner runner = createRunner(5000);
+		runner.add("p-c_www-data", "www-data", HOST, sshd.getPort(), "echo 1");
+		runner.add("p-c_root", "root", HOST, sshd.getPort(), "echo 2");
+		runner.add("p-c_www-data2", "www-data", HOST, sshd.getPort(), "echo 3");
+
+		ContainerCommandRunner.Report report = runner.run();
+
+		assertEquals(3, report.getSucceededCount());
+		assertTrue(report.getFailed().isEmpty());
+		assertEquals(0, report.getUnreachableHostCount());
+		assertEquals(3, executedCommands.size());
+		assertTrue(executedCommands.contains("www-data:echo 1"));
+		assertTrue(executedCommands.contains("root:echo 2"));
+
+		// the sessions of the accounts are reused
+		assertEquals(2, sessionCount.get());
+	}
+
+	@Test
+	public void failureTest() throws Exception {
+
+		int closedPort;
+		try (ServerSocket serverSocket = new ServerSocket(0)) {
+			closedPort = serverSocket.getLocalPort();
+		}
+
+		ContainerCommandRunner runner = createRunner(1000);
+		runner.add("exit", "www-data", HOST, sshd.getPort(), "fail");
+		runner.add("timeout", "www-data", HOST, sshd.getPort(), "sleep");
+		runner.add("denied", "denied", HOST, sshd.getPort(), "echo denied");
+		runner.add("afterTimeout", "www-data", HOST, sshd.getPort(), "echo ok");
+		runner.add("unreachable1", "root", HOST, closedPort, "echo 1");
+		runner.add("unreachable2", "www-data", HOST, closedPort, "echo 2");
+
+		ContainerCommandRunner.Report report = runner.run();
+		Map<String, ContainerCommandRunner.Result> results = byLabel(report.getResults());
+
+		assertEquals(6, report.getResults().size());
+		assertEquals(1, report.getSucceededCount());
+		assertEquals(1, report.getUnreachableHostCount());
+
+		assertFalse(results.get("exit").isSuccess());
+		assertTrue(results.get("exit").getMessage().contains("Exit code 1: failed"));
+		assertFalse(results.get("timeout").isSuccess());
+		assertTrue(results.get("timeout").getMessage().startsWith("Timed out"));
+		assertFalse(results.get("denied").isSuccess());
+		assertTrue(results.get("afterTimeout").isSuccess());
+		assertFalse(results.get("unreachable1").isSuccess());
+		assertFalse(results.get("unreachable2").isSuccess());
+
+		assertFalse(executedCommands.contains("denied:echo denied"));
+	}
+
+	private class TestCommand implements Command {
+
+		private final String command;
+
+		private OutputStream err;
+
+		private ExitCallback callback;
+
+		TestCommand(String command) {
+			this.command = command;
+		}
+
+		@Override
+		public void setInputStream(InputStream in) {
+		}
+
+		@Override
+		public void setOutputStream(OutputStream out) {
+		}
+
+		@Override
+		public void setErrorStream(OutputStream err) {
+			this.err = err;
+		}
+
+		@Override
+		public void setExitCallback(ExitCallback callback) {
+			this.callback = callback;
+		}
+
+		@Override
+		public void start(ChannelSession channel, Environment env) throws IOException {
+
+			executedCommands.add(channel.getSession().getUsername() + ":" + command);
+
+			if ("sleep".equals(command)) {
+				// never exits
+				return;
+			}
+
+			if ("fail".equals(command)) {
+				err.write("failed\n".getBytes(StandardCharsets.UTF_8));
+				err.flush();
+				callback.onExit(1);
+				return;
+			}
+
+			callback.onExit(0);
+		}
+
+		@Override
+		public void destroy(ChannelSession channel) {
+		}
+	}
+}
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.agitos.agiprx.model.Job;
+
+public class JobProcessorTest {
+
+	private JobProgress createJob(long id, String... projectLabels) {
+		Job job = new Job();
+		job.setId(id);
+		job.setProjectLabels(Arrays.asList(projectLabels));
+		return new JobProgress(job, progress -> {
+		}, null);
+	}
+
+	@Test
+	public void selectJobsTest() {
+
+		JobProgress jobA1 = createJob(1, "a");
+		JobProgress jobB = createJob(2, "b");
+		JobProgress jobA2 = createJob(3, "a");
+		JobProgress jobC = createJob(4, "c");
+		List<JobProgress> queuedJobs = Arrays.asList(jobA1, jobB, jobA2, jobC);
+
+		// one job per project, bounded by the free slots
+		assertEquals(Arrays.asList(jobA1, jobB, jobC),
+				JobProcessor.selectJobs(queuedJobs, Collections.emptySet(), 3));
+		assertEquals(Arrays.asList(jobA1, jobB), JobProcessor.selectJobs(queuedJobs, Collections.emptySet(), 2));
+		assertTrue(JobProcessor.selectJobs(queuedJobs, Collections.emptySet(), 0).isEmpty());
+
+		// jobs of busy projects wait
+		assertEquals(Arrays.asList(jobB, jobC),
+				JobProcessor.selectJobs(queuedJobs, new HashSet<>(Arrays.asList("a")), 3));
+	}
+
+	@Test
+	public void selectMultiProjectJobsTest() {
+
+		JobProgress jobAB = createJob(1, "a", "b");
+		JobProgress jobB = createJob(2, "b");
+		JobProgress jobC = createJob(3, "c");
+		JobProgress jobBC = createJob(4, "b", "c");
+
+		// a job waits for every earlier job that shares a project
+		assertEquals(Arrays.asList(jobAB, jobC),
+				JobProcessor.selectJobs(Arrays.asList(jobAB, jobB, jobC, jobBC), Collections.emptySet(), 4));
+		assertEquals(Arrays.asList(jobB),
+				JobProcessor.selectJobs(Arrays.asList(jobB, jobBC, jobC), new HashSet<>(Arrays.asList("a", "c")), 4));
+	}
+}
@@ -0,0 +1,99 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.bean.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import de.agitos.agiprx.bean.processor.ReplicationProcessor.RegenerationScope;
+import de.agitos.agiprx.dao.ChangeLogDao;
+import de.agitos.agiprx.dto.ChangeLogEntryDto;
+
+public class ReplicationProcessorTest {
+
+	private ChangeLogEntryDto createEntry(long sequence, String tableName) {
+		return new ChangeLogEntryDto(sequence, tableName, 1, "UPDATE");
+	}
+
+	@Test
+	public void regenerationScopeTest() {
+
+		RegenerationScope domainScope = RegenerationScope
+				.of(Arrays.asList(createEntry(1, "domain"), createEntry(2, "backend")));
+		assertTrue(domainScope.isHaProxy());
+		assertFalse(domainScope.isSshProxy());
+
+		RegenerationScope userScope = RegenerationScope
+				.of(Arrays.asList(createEntry(3, "user"), createEntry(4, "container_permission")));
+		assertFalse(userScope.isHaProxy());
+		assertTrue(userScope.isSshProxy());
+
+		RegenerationScope containerScope = RegenerationScope.of(Arrays.asList(createEntry(5, "container")));
+		assertTrue(containerScope.isHaProxy());
+		assertTrue(containerScope.isSshProxy());
+
+		// API users are read on each request
+		RegenerationScope apiUserScope = RegenerationScope.of(Arrays.asList(createEntry(6, "api_user")));
+		assertFalse(apiUserScope.isHaProxy());
+		assertFalse(apiUserScope.isSshProxy());
+
+		RegenerationScope emptyScope = RegenerationScope.of(Collections.emptyList());
+		assertFalse(emptyScope.isHaProxy());
+		assertFalse(emptyScope.isSshProxy());
+	}
+
+	@Test
+	public void changedTablesTest() {
+
+		Map<String, Long> previous = new HashMap<String, Long>();
+		previous.put("domain", 1L);
+		previous.put("user", 2L);
+
+		// first reload regenerates all
+		assertEquals(previous.keySet(), ReplicationProcessor.getChangedTables(null, previous));
+
+		Map<String, Long> current = new HashMap<String, Long>(previous);
+		assertTrue(ReplicationProcessor.getChangedTables(previous, current).isEmpty());
+
+		current.put("domain", 3L);
+		current.put("api_user", 4L);
+		Set<String> changedTables = ReplicationProcessor.getChangedTables(previous, current);
+		assertEquals(new TreeSet<String>(Arrays.asList("api_user", "domain")), changedTables);
+
+		RegenerationScope scope = RegenerationScope.ofTables(changedTables);
+		assertTrue(scope.isHaProxy());
+		assertFalse(scope.isSshProxy());
+	}
+
+	@Test
+	public void replicatedTablesTest() {
+
+		// every table of a regeneration scope needs to be replicated
+		assertTrue(ChangeLogDao.REPLICATED_TABLES.containsAll(ReplicationProcessor.HAPROXY_TABLES));
+		assertTrue(ChangeLogDao.REPLICATED_TABLES.containsAll(ReplicationProcessor.SSH_PROXY_TABLES));
+	}
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.naming.NameNotFoundException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.agitos.agiprx.dns.AsyncDnsResolver.Answer;
+import de.agitos.agiprx.dns.AsyncDnsResolver.Query;
+
+public class AsyncDnsResolverTest {
+
+	private static final Logger LOG = Logger.getLogger(AsyncDnsResolverTest.class.getName());
+
+	private StubDnsServer stubDnsServer;
+
+	@Before
+	public void setup() throws Exception {
+		stubDnsServer = new StubDnsServer(0, 20);
+	}
+
+	@After
+	public void tearDown() {
+		stubDnsServer.close();
+	}
+
+	@Test
+	public void resolveTest() throws Exception {
+
+		AsyncDnsResolver resolver = new AsyncDnsResolver(stubDnsServer.getAddress(), 200, 3, 8);
+
+		Query a = new Query("www.example.org", ResourceRecord.TYPE_A);
+		Query aaaa = new Query("www.example.org", ResourceRecord.TYPE_AAAA);
+		Query nx = new Query("nx.example.org", ResourceRecord.TYPE_A);
+		Query lossy = new Query("lossy.example.org", ResourceRecord.TYPE_A);
+		Query mx = new Query("www.example.org", ResourceRecord.TYPE_MX);
+
+		List<Query> queries = new ArrayList<Query>();
+		queries.add(a);
+		queries.add(aaaa);
+		queries.add(nx);
+		queries.add(lossy);
+		queries.add(mx);
+
+		Map<Query, Answer> answers = resolver.resolve(queries);
+
+		assertEquals(5, answers.size());
+		assertEquals("127.0.0.1", answers.get(a).getAddress());
+		assertEquals("::1", answers.get(aaaa).getAddress());
+		assertTrue(answers.get(nx).getError() instanceof NameNotFoundException);
+		// answered by the retry
+		assertEquals("127.0.0.1", answers.get(lossy).getAddress());
+		assertNull(answers.get(mx).getAddress());
+	}
+
+	@Test
+	public void throughputTest() throws Exception {
+
+		int domainCount = 2000;
+
+		AsyncDnsResolver resolver = new AsyncDnsResolver(stubDnsServer.getAddress(), 2000, 3, 128);
+
+		List<Query> queries = new ArrayList<Query>();
+		for (int i = 0; i < domainCount; i++) {
+			queries.add(new Query("www" + i + ".example.org", ResourceRecord.TYPE_A));
+			queries.add(new Query("www" + i + ".example.org", ResourceRecord.TYPE_AAAA));
+		}
+
+		long start = System.nanoTime();
+		Map<Query, Answer> answers = resolver.resolve(queries);
+		long millis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+		for (Query query : queries) {
+			assertNull(query.toString(), answers.get(query).getError());
+		}
+
+		LOG.info(String.format("Resolved %d queries in %d ms (%d queries/s)", queries.size(), millis,
+				queries.size() * 1000L / millis));
+	}
+}
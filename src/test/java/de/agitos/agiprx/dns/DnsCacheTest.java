@@ -0,0 +1,102 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dns;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.agitos.agiprx.dns.AsyncDnsResolver.Answer;
+import de.agitos.agiprx.dns.AsyncDnsResolver.Query;
+
+public class DnsCacheTest {
+
+	private StubDnsServer stubDnsServer;
+
+	private Map<Query, Answer> answers;
+
+	private Query a1 = new Query("www1.example.org", ResourceRecord.TYPE_A);
+	private Query a2 = new Query("www2.example.org", ResourceRecord.TYPE_A);
+	private Query nx = new Query("nx.example.org", ResourceRecord.TYPE_A);
+
+	@Before
+	public void setup() throws Exception {
+		stubDnsServer = new StubDnsServer(0, 0);
+
+		List<Query> queries = new ArrayList<Query>();
+		queries.add(a1);
+		queries.add(a2);
+		queries.add(nx);
+		answers = new AsyncDnsResolver(stubDnsServer.getAddress(), 200, 3, 8).resolve(queries);
+	}
+
+	@After
+	public void tearDown() {
+		stubDnsServer.close();
+	}
+
+	@Test
+	public void hitAndMissTest() throws Exception {
+
+		DnsCache dnsCache = new DnsCache(10, 60);
+
+		assertNull(dnsCache.get(a1));
+		dnsCache.put(answers.get(a1));
+		dnsCache.put(answers.get(nx));
+
+		assertEquals("127.0.0.1", dnsCache.get(a1).getAddress());
+		// negative caching of NXDOMAIN
+		assertNotNull(dnsCache.get(nx).getError());
+
+		assertEquals(2, dnsCache.getHits());
+		assertEquals(1, dnsCache.getMisses());
+	}
+
+	@Test
+	public void lruEvictionTest() {
+
+		DnsCache dnsCache = new DnsCache(2, 60);
+
+		dnsCache.put(answers.get(a1));
+		dnsCache.put(answers.get(nx));
+		// access a1 so nx becomes the eldest entry
+		assertNotNull(dnsCache.get(a1));
+		dnsCache.put(answers.get(a2));
+
+		assertEquals(2, dnsCache.size());
+		assertNotNull(dnsCache.get(a1));
+		assertNotNull(dnsCache.get(a2));
+		assertNull(dnsCache.get(nx));
+	}
+
+	@Test
+	public void noNegativeCachingWithoutTtlTest() {
+
+		DnsCache dnsCache = new DnsCache(10, 0);
+
+		dnsCache.put(answers.get(nx));
+		assertNull(dnsCache.get(nx));
+	}
+}
@@ -0,0 +1,191 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.dns;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal UDP DNS server on localhost to test and benchmark resolvers offline.
+ * 
+ * Every name resolves to 127.0.0.1 (A) and ::1 (AAAA) with a TTL of 300s, except
+ * names starting with "nx" which return NXDOMAIN and names starting with
+ * "lossy" whose first query is dropped. Responses are sent after a random delay
+ * of up to maxDelayMillis, so they arrive out of order.
+ * 
+ * Run standalone with: StubDnsServer &lt;port&gt; [maxDelayMillis]
+ */
+public class StubDnsServer implements Closeable {
+
+	private static final int TTL = 300;
+
+	private final DatagramSocket socket;
+
+	private final int maxDelayMillis;
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+	private final Set<String> seenLossyNames = Collections.synchronizedSet(new HashSet<String>());
+
+	private final AtomicInteger queryCount = new AtomicInteger();
+
+	private final Random random = new Random();
+
+	public StubDnsServer(int port, int maxDelayMillis) throws SocketException {
+		this.socket = new DatagramSocket(port, InetAddress.getLoopbackAddress());
+		this.maxDelayMillis = maxDelayMillis;
+
+		Thread thread = new Thread(this::serve, "StubDnsServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	public String getAddress() {
+		return "127.0.0.1:" + socket.getLocalPort();
+	}
+
+	public int getQueryCount() {
+		return queryCount.get();
+	}
+
+	private void serve() {
+		byte[] buf = new byte[512];
+		while (!socket.isClosed()) {
+			try {
+				DatagramPacket request = new DatagramPacket(buf, buf.length);
+				socket.receive(request);
+				queryCount.incrementAndGet();
+
+				byte[] response = createResponse(buf, request.getLength());
+				if (response == null) {
+					continue;
+				}
+
+				DatagramPacket reply = new DatagramPacket(response, response.length, request.getSocketAddress());
+				if (maxDelayMillis > 0) {
+					scheduler.schedule(() -> send(reply), random.nextInt(maxDelayMillis), TimeUnit.MILLISECONDS);
+				} else {
+					send(reply);
+				}
+			} catch (IOException e) {
+				// socket closed
+			}
+		}
+	}
+
+	private void send(DatagramPacket reply) {
+		try {
+			socket.send(reply);
+		} catch (IOException e) {
+			// socket closed
+		}
+	}
+
+	private byte[] createResponse(byte[] req, int length) {
+
+		// parse the question section
+		int pos = 12;
+		StringBuilder name = new StringBuilder();
+		while (req[pos] != 0) {
+			int len = req[pos++];
+			if (name.length() > 0) {
+				name.append('.');
+			}
+			name.append(new String(req, pos, len));
+			pos += len;
+		}
+		pos++;
+		int qtype = ((req[pos] & 0xff) << 8) | (req[pos + 1] & 0xff);
+		int questionEnd = pos + 4;
+
+		String domainName = name.toString();
+		if (domainName.startsWith("lossy") && seenLossyNames.add(domainName)) {
+			return null;
+		}
+
+		boolean nxDomain = domainName.startsWith("nx");
+		boolean answer = !nxDomain && (qtype == ResourceRecord.TYPE_A || qtype == ResourceRecord.TYPE_AAAA);
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		// header: xid, QR + RD + RA, rcode, 1 question, 0/1 answer
+		out.write(req[0]);
+		out.write(req[1]);
+		out.write(0x81);
+		out.write(nxDomain ? 0x83 : 0x80);
+		writeShort(out, 1);
+		writeShort(out, answer ? 1 : 0);
+		writeShort(out, 0);
+		writeShort(out, 0);
+
+		// question as received
+		out.write(req, 12, questionEnd - 12);
+
+		if (answer) {
+			// name pointer to the question
+			writeShort(out, 0xc00c);
+			writeShort(out, qtype);
+			writeShort(out, ResourceRecord.CLASS_INTERNET);
+			writeShort(out, TTL >> 16);
+			writeShort(out, TTL & 0xffff);
+			if (qtype == ResourceRecord.TYPE_A) {
+				writeShort(out, 4);
+				out.write(InetAddress.getLoopbackAddress().getAddress(), 0, 4);
+			} else {
+				writeShort(out, 16);
+				byte[] ipv6Loopback = new byte[16];
+				ipv6Loopback[15] = 1;
+				out.write(ipv6Loopback, 0, 16);
+			}
+		}
+
+		return out.toByteArray();
+	}
+
+	private static void writeShort(ByteArrayOutputStream out, int value) {
+		out.write((value >> 8) & 0xff);
+		out.write(value & 0xff);
+	}
+
+	@Override
+	public void close() {
+		socket.close();
+		scheduler.shutdownNow();
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = Integer.parseInt(args[0]);
+		int maxDelayMillis = args.length > 1 ? Integer.parseInt(args[1]) : 0;
+		try (StubDnsServer server = new StubDnsServer(port, maxDelayMillis)) {
+			System.out.println("Stub DNS server listening on " + server.getAddress());
+			Thread.sleep(Long.MAX_VALUE);
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.agitos.agiprx.dto.DomainChangeDto;
+import de.agitos.agiprx.dto.DomainOperationDto;
+import de.agitos.agiprx.dto.MassDomainUpdateDto;
+import de.agitos.agiprx.dto.MassDomainUpdatePlanDto;
+import de.agitos.agiprx.dto.OperationType;
+import de.agitos.agiprx.executor.MassDomainUpdatePlan.CertAction;
+import de.agitos.agiprx.executor.MassDomainUpdatePlan.ChangeType;
+import de.agitos.agiprx.executor.MassDomainUpdatePlan.DomainChange;
+import de.agitos.agiprx.model.Backend;
+import de.agitos.agiprx.model.Domain;
+import de.agitos.agiprx.model.Project;
+
+public class MassDomainUpdatePlanTest {
+
+	private Backend web;
+
+	private Backend api;
+
+	private Map<String, Project> projectMap;
+
+	private Map<String, Domain> existingDomains;
+
+	@Before
+	public void setUp() {
+		web = createBackend(1L, "web");
+		api = createBackend(2L, "api");
+
+		Project project = new Project();
+		project.setLabel("p1");
+		project.setBackends(Arrays.asList(web, api));
+		web.setProject(project);
+		api.setProject(project);
+
+		projectMap = new HashMap<>();
+		projectMap.put("p1", project);
+
+		existingDomains = new TreeMap<>();
+		addExistingDomain(10L, "a.example.org", web, true);
+		addExistingDomain(11L, "b.example.org", web, false);
+		addExistingDomain(12L, "c.example.org", api, false);
+	}
+
+	private Backend createBackend(Long id, String label) {
+		Backend backend = new Backend();
+		backend.setId(id);
+		backend.setLabel(label);
+		return backend;
+	}
+
+	private void addExistingDomain(Long id, String domainName, Backend backend, boolean letsEncrypt) {
+		Domain domain = new Domain();
+		domain.setId(id);
+		domain.setVersion(3);
+		domain.setDomain(domainName);
+		domain.setBackend(backend);
+		domain.setCertProvided(false);
+		domain.setLetsEncrypt(letsEncrypt);
+		existingDomains.put(domainName, domain);
+	}
+
+	private DomainOperationDto op(OperationType operation, String domainName, String backendLabel, boolean ssl) {
+		DomainOperationDto domainOp = new DomainOperationDto();
+		domainOp.setOperation(operation);
+		domainOp.setDomainName(domainName);
+		domainOp.setProjectLabel("p1");
+		domainOp.setBackendLabel(backendLabel);
+		domainOp.setEnableSSL(ssl);
+		return domainOp;
+	}
+
+	private MassDomainUpdatePlan plan(boolean fullSync, DomainOperationDto... domainOps) throws Exception {
+		MassDomainUpdateDto massDomainUpdate = new MassDomainUpdateDto();
+		massDomainUpdate.setFullSync(fullSync);
+		massDomainUpdate.setDomainOperations(new ArrayList<>(Arrays.asList(domainOps)));
+		return MassDomainUpdatePlan.create(massDomainUpdate, projectMap, existingDomains, domainName -> null,
+				url -> url.startsWith("https://"));
+	}
+
+	private List<String> names(List<Domain> domains) {
+		List<String> result = new ArrayList<>();
+		for (Domain domain : domains) {
+			result.add(domain.getDomain());
+		}
+		return result;
+	}
+
+	@Test
+	public void partialUpdateTest() throws Exception {
+
+		MassDomainUpdatePlan plan = plan(false, op(OperationType.CREATE, "new.example.org", "web", true),
+				op(OperationType.UPDATE, "a.example.org", "web", true),
+				op(OperationType.UPDATE, "b.example.org", "api", false),
+				op(OperationType.DELETE, "c.example.org", "api", false),
+				op(OperationType.DELETE, "x.example.org", "api", false));
+
+		assertEquals(Arrays.asList("new.example.org"), names(plan.getDomains(ChangeType.CREATE)));
+		assertEquals(Arrays.asList("b.example.org"), names(plan.getDomains(ChangeType.UPDATE)));
+		assertEquals(Arrays.asList("c.example.org"), names(plan.getDomains(ChangeType.DELETE)));
+		assertEquals(Arrays.asList("a.example.org", "x.example.org"), names(plan.getDomains(ChangeType.UNCHANGED)));
+		assertTrue(plan.hasModifications());
+
+		List<DomainChange> changes = plan.getChanges();
+		assertEquals(CertAction.CREATE_LESSL, changes.get(0).getCertAction());
+		assertEquals(CertAction.NONE, changes.get(3).getCertAction());
+
+		// updates keep id and version of the existing domain, which is not modified
+		Domain moved = plan.getDomains(ChangeType.UPDATE).get(0);
+		assertEquals(Long.valueOf(11), moved.getId());
+		assertEquals(Integer.valueOf(3), moved.getVersion());
+		assertEquals(api.getId(), moved.getBackendId());
+		assertEquals(web.getId(), existingDomains.get("b.example.org").getBackendId());
+	}
+
+	@Test
+	public void lesslCertActionTest() throws Exception {
+
+		addExistingDomain(13L, "d.example.org", api, true);
+
+		MassDomainUpdatePlan plan = plan(false, op(OperationType.UPDATE, "a.example.org", "web", false),
+				op(OperationType.UPDATE, "b.example.org", "web", true),
+				op(OperationType.DELETE, "d.example.org", "api", false));
+
+		assertEquals(CertAction.DELETE_LESSL, plan.getChanges().get(0).getCertAction());
+		assertEquals(CertAction.CREATE_LESSL, plan.getChanges().get(1).getCertAction());
+		assertEquals(CertAction.DELETE_LESSL, plan.getChanges().get(2).getCertAction());
+		assertEquals(Arrays.asList("b.example.org"), plan.getDomainNames(CertAction.CREATE_LESSL));
+		assertEquals(Arrays.asList("a.example.org", "d.example.org"), plan.getDomainNames(CertAction.DELETE_LESSL));
+	}
+
+	@Test
+	public void deleteOfOtherBackendTest() throws Exception {
+
+		MassDomainUpdatePlan plan = plan(false, op(OperationType.DELETE, "c.example.org", "web", false));
+
+		assertTrue(plan.getDomains(ChangeType.DELETE).isEmpty());
+		assertFalse(plan.hasModifications());
+	}
+
+	@Test
+	public void fullSyncTest() throws Exception {
+
+		MassDomainUpdatePlan plan = plan(true, op(OperationType.CREATE, "a.example.org", "web", true),
+				op(OperationType.CREATE, "new.example.org", "api", false));
+
+		assertEquals(Arrays.asList("new.example.org"), names(plan.getDomains(ChangeType.CREATE)));
+		assertEquals(Arrays.asList("b.example.org", "c.example.org"), names(plan.getDomains(ChangeType.DELETE)));
+		assertEquals(Collections.emptyList(), plan.getDomains(ChangeType.UPDATE));
+	}
+
+	@Test
+	public void dryRunTest() throws Exception {
+
+		DomainOperationDto redirect = op(OperationType.UPDATE, "a.example.org", "web", true);
+		redirect.setRedirectToUrl("https://b.example.org/*");
+
+		MassDomainUpdatePlanDto dto = plan(true, redirect, op(OperationType.UPDATE, "b.example.org", "api", true),
+				op(OperationType.CREATE, "new.example.org", "api", false)).toDto();
+
+		assertTrue(dto.isFullSync());
+		assertEquals(1, dto.getCreates().size());
+		assertEquals("p1", dto.getCreates().get(0).getProjectLabel());
+		assertEquals("api", dto.getCreates().get(0).getBackendLabel());
+
+		// only changed fields are listed with their previous values
+		assertEquals(2, dto.getUpdates().size());
+		assertEquals(Collections.singletonMap("redirectToUrl", null), dto.getUpdates().get(0).getPreviousValues());
+		Map<String, String> previousValues = new HashMap<>();
+		previousValues.put("backendLabel", "web");
+		previousValues.put("letsEncrypt", "false");
+		assertEquals(previousValues, dto.getUpdates().get(1).getPreviousValues());
+
+		assertEquals(Arrays.asList("c.example.org"), dto.getDeletes().stream().map(DomainChangeDto::getDomainName)
+				.collect(Collectors.toList()));
+		assertEquals(Arrays.asList("b.example.org"), dto.getCertIssuances());
+		assertTrue(dto.getCertDeletions().isEmpty());
+		assertTrue(dto.getUnchanged().isEmpty());
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void invalidRedirectTest() throws Exception {
+
+		DomainOperationDto domainOp = op(OperationType.CREATE, "new.example.org", "web", false);
+		domainOp.setRedirectToUrl("ftp://example.org");
+		plan(false, domainOp);
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void invalidBackendTest() throws Exception {
+
+		plan(false, op(OperationType.CREATE, "new.example.org", "db", false));
+	}
+}
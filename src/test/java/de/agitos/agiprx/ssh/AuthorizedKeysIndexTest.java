@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import de.agitos.agiprx.dao.ConfigSnapshot;
+import de.agitos.agiprx.model.Backend;
+import de.agitos.agiprx.model.Container;
+import de.agitos.agiprx.model.ContainerPermission;
+import de.agitos.agiprx.model.Project;
+import de.agitos.agiprx.model.User;
+
+public class AuthorizedKeysIndexTest {
+
+	private User createUser(String sshPublicKey) {
+		User user = new User();
+		user.setSshPublicKey(sshPublicKey);
+		return user;
+	}
+
+	private ContainerPermission createPermission(User user, String permission) {
+		ContainerPermission containerPermission = new ContainerPermission();
+		containerPermission.setUser(user);
+		containerPermission.setPermission(permission);
+		return containerPermission;
+	}
+
+	@Test
+	public void keyLinesTest() {
+
+		User alice = createUser("ssh-ed25519 AAAAalice alice@example.org");
+		User bob = createUser("ssh-rsa AAAAbob bob@example.org");
+		User withoutKey = createUser(null);
+
+		Container container = new Container();
+		container.setLabel("prod");
+		container.setContainerPermissions(Arrays.asList(createPermission(alice, "www-data"),
+				createPermission(bob, "www-data"), createPermission(withoutKey, "root")));
+
+		Project project = new Project();
+		project.setLabel("shop");
+		project.setContainers(Arrays.asList(container));
+		project.setBackends(new ArrayList<Backend>());
+
+		AuthorizedKeysIndex index = new AuthorizedKeysIndex(
+				new ConfigSnapshot(3, Arrays.asList(project), Collections.emptyList(), Collections.emptyList()));
+
+		assertEquals(3, index.getVersion());
+		assertEquals(Arrays.asList(
+				"environment=\"SSH_LOGIN_USER=shop-prod_www-data\" ssh-ed25519 AAAAalice alice@example.org",
+				"environment=\"SSH_LOGIN_USER=shop-prod_www-data\" ssh-rsa AAAAbob bob@example.org"),
+				index.getKeyLines("shop-prod_www-data"));
+
+		// accounts without keys exist but authorize no key
+		assertTrue(index.containsUsername("shop-prod_root"));
+		assertTrue(index.getKeyLines("shop-prod_root").isEmpty());
+
+		assertFalse(index.containsUsername("shop-dev_root"));
+		assertTrue(index.getKeyLines("shop-dev_root").isEmpty());
+	}
+}
@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Arrays;
+
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
+import org.junit.Test;
+
+import de.agitos.agiprx.model.User;
+import de.agitos.agiprx.model.UserRoleType;
+
+public class ConsoleUserKeyIndexTest {
+
+	private User createUser(long id, UserRoleType role, KeyPair keyPair) {
+		User user = new User();
+		user.setId(id);
+		user.setRole(role);
+		user.setSshPublicKey(PublicKeyEntry.toString(keyPair.getPublic()) + " user" + id + "@example.org");
+		return user;
+	}
+
+	@Test
+	public void lookupTest() throws Exception {
+
+		KeyPairGenerator rsaGenerator = KeyPairGenerator.getInstance("RSA");
+		rsaGenerator.initialize(2048);
+		KeyPairGenerator ecGenerator = KeyPairGenerator.getInstance("EC");
+		ecGenerator.initialize(256);
+
+		KeyPair adminKey = rsaGenerator.generateKeyPair();
+		KeyPair userKey = ecGenerator.generateKeyPair();
+		KeyPair contactKey = rsaGenerator.generateKeyPair();
+		KeyPair unknownKey = rsaGenerator.generateKeyPair();
+
+		User invalidKey = new User();
+		invalidKey.setId(4L);
+		invalidKey.setRole(UserRoleType.ADMIN);
+		invalidKey.setSshPublicKey("ssh-rsa invalid");
+
+		ConsoleUserKeyIndex index = new ConsoleUserKeyIndex(5,
+				Arrays.asList(createUser(1, UserRoleType.ADMIN, adminKey), createUser(2, UserRoleType.USER, userKey),
+						createUser(3, UserRoleType.CONTACT, contactKey), invalidKey));
+
+		assertEquals(5, index.getVersion());
+		assertEquals(2, index.size());
+		assertEquals(Long.valueOf(1), index.getUserId(adminKey.getPublic()));
+		assertEquals(Long.valueOf(2), index.getUserId(userKey.getPublic()));
+
+		// contacts have no console access
+		assertNull(index.getUserId(contactKey.getPublic()));
+		assertNull(index.getUserId(unknownKey.getPublic()));
+	}
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.ssh;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.sshd.common.config.keys.PublicKeyEntry;
+import org.junit.Before;
+import org.junit.Test;
+
+import de.agitos.agiprx.dao.ConfigSnapshot;
+import de.agitos.agiprx.model.Backend;
+import de.agitos.agiprx.model.Container;
+import de.agitos.agiprx.model.ContainerPermission;
+import de.agitos.agiprx.model.Project;
+import de.agitos.agiprx.model.User;
+
+public class SshGatewayAccountsTest {
+
+	private KeyPair aliceKey;
+
+	private KeyPair bobKey;
+
+	private KeyPair malloryKey;
+
+	private SshGatewayAccounts accounts;
+
+	@Before
+	public void setup() throws Exception {
+
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		aliceKey = generator.generateKeyPair();
+		bobKey = generator.generateKeyPair();
+		malloryKey = generator.generateKeyPair();
+
+		User alice = createUser("alice@example.org", PublicKeyEntry.toString(aliceKey.getPublic()) + " alice");
+		User bob = createUser("bob@example.org", PublicKeyEntry.toString(bobKey.getPublic()));
+		User withoutKey = createUser("nokey@example.org", null);
+
+		Container container = new Container();
+		container.setLabel("prod");
+		container.setIpv6("fd00::10");
+		container.setContainerPermissions(Arrays.asList(createPermission(alice, "www-data", "secret"),
+				createPermission(bob, "www-data", "secret"), createPermission(withoutKey, "root", null)));
+
+		Container withoutAddress = new Container();
+		withoutAddress.setLabel("dev");
+		withoutAddress.setContainerPermissions(Arrays.asList(createPermission(alice, "root", null)));
+
+		Project project = new Project();
+		project.setLabel("shop");
+		project.setContainers(Arrays.asList(container, withoutAddress));
+		project.setBackends(new ArrayList<Backend>());
+
+		accounts = new SshGatewayAccounts(
+				new ConfigSnapshot(7, Arrays.asList(project), Collections.emptyList(), Collections.emptyList()));
+	}
+
+	private User createUser(String email, String sshPublicKey) {
+		User user = new User();
+		user.setEmail(email);
+		user.setSshPublicKey(sshPublicKey);
+		return user;
+	}
+
+	private ContainerPermission createPermission(User user, String permission, String password) {
+		ContainerPermission containerPermission = new ContainerPermission();
+		containerPermission.setUser(user);
+		containerPermission.setPermission(permission);
+		containerPermission.setPassword(password);
+		return containerPermission;
+	}
+
+	@Test
+	public void accountTest() {
+		assertEquals(7, accounts.getVersion());
+		assertEquals(2, accounts.size());
+
+		SshGatewayAccounts.Account account = accounts.getAccount("shop-prod_www-data");
+		assertEquals("www-data", account.getContainerUsername());
+		assertEquals("fd00::10", account.getContainerIpv6());
+		assertEquals(2, account.getAllowedKeys().size());
+
+		// containers without address can't be reached
+		assertNull(accounts.getAccount("shop-dev_root"));
+		assertNull(accounts.getAccount("shop-prod_nobody"));
+	}
+
+	@Test
+	public void publicKeyTest() {
+		assertTrue(accounts.authenticate("shop-prod_www-data", aliceKey.getPublic()));
+		assertTrue(accounts.authenticate("shop-prod_www-data", bobKey.getPublic()));
+		assertFalse(accounts.authenticate("shop-prod_www-data", malloryKey.getPublic()));
+		assertFalse(accounts.authenticate("shop-prod_root", aliceKey.getPublic()));
+		assertFalse(accounts.authenticate("shop-dev_root", aliceKey.getPublic()));
+	}
+
+	@Test
+	public void passwordTest() {
+		assertTrue(accounts.authenticate("shop-prod_www-data", "secret"));
+		assertFalse(accounts.authenticate("shop-prod_www-data", "Secret"));
+		assertFalse(accounts.authenticate("shop-prod_www-data", (String) null));
+
+		// accounts without password only allow public key logins
+		assertFalse(accounts.authenticate("shop-prod_root", ""));
+		assertFalse(accounts.authenticate("shop-prod_root", (String) null));
+	}
+}
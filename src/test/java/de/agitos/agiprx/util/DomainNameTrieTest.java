@@ -0,0 +1,77 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DomainNameTrieTest {
+
+	private DomainNameTrie<String> trie;
+
+	@Before
+	public void setup() {
+		trie = new DomainNameTrie<String>();
+		trie.put("example.org", "exact.pem");
+		trie.put("www.example.org", "exact.pem");
+		trie.put("*.example.org", "wildcard.pem");
+		trie.put("shop.example.com", "shop.pem");
+	}
+
+	@Test
+	public void matchingTest() {
+		assertEquals("exact.pem", trie.getMatching("www.example.org"));
+		assertEquals("wildcard.pem", trie.getMatching("mail.example.org"));
+		assertEquals("exact.pem", trie.getMatching("example.org"));
+		assertNull(trie.getMatching("a.b.example.org"));
+		assertNull(trie.getMatching("www.example.com"));
+		assertNull(trie.get("mail.example.org"));
+		assertEquals("wildcard.pem", trie.get("*.example.org"));
+	}
+
+	@Test
+	public void coveredByTest() {
+		List<String> covered = new ArrayList<String>(trie.getCoveredBy("*.example.org"));
+		Collections.sort(covered);
+		assertEquals(Arrays.asList("*.example.org", "www.example.org"), covered);
+		assertTrue(trie.isCoveredBy("shop.example.com"));
+		assertFalse(trie.isCoveredBy("*.shop.example.com"));
+		assertFalse(trie.isCoveredBy("*.example.net"));
+	}
+
+	@Test
+	public void findTest() {
+		assertEquals(Arrays.asList("*.example.org", "example.org", "www.example.org"),
+				new ArrayList<String>(trie.find("*example.org").keySet()));
+		assertEquals(Arrays.asList("www.example.org"), new ArrayList<String>(trie.find("www.example.org").keySet()));
+		assertEquals(Arrays.asList("shop.example.com"), new ArrayList<String>(trie.find("*shop*").keySet()));
+		assertEquals(Arrays.asList("shop.example.com"), new ArrayList<String>(trie.find("sho?.example.com").keySet()));
+		assertTrue(trie.find("*.example.net").isEmpty());
+		// dots are matched literally
+		assertTrue(trie.find("wwwxexample.org").isEmpty());
+	}
+}
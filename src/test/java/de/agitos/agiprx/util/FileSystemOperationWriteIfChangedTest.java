@@ -0,0 +1,83 @@
+/*******************************************************************************
+ * Copyright (C) 2023 Florian Sager, www.agitos.de
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ ******************************************************************************/
+package de.agitos.agiprx.util;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileSystemOperationWriteIfChangedTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void writeIfChangedTest() throws IOException {
+
+		Path parentPath = folder.getRoot().toPath();
+		Path file = parentPath.resolve("authorized_keys");
+		List<String> lines = Arrays.asList("ssh-ed25519 AAAA first", "ssh-ed25519 AAAA second");
+
+		Assert.isTrue(FileSystemOperation.writeIfChanged(file, lines, StandardCharsets.ISO_8859_1, null),
+				"new file needs to be written");
+		Assert.isTrue(!FileSystemOperation.writeIfChanged(file, lines, StandardCharsets.ISO_8859_1, null),
+				"unchanged file must not be written");
+		Assert.isTrue(
+				FileSystemOperation.writeIfChanged(file, lines.subList(0, 1), StandardCharsets.ISO_8859_1,
+						PosixFilePermissions.fromString("rwxr-xr-x")),
+				"changed file needs to be written");
+		Assert.isTrue(Files.readAllLines(file, StandardCharsets.ISO_8859_1).equals(lines.subList(0, 1)),
+				"file content differs");
+		Assert.isTrue(
+				Files.getPosixFilePermissions(file).equals(PosixFilePermissions.fromString("rwxr-xr-x")),
+				"file permissions differ");
+
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(parentPath)) {
+			for (Path path : stream) {
+				Assert.isTrue(path.equals(file), "temporary file remained: " + path);
+			}
+		}
+	}
+
+	@Test
+	public void writeIfChangedPermissionsTest() throws IOException {
+
+		Path file = folder.getRoot().toPath().resolve("sshprx.sh");
+		List<String> lines = Arrays.asList("#!/bin/bash", "exec ssh container");
+
+		Assert.isTrue(FileSystemOperation.writeIfChanged(file, lines, StandardCharsets.ISO_8859_1, null),
+				"new file needs to be written");
+		Assert.isTrue(Files.getPosixFilePermissions(file).equals(PosixFilePermissions.fromString("rw-r--r--")),
+				"new file needs default permissions");
+
+		Assert.isTrue(
+				!FileSystemOperation.writeIfChanged(file, lines, StandardCharsets.ISO_8859_1,
+						PosixFilePermissions.fromString("rwxr-xr-x")),
+				"unchanged file must not be written");
+		Assert.isTrue(Files.getPosixFilePermissions(file).equals(PosixFilePermissions.fromString("rwxr-xr-x")),
+				"permissions of unchanged file need to be repaired");
+	}
+}